@@ -0,0 +1,54 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.File;
+
+import org.apache.kylin.common.KylinConfig;
+
+/**
+ * A KylinConfig on the test metadata, which the benchmarks only read. The metadata directory is given by the
+ * {@value #METADATA_DIR_PROPERTY} system property, by default the one of the source tree seen from the module
+ * directory.
+ */
+public class BenchmarkMetadata {
+
+    public static final String METADATA_DIR_PROPERTY = "kylin.benchmark.metadata.dir";
+
+    public static final String DEFAULT_METADATA_DIR = "../examples/test_case_data/localmeta";
+
+    public static String getMetadataDir() {
+        return System.getProperty(METADATA_DIR_PROPERTY, DEFAULT_METADATA_DIR);
+    }
+
+    public static KylinConfig load() {
+        String metadataDir = getMetadataDir();
+        File dir = new File(metadataDir);
+        if (!dir.isDirectory()) {
+            throw new IllegalStateException("Cannot find test metadata at " + dir.getAbsolutePath() + ", please set -D" + METADATA_DIR_PROPERTY + " or run the benchmarks from the benchmark module directory");
+        }
+
+        // code that reads the env config on its own finds the same metadata
+        if (System.getProperty(KylinConfig.KYLIN_CONF) == null) {
+            System.setProperty(KylinConfig.KYLIN_CONF, metadataDir);
+        }
+        KylinConfig config = KylinConfig.createInstanceFromUri(new File(dir, KylinConfig.KYLIN_CONF_PROPERTIES_FILE).getPath());
+        config.setMetadataUrl(metadataDir);
+        return config;
+    }
+}
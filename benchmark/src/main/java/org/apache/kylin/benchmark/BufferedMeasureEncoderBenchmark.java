@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.measure.BufferedMeasureEncoder;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BufferedMeasureEncoder encoding and decoding a typical row of measures: a count, a decimal sum,
+ * a double max and a count distinct.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BufferedMeasureEncoderBenchmark {
+
+    BufferedMeasureEncoder encoder;
+    Object[] values;
+    Object[] decoded;
+    ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        encoder = new BufferedMeasureEncoder("bigint", "decimal(19,4)", "double", "hllc(10)");
+
+        HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(10);
+        Random rand = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            hllc.add(rand.nextInt());
+        }
+        values = new Object[] { new LongMutable(12345), new BigDecimal("1234.5678"), new DoubleMutable(3.14), hllc };
+        decoded = new Object[values.length];
+
+        ByteBuffer buf = encoder.encode(values);
+        encoded = ByteBuffer.allocate(buf.position());
+        buf.flip();
+        encoded.put(buf);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return encoder.encode(values);
+    }
+
+    @Benchmark
+    public Object[] decode() {
+        encoder.decode(encoded.duplicate(), decoded);
+        return decoded;
+    }
+}
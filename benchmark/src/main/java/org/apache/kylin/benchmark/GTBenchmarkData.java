@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator;
+import org.apache.kylin.metadata.datatype.DataType;
+
+/**
+ * Records of 5 int4 dimensions and 2 long8 measures, the same data as GTScannerBenchmark. They are generated
+ * once and kept packed in a buffer, so a benchmark measures the scanners and not the generator.
+ */
+public class GTBenchmarkData {
+
+    static final int ROW_LENGTH = 5 * 4 + 2 * 8;
+
+    static final ImmutableBitSet DIMENSIONS = ImmutableBitSet.valueOf(0, 1, 2, 3, 4);
+    static final ImmutableBitSet METRICS = ImmutableBitSet.valueOf(5, 6);
+
+    final GTInfo info;
+    final ByteBuffer data;
+    final int nRows;
+
+    public GTBenchmarkData(int nRows) {
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType tint = DataType.getType("int4");
+        DataType tlong = DataType.getType("long8");
+        builder.setColumns(tint, tint, tint, tint, tint, tlong, tlong);
+        builder.setPrimaryKey(DIMENSIONS);
+        this.info = builder.build();
+        this.nRows = nRows;
+
+        SortedGTRecordGenerator gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addMeasure(8);
+        gen.addMeasure(8);
+
+        ImmutableBitSet all = info.getAllColumns();
+        ByteBuffer buf = ByteBuffer.allocate(nRows * ROW_LENGTH);
+        for (GTRecord rec : gen.generate(nRows)) {
+            rec.exportColumns(all, buf);
+        }
+        buf.flip();
+        this.data = buf;
+    }
+
+    /** reads the packed records like the storage scanners do, reusing one record */
+    public IGTScanner newScanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return info;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return nRows;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                final ByteBuffer buf = data.duplicate();
+                final GTRecord record = new GTRecord(info);
+                final ImmutableBitSet all = info.getAllColumns();
+                return new Iterator<GTRecord>() {
+                    @Override
+                    public boolean hasNext() {
+                        return buf.hasRemaining();
+                    }
+
+                    @Override
+                    public GTRecord next() {
+                        record.loadColumns(all, buf);
+                        return record;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    static long consume(IGTScanner scanner) throws IOException {
+        long count = 0;
+        try {
+            for (GTRecord rec : scanner) {
+                count += rec.get(0).length();
+            }
+        } finally {
+            scanner.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HyperLogLogPlusCounter merge and register (de)serialization. A counter holding few values is written in the
+ * sparse form and a full one in the dense form, so both are covered by the cardinality parameter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HyperLogLogPlusCounterBenchmark {
+
+    @Param({ "14" })
+    int precision;
+
+    @Param({ "100", "1000000" })
+    int cardinality;
+
+    HyperLogLogPlusCounter sum;
+    HyperLogLogPlusCounter another;
+    HyperLogLogPlusCounter deserialized;
+    ByteBuffer buf;
+    ByteBuffer serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rand = new Random(0);
+        sum = new HyperLogLogPlusCounter(precision);
+        another = new HyperLogLogPlusCounter(precision);
+        for (int i = 0; i < cardinality; i++) {
+            sum.add(rand.nextInt());
+            another.add(rand.nextInt());
+        }
+        deserialized = new HyperLogLogPlusCounter(precision);
+
+        buf = ByteBuffer.allocate(another.maxLength());
+        another.writeRegisters(buf);
+        buf.flip();
+        serialized = ByteBuffer.allocate(buf.remaining());
+        serialized.put(buf);
+        serialized.flip();
+    }
+
+    /** merging is idempotent, so merging into the same counter again and again costs the same */
+    @Benchmark
+    public HyperLogLogPlusCounter merge() {
+        sum.merge(another);
+        return sum;
+    }
+
+    @Benchmark
+    public ByteBuffer serialize() throws IOException {
+        buf.clear();
+        another.writeRegisters(buf);
+        return buf;
+    }
+
+    @Benchmark
+    public HyperLogLogPlusCounter deserialize() throws IOException {
+        ByteBuffer in = serialized.duplicate();
+        deserialized.readRegisters(in);
+        return deserialized;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.cube.inmemcubing.InMemCubeBuilder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
+import org.apache.kylin.dict.DictionaryGenerator;
+import org.apache.kylin.dict.IterableDictionaryValueEnumerator;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * InMemCubeBuilder building all cuboids of a test cube. The input rows are random combinations of the
+ * distinct column values of the test flat table, fed from a queue filled before each build.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class InMemCubeBuilderBenchmark {
+
+    static final String CUBE_NAME = "test_kylin_cube_without_slr_left_join_empty";
+    static final String FLAT_TABLE = BenchmarkMetadata.getMetadataDir() + "/data/flatten_data_for_without_slr_left_join.csv";
+
+    @Param({ "10000" })
+    int nRows;
+
+    @Param({ "1", "4" })
+    int nThreads;
+
+    CubeDesc cubeDesc;
+    Map<TblColRef, Dictionary<String>> dictionaryMap;
+    List<List<String>> rows;
+    LinkedBlockingQueue<List<String>> queue;
+
+    @Setup
+    public void setup() throws IOException {
+        CubeInstance cube = CubeManager.getInstance(BenchmarkMetadata.load()).getCube(CUBE_NAME);
+        cubeDesc = cube.getDescriptor();
+
+        CubeJoinedFlatTableDesc flatTableDesc = new CubeJoinedFlatTableDesc(cubeDesc, null);
+        int nColumns = flatTableDesc.getColumnList().size();
+        List<String[]> lines = Lists.newArrayList();
+        for (String line : FileUtils.readLines(new File(FLAT_TABLE), "UTF-8")) {
+            String[] row = line.trim().split(",");
+            if (row.length != nColumns)
+                throw new IllegalStateException("Expect " + nColumns + " columns in " + FLAT_TABLE);
+            lines.add(row);
+        }
+
+        dictionaryMap = buildDictionaries(flatTableDesc, lines);
+
+        @SuppressWarnings("unchecked")
+        Set<String>[] distincts = new Set[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            distincts[i] = new TreeSet<String>();
+            for (String[] line : lines) {
+                distincts[i].add(line[i]);
+            }
+        }
+        List<String[]> candidates = Lists.newArrayList();
+        for (Set<String> set : distincts) {
+            candidates.add(set.toArray(new String[set.size()]));
+        }
+
+        Random rand = new Random(0);
+        rows = Lists.newArrayListWithCapacity(nRows);
+        for (int r = 0; r < nRows; r++) {
+            List<String> row = new ArrayList<String>(nColumns);
+            for (int i = 0; i < nColumns; i++) {
+                String[] values = candidates.get(i);
+                row.add(values[rand.nextInt(values.length)]);
+            }
+            rows.add(row);
+        }
+    }
+
+    private Map<TblColRef, Dictionary<String>> buildDictionaries(CubeJoinedFlatTableDesc flatTableDesc, List<String[]> lines) throws IOException {
+        Map<TblColRef, Dictionary<String>> result = Maps.newHashMap();
+
+        List<TblColRef> columns = Cuboid.getBaseCuboid(cubeDesc).getColumns();
+        for (int c = 0; c < columns.size(); c++) {
+            TblColRef col = columns.get(c);
+            if (cubeDesc.getRowkey().isUseDictionary(col)) {
+                result.put(col, buildDictionary(col, lines, flatTableDesc.getRowKeyColumnIndexes()[c]));
+            }
+        }
+
+        for (int m = 0; m < cubeDesc.getMeasures().size(); m++) {
+            MeasureDesc measureDesc = cubeDesc.getMeasures().get(m);
+            FunctionDesc func = measureDesc.getFunction();
+            List<TblColRef> dictCols = func.getMeasureType().getColumnsNeedDictionary(func);
+            List<TblColRef> paramCols = func.getParameter().getColRefs();
+            for (int i = 0; i < paramCols.size(); i++) {
+                TblColRef col = paramCols.get(i);
+                if (dictCols.contains(col)) {
+                    result.put(col, buildDictionary(col, lines, flatTableDesc.getMeasureColumnIndexes()[m][i]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Dictionary<String> buildDictionary(TblColRef col, List<String[]> lines, int c) throws IOException {
+        List<byte[]> values = Lists.newArrayList();
+        for (String[] line : lines) {
+            if (line[c] != null) {
+                values.add(Bytes.toBytes(line[c]));
+            }
+        }
+        return DictionaryGenerator.buildDictionary(col.getType(), new IterableDictionaryValueEnumerator(values));
+    }
+
+    @Setup(Level.Invocation)
+    public void fillQueue() {
+        queue = new LinkedBlockingQueue<List<String>>(rows);
+        queue.add(new ArrayList<String>(0));
+    }
+
+    @Benchmark
+    public long build() throws IOException {
+        InMemCubeBuilder builder = new InMemCubeBuilder(cubeDesc, dictionaryMap);
+        builder.setConcurrentThreads(nThreads);
+        CountingWriter writer = new CountingWriter();
+        builder.build(queue, writer);
+        return writer.count;
+    }
+
+    private static class CountingWriter implements ICuboidWriter {
+        long count = 0;
+
+        @Override
+        public void write(long cuboidId, GTRecord record) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
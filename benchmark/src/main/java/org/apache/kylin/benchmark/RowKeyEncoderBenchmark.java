@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.kv.RowKeyEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RowKeyEncoder of the base cuboid of a test cube: encoding from the column values, which goes through the
+ * dictionaries, and adding the header to an already encoded body, which is what cubing does per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowKeyEncoderBenchmark {
+
+    RowKeyEncoder encoder;
+    byte[][] values;
+    ByteArray body;
+    ByteArray outputBuf;
+
+    @Setup
+    public void setup() {
+        CubeInstance cube = CubeManager.getInstance(BenchmarkMetadata.load()).getCube("TEST_KYLIN_CUBE_WITHOUT_SLR_READY");
+        Cuboid baseCuboid = Cuboid.getBaseCuboid(cube.getDescriptor());
+        encoder = new RowKeyEncoder(cube.getFirstSegment(), baseCuboid);
+
+        values = new byte[8][];
+        values[0] = Bytes.toBytes("2012-12-15");
+        values[1] = Bytes.toBytes("11848");
+        values[2] = Bytes.toBytes("Health & Beauty");
+        values[3] = Bytes.toBytes("Fragrances");
+        values[4] = Bytes.toBytes("Women");
+        values[5] = Bytes.toBytes("FP-GTC");
+        values[6] = Bytes.toBytes("0");
+        values[7] = Bytes.toBytes("15");
+
+        byte[] rowKey = encoder.encode(values);
+        int headerLength = encoder.getHeaderLength();
+        body = new ByteArray(rowKey, headerLength, rowKey.length - headerLength);
+        outputBuf = new ByteArray(rowKey.length);
+    }
+
+    @Benchmark
+    public byte[] encodeValues() {
+        return encoder.encode(values);
+    }
+
+    @Benchmark
+    public ByteArray encodeBody() {
+        encoder.encode(body, outputBuf);
+        return outputBuf;
+    }
+}
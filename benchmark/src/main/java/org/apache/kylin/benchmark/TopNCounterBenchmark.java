@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.measure.topn.TopNCounter;
+import org.apache.kylin.measure.topn.TopNCounterSerializer;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merging two full TopNCounters the way TopNAggregator does, i.e. merge then retain, plus their
+ * (de)serialization. Keys are 4 bytes with skewed frequencies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopNCounterBenchmark {
+
+    @Param({ "10", "100" })
+    int topN;
+
+    TopNCounterSerializer serializer;
+    ByteBuffer leftBytes;
+    TopNCounter<ByteArray> right;
+    TopNCounter<ByteArray> left;
+    ByteBuffer buf;
+
+    @Setup
+    public void setup() {
+        DataType type = DataType.getType("topn(" + topN + ", 4)");
+        serializer = new TopNCounterSerializer(type);
+
+        Random rand = new Random(0);
+        TopNCounter<ByteArray> l = newCounter(rand);
+        right = newCounter(rand);
+
+        buf = ByteBuffer.allocate(serializer.maxLength());
+        serializer.serialize(l, buf);
+        buf.flip();
+        leftBytes = ByteBuffer.allocate(buf.remaining());
+        leftBytes.put(buf);
+        leftBytes.flip();
+    }
+
+    private TopNCounter<ByteArray> newCounter(Random rand) {
+        int capacity = topN * TopNCounter.EXTRA_SPACE_RATE;
+        TopNCounter<ByteArray> counter = new TopNCounter<ByteArray>(capacity);
+        for (int i = 0; i < capacity * 4; i++) {
+            // skewed, small keys are much more frequent
+            int key = (int) Math.abs(rand.nextGaussian() * capacity);
+            ByteArray bytes = new ByteArray(4);
+            BytesUtil.writeUnsigned(key, bytes.array(), 0, 4);
+            counter.offer(bytes, rand.nextInt(100));
+        }
+        return counter;
+    }
+
+    /** merge changes the counter, a fresh one is needed for each invocation */
+    @Setup(Level.Invocation)
+    public void prepareLeft() {
+        left = serializer.deserialize(leftBytes.duplicate());
+    }
+
+    @Benchmark
+    public TopNCounter<ByteArray> merge() {
+        left.merge(right);
+        left.retain(topN * TopNCounter.EXTRA_SPACE_RATE);
+        return left;
+    }
+
+    @Benchmark
+    public ByteBuffer serialize() {
+        buf.clear();
+        serializer.serialize(right, buf);
+        return buf;
+    }
+
+    @Benchmark
+    public TopNCounter<ByteArray> deserialize() {
+        return serializer.deserialize(leftBytes.duplicate());
+    }
+}
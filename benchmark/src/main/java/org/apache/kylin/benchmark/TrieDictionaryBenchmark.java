@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionary;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TrieDictionary lookups in both directions, on random values of a given cardinality.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrieDictionaryBenchmark {
+
+    @Param({ "1000", "100000" })
+    int cardinality;
+
+    TrieDictionary<String> dict;
+    String[] values;
+    byte[][] valueBytes;
+    int[] ids;
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        TreeSet<String> set = new TreeSet<String>();
+        while (set.size() < cardinality) {
+            set.add("value_" + rand.nextInt(Integer.MAX_VALUE));
+        }
+
+        TrieDictionaryBuilder<String> builder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : set) {
+            builder.addValue(v);
+        }
+        dict = builder.build(0);
+
+        // look up in random order, not the dictionary order
+        values = set.toArray(new String[set.size()]);
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            String tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+        valueBytes = new byte[values.length][];
+        ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            valueBytes[i] = Bytes.toBytes(values[i]);
+            ids[i] = dict.getIdFromValue(values[i]);
+        }
+    }
+
+    private int nextIndex() {
+        if (++next == values.length)
+            next = 0;
+        return next;
+    }
+
+    @Benchmark
+    public int getIdFromValue() {
+        return dict.getIdFromValue(values[nextIndex()]);
+    }
+
+    @Benchmark
+    public int getIdFromValueBytes() {
+        byte[] v = valueBytes[nextIndex()];
+        return dict.getIdFromValueBytes(v, 0, v.length);
+    }
+
+    @Benchmark
+    public String getValueFromId() {
+        return dict.getValueFromId(ids[nextIndex()]);
+    }
+
+    @Benchmark
+    public byte[] getValueBytesFromId() {
+        return dict.getValueBytesFromId(ids[nextIndex()]);
+    }
+}
@@ -323,6 +323,24 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.job.mapreduce.mapper.input.rows", "1000000"));
     }
 
+    /**
+     * Memory of a fact distinct columns mapper for remembering emitted column values, 0 to emit on every row
+     */
+    public int getFactDistinctMapperDedupMB() {
+        return Integer.parseInt(getOptional("kylin.job.mapreduce.fact.distinct.mapper.dedup.mb", "20"));
+    }
+
+    /**
+     * Distinct values one fact distinct columns reducer takes, a column of higher cardinality is split over more reducers
+     */
+    public long getFactDistinctValuesPerReducer() {
+        return Long.parseLong(getOptional("kylin.job.mapreduce.fact.distinct.values.per.reducer", "20000000"));
+    }
+
+    public int getFactDistinctMaxReducersPerColumn() {
+        return Integer.parseInt(getOptional("kylin.job.mapreduce.fact.distinct.max.reducers.per.column", "50"));
+    }
+
     public boolean getRunAsRemoteCommand() {
         return Boolean.parseBoolean(getOptional("kylin.job.run.as.remote.cmd"));
     }
@@ -383,6 +401,14 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.job.concurrent.max.limit", "10"));
     }
 
+    /**
+     * The scheduler picks READY jobs from an index kept in sync by job events, a full scan of all jobs
+     * is only done at this interval to catch changes the events missed.
+     */
+    public int getJobSchedulerFullScanIntervalSeconds() {
+        return Integer.parseInt(getOptional("kylin.job.scheduler.full.scan.interval.seconds", "1800"));
+    }
+
     public String getTimeZone() {
         return getOptional("kylin.rest.timezone", "PST");
     }
@@ -391,6 +417,14 @@ abstract public class KylinConfigBase implements Serializable {
         return getOptionalStringArray("kylin.rest.servers", new String[0]);
     }
 
+    /**
+     * Cache wipe events within the window are coalesced and sent to each node in one request; 0 sends every
+     * event on its own. Nodes without the batch endpoint get the events of a batch one by one
+     */
+    public long getBroadcastBatchWindowMs() {
+        return Long.parseLong(getOptional("kylin.rest.broadcast.batch.window.ms", "0"));
+    }
+
     public String getClusterName() {
         return this.getOptional("kylin.cluster.name", getMetadataUrlPrefix());
     }
@@ -506,6 +540,18 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.snapshot.cache.max.entry", "500"));
     }
 
+    /**
+     * Whether query servers serve lookup tables from a columnar copy of the snapshot memory-mapped from local disk,
+     * instead of expanding the snapshot into rows on heap.
+     */
+    public boolean isSnapshotMmapEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.snapshot.mmap.enabled", "false"));
+    }
+
+    public String getSnapshotLocalDir() {
+        return getOptional("kylin.snapshot.local.dir", "/tmp/kylin/snapshot");
+    }
+
     public boolean getQueryRunLocalCoprocessor() {
         return Boolean.parseBoolean(getOptional("kylin.query.run.local.coprocessor", "false"));
     }
@@ -522,10 +568,39 @@ abstract public class KylinConfigBase implements Serializable {
         return Long.parseLong(this.getOptional("kylin.query.mem.budget", String.valueOf(3L * 1024 * 1024 * 1024)));
     }
 
+    /**
+     * Whether joins that are not answered by the cube use Kylin's hash join instead of Calcite's
+     */
+    public boolean isQueryNativeJoinEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.join.native.enabled", "false"));
+    }
+
+    /**
+     * Bytes of encoded rows the hash join of one query keeps in memory, beyond which it spills to disk
+     */
+    public long getQueryJoinMemBudget() {
+        return Long.parseLong(this.getOptional("kylin.query.join.mem.budget", String.valueOf(256L * 1024 * 1024)));
+    }
+
     public double getQueryCoprocessorMemGB() {
         return Double.parseDouble(this.getOptional("kylin.query.coprocessor.mem.gb", "3.0"));
     }
 
+    /**
+     * Approximate bytes of result rows per block returned by the cube visit endpoint, 0 returns all rows of a region in one block
+     */
+    public int getQueryCoprocessorRowBlockSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.coprocessor.row.block.size", String.valueOf(1024 * 1024)));
+    }
+
+    /**
+     * Max bytes of region results received but not yet consumed by a segment scan; the callbacks of further regions
+     * wait while it is exceeded, 0 means no limit
+     */
+    public long getQueryCoprocessorResultBufferBytes() {
+        return Long.parseLong(this.getOptional("kylin.query.coprocessor.result.buffer.bytes", String.valueOf(256L * 1024 * 1024)));
+    }
+
     public boolean isQuerySecureEnabled() {
         return Boolean.parseBoolean(this.getOptional("kylin.query.security.enabled", "true"));
     }
@@ -555,10 +630,69 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.valueOf(this.getOptional("kylin.query.storage.visit.scanrange.max", "1000000"));
     }
 
+    /**
+     * Max number of cube segments scanned concurrently by one query, 1 means segments are scanned one by one.
+     * A segment starts its storage RPCs only when it is being scanned.
+     */
+    public int getQuerySegmentScanParallelism() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.parallelism", "1"));
+    }
+
+    public int getQuerySegmentScanBufferSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.buffer.size", "10000"));
+    }
+
+    /**
+     * Threads the query server uses for scanning segments in parallel, shared by all queries
+     */
+    public int getQuerySegmentScanMaxThreads() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.threads.max", "64"));
+    }
+
+    /**
+     * off: never push ORDER BY measure LIMIT down to storage;
+     * exact: push down only when every group lives in one region, so the result is exact;
+     * approximate: also push down when groups span regions/segments, keeping extra candidates per region
+     */
+    public String getQueryTopNPushDownMode() {
+        return getOptional("kylin.query.topn.pushdown.mode", "exact");
+    }
+
+    public int getQueryTopNPushDownCandidateFactor() {
+        return Integer.parseInt(this.getOptional("kylin.query.topn.pushdown.candidate.factor", "10"));
+    }
+
+    /**
+     * Whether a query whose cuboid is not built scans, in each segment, the built ancestor of fewest rows
+     * according to the segment statistics, instead of the one of fewest dimensions
+     */
+    public boolean isQueryCostBasedCuboidSelectionEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.cuboid.cost.based.selection.enabled", "true"));
+    }
+
     public String getQueryAccessController() {
         return getOptional("kylin.query.access.controller", null);
     }
 
+    /** max idle Calcite connections kept per project for reuse by later queries */
+    public int getQueryConnectionPoolMaxIdle() {
+        return Integer.parseInt(getOptional("kylin.query.connection.pool.max.idle", "16"));
+    }
+
+    /**
+     * Whether a pooled connection keeps the compiled plans of recent SQLs, so that repeated SQLs skip parsing,
+     * validation and optimization. Not used when an access controller is set, as its filter is per user, nor for
+     * queries with backdoor toggles.
+     */
+    public boolean isQueryPlanCacheEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.plan.cache.enabled", "false"));
+    }
+
+    /** max compiled plans kept by each pooled connection */
+    public int getQueryPlanCacheMaxEntry() {
+        return Integer.parseInt(getOptional("kylin.query.plan.cache.max.entry", "100"));
+    }
+
     public long getSequenceExpireTime() {
         return Long.valueOf(this.getOptional("kylin.query.sequence.expire.time", "86400000"));//default a day
     }
@@ -694,6 +828,34 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.job.cubing.inmem.sampling.hll.precision", "14"));
     }
 
+    /**
+     * Whether a streaming micro batch is consumed in one pass as it is fetched, with rows spooled to local disk
+     * rather than held in memory, instead of fetching the whole batch before sampling and building.
+     */
+    public boolean isStreamingPipelineEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.streaming.pipeline.enabled", "false"));
+    }
+
+    /** max fetched messages waiting to be consumed in the pipelined mode */
+    public int getStreamingPipelineQueueSize() {
+        return Integer.parseInt(getOptional("kylin.streaming.pipeline.queue.size", "10000"));
+    }
+
+    /** whether a streaming batch resumes from the source offsets recorded with the previous segment */
+    public boolean isStreamingOffsetCheckpointEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.streaming.offset.checkpoint.enabled", "true"));
+    }
+
+    /** whether streaming segments are written as HFiles and bulk loaded, instead of put row by row */
+    public boolean isStreamingBulkLoadEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.streaming.bulkload.enabled", "false"));
+    }
+
+    /** key values sorted in memory before being written out as one HFile per column family */
+    public int getStreamingBulkLoadBufferMB() {
+        return Integer.parseInt(getOptional("kylin.streaming.bulkload.buffer.mb", "128"));
+    }
+
     public String getJobControllerLock() {
         return getOptional("kylin.job.controller.lock", "org.apache.kylin.storage.hbase.util.ZookeeperJobLock");
     }
@@ -768,6 +930,31 @@ abstract public class KylinConfigBase implements Serializable {
         return Long.parseLong(getOptional("kylin.query.hbase.hconnection.threads.alive.seconds", "60"));
     }
 
+    /**
+     * Threads the query server uses for endpoint RPCs of all queries together
+     */
+    public int getQueryEndpointRPCMaxThreads() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.rpc.threads.max", "256"));
+    }
+
+    public int getQueryEndpointRPCMaxThreadsPerQuery() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.rpc.threads.per.query", "64"));
+    }
+
+    /**
+     * Endpoint RPCs allowed to wait for a thread, beyond which submitting queries block until the backlog drains
+     */
+    public int getQueryEndpointRPCMaxPending() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.rpc.pending.max", "10000"));
+    }
+
+    /**
+     * One of this many RPC dispatches goes to bulk queries when interactive queries are waiting, so exports still progress
+     */
+    public int getQueryEndpointRPCBulkTurn() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.rpc.bulk.turn", "4"));
+    }
+
     public long getStorageCleanupTimeThreshold() {
         return Long.valueOf(this.getOptional("kylin.storage.cleanup.time.threshold", "172800000")); //default two days
     }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.common;
+
+/**
+ * Facts about the query running in the current thread that lower layers may act on, e.g. the storage scheduling
+ * its RPCs. The query entrance resets it when the query is done.
+ */
+public class QueryContext {
+
+    private static final ThreadLocal<QueryContext> contexts = new ThreadLocal<QueryContext>() {
+        @Override
+        protected QueryContext initialValue() {
+            return new QueryContext();
+        }
+    };
+
+    public static QueryContext current() {
+        return contexts.get();
+    }
+
+    /** makes another thread, e.g. a worker of the query, share the context of the query */
+    public static void set(QueryContext context) {
+        contexts.set(context);
+    }
+
+    public static void reset() {
+        contexts.remove();
+    }
+
+    // ============================================================================
+
+    private boolean bulk = false;
+
+    private QueryContext() {
+    }
+
+    /** whether the query is a large export rather than an interactive one, so yields to interactive queries */
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public void setBulk(boolean bulk) {
+        this.bulk = bulk;
+    }
+}
@@ -33,6 +33,15 @@ public class BackdoorToggles {
         _backdoorToggles.set(toggles);
     }
 
+    public static Map<String, String> getToggles() {
+        return _backdoorToggles.get();
+    }
+
+    public static boolean hasToggles() {
+        Map<String, String> toggles = _backdoorToggles.get();
+        return toggles != null && !toggles.isEmpty();
+    }
+
     public static String getCoprocessorBehavior() {
         return getString(DEBUG_TOGGLE_COPROCESSOR_BEHAVIOR);
     }
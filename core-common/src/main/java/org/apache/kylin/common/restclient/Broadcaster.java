@@ -21,11 +21,13 @@ package org.apache.kylin.common.restclient;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
@@ -34,8 +36,12 @@ import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Broadcast kylin event out
@@ -87,6 +93,7 @@ public class Broadcaster {
         }
         logger.debug(nodes.length + " nodes in the cluster: " + Arrays.toString(nodes));
 
+        final long batchWindowMs = config.getBroadcastBatchWindowMs();
         Executors.newSingleThreadExecutor(new DaemonThreadFactory()).execute(new Runnable() {
             @Override
             public void run() {
@@ -95,6 +102,10 @@ public class Broadcaster {
                     restClients.add(new RestClient(node));
                 }
                 final ExecutorService wipingCachePool = Executors.newFixedThreadPool(restClients.size());
+                if (batchWindowMs > 0) {
+                    runBatches(restClients, wipingCachePool, batchWindowMs);
+                    return;
+                }
                 while (true) {
                     try {
                         final BroadcastEvent broadcastEvent = broadcastEvents.takeFirst();
@@ -119,6 +130,59 @@ public class Broadcaster {
         });
     }
 
+    private void runBatches(List<RestClient> restClients, ExecutorService wipingCachePool, long batchWindowMs) {
+        while (true) {
+            try {
+                final List<BroadcastEvent> batch = coalesce(takeBatch(batchWindowMs));
+                logger.info("new broadcast batch of " + batch.size() + " events:" + batch);
+                for (final RestClient restClient : restClients) {
+                    wipingCachePool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                restClient.wipeCaches(batch);
+                            } catch (IOException e) {
+                                logger.warn("Thread failed during wipe cache of batch " + batch, e);
+                            }
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                logger.error("error running wiping", e);
+            }
+        }
+    }
+
+    /** waits for an event, then takes all events queued within the window after it, oldest first */
+    private List<BroadcastEvent> takeBatch(long batchWindowMs) throws InterruptedException {
+        List<BroadcastEvent> batch = Lists.newArrayList();
+        // events are put at the head, so the oldest is at the tail
+        batch.add(broadcastEvents.takeLast());
+        long deadline = System.currentTimeMillis() + batchWindowMs;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            BroadcastEvent event = broadcastEvents.pollLast(remaining, TimeUnit.MILLISECONDS);
+            if (event == null)
+                break;
+            batch.add(event);
+        }
+        return batch;
+    }
+
+    /**
+     * Keeps one event per (type, name), the latest one, as it reflects the final state. Events stay in the order of
+     * their latest occurrence.
+     */
+    static List<BroadcastEvent> coalesce(List<BroadcastEvent> events) {
+        Map<String, BroadcastEvent> latest = Maps.newLinkedHashMap();
+        for (BroadcastEvent event : events) {
+            String key = event.getType() + "/" + event.getName();
+            latest.remove(key);
+            latest.put(key, event);
+        }
+        return Lists.newArrayList(latest.values());
+    }
+
     /**
      * Broadcast the cubedesc event out
      * 
@@ -167,7 +231,7 @@ public class Broadcaster {
     }
 
     public enum TYPE {
-        ALL("all"), CUBE("cube"), STREAMING("streaming"), KAFKA("kafka"), CUBE_DESC("cube_desc"), PROJECT("project"), INVERTED_INDEX("inverted_index"), INVERTED_INDEX_DESC("ii_desc"), TABLE("table"), DATA_MODEL("data_model"), EXTERNAL_FILTER("external_filter"), HYBRID("hybrid");
+        ALL("all"), CUBE("cube"), STREAMING("streaming"), KAFKA("kafka"), CUBE_DESC("cube_desc"), PROJECT("project"), INVERTED_INDEX("inverted_index"), INVERTED_INDEX_DESC("ii_desc"), TABLE("table"), DATA_MODEL("data_model"), EXTERNAL_FILTER("external_filter"), HYBRID("hybrid"), JOB("job");
         private String text;
 
         TYPE(String text) {
@@ -193,11 +257,19 @@ public class Broadcaster {
         }
     }
 
+    @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
     public static class BroadcastEvent {
+        @JsonProperty("type")
         private String type;
+        @JsonProperty("action")
         private String action;
+        @JsonProperty("name")
         private String name;
 
+        // for JSON serialization
+        public BroadcastEvent() {
+        }
+
         public BroadcastEvent(String type, String action, String name) {
             super();
             this.type = type;
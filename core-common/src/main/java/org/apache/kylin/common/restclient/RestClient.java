@@ -19,6 +19,7 @@
 package org.apache.kylin.common.restclient;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,6 +30,8 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -107,6 +110,37 @@ public class RestClient {
         }
     }
 
+    /**
+     * Sends a batch of cache wipe events in one request, see {@link Broadcaster}. A node of an older version has no
+     * batch endpoint and answers 404, it then gets the events one by one.
+     */
+    public void wipeCaches(List<Broadcaster.BroadcastEvent> events) throws IOException {
+        String url = baseUrl + "/cache/batch";
+        HttpPut request = new HttpPut(url);
+
+        int code;
+        String msg;
+        try {
+            request.setEntity(new StringEntity(JsonUtil.writeValueAsString(events), ContentType.APPLICATION_JSON));
+            CloseableHttpResponse response = client.execute(request);
+            code = response.getStatusLine().getStatusCode();
+            msg = EntityUtils.toString(response.getEntity());
+            response.close();
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        } finally {
+            request.releaseConnection();
+        }
+
+        if (code == 404) {
+            for (Broadcaster.BroadcastEvent event : events) {
+                wipeCache(event.getType(), event.getAction(), event.getName());
+            }
+        } else if (code != 200) {
+            throw new IOException("Invalid response " + code + " with cache wipe url " + url + "\n" + msg);
+        }
+    }
+
     public String getKylinProperties() throws IOException {
         String url = baseUrl + "/admin/config";
         HttpGet request = new HttpGet(url);
@@ -183,6 +183,20 @@ public class BytesUtil {
         return (isNegativeVInt(firstByte) ? (i ^ -1L) : i);
     }
 
+    public static long readVLong(byte[] bytes, int offset) {
+        byte firstByte = bytes[offset];
+        int len = decodeVIntSize(firstByte);
+        if (len == 1) {
+            return firstByte;
+        }
+        long i = 0;
+        for (int idx = 1; idx < len; idx++) {
+            i = i << 8;
+            i = i | (bytes[offset + idx] & 0xFF);
+        }
+        return (isNegativeVInt(firstByte) ? (i ^ -1L) : i);
+    }
+
     public static int readVInt(ByteBuffer in) {
         long n = readVLong(in);
         if ((n > Integer.MAX_VALUE) || (n < Integer.MIN_VALUE)) {
@@ -33,7 +33,9 @@
  */
 package org.apache.kylin.common.util;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -43,9 +45,17 @@ public final class StreamingBatch {
 
     private final Pair<Long, Long> timeRange;
 
+    // where the source should be read from for the next batch, recorded with the segment built from this one
+    private final Map<String, String> checkpoint;
+
     public StreamingBatch(List<StreamingMessage> messages, Pair<Long, Long> timeRange) {
+        this(messages, timeRange, Collections.<String, String> emptyMap());
+    }
+
+    public StreamingBatch(List<StreamingMessage> messages, Pair<Long, Long> timeRange, Map<String, String> checkpoint) {
         this.messages = messages;
         this.timeRange = timeRange;
+        this.checkpoint = checkpoint;
     }
 
     public List<StreamingMessage> getMessages() {
@@ -56,4 +66,8 @@ public final class StreamingBatch {
         return timeRange;
     }
 
+    public Map<String, String> getCheckpoint() {
+        return checkpoint;
+    }
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.common.restclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.restclient.Broadcaster.BroadcastEvent;
+import org.apache.kylin.common.util.JsonUtil;
+import org.junit.Test;
+
+public class BroadcasterTest {
+
+    @Test
+    public void testCoalesce() {
+        List<BroadcastEvent> events = Arrays.asList(//
+                new BroadcastEvent("cube", "update", "a"), //
+                new BroadcastEvent("project", "update", "p"), //
+                new BroadcastEvent("cube", "update", "b"), //
+                new BroadcastEvent("cube", "update", "a"), //
+                new BroadcastEvent("cube_desc", "update", "a"), //
+                new BroadcastEvent("cube", "drop", "b"));
+
+        List<BroadcastEvent> coalesced = Broadcaster.coalesce(events);
+        assertEquals(Arrays.asList(//
+                new BroadcastEvent("project", "update", "p"), //
+                new BroadcastEvent("cube", "update", "a"), //
+                new BroadcastEvent("cube_desc", "update", "a"), //
+                new BroadcastEvent("cube", "drop", "b")), coalesced);
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        BroadcastEvent[] events = new BroadcastEvent[] { new BroadcastEvent("cube", "update", "a"), new BroadcastEvent("table", "update", "DEFAULT.T") };
+        String json = JsonUtil.writeValueAsString(Arrays.asList(events));
+        assertEquals(Arrays.asList(events), Arrays.asList(JsonUtil.readValue(json, BroadcastEvent[].class)));
+    }
+}
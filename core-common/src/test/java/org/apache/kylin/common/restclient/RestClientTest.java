@@ -18,10 +18,22 @@
 
 package org.apache.kylin.common.restclient;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.restclient.Broadcaster.BroadcastEvent;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 public class RestClientTest {
 
     @SuppressWarnings("unused")
@@ -38,4 +50,50 @@ public class RestClientTest {
 
     }
 
+    @Test
+    public void testBatchFallbackOn404() throws IOException {
+        // a node without the batch endpoint
+        final List<String> paths = Lists.newArrayList();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                synchronized (paths) {
+                    paths.add(path);
+                }
+                IOUtils.toByteArray(exchange.getRequestBody());
+                exchange.sendResponseHeaders(path.endsWith("/cache/batch") ? 404 : 200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            RestClient client = new RestClient("localhost:" + server.getAddress().getPort());
+            client.wipeCaches(Arrays.asList(new BroadcastEvent("cube", "update", "a"), new BroadcastEvent("table", "update", "DEFAULT.T")));
+        } finally {
+            server.stop(0);
+        }
+        assertEquals(Arrays.asList("/kylin/api/cache/batch", "/kylin/api/cache/cube/a/update", "/kylin/api/cache/table/DEFAULT.T/update"), paths);
+    }
+
+    @Test(expected = IOException.class)
+    public void testBatchError() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                IOUtils.toByteArray(exchange.getRequestBody());
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            new RestClient("localhost:" + server.getAddress().getPort()).wipeCaches(Arrays.asList(new BroadcastEvent("cube", "update", "a")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
 }
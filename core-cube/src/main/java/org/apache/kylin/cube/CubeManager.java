@@ -47,7 +47,9 @@ import org.apache.kylin.cube.model.DimensionDesc;
 import org.apache.kylin.dict.DictionaryInfo;
 import org.apache.kylin.dict.DictionaryManager;
 import org.apache.kylin.dict.DistinctColumnValuesProvider;
+import org.apache.kylin.dict.lookup.ColumnarSnapshot;
 import org.apache.kylin.dict.lookup.LookupStringTable;
+import org.apache.kylin.dict.lookup.MappedLookupStringTable;
 import org.apache.kylin.dict.lookup.SnapshotManager;
 import org.apache.kylin.dict.lookup.SnapshotTable;
 import org.apache.kylin.metadata.MetadataManager;
@@ -614,8 +616,12 @@ public class CubeManager implements IRealizationProvider {
             throw new IllegalStateException("No snaphot for table '" + tableName + "' found on cube segment" + cubeSegment.getCubeInstance().getName() + "/" + cubeSegment);
 
         try {
-            SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(snapshotResPath);
             TableDesc tableDesc = getMetadataManager().getTableDesc(tableName);
+            if (config.isSnapshotMmapEnabled()) {
+                ColumnarSnapshot columnar = getSnapshotManager().getColumnarSnapshot(snapshotResPath, tableDesc, pkCols);
+                return new MappedLookupStringTable(tableDesc, pkCols, columnar);
+            }
+            SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(snapshotResPath);
             return new LookupStringTable(tableDesc, pkCols, snapshot);
         } catch (IOException e) {
             throw new IllegalStateException("Failed to load lookup table " + tableName + " from snapshot " + snapshotResPath, e);
@@ -88,6 +88,14 @@ public class Cuboid implements Comparable<Cuboid> {
 
     }
 
+    /** the cuboid of given input ID, answered by the given valid cuboid instead of the one translated by default */
+    static Cuboid findById(CubeDesc cube, long inputID, long validID) {
+        Cuboid cuboid = findById(cube, inputID);
+        if (cuboid.getId() == validID)
+            return cuboid;
+        return new Cuboid(cube, inputID, validID);
+    }
+
     public static boolean isValid(CubeDesc cube, long cuboidID) {
         if (cuboidID == getBaseCuboidId(cube)) {
             return true;
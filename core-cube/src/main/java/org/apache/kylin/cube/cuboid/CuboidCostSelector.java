@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.cuboid;
+
+import java.util.Map;
+
+import org.apache.kylin.cube.model.CubeDesc;
+
+/**
+ * Chooses the cuboid to scan in a segment by the cuboid row counts estimated when the segment was built.
+ * 
+ * When the cuboid of a query is not built, any built ancestor, i.e. one having all the queried dimensions, can
+ * answer it with post aggregation. The default translation of Cuboid.findById() prefers fewer dimensions, which
+ * is not necessarily fewer rows; this picks the candidate of fewest estimated rows instead.
+ */
+public class CuboidCostSelector {
+
+    public static final long UNKNOWN_ROWS = -1;
+
+    /**
+     * Return the built cuboid of fewest estimated rows that can answer the given one, or the given cuboid itself
+     * when it needs no post aggregation (no ancestor can be cheaper then) or there are no estimates.
+     */
+    public static Cuboid select(Cuboid cuboid, Map<Long, Long> rowEstimates) {
+        if (!cuboid.requirePostAggregation() || rowEstimates == null || rowEstimates.isEmpty())
+            return cuboid;
+
+        CubeDesc cubeDesc = cuboid.getCubeDesc();
+        long inputID = cuboid.getInputID();
+        long bestID = cuboid.getId();
+        long bestRows = estimateRows(cuboid, rowEstimates);
+
+        for (Map.Entry<Long, Long> entry : rowEstimates.entrySet()) {
+            long id = entry.getKey();
+            long rows = entry.getValue();
+            if ((id & inputID) != inputID)
+                continue;
+            if (bestRows != UNKNOWN_ROWS && (rows > bestRows || (rows == bestRows && Cuboid.cuboidSelectComparator.compare(id, bestID) >= 0)))
+                continue;
+            if (!Cuboid.isValid(cubeDesc, id))
+                continue;
+
+            bestID = id;
+            bestRows = rows;
+        }
+
+        return Cuboid.findById(cubeDesc, inputID, bestID);
+    }
+
+    /** the estimated row count of the cuboid scanned, or UNKNOWN_ROWS */
+    public static long estimateRows(Cuboid cuboid, Map<Long, Long> rowEstimates) {
+        Long rows = rowEstimates == null ? null : rowEstimates.get(cuboid.getId());
+        return rows == null ? UNKNOWN_ROWS : rows;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.cube.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
+import org.apache.kylin.dict.DictionaryGenerator;
+import org.apache.kylin.dict.IterableDictionaryValueEnumerator;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.model.TblColRef;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+
+/**
+ * Collects the cuboid sampling and the distinct values of dictionary columns from flat table rows as they
+ * pass, so that a batch of rows needs not be walked once for each.
+ */
+public class CubingRowCollector {
+
+    private final CuboidStatsHasher hasher;
+    private final long[] cuboidIds;
+    private final HyperLogLogPlusCounter[] counters;
+
+    private final List<TblColRef> dictColumns;
+    private final HashMultimap<TblColRef, String> valueMap = HashMultimap.create();
+
+    public CubingRowCollector(CubeDesc cubeDesc) {
+        CubeJoinedFlatTableDesc intermediateTableDesc = new CubeJoinedFlatTableDesc(cubeDesc, null);
+        this.hasher = new CuboidStatsHasher(cubeDesc, intermediateTableDesc.getRowKeyColumnIndexes());
+        this.cuboidIds = hasher.getCuboidIds();
+        this.counters = new HyperLogLogPlusCounter[cuboidIds.length];
+        for (int i = 0; i < cuboidIds.length; i++) {
+            counters[i] = new HyperLogLogPlusCounter(cubeDesc.getConfig().getCubeStatsHLLPrecision());
+        }
+
+        // the dictionary columns lead the flat table row
+        this.dictColumns = cubeDesc.listDimensionColumnsExcludingDerived(true);
+    }
+
+    public void collect(List<String> row) {
+        sample(row);
+        collectValues(row);
+    }
+
+    public void sample(List<String> row) {
+        long[] hashes = hasher.hashRow(row);
+        for (int i = 0; i < hashes.length; i++) {
+            counters[i].addHash(hashes[i]);
+        }
+    }
+
+    public void collectValues(List<String> row) {
+        int n = Math.min(row.size(), dictColumns.size());
+        for (int i = 0; i < n; i++) {
+            valueMap.put(dictColumns.get(i), row.get(i));
+        }
+    }
+
+    public Map<Long, HyperLogLogPlusCounter> getSamplingResult() {
+        final Map<Long, HyperLogLogPlusCounter> result = Maps.newHashMapWithExpectedSize(cuboidIds.length);
+        for (int i = 0; i < cuboidIds.length; i++) {
+            result.put(cuboidIds[i], counters[i]);
+        }
+        return result;
+    }
+
+    /** dictionaries of the columns that got any value */
+    public Map<TblColRef, Dictionary<String>> buildDictionary() throws IOException {
+        Map<TblColRef, Dictionary<String>> result = Maps.newHashMap();
+        for (TblColRef tblColRef : valueMap.keySet()) {
+            final Collection<byte[]> bytes = Collections2.transform(valueMap.get(tblColRef), new Function<String, byte[]>() {
+                @Nullable
+                @Override
+                public byte[] apply(String input) {
+                    return input == null ? null : input.getBytes();
+                }
+            });
+            final Dictionary<String> dict = DictionaryGenerator.buildDictionary(tblColRef.getType(), new IterableDictionaryValueEnumerator(bytes));
+            result.put(tblColRef, dict);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.util;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.cube.model.CubeDesc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Hashes the row key of every cuboid of a sampled row, for the HLL counters of cube statistics.
+ * <p>
+ * Each row key column is hashed once per row. A cuboid's hash is the sum of its columns' hashes, derived from
+ * its parent in the cuboid spanning tree by subtracting the columns the child drops, then scrambled so the
+ * bits are well distributed. That is O(1) per cuboid in most cubes, instead of re-hashing all columns of
+ * every cuboid.
+ */
+public class CuboidStatsHasher implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Version of the hash, saved with the statistics. Statistics saved without a version were hashed per cuboid
+     * by Murmur3 and are version 1. Counters of different versions count the same row key differently, merging
+     * them overcounts, and the merged statistics are saved as version 1.
+     */
+    public static final int HASH_VERSION = 2;
+    public static final int HASH_VERSION_LEGACY = 1;
+
+    private static final long COLUMN_SEED = 0x9E3779B97F4A7C15L;
+
+    private final int[] rowKeyColumnIndexes; // row key column i is at rowKeyColumnIndexes[i] of the flat table row
+    private final long[] cuboidIds; // in the order of the spanning tree, parent before children
+    private final int[] parents; // index of the parent cuboid, -1 for the base cuboid
+    private final int[][] droppedColumns; // row key columns of the parent that are not in the cuboid
+
+    private final long[] columnSeeds;
+    private transient HashFunction hashFunction;
+
+    private final long[] columnHashes;
+    private final long[] sums;
+    private final long[] hashes;
+
+    public CuboidStatsHasher(CubeDesc cubeDesc, int[] rowKeyColumnIndexes) {
+        this(new CuboidScheduler(cubeDesc), Cuboid.getBaseCuboidId(cubeDesc), rowKeyColumnIndexes);
+    }
+
+    CuboidStatsHasher(CuboidScheduler scheduler, long baseCuboidId, int[] rowKeyColumnIndexes) {
+        int nRowKey = rowKeyColumnIndexes.length;
+        this.rowKeyColumnIndexes = rowKeyColumnIndexes;
+
+        List<Long> allCuboidIds = scheduler.getAllCuboidIds();
+        Map<Long, Integer> indexes = Maps.newHashMapWithExpectedSize(allCuboidIds.size());
+        cuboidIds = new long[allCuboidIds.size()];
+        parents = new int[cuboidIds.length];
+        droppedColumns = new int[cuboidIds.length][];
+        for (int i = 0; i < cuboidIds.length; i++) {
+            long cuboidId = allCuboidIds.get(i);
+            cuboidIds[i] = cuboidId;
+            indexes.put(cuboidId, i);
+
+            long parentBits = 0;
+            parents[i] = -1;
+            if (cuboidId != baseCuboidId) {
+                long parentId = scheduler.getParent(cuboidId);
+                Integer parent = indexes.get(parentId);
+                if (parent == null)
+                    throw new IllegalStateException("Parent of cuboid " + cuboidId + " is not before it");
+                parents[i] = parent;
+                parentBits = parentId;
+            }
+
+            // the first row key column is the highest bit
+            droppedColumns[i] = new int[Long.bitCount(parentBits & ~cuboidId)];
+            int n = 0;
+            for (int c = 0; c < nRowKey; c++) {
+                long bit = 1L << (nRowKey - 1 - c);
+                if ((parentBits & bit) != 0 && (cuboidId & bit) == 0)
+                    droppedColumns[i][n++] = c;
+            }
+        }
+
+        columnSeeds = new long[nRowKey];
+        for (int c = 0; c < nRowKey; c++) {
+            columnSeeds[c] = (c + 1) * COLUMN_SEED;
+        }
+        columnHashes = new long[nRowKey];
+        sums = new long[cuboidIds.length];
+        hashes = new long[cuboidIds.length];
+    }
+
+    public long[] getCuboidIds() {
+        return cuboidIds;
+    }
+
+    /** returns the hash of each cuboid, aligned with {@link #getCuboidIds()}, the array is reused by the next row */
+    public long[] hashRow(String[] row) {
+        for (int c = 0; c < columnHashes.length; c++) {
+            columnHashes[c] = hashColumn(c, row[rowKeyColumnIndexes[c]]);
+        }
+        return hashCuboids();
+    }
+
+    public long[] hashRow(List<String> row) {
+        for (int c = 0; c < columnHashes.length; c++) {
+            columnHashes[c] = hashColumn(c, row.get(rowKeyColumnIndexes[c]));
+        }
+        return hashCuboids();
+    }
+
+    private long hashColumn(int c, String value) {
+        if (hashFunction == null) {
+            hashFunction = Hashing.murmur3_128();
+        }
+        // the seed tells the same value in different columns apart, null is the bare seed
+        long valueHash = value == null ? 0 : hashFunction.hashString(value, Charsets.UTF_8).asLong();
+        return mix(valueHash ^ columnSeeds[c]);
+    }
+
+    private long[] hashCuboids() {
+        for (int i = 0; i < sums.length; i++) {
+            long sum;
+            if (parents[i] < 0) {
+                sum = 0;
+                for (long h : columnHashes) {
+                    sum += h;
+                }
+            } else {
+                sum = sums[parents[i]];
+                for (int c : droppedColumns[i]) {
+                    sum -= columnHashes[c];
+                }
+            }
+            sums[i] = sum;
+            hashes[i] = mix(sum);
+        }
+        return hashes;
+    }
+
+    /** the 64 bits finalizer of MurmurHash3, a bijection that spreads every input bit */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -43,7 +43,19 @@ import org.apache.kylin.common.util.MemoryBudgetController.MemoryWaterLevel;
 import org.apache.kylin.measure.BufferedMeasureEncoder;
 import org.apache.kylin.measure.MeasureAggregator;
 import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.basic.DoubleMaxAggregator;
+import org.apache.kylin.measure.basic.DoubleMinAggregator;
+import org.apache.kylin.measure.basic.DoubleSumAggregator;
+import org.apache.kylin.measure.basic.LongMaxAggregator;
+import org.apache.kylin.measure.basic.LongMinAggregator;
+import org.apache.kylin.measure.basic.LongSumAggregator;
+import org.apache.kylin.measure.basic.PrimitiveAggregator;
 import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.datatype.LongSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,8 +73,9 @@ public class GTAggregateScanner implements IGTScanner {
     final ImmutableBitSet metrics;
     final String[] metricsAggrFuncs;
     final IGTScanner inputScanner;
-    final AggregationCache aggrCache;
+    AggregationCache aggrCache;
     final long spillThreshold;
+    final boolean[] serializedInput; // metrics whose aggregators read the column bytes in place
 
     private int aggregatedRowCount = 0;
     private MemoryWaterLevel memTracker;
@@ -78,11 +91,42 @@ public class GTAggregateScanner implements IGTScanner {
         this.metrics = req.getAggrMetrics();
         this.metricsAggrFuncs = req.getAggrMetricsFuncs();
         this.inputScanner = inputScanner;
-        this.aggrCache = new AggregationCache();
         this.spillThreshold = (long) (req.getAggrCacheGB() * MemoryBudgetController.ONE_GB);
         this.aggrMask = new boolean[metricsAggrFuncs.length];
 
         Arrays.fill(aggrMask, true);
+        this.serializedInput = createSerializedInputMask();
+        this.aggrCache = createAggregationCache();
+    }
+
+    private boolean[] createSerializedInputMask() {
+        MeasureAggregator[] sample = info.codeSystem.newMetricsAggregators(metrics, metricsAggrFuncs);
+        boolean[] result = new boolean[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            // metrics are coded by the serializer of their type, the same assumption as the spill dumps
+            DataTypeSerializer<?> serializer = DataTypeSerializer.create(info.getColumnType(metrics.trueBitAt(i)));
+            result[i] = sample[i] instanceof PrimitiveAggregator && ((PrimitiveAggregator) sample[i]).acceptsSerializer(serializer);
+        }
+        return result;
+    }
+
+    private AggregationCache createAggregationCache() {
+        if (isPrimitiveAggregation(info.codeSystem.newMetricsAggregators(metrics, metricsAggrFuncs), aggrMask, serializedInput)) {
+            return new PrimitiveAggregationCache();
+        } else {
+            return new AggregationCache();
+        }
+    }
+
+    /** SUM/COUNT/MIN/MAX of long and double, fully aggregated, can be kept in primitive slots */
+    static boolean isPrimitiveAggregation(MeasureAggregator[] aggrs, boolean[] aggrMask, boolean[] serializedInput) {
+        if (aggrs.length == 0)
+            return false;
+        for (int i = 0; i < aggrs.length; i++) {
+            if (!aggrMask[i] || !serializedInput[i] || slotTypeOf(aggrs[i]) < 0)
+                return false;
+        }
+        return true;
     }
 
     public static long estimateSizeOfAggrCache(byte[] keySample, MeasureAggregator<?>[] aggrSample, int size) {
@@ -141,11 +185,13 @@ public class GTAggregateScanner implements IGTScanner {
     }
 
     public int getNumOfSpills() {
-        return aggrCache.dumps.size();
+        return aggrCache.getNumOfSpills();
     }
 
     public void setAggrMask(boolean[] aggrMask) {
         this.aggrMask = aggrMask;
+        // the primitive cache requires every metric be aggregated, fall back if not so
+        this.aggrCache = createAggregationCache();
     }
 
     /** return the estimate memory size of aggregation cache */
@@ -263,13 +309,18 @@ public class GTAggregateScanner implements IGTScanner {
             for (int i = 0; i < aggrs.length; i++) {
                 if (aggrMask[i]) {
                     int col = metrics.trueBitAt(i);
-                    Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
-                    aggrs[i].aggregate(metrics);
+                    if (serializedInput[i]) {
+                        ByteArray bytes = r.cols[col];
+                        ((PrimitiveAggregator) aggrs[i]).aggregateSerialized(bytes.array(), bytes.offset());
+                    } else {
+                        Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
+                        aggrs[i].aggregate(metrics);
+                    }
                 }
             }
         }
 
-        private void spillBuffMap() throws RuntimeException {
+        void spillBuffMap() throws RuntimeException {
             if (aggBufMap.isEmpty())
                 return;
 
@@ -294,7 +345,7 @@ public class GTAggregateScanner implements IGTScanner {
             }
         }
 
-        private MeasureAggregator[] newAggregators() {
+        MeasureAggregator[] newAggregators() {
             return info.codeSystem.newMetricsAggregators(metrics, metricsAggrFuncs);
         }
 
@@ -307,6 +358,10 @@ public class GTAggregateScanner implements IGTScanner {
             return estimateSizeOfAggrCache(sampleKey, sampleValue, aggBufMap.size());
         }
 
+        public int getNumOfSpills() {
+            return dumps.size();
+        }
+
         public Iterator<GTRecord> iterator() {
             if (dumps.isEmpty()) {
                 // the all-in-mem case
@@ -369,7 +424,14 @@ public class GTAggregateScanner implements IGTScanner {
             final Object[] tmpValues = new Object[metrics.trueBitCount()];
 
             void load(byte[] key, MeasureAggregator[] value) {
-                int offset = 0;
+                for (int i = 0; i < value.length; i++) {
+                    tmpValues[i] = value[i].getState();
+                }
+                load(key, 0, tmpValues);
+            }
+
+            void load(byte[] key, int keyOffset, Object[] values) {
+                int offset = keyOffset;
                 for (int i = 0; i < dimensions.trueBitCount(); i++) {
                     int c = dimensions.trueBitAt(i);
                     final int columnLength = info.codeSystem.maxCodeLength(c);
@@ -377,14 +439,10 @@ public class GTAggregateScanner implements IGTScanner {
                     offset += columnLength;
                 }
 
-                for (int i = 0; i < value.length; i++) {
-                    tmpValues[i] = value[i].getState();
-                }
-
-                byte[] bytes = measureCodec.encode(tmpValues).array();
+                byte[] bytes = measureCodec.encode(values).array();
                 int[] sizes = measureCodec.getMeasureSizes();
                 offset = 0;
-                for (int i = 0; i < value.length; i++) {
+                for (int i = 0; i < values.length; i++) {
                     int col = metrics.trueBitAt(i);
                     record.cols[col].set(bytes, offset, sizes[i]);
                     offset += sizes[i];
@@ -458,11 +516,7 @@ public class GTAggregateScanner implements IGTScanner {
                             MeasureAggregators aggs = new MeasureAggregators(entry.getValue());
                             aggrResult = new Object[metrics.trueBitCount()];
                             aggs.collectStates(aggrResult);
-                            ByteBuffer metricsBuf = measureCodec.encode(aggrResult);
-                            dos.writeInt(entry.getKey().length);
-                            dos.write(entry.getKey());
-                            dos.writeInt(metricsBuf.position());
-                            dos.write(metricsBuf.array(), 0, metricsBuf.position());
+                            writeEntry(dos, entry.getKey(), 0, entry.getKey().length, aggrResult);
                         }
                     } finally {
                         buffMap = null;
@@ -471,6 +525,14 @@ public class GTAggregateScanner implements IGTScanner {
                 }
             }
 
+            void writeEntry(DataOutputStream dos, byte[] key, int keyOffset, int keyLength, Object[] aggrResult) throws IOException {
+                ByteBuffer metricsBuf = measureCodec.encode(aggrResult);
+                dos.writeInt(keyLength);
+                dos.write(key, keyOffset, keyLength);
+                dos.writeInt(metricsBuf.position());
+                dos.write(metricsBuf.array(), 0, metricsBuf.position());
+            }
+
             public void terminate() throws IOException {
                 buffMap = null;
                 if (dis != null)
@@ -483,7 +545,8 @@ public class GTAggregateScanner implements IGTScanner {
         class DumpMerger implements Iterable<Pair<byte[], MeasureAggregator[]>> {
             final PriorityQueue<Pair<byte[], Integer>> minHeap;
             final List<Iterator<Pair<byte[], byte[]>>> dumpIterators;
-            final List<Object[]> dumpCurrentValues;
+            final List<byte[]> dumpCurrentValues; // kept encoded, serializers may reuse the decoded objects
+            final Object[] metricValues = new Object[metrics.trueBitCount()];
             final MeasureAggregator[] resultMeasureAggregators = newAggregators();
             final MeasureAggregators resultAggrs = new MeasureAggregators(resultMeasureAggregators);
 
@@ -514,9 +577,7 @@ public class GTAggregateScanner implements IGTScanner {
                 if (dumpIterators.get(index) != null && dumpIterators.get(index).hasNext()) {
                     Pair<byte[], byte[]> pair = dumpIterators.get(index).next();
                     minHeap.offer(new Pair(pair.getKey(), index));
-                    Object[] metricValues = new Object[metrics.trueBitCount()];
-                    measureCodec.decode(ByteBuffer.wrap(pair.getValue()), metricValues);
-                    dumpCurrentValues.set(index, metricValues);
+                    dumpCurrentValues.set(index, pair.getValue());
                 }
             }
 
@@ -530,7 +591,8 @@ public class GTAggregateScanner implements IGTScanner {
 
                     private void internalAggregate() {
                         Pair<byte[], Integer> peekEntry = minHeap.poll();
-                        resultAggrs.aggregate(dumpCurrentValues.get(peekEntry.getValue()));
+                        measureCodec.decode(ByteBuffer.wrap(dumpCurrentValues.get(peekEntry.getValue())), metricValues);
+                        resultAggrs.aggregate(metricValues);
                         enqueueFromDump(peekEntry.getValue());
                     }
 
@@ -558,4 +620,373 @@ public class GTAggregateScanner implements IGTScanner {
             }
         }
     }
-}
\ No newline at end of file
+
+    private static final int SLOT_LONG_SUM = 0;
+    private static final int SLOT_LONG_MIN = 1;
+    private static final int SLOT_LONG_MAX = 2;
+    private static final int SLOT_DOUBLE_SUM = 3;
+    private static final int SLOT_DOUBLE_MIN = 4;
+    private static final int SLOT_DOUBLE_MAX = 5;
+
+    static int slotTypeOf(MeasureAggregator aggr) {
+        // exact class match, subclasses may carry other semantics
+        Class<?> clz = aggr.getClass();
+        if (clz == LongSumAggregator.class)
+            return SLOT_LONG_SUM;
+        if (clz == LongMinAggregator.class)
+            return SLOT_LONG_MIN;
+        if (clz == LongMaxAggregator.class)
+            return SLOT_LONG_MAX;
+        if (clz == DoubleSumAggregator.class)
+            return SLOT_DOUBLE_SUM;
+        if (clz == DoubleMinAggregator.class)
+            return SLOT_DOUBLE_MIN;
+        if (clz == DoubleMaxAggregator.class)
+            return SLOT_DOUBLE_MAX;
+        return -1;
+    }
+
+    /**
+     * An open-addressing hash table over fixed-width keys, with metrics kept in primitive long slots
+     * (doubles as raw long bits). Groups live in a few large arrays instead of a key array, a tree entry and
+     * N aggregator objects per group. Entries are sorted only when returned or spilled, and the arrays are
+     * reused after each spill.
+     */
+    class PrimitiveAggregationCache extends AggregationCache {
+        static final int INITIAL_CAPACITY = 1024;
+
+        final int metricsCount;
+        final int[] slotTypes;
+        final int[] groupByOffsets; // byte offsets of the key that are compared, i.e. the group by columns
+        final byte[] keyBuf;
+
+        byte[] keys; // entry i occupies [i * keyLength, (i+1) * keyLength)
+        long[] slots; // entry i occupies [i * metricsCount, (i+1) * metricsCount)
+        int[] hashIndex; // entry index + 1, 0 means empty
+        int size;
+
+        public PrimitiveAggregationCache() {
+            MeasureAggregator[] sample = newAggregators();
+            metricsCount = sample.length;
+            slotTypes = new int[metricsCount];
+            for (int i = 0; i < metricsCount; i++) {
+                slotTypes[i] = slotTypeOf(sample[i]);
+            }
+
+            int n = 0;
+            for (boolean m : compareMask) {
+                if (m)
+                    n++;
+            }
+            groupByOffsets = new int[n];
+            n = 0;
+            for (int i = 0; i < keyLength; i++) {
+                if (compareMask[i])
+                    groupByOffsets[n++] = i;
+            }
+
+            keyBuf = new byte[keyLength];
+            keys = new byte[INITIAL_CAPACITY * keyLength];
+            slots = new long[INITIAL_CAPACITY * metricsCount];
+            hashIndex = new int[INITIAL_CAPACITY * 2];
+            size = 0;
+        }
+
+        @Override
+        void aggregate(GTRecord r) {
+            if (++aggregatedRowCount % 100000 == 0) {
+                if (memTracker != null) {
+                    memTracker.markHigh();
+                }
+                if (spillThreshold > 0) {
+                    if (estimatedMemSize() > spillThreshold) {
+                        spillBuffMap();
+                    }
+                }
+            }
+
+            fillKey(r);
+            int hash = hashOfKey(keyBuf, 0);
+            int mask = hashIndex.length - 1;
+            int pos = hash & mask;
+            int entry;
+            while (true) {
+                int slot = hashIndex[pos];
+                if (slot == 0) {
+                    entry = newEntry(pos);
+                    initSlots(entry, r);
+                    return;
+                }
+                if (keyEquals(slot - 1)) {
+                    entry = slot - 1;
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+
+            int base = entry * metricsCount;
+            for (int i = 0; i < metricsCount; i++) {
+                int col = metrics.trueBitAt(i);
+                int s = base + i;
+                switch (slotTypes[i]) {
+                case SLOT_LONG_SUM:
+                    slots[s] += decodeLong(col, r);
+                    break;
+                case SLOT_LONG_MIN:
+                    slots[s] = Math.min(slots[s], decodeLong(col, r));
+                    break;
+                case SLOT_LONG_MAX:
+                    slots[s] = Math.max(slots[s], decodeLong(col, r));
+                    break;
+                case SLOT_DOUBLE_SUM:
+                    slots[s] = Double.doubleToRawLongBits(Double.longBitsToDouble(slots[s]) + decodeDouble(col, r));
+                    break;
+                case SLOT_DOUBLE_MIN:
+                    slots[s] = Double.doubleToRawLongBits(Math.min(Double.longBitsToDouble(slots[s]), decodeDouble(col, r)));
+                    break;
+                case SLOT_DOUBLE_MAX:
+                    slots[s] = Double.doubleToRawLongBits(Math.max(Double.longBitsToDouble(slots[s]), decodeDouble(col, r)));
+                    break;
+                default:
+                    throw new IllegalStateException();
+                }
+            }
+        }
+
+        private void initSlots(int entry, GTRecord r) {
+            int base = entry * metricsCount;
+            for (int i = 0; i < metricsCount; i++) {
+                int col = metrics.trueBitAt(i);
+                if (slotTypes[i] < SLOT_DOUBLE_SUM) {
+                    slots[base + i] = decodeLong(col, r);
+                } else {
+                    slots[base + i] = Double.doubleToRawLongBits(decodeDouble(col, r));
+                }
+            }
+        }
+
+        private long decodeLong(int col, GTRecord r) {
+            ByteArray bytes = r.cols[col];
+            return LongSerializer.readLong(bytes.array(), bytes.offset());
+        }
+
+        private double decodeDouble(int col, GTRecord r) {
+            ByteArray bytes = r.cols[col];
+            return DoubleSerializer.readDouble(bytes.array(), bytes.offset());
+        }
+
+        private void fillKey(GTRecord record) {
+            Arrays.fill(keyBuf, (byte) 0);
+            int offset = 0;
+            for (int i = 0; i < dimensions.trueBitCount(); i++) {
+                int c = dimensions.trueBitAt(i);
+                final ByteArray byteArray = record.cols[c];
+                System.arraycopy(byteArray.array(), byteArray.offset(), keyBuf, offset, byteArray.length());
+                offset += info.codeSystem.maxCodeLength(c);
+            }
+        }
+
+        private int hashOfKey(byte[] key, int keyOffset) {
+            int h = 1;
+            for (int i = 0; i < groupByOffsets.length; i++) {
+                h = 31 * h + key[keyOffset + groupByOffsets[i]];
+            }
+            // spread the bits as the table size is a power of 2
+            h ^= (h >>> 20) ^ (h >>> 12);
+            return h ^ (h >>> 7) ^ (h >>> 4);
+        }
+
+        private boolean keyEquals(int entry) {
+            int base = entry * keyLength;
+            for (int i = 0; i < groupByOffsets.length; i++) {
+                int o = groupByOffsets[i];
+                if (keys[base + o] != keyBuf[o])
+                    return false;
+            }
+            return true;
+        }
+
+        private int newEntry(int pos) {
+            int entry = size++;
+            if (size * keyLength > keys.length || size * metricsCount > slots.length) {
+                int capacity = Math.max(size, keys.length / Math.max(keyLength, 1)) * 2;
+                keys = Arrays.copyOf(keys, capacity * keyLength);
+                slots = Arrays.copyOf(slots, capacity * metricsCount);
+            }
+            System.arraycopy(keyBuf, 0, keys, entry * keyLength, keyLength);
+            hashIndex[pos] = entry + 1;
+
+            // keep load factor under 0.5
+            if (size * 2 > hashIndex.length) {
+                rehash(hashIndex.length * 2);
+            }
+            return entry;
+        }
+
+        private void rehash(int newLength) {
+            hashIndex = new int[newLength];
+            int mask = newLength - 1;
+            for (int entry = 0; entry < size; entry++) {
+                int pos = hashOfKey(keys, entry * keyLength) & mask;
+                while (hashIndex[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                hashIndex[pos] = entry + 1;
+            }
+        }
+
+        private int compareEntries(int a, int b) {
+            int baseA = a * keyLength;
+            int baseB = b * keyLength;
+            for (int i = 0; i < groupByOffsets.length; i++) {
+                int o = groupByOffsets[i];
+                int result = (keys[baseA + o] & 0xff) - (keys[baseB + o] & 0xff);
+                if (result != 0)
+                    return result;
+            }
+            return 0;
+        }
+
+        /** returns entry indexes in key order, the same order as the TreeMap of AggregationCache */
+        private int[] sortedEntries() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            mergeSort(order, new int[size], 0, size);
+            return order;
+        }
+
+        private void mergeSort(int[] a, int[] tmp, int from, int to) {
+            if (to - from < 2)
+                return;
+            int mid = (from + to) >>> 1;
+            mergeSort(a, tmp, from, mid);
+            mergeSort(a, tmp, mid, to);
+            if (compareEntries(a[mid - 1], a[mid]) <= 0)
+                return;
+
+            System.arraycopy(a, from, tmp, from, to - from);
+            int i = from, j = mid, k = from;
+            while (i < mid && j < to) {
+                a[k++] = compareEntries(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+            }
+            while (i < mid) {
+                a[k++] = tmp[i++];
+            }
+            while (j < to) {
+                a[k++] = tmp[j++];
+            }
+        }
+
+        private Object[] newStates() {
+            Object[] states = new Object[metricsCount];
+            for (int i = 0; i < metricsCount; i++) {
+                states[i] = slotTypes[i] < SLOT_DOUBLE_SUM ? new LongMutable() : new DoubleMutable();
+            }
+            return states;
+        }
+
+        private void loadStates(int entry, Object[] states) {
+            int base = entry * metricsCount;
+            for (int i = 0; i < metricsCount; i++) {
+                if (slotTypes[i] < SLOT_DOUBLE_SUM) {
+                    ((LongMutable) states[i]).set(slots[base + i]);
+                } else {
+                    ((DoubleMutable) states[i]).set(Double.longBitsToDouble(slots[base + i]));
+                }
+            }
+        }
+
+        private void clear() {
+            size = 0;
+            Arrays.fill(hashIndex, 0);
+        }
+
+        @Override
+        void spillBuffMap() throws RuntimeException {
+            if (size == 0)
+                return;
+
+            try {
+                Dump dump = new PrimitiveDump(sortedEntries());
+                dump.flush();
+                dumps.add(dump);
+                clear();
+            } catch (Exception e) {
+                throw new RuntimeException("AggregationCache spill failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public long estimatedMemSize() {
+            if (size == 0)
+                return 0;
+            return keys.length + slots.length * 8L + hashIndex.length * 4L;
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            if (!dumps.isEmpty()) {
+                // the spill case is merged from dumps, same as AggregationCache
+                return super.iterator();
+            }
+
+            return new Iterator<GTRecord>() {
+                final int[] order = sortedEntries();
+                final Object[] states = newStates();
+                final ReturningRecord returningRecord = new ReturningRecord();
+                int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < order.length;
+                }
+
+                @Override
+                public GTRecord next() {
+                    int entry = order[i++];
+                    loadStates(entry, states);
+                    returningRecord.load(keys, entry * keyLength, states);
+                    return returningRecord.record;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        class PrimitiveDump extends Dump {
+            int[] order;
+
+            public PrimitiveDump(int[] order) throws IOException {
+                super(null);
+                this.order = order;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (order != null) {
+                    DataOutputStream dos = null;
+                    Object[] states = newStates();
+                    try {
+                        dumpedFile = File.createTempFile("KYLIN_AGGR_", ".tmp");
+
+                        logger.info("AggregationCache will dump to file: " + dumpedFile.getAbsolutePath());
+                        dos = new DataOutputStream(new FileOutputStream(dumpedFile));
+                        dos.writeInt(order.length);
+                        for (int entry : order) {
+                            loadStates(entry, states);
+                            writeEntry(dos, keys, entry * keyLength, keyLength, states);
+                        }
+                    } finally {
+                        order = null;
+                        IOUtils.closeQuietly(dos);
+                    }
+                }
+            }
+        }
+    }
+}
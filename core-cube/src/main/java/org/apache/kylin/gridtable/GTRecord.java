@@ -135,6 +135,23 @@ public class GTRecord implements Comparable<GTRecord> {
         return size;
     }
 
+    /** copies the values of another record of the same info, reusing the byte arrays of this record when large enough */
+    public void copyFrom(GTRecord other) {
+        for (int i = 0; i < cols.length; i++) {
+            ByteArray from = other.cols[i];
+            ByteArray to = cols[i];
+            if (from.array() == null) {
+                to.set(null, 0, 0);
+                continue;
+            }
+            if (to.array() == null || to.array().length < from.length())
+                to.set(new byte[from.length()]);
+            else
+                to.set(to.array(), 0, from.length());
+            to.copyFrom(from);
+        }
+    }
+
     public GTRecord copy() {
         return copy(info.colAll);
     }
@@ -60,6 +60,11 @@ public class GTScanRequest {
     private boolean allowPreAggregation = true;
     private double aggrCacheGB = 0; // 0 means no row/memory limit; positive means memory limit in GB; negative means row limit
 
+    // optional top-k on one metric, applied after aggregation
+    private int topNColumn = -1;
+    private boolean topNDescending = true;
+    private int topN = 0; // 0 means no top-k
+
     public GTScanRequest(GTInfo info, List<GTScanRange> ranges, ImmutableBitSet columns, TupleFilter filterPushDown) {
         this(info, ranges, columns, null, null, null, filterPushDown, true, 0);
     }
@@ -177,6 +182,11 @@ public class GTScanRequest {
             } else {
                 logger.info("has no aggregation, skip it");
             }
+
+            if (this.hasTopN()) {
+                logger.info("keeping top " + topN + " records ordered by column " + topNColumn);
+                result = new GTTopNScanner(result, this);
+            }
             return result;
         }
 
@@ -277,6 +287,34 @@ public class GTScanRequest {
         aggrCacheGB = -limit;
     }
 
+    public boolean hasTopN() {
+        return topN > 0 && topNColumn >= 0;
+    }
+
+    public int getTopNColumn() {
+        return topNColumn;
+    }
+
+    public boolean isTopNDescending() {
+        return topNDescending;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    /**
+     * Only the top n records by the given column are returned, the order among returned records is undefined to callers
+     * that merge several scans. Set n to 0 to disable.
+     */
+    public void setTopN(int column, boolean descending, int n) {
+        if (n > 0 && (column < 0 || column >= info.getColumnCount() || !columns.get(column)))
+            throw new IllegalArgumentException("Top-n column " + column + " is not among the returned columns " + columns);
+        this.topNColumn = column;
+        this.topNDescending = descending;
+        this.topN = n;
+    }
+
     public List<Integer> getRequiredMeasures() {
         List<Integer> measures = Lists.newArrayList();
         int numDim = info.getPrimaryKey().trueBitCount();
@@ -289,7 +327,7 @@ public class GTScanRequest {
 
     @Override
     public String toString() {
-        return "GTScanRequest [range=" + ranges + ", columns=" + columns + ", filterPushDown=" + filterPushDown + ", aggrGroupBy=" + aggrGroupBy + ", aggrMetrics=" + aggrMetrics + ", aggrMetricsFuncs=" + Arrays.toString(aggrMetricsFuncs) + "]";
+        return "GTScanRequest [range=" + ranges + ", columns=" + columns + ", filterPushDown=" + filterPushDown + ", aggrGroupBy=" + aggrGroupBy + ", aggrMetrics=" + aggrMetrics + ", aggrMetricsFuncs=" + Arrays.toString(aggrMetricsFuncs) + (hasTopN() ? ", topN=" + topN + ", topNColumn=" + topNColumn + ", topNDescending=" + topNDescending : "") + "]";
     }
 
     public byte[] toByteArray() {
@@ -306,72 +344,92 @@ public class GTScanRequest {
         @Override
         public void serialize(GTScanRequest value, ByteBuffer out) {
             GTInfo.serializer.serialize(value.info, out);
-
-            BytesUtil.writeVInt(value.ranges.size(), out);
-            for (GTScanRange range : value.ranges) {
-                serializeGTRecord(range.pkStart, out);
-                serializeGTRecord(range.pkEnd, out);
-                BytesUtil.writeVInt(range.fuzzyKeys.size(), out);
-                for (GTRecord f : range.fuzzyKeys) {
-                    serializeGTRecord(f, out);
-                }
-            }
-
-            ImmutableBitSet.serializer.serialize(value.columns, out);
-            BytesUtil.writeByteArray(GTUtil.serializeGTFilter(value.filterPushDown, value.info), out);
-
-            ImmutableBitSet.serializer.serialize(value.aggrGroupBy, out);
-            ImmutableBitSet.serializer.serialize(value.aggrMetrics, out);
-            BytesUtil.writeAsciiStringArray(value.aggrMetricsFuncs, out);
-            BytesUtil.writeVInt(value.allowPreAggregation ? 1 : 0, out);
-            out.putDouble(value.aggrCacheGB);
+            serializeWithoutInfo(value, out);
         }
 
         @Override
         public GTScanRequest deserialize(ByteBuffer in) {
             GTInfo sInfo = GTInfo.serializer.deserialize(in);
+            return deserializeWithoutInfo(in, sInfo);
+        }
+    };
 
-            List<GTScanRange> sRanges = Lists.newArrayList();
-            int sRangesCount = BytesUtil.readVInt(in);
-            for (int rangeIdx = 0; rangeIdx < sRangesCount; rangeIdx++) {
-                GTRecord sPkStart = deserializeGTRecord(in, sInfo);
-                GTRecord sPkEnd = deserializeGTRecord(in, sInfo);
-                List<GTRecord> sFuzzyKeys = Lists.newArrayList();
-                int sFuzzyKeySize = BytesUtil.readVInt(in);
-                for (int i = 0; i < sFuzzyKeySize; i++) {
-                    sFuzzyKeys.add(deserializeGTRecord(in, sInfo));
-                }
-                GTScanRange sRange = new GTScanRange(sPkStart, sPkEnd, sFuzzyKeys);
-                sRanges.add(sRange);
+    /**
+     * Serializes the request except its GTInfo, for a receiver that already has the GTInfo, e.g. cached from an earlier request.
+     */
+    public static void serializeWithoutInfo(GTScanRequest value, ByteBuffer out) {
+        BytesUtil.writeVInt(value.ranges.size(), out);
+        for (GTScanRange range : value.ranges) {
+            serializeGTRecord(range.pkStart, out);
+            serializeGTRecord(range.pkEnd, out);
+            BytesUtil.writeVInt(range.fuzzyKeys.size(), out);
+            for (GTRecord f : range.fuzzyKeys) {
+                serializeGTRecord(f, out);
             }
+        }
 
-            ImmutableBitSet sColumns = ImmutableBitSet.serializer.deserialize(in);
-            TupleFilter sGTFilter = GTUtil.deserializeGTFilter(BytesUtil.readByteArray(in), sInfo);
-
-            ImmutableBitSet sAggGroupBy = ImmutableBitSet.serializer.deserialize(in);
-            ImmutableBitSet sAggrMetrics = ImmutableBitSet.serializer.deserialize(in);
-            String[] sAggrMetricFuncs = BytesUtil.readAsciiStringArray(in);
-            boolean sAllowPreAggr = (BytesUtil.readVInt(in) == 1);
-            double sAggrCacheGB = in.getDouble();
+        ImmutableBitSet.serializer.serialize(value.columns, out);
+        BytesUtil.writeByteArray(GTUtil.serializeGTFilter(value.filterPushDown, value.info), out);
+
+        ImmutableBitSet.serializer.serialize(value.aggrGroupBy, out);
+        ImmutableBitSet.serializer.serialize(value.aggrMetrics, out);
+        BytesUtil.writeAsciiStringArray(value.aggrMetricsFuncs, out);
+        BytesUtil.writeVInt(value.allowPreAggregation ? 1 : 0, out);
+        out.putDouble(value.aggrCacheGB);
+        BytesUtil.writeVInt(value.topN, out);
+        BytesUtil.writeVInt(value.topNColumn, out);
+        BytesUtil.writeVInt(value.topNDescending ? 1 : 0, out);
+    }
 
-            return new GTScanRequest(sInfo, sRanges, sColumns, sAggGroupBy, sAggrMetrics, sAggrMetricFuncs, sGTFilter, sAllowPreAggr, sAggrCacheGB);
+    public static GTScanRequest deserializeWithoutInfo(ByteBuffer in, GTInfo sInfo) {
+        List<GTScanRange> sRanges = Lists.newArrayList();
+        int sRangesCount = BytesUtil.readVInt(in);
+        for (int rangeIdx = 0; rangeIdx < sRangesCount; rangeIdx++) {
+            GTRecord sPkStart = deserializeGTRecord(in, sInfo);
+            GTRecord sPkEnd = deserializeGTRecord(in, sInfo);
+            List<GTRecord> sFuzzyKeys = Lists.newArrayList();
+            int sFuzzyKeySize = BytesUtil.readVInt(in);
+            for (int i = 0; i < sFuzzyKeySize; i++) {
+                sFuzzyKeys.add(deserializeGTRecord(in, sInfo));
+            }
+            GTScanRange sRange = new GTScanRange(sPkStart, sPkEnd, sFuzzyKeys);
+            sRanges.add(sRange);
         }
 
-        private void serializeGTRecord(GTRecord gtRecord, ByteBuffer out) {
-            BytesUtil.writeVInt(gtRecord.cols.length, out);
-            for (ByteArray col : gtRecord.cols) {
-                col.exportData(out);
-            }
+        ImmutableBitSet sColumns = ImmutableBitSet.serializer.deserialize(in);
+        TupleFilter sGTFilter = GTUtil.deserializeGTFilter(BytesUtil.readByteArray(in), sInfo);
+
+        ImmutableBitSet sAggGroupBy = ImmutableBitSet.serializer.deserialize(in);
+        ImmutableBitSet sAggrMetrics = ImmutableBitSet.serializer.deserialize(in);
+        String[] sAggrMetricFuncs = BytesUtil.readAsciiStringArray(in);
+        boolean sAllowPreAggr = (BytesUtil.readVInt(in) == 1);
+        double sAggrCacheGB = in.getDouble();
+
+        GTScanRequest result = new GTScanRequest(sInfo, sRanges, sColumns, sAggGroupBy, sAggrMetrics, sAggrMetricFuncs, sGTFilter, sAllowPreAggr, sAggrCacheGB);
+
+        // requests from older clients end here
+        if (in.hasRemaining()) {
+            int sTopN = BytesUtil.readVInt(in);
+            int sTopNColumn = BytesUtil.readVInt(in);
+            boolean sTopNDescending = (BytesUtil.readVInt(in) == 1);
+            result.setTopN(sTopNColumn, sTopNDescending, sTopN);
         }
+        return result;
+    }
 
-        private GTRecord deserializeGTRecord(ByteBuffer in, GTInfo sInfo) {
-            int colLength = BytesUtil.readVInt(in);
-            ByteArray[] sCols = new ByteArray[colLength];
-            for (int i = 0; i < colLength; i++) {
-                sCols[i] = ByteArray.importData(in);
-            }
-            return new GTRecord(sInfo, sCols);
+    private static void serializeGTRecord(GTRecord gtRecord, ByteBuffer out) {
+        BytesUtil.writeVInt(gtRecord.cols.length, out);
+        for (ByteArray col : gtRecord.cols) {
+            col.exportData(out);
         }
+    }
 
-    };
+    private static GTRecord deserializeGTRecord(ByteBuffer in, GTInfo sInfo) {
+        int colLength = BytesUtil.readVInt(in);
+        ByteArray[] sCols = new ByteArray[colLength];
+        for (int i = 0; i < colLength; i++) {
+            sCols[i] = ByteArray.importData(in);
+        }
+        return new GTRecord(sInfo, sCols);
+    }
 }
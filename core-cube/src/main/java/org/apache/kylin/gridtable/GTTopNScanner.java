@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps only the top K records ordered by one metric column, using a bounded heap.
+ * Records are returned in the requested order. Input records are copied as the upstream scanner reuses them.
+ */
+public class GTTopNScanner implements IGTScanner {
+
+    private final IGTScanner inputScanner;
+    private final GTInfo info;
+    private final int column;
+    private final boolean descending;
+    private final int topN;
+
+    public GTTopNScanner(IGTScanner inputScanner, GTScanRequest req) {
+        this.inputScanner = inputScanner;
+        this.info = inputScanner.getInfo();
+        this.column = req.getTopNColumn();
+        this.descending = req.isTopNDescending();
+        this.topN = req.getTopN();
+
+        if (topN <= 0 || column < 0)
+            throw new IllegalArgumentException();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        // the head of the heap is the weakest candidate, i.e. the one to evict first
+        final Comparator<Entry> retainOrder = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                int c = compareValues(o1.value, o2.value);
+                return descending ? c : -c;
+            }
+        };
+
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.min(topN, 1024) + 1, retainOrder);
+        List<GTRecord> nullRecords = Lists.newArrayList();
+        for (GTRecord record : inputScanner) {
+            Comparable value = valueOf(record);
+            if (value == null) {
+                // where nulls go is up to the upper layer sorting, so they are always kept
+                nullRecords.add(new GTRecord(record));
+                continue;
+            }
+            if (heap.size() >= topN) {
+                // skip the copy when the record cannot enter the heap
+                if (retainOrder.compare(new Entry(value, null), heap.peek()) <= 0)
+                    continue;
+                heap.poll();
+            }
+            heap.offer(new Entry(value, new GTRecord(record)));
+        }
+
+        List<Entry> sorted = Lists.newArrayList(heap);
+        Collections.sort(sorted, Collections.reverseOrder(retainOrder));
+        List<GTRecord> result = Lists.newArrayListWithCapacity(sorted.size() + nullRecords.size());
+        for (Entry e : sorted) {
+            result.add(e.record);
+        }
+        result.addAll(nullRecords);
+        return result.iterator();
+    }
+
+    /** decoded objects may be reused by the serializer, so a standalone value is taken */
+    private Comparable valueOf(GTRecord record) {
+        Object v = info.codeSystem.decodeColumnValue(column, record.cols[column].asBuffer());
+        if (v == null)
+            return null;
+        if (v instanceof LongMutable)
+            return ((LongMutable) v).get();
+        if (v instanceof DoubleMutable)
+            return ((DoubleMutable) v).get();
+        if (v instanceof BigDecimal || v instanceof Long || v instanceof Double)
+            return (Comparable) v;
+        if (v instanceof Number)
+            return ((Number) v).doubleValue();
+        throw new IllegalStateException("Cannot order by value of type " + v.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Comparable v1, Comparable v2) {
+        return v1.compareTo(v2);
+    }
+
+    private static class Entry {
+        final Comparable value;
+        final GTRecord record;
+
+        Entry(Comparable value, GTRecord record) {
+            this.value = value;
+            this.record = record;
+        }
+    }
+}
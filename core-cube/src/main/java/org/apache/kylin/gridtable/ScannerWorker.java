@@ -32,9 +32,19 @@ import org.slf4j.LoggerFactory;
 public class ScannerWorker {
 
     private static final Logger logger = LoggerFactory.getLogger(ScannerWorker.class);
+    private IGTStorage storage = null;
+    private GTScanRequest scanRequest = null;
     private IGTScanner internal = null;
 
     public ScannerWorker(CubeSegment cubeSeg, Cuboid cuboid, GTScanRequest scanRequest, String gtStorage) {
+        this(cubeSeg, cuboid, scanRequest, gtStorage, false);
+    }
+
+    /**
+     * @param lazy if true, the storage is not visited until the first {@link #iterator()} call, so that the caller
+     *             decides when the RPCs start, e.g. no more segments than the scan parallelism at a time
+     */
+    public ScannerWorker(CubeSegment cubeSeg, Cuboid cuboid, GTScanRequest scanRequest, String gtStorage, boolean lazy) {
         if (scanRequest == null) {
             logger.info("Segment {} will be skipped", cubeSeg);
             internal = new EmptyGTScanner(0);
@@ -44,23 +54,38 @@ public class ScannerWorker {
         final GTInfo info = scanRequest.getInfo();
 
         try {
-            IGTStorage rpc = (IGTStorage) Class.forName(gtStorage).getConstructor(CubeSegment.class, Cuboid.class, GTInfo.class).newInstance(cubeSeg, cuboid, info); // default behavior
-            internal = rpc.getGTScanner(scanRequest);
-        } catch (IOException | InstantiationException | InvocationTargetException | IllegalAccessException | ClassNotFoundException | NoSuchMethodException e) {
+            storage = (IGTStorage) Class.forName(gtStorage).getConstructor(CubeSegment.class, Cuboid.class, GTInfo.class).newInstance(cubeSeg, cuboid, info); // default behavior
+        } catch (InstantiationException | InvocationTargetException | IllegalAccessException | ClassNotFoundException | NoSuchMethodException e) {
             throw new RuntimeException(e);
         }
+        this.scanRequest = scanRequest;
+        if (!lazy) {
+            start();
+        }
+    }
+
+    private synchronized IGTScanner start() {
+        if (internal == null) {
+            try {
+                internal = storage.getGTScanner(scanRequest);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return internal;
     }
 
     public Iterator<GTRecord> iterator() {
-        return internal.iterator();
+        return start().iterator();
     }
 
-    public void close() throws IOException {
-        internal.close();
+    public synchronized void close() throws IOException {
+        if (internal != null)
+            internal.close();
     }
 
-    public long getScannedRowCount() {
-        return internal.getScannedRowCount();
+    public synchronized long getScannedRowCount() {
+        return internal == null ? 0 : internal.getScannedRowCount();
     }
 
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.cuboid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeDescManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.metadata.MetadataManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class CuboidCostSelectorTest extends LocalFileMetadataTestCase {
+
+    private CubeDesc cube;
+
+    private long toLong(String bin) {
+        return Long.parseLong(bin, 2);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        MetadataManager.clearCache();
+        cube = CubeDescManager.getInstance(getTestConfig()).getCubeDesc("test_kylin_cube_with_slr_desc");
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testPickFewestRows() {
+        Cuboid cuboid = Cuboid.findById(cube, toLong("110000100"));
+        assertTrue(cuboid.requirePostAggregation());
+
+        Map<Long, Long> estimates = Maps.newHashMap();
+        estimates.put(cuboid.getId(), 40000L);
+        estimates.put(toLong("111111111"), 1000L);
+        estimates.put(toLong("111110111"), 500L);
+        estimates.put(toLong("110000111"), 3000L);
+        estimates.put(toLong("110000001"), 10L); // not an ancestor
+
+        Cuboid selected = CuboidCostSelector.select(cuboid, estimates);
+        assertEquals(toLong("111110111"), selected.getId());
+        assertEquals(cuboid.getInputID(), selected.getInputID());
+        assertTrue(selected.requirePostAggregation());
+        assertEquals(500L, CuboidCostSelector.estimateRows(selected, estimates));
+
+        // a tie keeps the default order, i.e. fewer dimensions
+        estimates.put(toLong("110000111"), 500L);
+        assertEquals(toLong("110000111"), CuboidCostSelector.select(cuboid, estimates).getId());
+    }
+
+    @Test
+    public void testKeepDefault() {
+        Map<Long, Long> estimates = Maps.newHashMap();
+        estimates.put(toLong("111111111"), 1L);
+
+        // no post aggregation needed, nothing can be cheaper
+        Cuboid valid = Cuboid.findById(cube, toLong("110000111"));
+        assertSame(valid, CuboidCostSelector.select(valid, estimates));
+
+        // no estimates
+        Cuboid cuboid = Cuboid.findById(cube, toLong("110000100"));
+        assertSame(cuboid, CuboidCostSelector.select(cuboid, null));
+        assertSame(cuboid, CuboidCostSelector.select(cuboid, Maps.<Long, Long> newHashMap()));
+        assertEquals(CuboidCostSelector.UNKNOWN_ROWS, CuboidCostSelector.estimateRows(cuboid, null));
+
+        // the default is the cheapest
+        estimates.put(toLong("111111111"), 1000000L);
+        estimates.put(cuboid.getId(), 10L);
+        assertEquals(cuboid.getId(), CuboidCostSelector.select(cuboid, estimates).getId());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeDescManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.MetadataManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class CuboidStatsHasherTest extends LocalFileMetadataTestCase {
+
+    private CubeDesc cube;
+    private int[] rowKeyColumnIndexes;
+    private int rowLength;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        MetadataManager.clearCache();
+        cube = CubeDescManager.getInstance(getTestConfig()).getCubeDesc("test_kylin_cube_with_slr_desc");
+        rowKeyColumnIndexes = new CubeJoinedFlatTableDesc(cube, null).getRowKeyColumnIndexes();
+        for (int i : rowKeyColumnIndexes) {
+            rowLength = Math.max(rowLength, i + 1);
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testHashDependsOnCuboidColumnsOnly() {
+        CuboidStatsHasher hasher = new CuboidStatsHasher(cube, rowKeyColumnIndexes);
+        long[] cuboidIds = hasher.getCuboidIds();
+        int nRowKey = rowKeyColumnIndexes.length;
+
+        Random rand = new Random(0);
+        String[] row = randomRow(rand, 1000);
+        long[] hashes = hasher.hashRow(row).clone();
+
+        for (int c = 0; c < nRowKey; c++) {
+            String[] changed = row.clone();
+            changed[rowKeyColumnIndexes[c]] = row[rowKeyColumnIndexes[c]] == null ? "x" : null;
+            long[] changedHashes = hasher.hashRow(changed);
+
+            long bit = 1L << (nRowKey - 1 - c);
+            for (int i = 0; i < cuboidIds.length; i++) {
+                if ((cuboidIds[i] & bit) == 0)
+                    assertEquals(hashes[i], changedHashes[i]);
+                else
+                    assertTrue(hashes[i] != changedHashes[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testEstimate() {
+        CuboidStatsHasher hasher = new CuboidStatsHasher(cube, rowKeyColumnIndexes);
+        long[] cuboidIds = hasher.getCuboidIds();
+        HyperLogLogPlusCounter[] counters = new HyperLogLogPlusCounter[cuboidIds.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new HyperLogLogPlusCounter(14);
+        }
+
+        // values of a column are drawn from a small domain, so cuboids of few columns repeat rows a lot
+        Random rand = new Random(1);
+        Set<String>[] exact = new Set[cuboidIds.length];
+        for (int i = 0; i < exact.length; i++) {
+            exact[i] = Sets.newHashSet();
+        }
+        for (int r = 0; r < 20000; r++) {
+            String[] row = randomRow(rand, 10);
+            long[] hashes = hasher.hashRow(row);
+            for (int i = 0; i < cuboidIds.length; i++) {
+                counters[i].addHash(hashes[i]);
+                exact[i].add(keyOf(row, cuboidIds[i]));
+            }
+        }
+
+        for (int i = 0; i < cuboidIds.length; i++) {
+            double error = Math.abs(counters[i].getCountEstimate() - exact[i].size()) / (double) exact[i].size();
+            assertTrue("cuboid " + cuboidIds[i] + " estimates " + counters[i].getCountEstimate() + " of " + exact[i].size(), error < 0.05);
+        }
+    }
+
+    private String[] randomRow(Random rand, int cardinality) {
+        String[] row = new String[rowLength];
+        for (int i = 0; i < rowLength; i++) {
+            int v = rand.nextInt(cardinality + 1);
+            row[i] = v == cardinality ? null : "v" + v;
+        }
+        return row;
+    }
+
+    private String keyOf(String[] row, long cuboidId) {
+        int nRowKey = rowKeyColumnIndexes.length;
+        String[] key = new String[nRowKey];
+        for (int c = 0; c < nRowKey; c++) {
+            if ((cuboidId & (1L << (nRowKey - 1 - c))) != 0)
+                key[c] = row[rowKeyColumnIndexes[c]];
+        }
+        return Arrays.toString(key);
+    }
+}
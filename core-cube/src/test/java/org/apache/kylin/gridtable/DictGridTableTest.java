@@ -18,6 +18,7 @@
 package org.apache.kylin.gridtable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -312,6 +313,25 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         doScanAndVerify(table, useDeserializedGTScanRequest(req), "[1421280000000, 20, null, 30, null]", "[1421366400000, 20, null, 40, null]");
     }
 
+    @Test
+    public void verifySerializeWithoutInfo() throws IOException {
+        GTInfo info = table.getInfo();
+
+        CompareTupleFilter fComp1 = compare(info.colRef(0), FilterOperatorEnum.GT, enc(info, 0, "2015-01-14"));
+        CompareTupleFilter fComp2 = compare(info.colRef(1), FilterOperatorEnum.GT, enc(info, 1, "10"));
+        GTScanRequest req = new GTScanRequest(info, null, null, setOf(0), setOf(3), new String[] { "sum" }, and(fComp1, fComp2));
+
+        ByteBuffer buffer = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        GTScanRequest.serializeWithoutInfo(req, buffer);
+        int sizeWithoutInfo = buffer.position();
+        buffer.flip();
+        GTScanRequest sReq = GTScanRequest.deserializeWithoutInfo(buffer, info);
+
+        assertTrue(sizeWithoutInfo < req.toByteArray().length);
+        assertEquals(req.toString(), sReq.toString());
+        doScanAndVerify(table, sReq, "[1421280000000, 20, null, 30, null]", "[1421366400000, 20, null, 40, null]");
+    }
+
     @Test
     public void testFilterScannerPerf() throws IOException {
         GridTable table = newTestPerfTable();
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTTopNScannerTest extends LocalFileMetadataTestCase {
+    final static int DATA_ROWS = 10000;
+
+    static GTInfo INFO;
+    static List<GTRecord> TEST_DATA;
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(//
+                DataType.getType("varchar(10)"), //
+                DataType.getType("bigint") //
+        );
+        builder.setPrimaryKey(new ImmutableBitSet(0, 1));
+        builder.setColumnPreferIndex(new ImmutableBitSet(0, 1));
+        INFO = builder.build();
+
+        TEST_DATA = Lists.newArrayListWithCapacity(DATA_ROWS);
+        for (int i = 0; i < DATA_ROWS; i++) {
+            GTRecord rec = new GTRecord(INFO);
+            // a permutation of 0 ~ DATA_ROWS-1 as the metric
+            rec.setValues("k" + i, new LongMutable((i * 7919L) % DATA_ROWS));
+            TEST_DATA.add(rec);
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testDescending() throws IOException {
+        GTScanRequest req = new GTScanRequest(INFO, null, null, null);
+        req.setTopN(1, true, 100);
+
+        List<Long> values = scan(req);
+        assertEquals(100, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(DATA_ROWS - 1 - i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testAscending() throws IOException {
+        GTScanRequest req = new GTScanRequest(INFO, null, null, null);
+        req.setTopN(1, false, 10);
+
+        List<Long> values = scan(req);
+        assertEquals(10, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testLessThanN() throws IOException {
+        GTScanRequest req = new GTScanRequest(INFO, null, null, null);
+        req.setTopN(1, true, DATA_ROWS * 2);
+        assertEquals(DATA_ROWS, scan(req).size());
+    }
+
+    @Test
+    public void testSerialize() {
+        GTScanRequest req = newAggrRequest();
+        req.setTopN(1, false, 42);
+
+        GTScanRequest sReq = GTScanRequest.serializer.deserialize(ByteBuffer.wrap(req.toByteArray()));
+        assertTrue(sReq.hasTopN());
+        assertEquals(1, sReq.getTopNColumn());
+        assertFalse(sReq.isTopNDescending());
+        assertEquals(42, sReq.getTopN());
+
+        GTScanRequest noTopN = GTScanRequest.serializer.deserialize(ByteBuffer.wrap(newAggrRequest().toByteArray()));
+        assertFalse(noTopN.hasTopN());
+    }
+
+    private GTScanRequest newAggrRequest() {
+        return new GTScanRequest(INFO, null, new ImmutableBitSet(0, 2), new ImmutableBitSet(0, 1), new ImmutableBitSet(1, 2), new String[] { "SUM" }, null);
+    }
+
+    private List<Long> scan(GTScanRequest req) throws IOException {
+        IGTScanner scanner = req.decorateScanner(newInputScanner());
+        List<Long> result = Lists.newArrayList();
+        for (GTRecord record : scanner) {
+            result.add(((LongMutable) record.getValues()[1]).get());
+        }
+        scanner.close();
+        return result;
+    }
+
+    private IGTScanner newInputScanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                // reuses one record like the real scanners do
+                final Iterator<GTRecord> it = TEST_DATA.iterator();
+                final GTRecord reused = new GTRecord(INFO);
+                return new Iterator<GTRecord>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public GTRecord next() {
+                        GTRecord r = it.next();
+                        for (int i = 0; i < r.cols.length; i++) {
+                            reused.cols[i].set(r.cols[i]);
+                        }
+                        return reused;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class PrimitiveAggregationCacheTest extends LocalFileMetadataTestCase {
+    final static int DATA_ROWS = 300000;
+    final static int DATA_CARDINALITY = 5000;
+
+    static GTInfo INFO;
+    static List<GTRecord> TEST_DATA;
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(//
+                DataType.getType("varchar(10)"), //
+                DataType.getType("varchar(10)"), //
+                DataType.getType("bigint"), //
+                DataType.getType("bigint"), //
+                DataType.getType("double") //
+        );
+        builder.setPrimaryKey(new ImmutableBitSet(0, 2));
+        builder.setColumnPreferIndex(new ImmutableBitSet(0, 1));
+        INFO = builder.build();
+
+        TEST_DATA = Lists.newArrayListWithCapacity(DATA_ROWS);
+        for (int i = 0; i < DATA_ROWS; i++) {
+            GTRecord rec = new GTRecord(INFO);
+            rec.setValues("k" + (i % DATA_CARDINALITY), "x" + (i % 7), new LongMutable(i % 100), new LongMutable(i), new DoubleMutable(i * 0.5));
+            TEST_DATA.add(rec);
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testInMem() throws IOException {
+        verify(0.5, false);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        verify(0.00001, true);
+    }
+
+    private void verify(double aggrCacheGB, boolean expectSpill) throws IOException {
+        // group by column 0 only, column 1 is returned but not compared
+        GTScanRequest scanRequest = new GTScanRequest(INFO, null, new ImmutableBitSet(0, 5), new ImmutableBitSet(0, 1), new ImmutableBitSet(2, 5), new String[] { "SUM", "MAX", "MIN" }, null);
+        scanRequest.setAggrCacheGB(aggrCacheGB);
+
+        GTAggregateScanner scanner = new GTAggregateScanner(newInputScanner(), scanRequest);
+        assertTrue(scanner.aggrCache instanceof GTAggregateScanner.PrimitiveAggregationCache);
+
+        Map<String, long[]> expected = Maps.newHashMap();
+        for (int i = 0; i < DATA_ROWS; i++) {
+            String key = "k" + (i % DATA_CARDINALITY);
+            long[] e = expected.get(key);
+            if (e == null) {
+                e = new long[] { 0, Long.MIN_VALUE, Long.MAX_VALUE };
+                expected.put(key, e);
+            }
+            e[0] += i % 100;
+            e[1] = Math.max(e[1], i);
+            e[2] = Math.min(e[2], i); // min of i * 0.5, tracked as i
+        }
+
+        int count = 0;
+        GTRecord last = null;
+        for (GTRecord record : scanner) {
+            if (last != null) {
+                assertTrue(INFO.codeSystem.getComparator().compare(last.get(0), record.get(0)) < 0);
+            }
+            last = record.copy();
+
+            Object[] values = record.getValues();
+            long[] e = expected.get(values[0]);
+            assertEquals(e[0], ((LongMutable) values[2]).get());
+            assertEquals(e[1], ((LongMutable) values[3]).get());
+            assertEquals(e[2] * 0.5, ((DoubleMutable) values[4]).get(), 0.0001);
+            count++;
+        }
+        assertEquals(DATA_CARDINALITY, count);
+        assertEquals(expectSpill, scanner.getNumOfSpills() > 0);
+        scanner.close();
+    }
+
+    private IGTScanner newInputScanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return TEST_DATA.iterator();
+            }
+        };
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.dict.lookup;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.source.ReadableTable.TableReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * A read-only, columnar copy of a snapshot table in a local file that is memory-mapped, so that all queries
+ * of a process share one off-heap copy of the table.
+ * <p>
+ * Each column is dictionary encoded by its own sorted dictionary, and its row ids take 1, 2 or 4 bytes
+ * depending on the cardinality. A chained hash index over the ids of the key columns locates a row by key.
+ * <p>
+ * File layout, all numbers big endian:
+ * <pre>
+ * header:     MAGIC, VERSION, rows, cols, keys, key column index * keys, buckets, index offset
+ * directory:  (cardinality, id width, dictionary offset, ids offset) * cols
+ * dictionary: value end offsets * cardinality, UTF-8 bytes of the sorted values
+ * ids:        (id + 1, or 0 for null) * rows
+ * index:      (row + 1 of the chain head, or 0) * buckets, (row + 1 of the next in chain, or 0) * rows
+ * </pre>
+ * The mapping is reference counted: the cache that hands out the snapshot holds one reference, and reads must
+ * be done between {@link #retain()} and {@link #release()}. Once closed and no longer read, the file is unmapped
+ * instead of waiting for the garbage collector.
+ */
+public class ColumnarSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarSnapshot.class);
+
+    private static final int MAGIC = 0x4B534E50; // "KSNP"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private MappedByteBuffer buf; // only absolute reads, so it is safe to share between threads; null once unmapped
+
+    private int refCount = 1;
+    private boolean closed = false;
+    private boolean deleteOnUnmap = false;
+
+    private final int nRows;
+    private final int nCols;
+    private final int[] keyIndex;
+    private final int nBuckets;
+    private final int indexOffset;
+
+    private final int[] cardinality;
+    private final int[] idWidth;
+    private final int[] dictOffset;
+    private final int[] idsOffset;
+
+    private ColumnarSnapshot(File file, MappedByteBuffer buf) {
+        this.file = file;
+        this.buf = buf;
+
+        int pos = 0;
+        if (buf.getInt(pos) != MAGIC || buf.getInt(pos + 4) != VERSION)
+            throw new IllegalStateException("Not a columnar snapshot of version " + VERSION + ": " + file);
+        pos += 8;
+        nRows = buf.getInt(pos);
+        nCols = buf.getInt(pos + 4);
+        keyIndex = new int[buf.getInt(pos + 8)];
+        pos += 12;
+        for (int i = 0; i < keyIndex.length; i++, pos += 4) {
+            keyIndex[i] = buf.getInt(pos);
+        }
+        nBuckets = buf.getInt(pos);
+        indexOffset = buf.getInt(pos + 4);
+        pos += 8;
+
+        cardinality = new int[nCols];
+        idWidth = new int[nCols];
+        dictOffset = new int[nCols];
+        idsOffset = new int[nCols];
+        for (int c = 0; c < nCols; c++, pos += 16) {
+            cardinality[c] = buf.getInt(pos);
+            idWidth[c] = buf.getInt(pos + 4);
+            dictOffset[c] = buf.getInt(pos + 8);
+            idsOffset[c] = buf.getInt(pos + 12);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** pins the mapping for reading, the file is mapped again if a closed snapshot was unmapped meanwhile */
+    public synchronized void retain() {
+        if (buf == null) {
+            try {
+                buf = map(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Columnar snapshot " + file + " is no longer available", e);
+            }
+        }
+        refCount++;
+    }
+
+    public synchronized void release() {
+        if (refCount <= 0)
+            throw new IllegalStateException("Columnar snapshot " + file + " is released more than retained");
+        if (--refCount == 0)
+            unmap();
+    }
+
+    /**
+     * Drops the reference of the owner, the mapping goes with the last ongoing read.
+     *
+     * @param deleteFile whether the file is obsolete and deleted once unmapped
+     */
+    public synchronized void close(boolean deleteFile) {
+        deleteOnUnmap |= deleteFile;
+        if (closed)
+            return;
+        closed = true;
+        release();
+    }
+
+    synchronized boolean isMapped() {
+        return buf != null;
+    }
+
+    private void unmap() {
+        MappedByteBuffer mapped = buf;
+        buf = null;
+        try {
+            // sun.misc.Cleaner of the direct buffer, not public API, so by reflection
+            Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Exception e) {
+            logger.debug("Cannot unmap " + file + ", leaving it to GC", e);
+        }
+        if (deleteOnUnmap && file.exists() && !file.delete())
+            logger.warn("Failed to delete " + file);
+    }
+
+    public int getRowCount() {
+        return nRows;
+    }
+
+    public int getColumnCount() {
+        return nCols;
+    }
+
+    public int getCardinality(int col) {
+        return cardinality[col];
+    }
+
+    /** the dictionary id of a cell, or -1 for null */
+    public int getId(int col, int row) {
+        int pos = idsOffset[col] + row * idWidth[col];
+        switch (idWidth[col]) {
+        case 1:
+            return (buf.get(pos) & 0xff) - 1;
+        case 2:
+            return (buf.getShort(pos) & 0xffff) - 1;
+        default:
+            return buf.getInt(pos) - 1;
+        }
+    }
+
+    public String getValue(int col, int id) {
+        if (id < 0)
+            return null;
+        int start = valueStart(col, id);
+        int end = valueEnd(col, id);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        return Bytes.toString(bytes);
+    }
+
+    public String getCell(int col, int row) {
+        return getValue(col, getId(col, row));
+    }
+
+    public String[] getRow(int row) {
+        String[] result = new String[nCols];
+        for (int c = 0; c < nCols; c++) {
+            result[c] = getCell(c, row);
+        }
+        return result;
+    }
+
+    /** the dictionary id of a value by binary search, -1 for null or -2 if the value is not in the column */
+    public int lookupId(int col, String value) {
+        if (value == null)
+            return -1;
+        byte[] bytes = Bytes.toBytes(value);
+        int lo = 0, hi = cardinality[col] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareValue(col, mid, bytes);
+            if (c < 0)
+                lo = mid + 1;
+            else if (c > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -2;
+    }
+
+    /** the row of the given key column values, or -1 if not found */
+    public int findRow(String[] key) {
+        if (key.length != keyIndex.length)
+            throw new IllegalArgumentException("Expect " + keyIndex.length + " key columns but got " + key.length);
+
+        int[] keyIds = new int[key.length];
+        for (int i = 0; i < key.length; i++) {
+            keyIds[i] = lookupId(keyIndex[i], key[i]);
+            if (keyIds[i] == -2)
+                return -1;
+        }
+
+        int row = buf.getInt(indexOffset + 4 * bucket(keyIds, nBuckets)) - 1;
+        while (row >= 0) {
+            if (keyEquals(row, keyIds))
+                return row;
+            row = buf.getInt(indexOffset + 4 * nBuckets + 4 * row) - 1;
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int row, int[] keyIds) {
+        for (int i = 0; i < keyIds.length; i++) {
+            if (getId(keyIndex[i], row) != keyIds[i])
+                return false;
+        }
+        return true;
+    }
+
+    private int compareValue(int col, int id, byte[] value) {
+        int start = valueStart(col, id);
+        int len = valueEnd(col, id) - start;
+        int n = Math.min(len, value.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buf.get(start + i) & 0xff) - (value[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return len - value.length;
+    }
+
+    private int valueStart(int col, int id) {
+        int bytesStart = dictOffset[col] + 4 * cardinality[col];
+        return id == 0 ? bytesStart : bytesStart + buf.getInt(dictOffset[col] + 4 * (id - 1));
+    }
+
+    private int valueEnd(int col, int id) {
+        return dictOffset[col] + 4 * cardinality[col] + buf.getInt(dictOffset[col] + 4 * id);
+    }
+
+    private static int bucket(int[] keyIds, int nBuckets) {
+        int h = 1;
+        for (int id : keyIds) {
+            h = 31 * h + id;
+        }
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & (nBuckets - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarSnapshot [file=" + file + ", rows=" + nRows + ", cols=" + nCols + "]";
+    }
+
+    // ============================================================================
+
+    public static ColumnarSnapshot open(File file) throws IOException {
+        return new ColumnarSnapshot(file, map(file));
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Writes the rows of the reader into a new file and opens it. The file is written aside and renamed in place,
+     * so that a concurrent reader never sees a partial file.
+     */
+    public static ColumnarSnapshot build(File file, TableReader reader, int nCols, int[] keyIndex) throws IOException {
+        List<String[]> rows = Lists.newArrayList();
+        try {
+            while (reader.next()) {
+                String[] row = reader.getRow();
+                if (row.length < nCols)
+                    throw new IllegalStateException("Expect " + nCols + " columns, but got " + Arrays.toString(row));
+                rows.add(row);
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        int nRows = rows.size();
+
+        // per column dictionaries, sorted in the byte order that lookupId() searches in
+        byte[][][] dicts = new byte[nCols][][];
+        int[][] ids = new int[nCols][nRows];
+        for (int c = 0; c < nCols; c++) {
+            Set<String> distinct = new HashSet<String>();
+            for (String[] row : rows) {
+                if (row[c] != null)
+                    distinct.add(row[c]);
+            }
+            byte[][] dict = new byte[distinct.size()][];
+            int i = 0;
+            for (String v : distinct) {
+                dict[i++] = Bytes.toBytes(v);
+            }
+            Arrays.sort(dict, UnsignedBytes.lexicographicalComparator());
+            dicts[c] = dict;
+
+            Map<String, Integer> idMap = new HashMap<String, Integer>(dict.length * 2);
+            for (i = 0; i < dict.length; i++) {
+                idMap.put(Bytes.toString(dict[i]), i);
+            }
+            for (int r = 0; r < nRows; r++) {
+                String v = rows.get(r)[c];
+                ids[c][r] = v == null ? -1 : idMap.get(v);
+            }
+        }
+
+        // hash index on key columns
+        int nBuckets = 1;
+        while (nBuckets < nRows * 2) {
+            nBuckets <<= 1;
+        }
+        int[] buckets = new int[nBuckets];
+        int[] next = new int[nRows];
+        int[] keyIds = new int[keyIndex.length];
+        for (int r = 0; r < nRows; r++) {
+            for (int i = 0; i < keyIndex.length; i++) {
+                keyIds[i] = ids[keyIndex[i]][r];
+            }
+            int b = bucket(keyIds, nBuckets);
+            for (int other = buckets[b] - 1; other >= 0; other = next[other] - 1) {
+                if (sameKey(ids, keyIndex, other, r))
+                    throw new IllegalStateException("Dup key found, key=" + Arrays.toString(keyOf(rows.get(r), keyIndex)) + ", value1=" + Arrays.toString(rows.get(other)) + ", value2=" + Arrays.toString(rows.get(r)));
+            }
+            next[r] = buckets[b];
+            buckets[b] = r + 1;
+        }
+
+        // offsets
+        long pos = 4L * (7 + keyIndex.length) + 16L * nCols;
+        int[] dictOffset = new int[nCols];
+        int[] idsOffset = new int[nCols];
+        int[] idWidth = new int[nCols];
+        for (int c = 0; c < nCols; c++) {
+            dictOffset[c] = checkOffset(pos, file);
+            pos += 4L * dicts[c].length;
+            for (byte[] v : dicts[c]) {
+                pos += v.length;
+            }
+            int maxId = dicts[c].length; // ids are stored plus one
+            idWidth[c] = maxId <= 0xff ? 1 : maxId <= 0xffff ? 2 : 4;
+            idsOffset[c] = checkOffset(pos, file);
+            pos += (long) idWidth[c] * nRows;
+        }
+        int indexOffset = checkOffset(pos, file);
+        checkOffset(pos + 4L * (nBuckets + nRows), file);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists())
+            throw new IOException("Failed to create directory " + parent);
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nRows);
+            out.writeInt(nCols);
+            out.writeInt(keyIndex.length);
+            for (int k : keyIndex) {
+                out.writeInt(k);
+            }
+            out.writeInt(nBuckets);
+            out.writeInt(indexOffset);
+            for (int c = 0; c < nCols; c++) {
+                out.writeInt(dicts[c].length);
+                out.writeInt(idWidth[c]);
+                out.writeInt(dictOffset[c]);
+                out.writeInt(idsOffset[c]);
+            }
+            for (int c = 0; c < nCols; c++) {
+                int end = 0;
+                for (byte[] v : dicts[c]) {
+                    end += v.length;
+                    out.writeInt(end);
+                }
+                for (byte[] v : dicts[c]) {
+                    out.write(v);
+                }
+                for (int r = 0; r < nRows; r++) {
+                    int id = ids[c][r] + 1;
+                    if (idWidth[c] == 1)
+                        out.writeByte(id);
+                    else if (idWidth[c] == 2)
+                        out.writeShort(id);
+                    else
+                        out.writeInt(id);
+                }
+            }
+            for (int b : buckets) {
+                out.writeInt(b);
+            }
+            for (int n : next) {
+                out.writeInt(n);
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            if (!file.exists())
+                throw new IOException("Failed to rename " + tmp + " to " + file);
+            // someone else has just built the same file
+        }
+        return open(file);
+    }
+
+    private static boolean sameKey(int[][] ids, int[] keyIndex, int r1, int r2) {
+        for (int k : keyIndex) {
+            if (ids[k][r1] != ids[k][r2])
+                return false;
+        }
+        return true;
+    }
+
+    private static String[] keyOf(String[] row, int[] keyIndex) {
+        String[] key = new String[keyIndex.length];
+        for (int i = 0; i < keyIndex.length; i++) {
+            key[i] = row[keyIndex[i]];
+        }
+        return key;
+    }
+
+    private static int checkOffset(long pos, File file) {
+        if (pos > Integer.MAX_VALUE)
+            throw new IllegalStateException("Columnar snapshot " + file + " exceeds 2GB");
+        return (int) pos;
+    }
+}
@@ -67,20 +67,36 @@ public class LookupStringTable extends LookupTable<String> {
 
     @Override
     protected void init() throws IOException {
+        initColumnTypes();
+        super.init();
+    }
+
+    protected void initColumnTypes() {
         ColumnDesc[] cols = tableDesc.getColumns();
-        colIsDateTime = new boolean[cols.length];
+        colIsDateTime = dateTimeColumns(tableDesc);
         colIsNumber = new boolean[cols.length];
         for (int i = 0; i < cols.length; i++) {
             DataType t = cols[i].getType();
-            colIsDateTime[i] = t.isDateTimeFamily();
             colIsNumber[i] = t.isNumberFamily();
         }
-
-        super.init();
     }
 
     @Override
     protected String[] convertRow(String[] cols) {
+        return convertRow(cols, colIsDateTime);
+    }
+
+    static boolean[] dateTimeColumns(TableDesc tableDesc) {
+        ColumnDesc[] cols = tableDesc.getColumns();
+        boolean[] result = new boolean[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            result[i] = cols[i].getType().isDateTimeFamily();
+        }
+        return result;
+    }
+
+    /** date time cells are kept as millis strings */
+    static String[] convertRow(String[] cols, boolean[] colIsDateTime) {
         for (int i = 0; i < cols.length; i++) {
             if (colIsDateTime[i]) {
                 cols[i] = String.valueOf(DateFormat.stringToMillis(cols[i]));
@@ -144,7 +144,7 @@ abstract public class LookupTable<T> {
         return result;
     }
 
-    private boolean between(T beginValue, T v, T endValue, Comparator<T> comp) {
+    protected boolean between(T beginValue, T v, T endValue, Comparator<T> comp) {
         return (beginValue == null || comp.compare(beginValue, v) <= 0) && (endValue == null || comp.compare(v, endValue) <= 0);
     }
 
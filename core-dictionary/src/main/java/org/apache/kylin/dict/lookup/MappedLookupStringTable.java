@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.dict.lookup;
+
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.metadata.model.TableDesc;
+
+import com.google.common.collect.Sets;
+
+/**
+ * A lookup table served from a memory-mapped {@link ColumnarSnapshot} rather than from rows on heap. Rows are
+ * decoded on access; the range and value mappings work on column dictionary ids and decode each distinct
+ * value only once. Every read pins the mapping, so a snapshot evicted from the cache meanwhile stays readable.
+ */
+public class MappedLookupStringTable extends LookupStringTable {
+
+    private final ColumnarSnapshot snapshot;
+
+    public MappedLookupStringTable(TableDesc tableDesc, String[] keyColumns, ColumnarSnapshot snapshot) throws IOException {
+        super(tableDesc, keyColumns, null);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    protected void init() throws IOException {
+        // rows stay in the mapped file, only the column types are needed
+        initColumnTypes();
+    }
+
+    @Override
+    public String[] getRow(Array<String> key) {
+        snapshot.retain();
+        try {
+            int row = snapshot.findRow(key.data);
+            return row < 0 ? null : snapshot.getRow(row);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Override
+    public Collection<String[]> getAllRows() {
+        return new AbstractCollection<String[]>() {
+            @Override
+            public Iterator<String[]> iterator() {
+                return new Iterator<String[]>() {
+                    int row = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < snapshot.getRowCount();
+                    }
+
+                    @Override
+                    public String[] next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        snapshot.retain();
+                        try {
+                            return snapshot.getRow(row++);
+                        } finally {
+                            snapshot.release();
+                        }
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return snapshot.getRowCount();
+            }
+        };
+    }
+
+    @Override
+    public List<String> scan(String col, List<String> values, String returnCol) {
+        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
+        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
+        snapshot.retain();
+        try {
+            boolean[] matched = matchIds(colIdx, values);
+
+            ArrayList<String> result = new ArrayList<String>();
+            for (int row = 0, n = snapshot.getRowCount(); row < n; row++) {
+                if (matched[snapshot.getId(colIdx, row) + 1])
+                    result.add(snapshot.getCell(returnIdx, row));
+            }
+            return result;
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Override
+    public Pair<String, String> mapRange(String col, String beginValue, String endValue, String returnCol) {
+        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
+        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
+        Comparator<String> colComp = getComparator(colIdx);
+        Comparator<String> returnComp = getComparator(returnIdx);
+
+        snapshot.retain();
+        try {
+            // nulls are never in range
+            boolean[] matched = new boolean[snapshot.getCardinality(colIdx) + 1];
+            for (int id = 0; id < snapshot.getCardinality(colIdx); id++) {
+                matched[id + 1] = between(beginValue, snapshot.getValue(colIdx, id), endValue, colComp);
+            }
+            boolean[] returned = collectReturnIds(colIdx, matched, returnIdx);
+
+            String returnBegin = null;
+            String returnEnd = null;
+            for (int id = 0; id < snapshot.getCardinality(returnIdx); id++) {
+                if (returned[id + 1]) {
+                    String returnValue = snapshot.getValue(returnIdx, id);
+                    if (returnBegin == null || returnComp.compare(returnValue, returnBegin) < 0) {
+                        returnBegin = returnValue;
+                    }
+                    if (returnEnd == null || returnComp.compare(returnValue, returnEnd) > 0) {
+                        returnEnd = returnValue;
+                    }
+                }
+            }
+            if (returnBegin == null && returnEnd == null)
+                return null;
+            else
+                return Pair.newPair(returnBegin, returnEnd);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Override
+    public Set<String> mapValues(String col, Set<String> values, String returnCol) {
+        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
+        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
+        snapshot.retain();
+        try {
+            boolean[] returned = collectReturnIds(colIdx, matchIds(colIdx, values), returnIdx);
+
+            Set<String> result = Sets.newHashSetWithExpectedSize(values.size());
+            for (int id = -1; id < snapshot.getCardinality(returnIdx); id++) {
+                if (returned[id + 1])
+                    result.add(snapshot.getValue(returnIdx, id));
+            }
+            return result;
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /** flags by dictionary id plus one, so that slot 0 stands for null */
+    private boolean[] matchIds(int colIdx, Collection<String> values) {
+        boolean[] matched = new boolean[snapshot.getCardinality(colIdx) + 1];
+        for (String v : values) {
+            int id = snapshot.lookupId(colIdx, v);
+            if (id >= -1)
+                matched[id + 1] = true;
+        }
+        return matched;
+    }
+
+    private boolean[] collectReturnIds(int colIdx, boolean[] matched, int returnIdx) {
+        boolean[] returned = new boolean[snapshot.getCardinality(returnIdx) + 1];
+        for (int row = 0, n = snapshot.getRowCount(); row < n; row++) {
+            if (matched[snapshot.getId(colIdx, row) + 1])
+                returned[snapshot.getId(returnIdx, row) + 1] = true;
+        }
+        return returned;
+    }
+
+    @Override
+    public void dump() {
+        for (String[] row : getAllRows()) {
+            System.out.println(toString(row));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedLookupStringTable [snapshot=" + snapshot + "]";
+    }
+}
@@ -18,8 +18,12 @@
 
 package org.apache.kylin.dict.lookup;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.NavigableSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -29,15 +33,18 @@ import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.metadata.MetadataManager;
 import org.apache.kylin.metadata.model.TableDesc;
 import org.apache.kylin.source.ReadableTable;
+import org.apache.kylin.source.ReadableTable.TableReader;
 import org.apache.kylin.source.ReadableTable.TableSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hashing;
 
 /**
  * @author yangli9
@@ -74,6 +81,9 @@ public class SnapshotManager {
     // path ==>
     // SnapshotTable
 
+    // resource path and lookup layout ==> mapped ColumnarSnapshot
+    private Cache<String, ColumnarSnapshot> columnarCache;
+
     private SnapshotManager(KylinConfig config) {
         this.config = config;
         this.snapshotCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, SnapshotTable>() {
@@ -89,10 +99,20 @@ public class SnapshotManager {
                         return snapshotTable;
                     }
                 });
+        this.columnarCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, ColumnarSnapshot>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, ColumnarSnapshot> notification) {
+                SnapshotManager.logger.info("Columnar snapshot " + notification.getKey() + " is removed due to " + notification.getCause());
+                // unmapped once the queries still reading it are done
+                notification.getValue().close(false);
+            }
+        }).maximumSize(config.getCachedSnapshotMaxEntrySize())//
+                .expireAfterWrite(1, TimeUnit.DAYS).build();
     }
 
     public void wipeoutCache() {
         snapshotCache.invalidateAll();
+        columnarCache.invalidateAll();
     }
 
     public SnapshotTable getSnapshotTable(String resourcePath) throws IOException {
@@ -112,6 +132,79 @@ public class SnapshotManager {
         ResourceStore store = MetadataManager.getInstance(this.config).getStore();
         store.deleteResource(resourcePath);
         snapshotCache.invalidate(resourcePath);
+        invalidateColumnar(resourcePath);
+    }
+
+    /**
+     * Returns the columnar copy of a snapshot for lookup by the given key columns. The copy is built into the local
+     * snapshot dir on first access and memory-mapped; later lookup tables of the same snapshot share the mapping.
+     */
+    public ColumnarSnapshot getColumnarSnapshot(final String resourcePath, final TableDesc tableDesc, String[] keyColumns) throws IOException {
+        final int[] keyIndex = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndex[i] = tableDesc.findColumnByName(keyColumns[i]).getZeroBasedIndex();
+        }
+        final boolean[] colIsDateTime = LookupStringTable.dateTimeColumns(tableDesc);
+        final String layout = Arrays.toString(keyIndex) + Arrays.toString(colIsDateTime);
+
+        try {
+            return columnarCache.get(resourcePath + "#" + layout, new Callable<ColumnarSnapshot>() {
+                @Override
+                public ColumnarSnapshot call() throws Exception {
+                    return loadColumnar(resourcePath, layout, colIsDateTime, keyIndex);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to load columnar snapshot of " + resourcePath, e.getCause());
+        }
+    }
+
+    private ColumnarSnapshot loadColumnar(String resourcePath, String layout, final boolean[] colIsDateTime, int[] keyIndex) throws IOException {
+        // not through the snapshot cache, the point is to not keep the rows on heap
+        SnapshotTable snapshot = load(resourcePath, true);
+        String digest = Hashing.md5().hashString(snapshot.getLastModified() + layout, Charset.forName("UTF-8")).toString();
+        File file = new File(getColumnarDir(resourcePath), snapshot.getUuid() + "_" + digest + ".cols");
+
+        if (file.exists()) {
+            logger.info("Mapping columnar snapshot " + file);
+            return ColumnarSnapshot.open(file);
+        }
+
+        logger.info("Building columnar snapshot " + file + " from " + resourcePath);
+        final TableReader reader = snapshot.getReader();
+        return ColumnarSnapshot.build(file, new TableReader() {
+            @Override
+            public boolean next() throws IOException {
+                return reader.next();
+            }
+
+            @Override
+            public String[] getRow() {
+                return LookupStringTable.convertRow(reader.getRow(), colIsDateTime);
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        }, colIsDateTime.length, keyIndex);
+    }
+
+    private File getColumnarDir(String resourcePath) {
+        // e.g. /table_snapshot/TEST_CAL_DT.csv/uuid.snapshot ==> TEST_CAL_DT.csv
+        return new File(config.getSnapshotLocalDir(), new File(resourcePath).getParentFile().getName());
+    }
+
+    private void invalidateColumnar(String resourcePath) {
+        for (String key : columnarCache.asMap().keySet()) {
+            if (key.startsWith(resourcePath + "#")) {
+                ColumnarSnapshot columnar = columnarCache.getIfPresent(key);
+                // the file is obsolete, it goes with the mapping
+                if (columnar != null)
+                    columnar.close(true);
+                columnarCache.invalidate(key);
+            }
+        }
     }
 
     public SnapshotTable buildSnapshot(ReadableTable table, TableDesc tableDesc) throws IOException {
@@ -145,6 +238,7 @@ public class SnapshotManager {
 
         save(snapshot);
         snapshotCache.put(snapshot.getResourcePath(), snapshot);
+        invalidateColumnar(snapshot.getResourcePath());
 
         return snapshot;
     }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.dict.lookup;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.metadata.MetadataManager;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Runs the lookup table tests against the memory-mapped columnar snapshot.
+ */
+public class MappedLookupTableTest extends LookupTableTest {
+
+    private static final String TABLE_NAME = "EDW.TEST_CAL_DT";
+    private static final String SNAPSHOT_PATH = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
+    private static final String[] PK_COLS = new String[] { "CAL_DT" };
+
+    private File localDir;
+
+    @After
+    public void cleanLocalDir() throws Exception {
+        FileUtils.deleteQuietly(localDir);
+    }
+
+    @Override
+    public LookupTable<String> initLookupTable() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        if (localDir == null)
+            localDir = Files.createTempDir();
+        config.setProperty("kylin.snapshot.local.dir", localDir.getAbsolutePath());
+
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc(TABLE_NAME);
+        ColumnarSnapshot columnar = SnapshotManager.getInstance(config).getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS);
+        return new MappedLookupStringTable(tableDesc, PK_COLS, columnar);
+    }
+
+    @Test
+    public void testSameAsOnHeap() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc(TABLE_NAME);
+        SnapshotTable snapshot = SnapshotManager.getInstance(config).getSnapshotTable(SNAPSHOT_PATH);
+        LookupStringTable onHeap = new LookupStringTable(tableDesc, PK_COLS, snapshot);
+        LookupTable<String> mapped = initLookupTable();
+
+        Assert.assertEquals(onHeap.getAllRows().size(), mapped.getAllRows().size());
+        int keyIdx = tableDesc.findColumnByName(PK_COLS[0]).getZeroBasedIndex();
+        for (String[] row : onHeap.getAllRows()) {
+            Array<String> key = new Array<String>(new String[] { row[keyIdx] });
+            Assert.assertArrayEquals(row, mapped.getRow(key));
+        }
+        Assert.assertNull(mapped.getRow(new Array<String>(new String[] { "not a date" })));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc(TABLE_NAME);
+        SnapshotManager snapshotMgr = SnapshotManager.getInstance(config);
+        ColumnarSnapshot built = snapshotMgr.getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS);
+        Assert.assertSame(built, snapshotMgr.getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS));
+
+        // after a cache wipe the file on local disk is mapped again instead of rebuilt
+        snapshotMgr.wipeoutCache();
+        ColumnarSnapshot reopened = snapshotMgr.getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS);
+        Assert.assertNotSame(built, reopened);
+        Assert.assertEquals(built.getFile(), reopened.getFile());
+        Assert.assertEquals(built.getRowCount(), reopened.getRowCount());
+        // the evicted one was unmapped, it is mapped again while read
+        Assert.assertFalse(built.isMapped());
+        built.retain();
+        reopened.retain();
+        try {
+            for (int row = 0; row < built.getRowCount(); row++) {
+                Assert.assertArrayEquals(built.getRow(row), reopened.getRow(row));
+            }
+        } finally {
+            built.release();
+            reopened.release();
+        }
+        Assert.assertFalse(built.isMapped());
+        Assert.assertTrue(reopened.isMapped());
+    }
+
+    @Test
+    public void testEvictionWhileReading() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc(TABLE_NAME);
+        SnapshotManager snapshotMgr = SnapshotManager.getInstance(config);
+        ColumnarSnapshot columnar = snapshotMgr.getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS);
+
+        columnar.retain();
+        try {
+            snapshotMgr.wipeoutCache();
+            // still mapped for the ongoing read
+            Assert.assertTrue(columnar.isMapped());
+            Assert.assertNotNull(columnar.getRow(0));
+        } finally {
+            columnar.release();
+        }
+        Assert.assertFalse(columnar.isMapped());
+        Assert.assertTrue(columnar.getFile().exists());
+    }
+
+    @Test
+    public void testObsoleteFileDeleted() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc(TABLE_NAME);
+        File file = File.createTempFile("kylin_columnar", ".cols");
+        ColumnarSnapshot columnar = SnapshotManager.getInstance(config).getColumnarSnapshot(SNAPSHOT_PATH, tableDesc, PK_COLS);
+        FileUtils.copyFile(columnar.getFile(), file);
+
+        ColumnarSnapshot copy = ColumnarSnapshot.open(file);
+        copy.retain();
+        copy.close(true);
+        Assert.assertTrue(file.exists());
+        copy.release();
+        Assert.assertFalse(copy.isMapped());
+        Assert.assertFalse(file.exists());
+    }
+}
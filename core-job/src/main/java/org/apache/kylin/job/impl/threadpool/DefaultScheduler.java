@@ -54,6 +54,7 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
     private ScheduledExecutorService fetcherPool;
     private ExecutorService jobPool;
     private DefaultContext context;
+    private ExecutableManager.ReadyJobListener readyJobListener;
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultScheduler.class);
     private volatile boolean initialized = false;
@@ -70,6 +71,8 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
 
     private class FetcherRunner implements Runnable {
 
+        private long lastFullScan = System.currentTimeMillis();
+
         @Override
         synchronized public void run() {
             try {
@@ -80,8 +83,15 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
                     return;
                 }
 
-                int nRunning = 0, nReady = 0, nOthers = 0, nError = 0, nDiscarded = 0, nSUCCEED = 0;
-                for (final String id : executableManager.getAllJobIds()) {
+                // the ready jobs are indexed, only rescan the whole job history once in a long while
+                long now = System.currentTimeMillis();
+                if (now - lastFullScan >= jobEngineConfig.getConfig().getJobSchedulerFullScanIntervalSeconds() * 1000L) {
+                    executableManager.reloadReadyJobIds();
+                    lastFullScan = now;
+                }
+
+                int nRunning = 0, nReady = 0, nStale = 0;
+                for (final String id : executableManager.getReadyJobIds()) {
                     if (runningJobs.containsKey(id)) {
                         // logger.debug("Job id:" + id + " is already running");
                         nRunning++;
@@ -89,16 +99,9 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
                     }
                     final Output output = executableManager.getOutput(id);
                     if ((output.getState() != ExecutableState.READY)) {
-                        // logger.debug("Job id:" + id + " not runnable");
-                        if (output.getState() == ExecutableState.DISCARDED) {
-                            nDiscarded++;
-                        } else if (output.getState() == ExecutableState.ERROR) {
-                            nError++;
-                        } else if (output.getState() == ExecutableState.SUCCEED) {
-                            nSUCCEED++;
-                        } else {
-                            nOthers++;
-                        }
+                        // changed without an event reaching here, fix the index
+                        executableManager.reloadJobState(id);
+                        nStale++;
                         continue;
                     }
                     nReady++;
@@ -114,7 +117,7 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
                         logger.warn(jobDesc + " fail to schedule", ex);
                     }
                 }
-                logger.info("Job Fetcher: " + nRunning + " should running, " + runningJobs.size() + " actual running, " + nReady + " ready, " + nSUCCEED + " already succeed, " + nError + " error, " + nDiscarded + " discarded, " + nOthers + " others");
+                logger.info("Job Fetcher: " + nRunning + " should running, " + runningJobs.size() + " actual running, " + nReady + " ready, " + nStale + " no longer ready");
             } catch (Exception e) {
                 logger.warn("Job Fetcher caught a exception " + e);
             }
@@ -211,11 +214,24 @@ public class DefaultScheduler implements Scheduler<AbstractExecutable>, Connecti
 
         fetcher = new FetcherRunner();
         fetcherPool.scheduleAtFixedRate(fetcher, 10, ExecutableConstants.DEFAULT_SCHEDULER_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        // the periodic fetch is only a fallback, a job becoming ready is fetched right away
+        readyJobListener = new ExecutableManager.ReadyJobListener() {
+            @Override
+            public void onJobReady(String jobId) {
+                if (!fetcherPool.isShutdown()) {
+                    fetcherPool.schedule(fetcher, 0, TimeUnit.SECONDS);
+                }
+            }
+        };
+        executableManager.addReadyJobListener(readyJobListener);
         hasStarted = true;
     }
 
     @Override
     public void shutdown() throws SchedulerException {
+        if (readyJobListener != null) {
+            executableManager.removeReadyJobListener(readyJobListener);
+        }
         fetcherPool.shutdown();
         jobPool.shutdown();
     }
@@ -19,12 +19,16 @@
 package org.apache.kylin.job.manager;
 
 import java.lang.reflect.Constructor;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.restclient.Broadcaster;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.job.dao.ExecutableDao;
 import org.apache.kylin.job.dao.ExecutableOutputPO;
@@ -43,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  */
@@ -50,11 +55,22 @@ public class ExecutableManager {
 
     private static final Logger logger = LoggerFactory.getLogger(ExecutableManager.class);
     private static final ConcurrentHashMap<KylinConfig, ExecutableManager> CACHE = new ConcurrentHashMap<KylinConfig, ExecutableManager>();
-    @SuppressWarnings("unused")
     private final KylinConfig config;
 
     private ExecutableDao executableDao;
 
+    // ids of the top level jobs in READY state, loaded by a full scan on first use and then kept in sync by
+    // the state transitions made here and the job events broadcast by other nodes
+    private volatile Set<String> readyJobIds = null;
+    private final List<ReadyJobListener> readyJobListeners = new CopyOnWriteArrayList<ReadyJobListener>();
+
+    /**
+     * Notified when a job becomes READY, e.g. submitted or resumed, here or on another node.
+     */
+    public interface ReadyJobListener {
+        void onJobReady(String jobId);
+    }
+
     public static ExecutableManager getInstance(KylinConfig config) {
         ExecutableManager r = CACHE.get(config);
         if (r == null) {
@@ -82,6 +98,7 @@ public class ExecutableManager {
         try {
             executableDao.addJob(parse(executable));
             addJobOutput(executable);
+            markReady(executable.getId(), true);
         } catch (PersistentException e) {
             logger.error("fail to submit job:" + executable.getId(), e);
             throw new RuntimeException(e);
@@ -103,6 +120,7 @@ public class ExecutableManager {
     public void deleteJob(String jobId) {
         try {
             executableDao.deleteJob(jobId);
+            unmarkReady(jobId);
         } catch (PersistentException e) {
             logger.error("fail to delete job:" + jobId, e);
             throw new RuntimeException(e);
@@ -218,6 +236,7 @@ public class ExecutableManager {
                 if (executableOutputPO.getStatus().equalsIgnoreCase(ExecutableState.RUNNING.toString())) {
                     executableOutputPO.setStatus(ExecutableState.ERROR.toString());
                     executableDao.updateJobOutput(executableOutputPO);
+                    unmarkReady(executableOutputPO.getUuid());
                 }
             }
         } catch (PersistentException e) {
@@ -235,6 +254,7 @@ public class ExecutableManager {
                     executableDao.updateJobOutput(executableOutputPO);
                 }
             }
+            reloadReadyJobIds();
         } catch (PersistentException e) {
             logger.error("error reset job status from RUNNING to READY", e);
             throw new RuntimeException(e);
@@ -290,6 +310,13 @@ public class ExecutableManager {
             }
             executableDao.updateJobOutput(jobOutput);
             logger.info("job id:" + jobId + " from " + oldStatus + " to " + newStatus);
+            if (newStatus != null && oldStatus != newStatus) {
+                if (newStatus == ExecutableState.READY) {
+                    markReady(jobId, true);
+                } else {
+                    unmarkReady(jobId);
+                }
+            }
         } catch (PersistentException e) {
             logger.error("error change job:" + jobId + " to " + newStatus.toString());
             throw new RuntimeException(e);
@@ -306,11 +333,109 @@ public class ExecutableManager {
                 jobOutput.setContent(output);
             }
             executableDao.updateJobOutput(jobOutput);
+            if (state == ExecutableState.READY) {
+                markReady(jobId, true);
+            } else {
+                unmarkReady(jobId);
+            }
+        } catch (PersistentException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void addReadyJobListener(ReadyJobListener listener) {
+        readyJobListeners.add(listener);
+    }
+
+    public void removeReadyJobListener(ReadyJobListener listener) {
+        readyJobListeners.remove(listener);
+    }
+
+    /**
+     * Returns the ids of the top level jobs in READY state. Only the first call scans all jobs, later calls
+     * read the index maintained by the state transitions.
+     */
+    public Set<String> getReadyJobIds() {
+        Set<String> ids = readyJobIds;
+        if (ids == null) {
+            ids = reloadReadyJobIds();
+        }
+        return Sets.newHashSet(ids);
+    }
+
+    /**
+     * Rebuilds the READY job index with one scan of the job ids and one of the job outputs. This is the safety
+     * net for state changes made without going through any ExecutableManager, e.g. metadata restored by hand.
+     */
+    public Set<String> reloadReadyJobIds() {
+        try {
+            Set<String> jobIds = Sets.newHashSet(executableDao.getJobIds());
+            Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            for (ExecutableOutputPO output : executableDao.getJobOutputs()) {
+                if (jobIds.contains(output.getUuid()) && ExecutableState.READY.toString().equalsIgnoreCase(output.getStatus())) {
+                    ids.add(output.getUuid());
+                }
+            }
+            readyJobIds = ids;
+            logger.info("Loaded " + ids.size() + " ready jobs out of " + jobIds.size());
+            return ids;
         } catch (PersistentException e) {
+            logger.error("error load ready jobs", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Re-reads the state of one job, on a job event broadcast by another node.
+     */
+    public void reloadJobState(String jobId) {
+        if (readyJobIds == null)
+            return;
+        try {
+            ExecutableOutputPO output = executableDao.getJobOutput(jobId);
+            if (ExecutableState.READY.toString().equalsIgnoreCase(output.getStatus())) {
+                // no broadcast here, the event came from one
+                markReady(jobId, false);
+            } else {
+                unmarkReady(jobId);
+            }
+        } catch (PersistentException e) {
+            logger.error("error reload job state:" + jobId, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void markReady(String jobId, boolean broadcast) throws PersistentException {
+        Set<String> ids = readyJobIds;
+        if (ids != null && ids.contains(jobId))
+            return;
+        // outputs of the sub tasks go through here as well, only the top level jobs are scheduled
+        if (executableDao.getJob(jobId) == null)
+            return;
+
+        if (ids != null) {
+            ids.add(jobId);
+        }
+        // the scheduler may run on another node, which keeps its own index
+        if (broadcast) {
+            Broadcaster.getInstance(config).queue(Broadcaster.TYPE.JOB.getType(), Broadcaster.EVENT.UPDATE.getType(), jobId);
+        }
+        for (ReadyJobListener listener : readyJobListeners) {
+            try {
+                listener.onJobReady(jobId);
+            } catch (Exception e) {
+                logger.warn("ReadyJobListener failed on job:" + jobId, e);
+            }
+        }
+    }
+
+    private void unmarkReady(String jobId) {
+        Set<String> ids = readyJobIds;
+        if (ids != null) {
+            ids.remove(jobId);
+        }
+    }
+
     public void addJobInfo(String id, Map<String, String> info) {
         if (info == null) {
             return;
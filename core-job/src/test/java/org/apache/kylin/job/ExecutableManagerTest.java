@@ -37,6 +37,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Sets;
+
 /**
  */
 public class ExecutableManagerTest extends LocalFileMetadataTestCase {
@@ -105,6 +107,32 @@ public class ExecutableManagerTest extends LocalFileMetadataTestCase {
         service.updateJobOutput(id, ExecutableState.SUCCEED, null, null);
     }
 
+    @Test
+    public void testReadyJobIds() throws Exception {
+        assertTrue(service.getReadyJobIds().isEmpty());
+
+        DefaultChainedExecutable job = new DefaultChainedExecutable();
+        job.addTask(new SucceedTestExecutable());
+        service.addJob(job);
+        String id = job.getId();
+        // only the top level job, not its task
+        assertEquals(Sets.newHashSet(id), service.getReadyJobIds());
+
+        service.updateJobOutput(id, ExecutableState.RUNNING, null, null);
+        service.updateJobOutput(job.getTasks().get(0).getId(), ExecutableState.RUNNING, null, null);
+        assertTrue(service.getReadyJobIds().isEmpty());
+
+        service.updateJobOutput(job.getTasks().get(0).getId(), ExecutableState.ERROR, null, null);
+        service.updateJobOutput(id, ExecutableState.ERROR, null, null);
+        service.resumeJob(id);
+        assertEquals(Sets.newHashSet(id), service.getReadyJobIds());
+        assertEquals(service.getReadyJobIds(), service.reloadReadyJobIds());
+
+        service.discardJob(id);
+        assertTrue(service.getReadyJobIds().isEmpty());
+        assertTrue(service.reloadReadyJobIds().isEmpty());
+    }
+
     @Test(expected = IllegalStateTranferException.class)
     public void testInvalidStateTransfer() {
         SucceedTestExecutable job = new SucceedTestExecutable();
@@ -75,6 +75,10 @@ public class BufferedMeasureEncoder {
         buf = ByteBuffer.allocate(size);
     }
 
+    public MeasureDecoder getDecoder() {
+        return codec;
+    }
+
     public void decode(ByteBuffer buf, Object[] result) {
         codec.decode(buf, result);
     }
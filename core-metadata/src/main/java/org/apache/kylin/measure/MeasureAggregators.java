@@ -19,10 +19,13 @@
 package org.apache.kylin.measure;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.kylin.measure.basic.PrimitiveAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.MeasureDesc;
 
@@ -34,6 +37,10 @@ public class MeasureAggregators implements Serializable {
     private final MeasureAggregator[] aggs;
     private final int descLength;
 
+    // aggregators taking serialized input from the decoder last seen, see aggregate(ByteBuffer, MeasureDecoder, boolean[])
+    private transient MeasureDecoder primitiveDecoder;
+    private transient PrimitiveAggregator[] primitiveAggs;
+
     public MeasureAggregators(MeasureAggregator... aggs) {
         this.descLength = aggs.length;
         this.aggs = aggs;
@@ -87,6 +94,35 @@ public class MeasureAggregators implements Serializable {
         }
     }
 
+    /**
+     * Aggregate a row of measures as serialized by the given decoder, the buffer position is moved past the row.
+     * Basic measures read their bytes in place, others are decoded as usual. A null aggrMask aggregates all.
+     */
+    public void aggregate(ByteBuffer buf, MeasureDecoder decoder, boolean[] aggrMask) {
+        assert decoder.nMeasures == descLength;
+
+        if (primitiveDecoder != decoder) {
+            primitiveAggs = new PrimitiveAggregator[descLength];
+            for (int i = 0; i < descLength; i++) {
+                if (aggs[i] instanceof PrimitiveAggregator && ((PrimitiveAggregator) aggs[i]).acceptsSerializer(decoder.serializers[i]))
+                    primitiveAggs[i] = (PrimitiveAggregator) aggs[i];
+            }
+            primitiveDecoder = decoder;
+        }
+
+        for (int i = 0; i < descLength; i++) {
+            DataTypeSerializer serializer = decoder.serializers[i];
+            if (aggrMask != null && !aggrMask[i]) {
+                buf.position(buf.position() + serializer.peekLength(buf));
+            } else if (primitiveAggs[i] != null) {
+                primitiveAggs[i].aggregateSerialized(buf.array(), buf.arrayOffset() + buf.position());
+                buf.position(buf.position() + serializer.peekLength(buf));
+            } else {
+                aggs[i].aggregate(serializer.deserialize(buf));
+            }
+        }
+    }
+
     public void collectStates(Object[] states) {
         for (int i = 0; i < descLength; i++) {
             states[i] = aggs[i].getState();
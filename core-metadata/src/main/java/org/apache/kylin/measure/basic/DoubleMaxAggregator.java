@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class DoubleMaxAggregator extends MeasureAggregator<DoubleMutable> {
+public class DoubleMaxAggregator extends MeasureAggregator<DoubleMutable> implements PrimitiveAggregator {
 
     DoubleMutable max = null;
 
@@ -41,6 +43,20 @@ public class DoubleMaxAggregator extends MeasureAggregator<DoubleMutable> {
             max.set(value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == DoubleSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        double v = DoubleSerializer.readDouble(bytes, offset);
+        if (max == null)
+            max = new DoubleMutable(v);
+        else if (max.get() < v)
+            max.set(v);
+    }
+
     @Override
     public DoubleMutable getState() {
         return max;
@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class DoubleMinAggregator extends MeasureAggregator<DoubleMutable> {
+public class DoubleMinAggregator extends MeasureAggregator<DoubleMutable> implements PrimitiveAggregator {
 
     DoubleMutable min = null;
 
@@ -41,6 +43,20 @@ public class DoubleMinAggregator extends MeasureAggregator<DoubleMutable> {
             min.set(value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == DoubleSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        double v = DoubleSerializer.readDouble(bytes, offset);
+        if (min == null)
+            min = new DoubleMutable(v);
+        else if (min.get() > v)
+            min.set(v);
+    }
+
     @Override
     public DoubleMutable getState() {
         return min;
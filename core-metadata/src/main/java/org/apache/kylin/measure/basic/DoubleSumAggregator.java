@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class DoubleSumAggregator extends MeasureAggregator<DoubleMutable> {
+public class DoubleSumAggregator extends MeasureAggregator<DoubleMutable> implements PrimitiveAggregator {
 
     DoubleMutable sum = new DoubleMutable();
 
@@ -38,6 +40,16 @@ public class DoubleSumAggregator extends MeasureAggregator<DoubleMutable> {
         sum.set(sum.get() + value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == DoubleSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        sum.set(sum.get() + DoubleSerializer.readDouble(bytes, offset));
+    }
+
     @Override
     public DoubleMutable getState() {
         return sum;
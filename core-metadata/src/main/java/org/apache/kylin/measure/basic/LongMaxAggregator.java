@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.datatype.LongSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class LongMaxAggregator extends MeasureAggregator<LongMutable> {
+public class LongMaxAggregator extends MeasureAggregator<LongMutable> implements PrimitiveAggregator {
 
     LongMutable max = null;
 
@@ -41,6 +43,20 @@ public class LongMaxAggregator extends MeasureAggregator<LongMutable> {
             max.set(value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == LongSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        long v = LongSerializer.readLong(bytes, offset);
+        if (max == null)
+            max = new LongMutable(v);
+        else if (max.get() < v)
+            max.set(v);
+    }
+
     @Override
     public LongMutable getState() {
         return max;
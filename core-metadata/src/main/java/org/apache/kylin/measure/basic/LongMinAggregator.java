@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.datatype.LongSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class LongMinAggregator extends MeasureAggregator<LongMutable> {
+public class LongMinAggregator extends MeasureAggregator<LongMutable> implements PrimitiveAggregator {
 
     LongMutable min = null;
 
@@ -41,6 +43,20 @@ public class LongMinAggregator extends MeasureAggregator<LongMutable> {
             min.set(value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == LongSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        long v = LongSerializer.readLong(bytes, offset);
+        if (min == null)
+            min = new LongMutable(v);
+        else if (min.get() > v)
+            min.set(v);
+    }
+
     @Override
     public LongMutable getState() {
         return min;
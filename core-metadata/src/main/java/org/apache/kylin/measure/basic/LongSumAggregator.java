@@ -19,12 +19,14 @@
 package org.apache.kylin.measure.basic;
 
 import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.datatype.LongSerializer;
 
 /**
  */
 @SuppressWarnings("serial")
-public class LongSumAggregator extends MeasureAggregator<LongMutable> {
+public class LongSumAggregator extends MeasureAggregator<LongMutable> implements PrimitiveAggregator {
 
     LongMutable sum = new LongMutable();
 
@@ -38,6 +40,16 @@ public class LongSumAggregator extends MeasureAggregator<LongMutable> {
         sum.set(sum.get() + value.get());
     }
 
+    @Override
+    public boolean acceptsSerializer(DataTypeSerializer<?> serializer) {
+        return serializer.getClass() == LongSerializer.class;
+    }
+
+    @Override
+    public void aggregateSerialized(byte[] bytes, int offset) {
+        sum.set(sum.get() + LongSerializer.readLong(bytes, offset));
+    }
+
     @Override
     public LongMutable getState() {
         return sum;
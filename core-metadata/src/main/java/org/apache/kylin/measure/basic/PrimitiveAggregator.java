@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure.basic;
+
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+
+/**
+ * Implemented by the long and double aggregators of basic measures, to take input straight from its serialized
+ * bytes into the primitive state, i.e. without a LongMutable or DoubleMutable decoded per value.
+ */
+public interface PrimitiveAggregator {
+
+    /** whether values written by the given serializer can be passed to {@link #aggregateSerialized(byte[], int)} */
+    boolean acceptsSerializer(DataTypeSerializer<?> serializer);
+
+    /** aggregate the value serialized at the given offset */
+    void aggregateSerialized(byte[] bytes, int offset);
+}
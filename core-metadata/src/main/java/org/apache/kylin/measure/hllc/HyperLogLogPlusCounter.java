@@ -96,6 +96,11 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         add(hashFunc.hashBytes(value, offset, length).asLong());
     }
 
+    /** adds a value by its 64 bits hash, which must be as uniformly distributed as the hash function's */
+    public void addHash(long hash) {
+        add(hash);
+    }
+
     protected void add(long hash) {
         int bucketMask = m - 1;
         int bucket = (int) (hash & bucketMask);
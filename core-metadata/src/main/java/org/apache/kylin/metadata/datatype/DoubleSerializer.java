@@ -20,6 +20,8 @@ package org.apache.kylin.metadata.datatype;
 
 import java.nio.ByteBuffer;
 
+import org.apache.kylin.common.util.BytesUtil;
+
 /**
  */
 public class DoubleSerializer extends DataTypeSerializer<DoubleMutable> {
@@ -51,6 +53,11 @@ public class DoubleSerializer extends DataTypeSerializer<DoubleMutable> {
         return d;
     }
 
+    /** read a value serialized by this class straight from bytes, with no DoubleMutable involved */
+    public static double readDouble(byte[] bytes, int offset) {
+        return Double.longBitsToDouble(BytesUtil.readLong(bytes, offset, 8));
+    }
+
     @Override
     public int peekLength(ByteBuffer in) {
         return 8;
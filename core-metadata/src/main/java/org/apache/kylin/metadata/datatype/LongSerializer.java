@@ -53,6 +53,11 @@ public class LongSerializer extends DataTypeSerializer<LongMutable> {
         return l;
     }
 
+    /** read a value serialized by this class straight from bytes, with no LongMutable involved */
+    public static long readLong(byte[] bytes, int offset) {
+        return BytesUtil.readVLong(bytes, offset);
+    }
+
     @Override
     public int peekLength(ByteBuffer in) {
         int mark = in.position();
@@ -59,8 +59,10 @@ public class CompareTupleFilter extends TupleFilter {
     private CompareTupleFilter(CompareTupleFilter another) {
         super(new ArrayList<TupleFilter>(another.children), another.operator);
         this.column = another.column;
+        this.function = another.function;
         this.conditionValues = new HashSet<Object>();
         this.conditionValues.addAll(another.conditionValues);
+        this.firstCondValue = another.firstCondValue;
         this.dynamicVariables = new HashMap<String, Object>();
         this.dynamicVariables.putAll(another.dynamicVariables);
     }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.measure.basic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.kylin.measure.BufferedMeasureEncoder;
+import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.Test;
+
+public class PrimitiveAggregatorTest {
+
+    final String[] types = { "bigint", "bigint", "bigint", "double", "decimal(19,4)", "double", "double" };
+
+    private MeasureAggregators newAggregators() {
+        return new MeasureAggregators(new LongSumAggregator(), new LongMinAggregator(), new LongMaxAggregator(), //
+                new DoubleSumAggregator(), new BigDecimalSumAggregator(), new DoubleMinAggregator(), new DoubleMaxAggregator());
+    }
+
+    @Test
+    public void testAggregateSerialized() {
+        BufferedMeasureEncoder codec = new BufferedMeasureEncoder(types);
+        MeasureAggregators decoded = newAggregators();
+        MeasureAggregators serialized = newAggregators();
+        boolean[] mask = new boolean[] { true, true, true, true, true, false, true };
+        MeasureAggregators decodedMasked = newAggregators();
+        MeasureAggregators serializedMasked = newAggregators();
+
+        Random rand = new Random(1);
+        long[] edges = { 0, -1, 1, 127, -128, Long.MAX_VALUE, Long.MIN_VALUE };
+        Object[] values = new Object[types.length];
+        Object[] input = new Object[types.length];
+        for (int i = 0; i < 1000; i++) {
+            long l = i < edges.length ? edges[i] : rand.nextLong() >> rand.nextInt(64);
+            double d = rand.nextGaussian() * 1000;
+            values[0] = new LongMutable(l >> 8); // keep the sum from overflow
+            values[1] = new LongMutable(l);
+            values[2] = new LongMutable(l);
+            values[3] = new DoubleMutable(d);
+            values[4] = new BigDecimal(l % 100000);
+            values[5] = new DoubleMutable(-d);
+            values[6] = new DoubleMutable(d);
+
+            ByteBuffer buf = codec.encode(values);
+            byte[] bytes = new byte[buf.position() + 3];
+            System.arraycopy(buf.array(), 0, bytes, 3, buf.position());
+
+            // an offset and an array longer than the row, like a reused writable
+            codec.decode(ByteBuffer.wrap(bytes, 3, bytes.length - 3), input);
+            decoded.aggregate(input);
+            decodedMasked.aggregate(input, mask);
+
+            ByteBuffer in = ByteBuffer.wrap(bytes, 3, bytes.length - 3);
+            serialized.aggregate(in, codec.getDecoder(), null);
+            assertEquals(bytes.length, in.position());
+            in = ByteBuffer.wrap(bytes, 3, bytes.length - 3).slice();
+            serializedMasked.aggregate(in, codec.getDecoder(), mask);
+            assertEquals(bytes.length - 3, in.position());
+        }
+
+        assertArrayEquals(states(decoded), states(serialized));
+        assertArrayEquals(states(decodedMasked), states(serializedMasked));
+        assertEquals(Long.MIN_VALUE, ((LongMutable) states(serialized)[1]).get());
+        assertEquals(Long.MAX_VALUE, ((LongMutable) states(serialized)[2]).get());
+    }
+
+    @Test
+    public void testAcceptsSerializer() {
+        assertTrue(new LongSumAggregator().acceptsSerializer(DataTypeSerializer.create("bigint")));
+        assertTrue(new LongMinAggregator().acceptsSerializer(DataTypeSerializer.create("integer")));
+        assertTrue(new DoubleMaxAggregator().acceptsSerializer(DataTypeSerializer.create("double")));
+        // same LongMutable values, different byte layout
+        assertFalse(new LongMaxAggregator().acceptsSerializer(DataTypeSerializer.create("timestamp")));
+        assertFalse(new LongSumAggregator().acceptsSerializer(DataTypeSerializer.create("double")));
+        assertFalse(new DoubleSumAggregator().acceptsSerializer(DataTypeSerializer.create(DataType.getType("bigint"))));
+    }
+
+    private Object[] states(MeasureAggregators aggrs) {
+        Object[] states = new Object[types.length];
+        aggrs.collectStates(states);
+        return states;
+    }
+}
@@ -18,10 +18,16 @@
 
 package org.apache.kylin.storage;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.metadata.model.FunctionDesc;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 
 /**
@@ -35,7 +41,8 @@ public class StorageContext {
     private int threshold;
     private int limit;
     private int offset;
-    private boolean hasSort;
+    private boolean hasLimit;
+    private int sortColumnCount;
     private boolean acceptPartialResult;
 
     private boolean exactAggregation;
@@ -43,18 +50,29 @@ public class StorageContext {
     private boolean enableLimit;
     private boolean enableCoprocessor;
 
+    private FunctionDesc topNMetric;
+    private boolean topNDescending;
+    private int topN;
+
     private AtomicLong totalScanCount;
     private Cuboid cuboid;
     private boolean partialResultReturned;
 
     private Range<Long> reusedPeriod;
 
+    // segments visible to the storage query, the result depends on them
+    private List<CubeSegment> queriedSegments = Lists.newArrayList();
+
+    // segment name -> [cuboid scanned, estimated rows of the cuboid or -1]
+    private Map<String, long[]> segmentCuboids = Maps.newLinkedHashMap();
+
     public StorageContext() {
         this.threshold = DEFAULT_THRESHOLD;
         this.limit = DEFAULT_THRESHOLD;
         this.totalScanCount = new AtomicLong();
         this.cuboid = null;
-        this.hasSort = false;
+        this.hasLimit = false;
+        this.sortColumnCount = 0;
 
         this.exactAggregation = false;
         this.enableLimit = false;
@@ -86,6 +104,11 @@ public class StorageContext {
 
     public void setLimit(int l) {
         this.limit = l;
+        this.hasLimit = true;
+    }
+
+    public boolean hasLimit() {
+        return hasLimit;
     }
 
     public int getOffset() {
@@ -105,11 +128,37 @@ public class StorageContext {
     }
 
     public void markSort() {
-        this.hasSort = true;
+        this.sortColumnCount++;
     }
 
     public boolean hasSort() {
-        return this.hasSort;
+        return this.sortColumnCount > 0;
+    }
+
+    public int getSortColumnCount() {
+        return sortColumnCount;
+    }
+
+    public void enableTopN(FunctionDesc metric, boolean descending, int n) {
+        this.topNMetric = metric;
+        this.topNDescending = descending;
+        this.topN = n;
+    }
+
+    public boolean isTopNEnabled() {
+        return topNMetric != null && topN > 0;
+    }
+
+    public FunctionDesc getTopNMetric() {
+        return topNMetric;
+    }
+
+    public boolean isTopNDescending() {
+        return topNDescending;
+    }
+
+    public int getTopN() {
+        return topN;
     }
 
     public void setCuboid(Cuboid c) {
@@ -175,4 +224,20 @@ public class StorageContext {
     public void setReusedPeriod(Range<Long> reusedPeriod) {
         this.reusedPeriod = reusedPeriod;
     }
+
+    public void addQueriedSegments(List<CubeSegment> segments) {
+        this.queriedSegments.addAll(segments);
+    }
+
+    public List<CubeSegment> getQueriedSegments() {
+        return queriedSegments;
+    }
+
+    public void addSegmentCuboid(CubeSegment segment, Cuboid cuboid, long estimatedRows) {
+        this.segmentCuboids.put(segment.getName(), new long[] { cuboid.getId(), estimatedRows });
+    }
+
+    public Map<String, long[]> getSegmentCuboids() {
+        return segmentCuboids;
+    }
 }
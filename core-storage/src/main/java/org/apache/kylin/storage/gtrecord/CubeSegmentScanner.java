@@ -53,6 +53,14 @@ public class CubeSegmentScanner implements IGTScanner {
 
     public CubeSegmentScanner(CubeSegment cubeSeg, Cuboid cuboid, Set<TblColRef> dimensions, Set<TblColRef> groups, //
             Collection<FunctionDesc> metrics, TupleFilter filter, StorageContext context, String gtStorage) {
+        this(cubeSeg, cuboid, dimensions, groups, metrics, filter, context, gtStorage, false);
+    }
+
+    /**
+     * @param lazy if true, the storage is visited at the first {@link #iterator()} call instead of now
+     */
+    public CubeSegmentScanner(CubeSegment cubeSeg, Cuboid cuboid, Set<TblColRef> dimensions, Set<TblColRef> groups, //
+            Collection<FunctionDesc> metrics, TupleFilter filter, StorageContext context, String gtStorage, boolean lazy) {
         this.cuboid = cuboid;
         this.cubeSeg = cubeSeg;
 
@@ -73,8 +81,13 @@ public class CubeSegmentScanner implements IGTScanner {
             scanRequest.setAggrCacheGB(cubeSeg.getCubeInstance().getConfig().getQueryCoprocessorMemGB());
             if (context.isLimitEnabled())
                 scanRequest.setRowLimit(context.getLimit());
+            if (context.isTopNEnabled()) {
+                int column = cuboid.getCuboidToGridTableMapping().getIndexOf(context.getTopNMetric());
+                if (column >= 0)
+                    scanRequest.setTopN(column, context.isTopNDescending(), context.getTopN());
+            }
         }
-        scanner = new ScannerWorker(cubeSeg, cuboid, scanRequest, gtStorage);
+        scanner = new ScannerWorker(cubeSeg, cuboid, scanRequest, gtStorage, lazy);
     }
 
     @Override
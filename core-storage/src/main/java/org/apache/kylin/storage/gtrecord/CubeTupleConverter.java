@@ -18,12 +18,14 @@
 
 package org.apache.kylin.storage.gtrecord;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
@@ -31,6 +33,7 @@ import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.gridtable.CuboidToGridTableMapping;
 import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
 import org.apache.kylin.dict.lookup.LookupStringTable;
+import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.measure.MeasureType;
 import org.apache.kylin.measure.MeasureType.IAdvMeasureFiller;
@@ -61,6 +64,7 @@ public class CubeTupleConverter {
     final List<Integer> advMeasureIndexInGTValues;
 
     final int nSelectedDims;
+    final DimensionValueCache[] dimValueCaches;
 
     public CubeTupleConverter(CubeSegment cubeSeg, Cuboid cuboid, //
             Set<TblColRef> selectedDimensions, Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo) {
@@ -86,10 +90,12 @@ public class CubeTupleConverter {
         int iii = 0;
 
         // pre-calculate dimension index mapping to tuple
+        dimValueCaches = new DimensionValueCache[nSelectedDims];
         for (TblColRef dim : selectedDimensions) {
             int i = mapping.getIndexOf(dim);
             gtColIdx[iii] = i;
             tupleIdx[iii] = tupleInfo.hasColumn(dim) ? tupleInfo.getColumnIndex(dim) : -1;
+            dimValueCaches[iii] = new DimensionValueCache(i);
             iii++;
         }
 
@@ -142,18 +148,21 @@ public class CubeTupleConverter {
 
     public List<IAdvMeasureFiller> translateResult(GTRecord record, Tuple tuple) {
 
-        record.getValues(gtColIdx, gtValues);
-
-        // dimensions
+        // dimensions, each distinct value is decoded only once
         for (int i = 0; i < nSelectedDims; i++) {
+            gtValues[i] = dimValueCaches[i].decode(record);
             int ti = tupleIdx[i];
             if (ti >= 0) {
-                tuple.setDimensionValue(ti, toString(gtValues[i]));
+                tuple.setDimensionValue(ti, (String) gtValues[i]);
             }
         }
 
         // measures
+        GTInfo info = record.getInfo();
         for (int i = nSelectedDims; i < gtColIdx.length; i++) {
+            int c = gtColIdx[i];
+            ByteArray bytes = record.get(c);
+            gtValues[i] = bytes.array() == null ? null : info.getCodeSystem().decodeColumnValue(c, bytes.asBuffer());
             int ti = tupleIdx[i];
             if (ti >= 0 && measureTypes[i] != null) {
                 measureTypes[i].fillTupleSimply(tuple, ti, gtValues[i]);
@@ -177,6 +186,48 @@ public class CubeTupleConverter {
         }
     }
 
+    /**
+     * Decoded values of one dimension by their encoded bytes. Rows of a result repeat a few dimension values
+     * many times, this saves the dictionary lookup and the string creation for all but the first time.
+     * The decoding is a function of the bytes within one segment, so is the cache.
+     */
+    static class DimensionValueCache {
+        // a high cardinality column stops being cached at this size, the hit rate would be poor anyway
+        static final int MAX_ENTRIES = 10000;
+
+        // stands for a value that decodes to null, so a null lookup is cached like any other
+        private static final Object NULL = new Object();
+
+        final int column;
+        final HashMap<ByteArray, Object> values = new HashMap<ByteArray, Object>();
+        int hits;
+        int misses;
+
+        DimensionValueCache(int column) {
+            this.column = column;
+        }
+
+        String decode(GTRecord record) {
+            ByteArray bytes = record.get(column);
+            if (bytes.array() == null)
+                return null;
+
+            Object value = values.get(bytes);
+            if (value != null) {
+                hits++;
+                return value == NULL ? null : (String) value;
+            }
+
+            misses++;
+            String decoded = CubeTupleConverter.toString(record.getInfo().getCodeSystem().decodeColumnValue(column, bytes.asBuffer()));
+            // the record's bytes are reused for the next row, so the key is a copy
+            if (values.size() < MAX_ENTRIES) {
+                values.put(bytes.copy(), decoded == null ? NULL : decoded);
+            }
+            return decoded;
+        }
+    }
+
     private interface IDerivedColumnFiller {
         public void fillDerivedColumns(Object[] gtValues, Tuple tuple);
     }
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.kylin.common.util.Pair;
@@ -29,6 +30,7 @@ import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.cuboid.CuboidCostSelector;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
 import org.apache.kylin.dict.lookup.LookupStringTable;
@@ -108,9 +110,17 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
 
         setThreshold(dimensionsD, metrics, context); // set cautious threshold to prevent out of memory
         setLimit(filter, context);
+        setTopN(filter, sqlDigest, metrics, context);
+
+        List<CubeSegment> readySegments = cubeInstance.getSegments(SegmentStatusEnum.READY);
+        context.addQueriedSegments(readySegments);
+
+        // scanned in parallel, the segments start their RPCs only when a worker picks them up
+        int parallelism = cubeInstance.getConfig().getQuerySegmentScanParallelism();
+        boolean parallel = parallelism > 1 && readySegments.size() > 1;
 
         List<CubeSegmentScanner> scanners = Lists.newArrayList();
-        for (CubeSegment cubeSeg : cubeInstance.getSegments(SegmentStatusEnum.READY)) {
+        for (CubeSegment cubeSeg : readySegments) {
             CubeSegmentScanner scanner;
             if (cubeSeg.getInputRecords() == 0) {
                 if (!skipZeroInputSegment(cubeSeg)) {
@@ -120,13 +130,17 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
                     continue;
                 }
             }
-            scanner = new CubeSegmentScanner(cubeSeg, cuboid, dimensionsD, groupsD, metrics, filterD, context, getGTStorage());
+            Cuboid segCuboid = selectCuboid(cubeSeg, cuboid, context);
+            scanner = new CubeSegmentScanner(cubeSeg, segCuboid, dimensionsD, groupsD, metrics, filterD, context, getGTStorage(), parallel);
             scanners.add(scanner);
         }
 
         if (scanners.isEmpty())
             return ITupleIterator.EMPTY_TUPLE_ITERATOR;
 
+        if (parallel && scanners.size() > 1) {
+            return new ParallelCubeTupleIterator(scanners, cuboid, dimensionsD, metrics, returnTupleInfo, context, parallelism, cubeInstance.getConfig().getQuerySegmentScanBufferSize());
+        }
         return new SequentialCubeTupleIterator(scanners, cuboid, dimensionsD, metrics, returnTupleInfo, context);
     }
 
@@ -134,6 +148,28 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
         return false;
     }
 
+    /** the estimated row count of each cuboid built in the segment, null if unavailable */
+    protected Map<Long, Long> getCuboidRowEstimates(CubeSegment cubeSegment) {
+        return null;
+    }
+
+    private Cuboid selectCuboid(CubeSegment cubeSeg, Cuboid cuboid, StorageContext context) {
+        Cuboid selected = cuboid;
+        Map<Long, Long> rowEstimates = null;
+        // a cuboid needing no post aggregation is the cheapest already, skip loading the statistics
+        if (cuboid.requirePostAggregation() && cubeInstance.getConfig().isQueryCostBasedCuboidSelectionEnabled()) {
+            rowEstimates = getCuboidRowEstimates(cubeSeg);
+            selected = CuboidCostSelector.select(cuboid, rowEstimates);
+        }
+
+        long estimatedRows = CuboidCostSelector.estimateRows(selected, rowEstimates);
+        if (selected != cuboid) {
+            logger.info("Segment {} scans cuboid {} of estimated {} rows instead of cuboid {} of estimated {} rows", cubeSeg, selected.getId(), estimatedRows, cuboid.getId(), CuboidCostSelector.estimateRows(cuboid, rowEstimates));
+        }
+        context.addSegmentCuboid(cubeSeg, selected, estimatedRows);
+        return selected;
+    }
+
     protected abstract String getGTStorage();
 
     private void buildDimensionsAndMetrics(SQLDigest sqlDigest, Collection<TblColRef> dimensions, Collection<FunctionDesc> metrics) {
@@ -382,6 +418,39 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
         }
     }
 
+    private void setTopN(TupleFilter filter, SQLDigest sqlDigest, Collection<FunctionDesc> metrics, StorageContext context) {
+        String mode = cubeInstance.getConfig().getQueryTopNPushDownMode();
+        if ("off".equalsIgnoreCase(mode))
+            return;
+
+        // ordered by exactly one measure, and the limit is not blocked by having clause
+        if (!context.hasLimit() || context.getSortColumnCount() != 1 || sqlDigest.sortMeasures == null || sqlDigest.sortMeasures.size() != 1)
+            return;
+
+        // records dropped by storage must not be needed by a later filter
+        boolean goodFilter = filter == null || (TupleFilter.isEvaluableRecursively(filter) && context.isCoprocessorEnabled());
+        if (!goodFilter)
+            return;
+
+        FunctionDesc func = sqlDigest.sortMeasures.iterator().next().getFunction();
+        if (!metrics.contains(func) || !(func.isSum() || func.isCount() || func.isMin() || func.isMax()) || !func.getReturnDataType().isNumberFamily())
+            return;
+
+        long n = (long) context.getLimit() + context.getOffset();
+        if (!context.isExactAggregation()) {
+            // groups may span regions and segments, per region top-k is a good guess but not guaranteed
+            if (!"approximate".equalsIgnoreCase(mode))
+                return;
+            n *= Math.max(1, cubeInstance.getConfig().getQueryTopNPushDownCandidateFactor());
+        }
+        if (n <= 0 || n >= context.getThreshold())
+            return;
+
+        boolean descending = sqlDigest.sortOrders.iterator().next() == SQLDigest.OrderEnum.DESCENDING;
+        logger.info("Enable top " + n + " on " + func + (descending ? " desc" : " asc") + ", exact=" + context.isExactAggregation());
+        context.enableTopN(func, descending, (int) n);
+    }
+
     private void notifyBeforeStorageQuery(SQLDigest sqlDigest) {
         for (MeasureDesc measure : cubeDesc.getMeasures()) {
             MeasureType<?> measureType = measure.getFunction().getMeasureType();
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.TupleInfo;
+import org.apache.kylin.storage.StorageContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drains up to a given number of segment scanners concurrently and merges their records through a bounded buffer.
+ * Records of different segments are interleaved, while records of one segment keep their order. Tuple translation
+ * and limit/threshold accounting remain on the calling thread just like in SequentialCubeTupleIterator.
+ *
+ * The scanners are expected to be lazy, so a segment starts its storage RPCs only when a worker picks it up. The
+ * workers of all queries run on one pool of kylin.query.segment.scan.threads.max threads.
+ */
+public class ParallelCubeTupleIterator extends SequentialCubeTupleIterator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCubeTupleIterator.class);
+
+    private static ThreadPoolExecutor executorService = null;
+
+    private static synchronized ThreadPoolExecutor getExecutorService() {
+        if (executorService == null) {
+            int maxThreads = KylinConfig.getInstanceFromEnv().getQuerySegmentScanMaxThreads();
+            executorService = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+            executorService.allowCoreThreadTimeOut(true);
+            logger.info("Segment scan pool created with {} threads", maxThreads);
+        }
+        return executorService;
+    }
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final ConcurrentLinkedQueue<CubeSegmentScanner> pendingScanners;
+    private final BlockingQueue<SegmentRecord> buffer;
+    private final Map<CubeSegmentScanner, CubeTupleConverter> converters = new IdentityHashMap<CubeSegmentScanner, CubeTupleConverter>();
+    private final int workerCount;
+
+    // thread local states of the query, for the workers that start the storage RPCs
+    private final Map<String, String> toggles;
+    private final QueryContext queryContext;
+
+    private int finishedWorkers = 0;
+    private SegmentRecord lastRecord = null;
+    private volatile boolean closed = false;
+    private volatile Throwable workerException = null;
+
+    public ParallelCubeTupleIterator(List<CubeSegmentScanner> scanners, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
+            Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context, int parallelism, int bufferSize) {
+        super(Collections.<CubeSegmentScanner> emptyList(), cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context);
+
+        this.pendingScanners = new ConcurrentLinkedQueue<CubeSegmentScanner>(scanners);
+        this.buffer = new ArrayBlockingQueue<SegmentRecord>(Math.max(bufferSize, 1));
+        this.workerCount = Math.max(1, Math.min(parallelism, scanners.size()));
+        this.toggles = BackdoorToggles.getToggles();
+        this.queryContext = QueryContext.current();
+
+        logger.info("Scanning {} segments with {} parallel workers, buffer size {}", scanners.size(), workerCount, bufferSize);
+        ThreadPoolExecutor executor = getExecutorService();
+        for (int i = 0; i < workerCount; i++) {
+            executor.execute(new SegmentWorker());
+        }
+    }
+
+    @Override
+    protected GTRecord nextRecord() {
+        // like the scanners do in sequential scan, the record returned last time is reused
+        if (lastRecord != null) {
+            lastRecord.recycle();
+            lastRecord = null;
+        }
+
+        try {
+            while (finishedWorkers < workerCount) {
+                SegmentRecord r = buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                checkWorkerException();
+                if (r == null)
+                    continue;
+
+                if (r == SegmentRecord.WORKER_DONE) {
+                    finishedWorkers++;
+                    continue;
+                }
+
+                curTupleConverter = converters.get(r.scanner);
+                if (curTupleConverter == null) {
+                    curTupleConverter = newTupleConverter(r.scanner);
+                    converters.put(r.scanner, curTupleConverter);
+                }
+                lastRecord = r;
+                return r.record;
+            }
+            checkWorkerException();
+            return null;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted when waiting for segment records", e);
+        }
+    }
+
+    private void checkWorkerException() {
+        if (workerException != null)
+            throw new RuntimeException("Error when scanning cube segments in parallel", workerException);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+
+        // stop workers at their next record, and close the scanners never started
+        closed = true;
+        buffer.clear();
+        closePendingScanners();
+    }
+
+    private void closePendingScanners() {
+        CubeSegmentScanner scanner;
+        while ((scanner = pendingScanners.poll()) != null) {
+            close(scanner);
+        }
+    }
+
+    private class SegmentWorker implements Runnable {
+
+        @Override
+        public void run() {
+            BackdoorToggles.setToggles(toggles);
+            QueryContext.set(queryContext);
+            try {
+                CubeSegmentScanner scanner;
+                while (!closed && (scanner = pendingScanners.poll()) != null) {
+                    try {
+                        scan(scanner);
+                    } finally {
+                        close(scanner);
+                    }
+                }
+            } catch (Throwable ex) {
+                workerException = ex;
+                // one failure fails the query, stop the other workers and start no more segments
+                closed = true;
+                closePendingScanners();
+                logger.error("Error when scanning segment", ex);
+            } finally {
+                offer(SegmentRecord.WORKER_DONE);
+                BackdoorToggles.cleanToggles();
+                QueryContext.reset();
+            }
+        }
+
+        private void scan(CubeSegmentScanner scanner) {
+            // do not start the RPCs if the query is closed meanwhile
+            if (closed)
+                return;
+
+            // the records of a segment go back to its pool once consumed, at most buffer size + 2 of them exist
+            Queue<SegmentRecord> pool = new ConcurrentLinkedQueue<SegmentRecord>();
+            Iterator<GTRecord> iterator = scanner.iterator();
+            while (!closed && iterator.hasNext()) {
+                // the underlying iterator reuses its record, so a copy must be handed over
+                GTRecord record = iterator.next();
+                SegmentRecord r = pool.poll();
+                if (r == null)
+                    r = new SegmentRecord(scanner, new GTRecord(record.getInfo()), pool);
+                r.record.copyFrom(record);
+                if (!offer(r))
+                    return;
+            }
+        }
+
+        private boolean offer(SegmentRecord r) {
+            try {
+                while (!closed) {
+                    if (buffer.offer(r, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+                        return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    private static class SegmentRecord {
+        static final SegmentRecord WORKER_DONE = new SegmentRecord(null, null, null);
+
+        final CubeSegmentScanner scanner;
+        final GTRecord record;
+        final Queue<SegmentRecord> pool;
+
+        SegmentRecord(CubeSegmentScanner scanner, GTRecord record, Queue<SegmentRecord> pool) {
+            this.scanner = scanner;
+            this.record = record;
+            this.pool = pool;
+        }
+
+        void recycle() {
+            pool.offer(this);
+        }
+    }
+}
@@ -93,28 +93,9 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         }
 
         // get the next GTRecord
-        if (curScanner == null) {
-            if (scannerIterator.hasNext()) {
-                curScanner = scannerIterator.next();
-                curRecordIterator = curScanner.iterator();
-                if (curRecordIterator.hasNext()) {
-                    //if the segment does not has any tuples, don't bother to create a converter
-                    curTupleConverter = new CubeTupleConverter(curScanner.cubeSeg, cuboid, selectedDimensions, selectedMetrics, tupleInfo);
-                }
-            } else {
-                return false;
-            }
-        }
-        if (curRecordIterator.hasNext() == false) {
-            close(curScanner);
-            curScanner = null;
-            curRecordIterator = null;
-            curTupleConverter = null;
-            return hasNext();
-        }
-
-        // now we have a GTRecord
-        GTRecord curRecord = curRecordIterator.next();
+        GTRecord curRecord = nextRecord();
+        if (curRecord == null)
+            return false;
 
         // translate into tuple
         advMeasureFillers = curTupleConverter.translateResult(curRecord, tuple);
@@ -140,6 +121,40 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         return hasNext();
     }
 
+    /**
+     * Returns the next GTRecord to be translated, and makes sure curTupleConverter matches the segment
+     * the record comes from. Returns null when all segments are drained.
+     */
+    protected GTRecord nextRecord() {
+        while (true) {
+            if (curScanner == null) {
+                if (scannerIterator.hasNext()) {
+                    curScanner = scannerIterator.next();
+                    curRecordIterator = curScanner.iterator();
+                    if (curRecordIterator.hasNext()) {
+                        //if the segment does not has any tuples, don't bother to create a converter
+                        curTupleConverter = newTupleConverter(curScanner);
+                    }
+                } else {
+                    return null;
+                }
+            }
+
+            if (curRecordIterator.hasNext())
+                return curRecordIterator.next();
+
+            close(curScanner);
+            curScanner = null;
+            curRecordIterator = null;
+            curTupleConverter = null;
+        }
+    }
+
+    protected CubeTupleConverter newTupleConverter(CubeSegmentScanner scanner) {
+        // the cuboid may differ by segment, see GTCubeStorageQueryBase.selectCuboid()
+        return new CubeTupleConverter(scanner.cubeSeg, scanner.cuboid, selectedDimensions, selectedMetrics, tupleInfo);
+    }
+
     private boolean hitLimitAndThreshold() {
         // check limit
         if (context.isLimitEnabled() && scanCount >= context.getLimit() + context.getOffset()) {
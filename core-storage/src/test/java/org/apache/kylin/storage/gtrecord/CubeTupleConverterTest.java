@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.kylin.storage.gtrecord;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.storage.gtrecord.CubeTupleConverter.DimensionValueCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CubeTupleConverterTest {
+
+    private final GTInfo info = UnitTestSupport.basicInfo();
+    // like the real scanners, one record is reused for all rows
+    private final GTRecord record = new GTRecord(info);
+
+    @Test
+    public void testDimensionValueCache() {
+        DimensionValueCache cache = new DimensionValueCache(0);
+
+        Assert.assertEquals("a", decode(cache, "a"));
+        Assert.assertEquals("b", decode(cache, "b"));
+        Assert.assertEquals("a", decode(cache, "a"));
+        Assert.assertEquals("b", decode(cache, "b"));
+        Assert.assertEquals(2, cache.hits);
+        Assert.assertEquals(2, cache.misses);
+    }
+
+    @Test
+    public void testDimensionValueCacheNull() {
+        DimensionValueCache cache = new DimensionValueCache(0);
+
+        // a value that decodes to null is looked up once too
+        Assert.assertNull(decode(cache, null));
+        Assert.assertNull(decode(cache, null));
+        Assert.assertNull(decode(cache, null));
+        Assert.assertEquals("a", decode(cache, "a"));
+        Assert.assertEquals(2, cache.hits);
+        Assert.assertEquals(2, cache.misses);
+    }
+
+    @Test
+    public void testDimensionValueCacheFull() {
+        DimensionValueCache cache = new DimensionValueCache(0);
+
+        for (int i = 0; i < DimensionValueCache.MAX_ENTRIES + 10; i++) {
+            Assert.assertEquals("v" + i, decode(cache, "v" + i));
+        }
+        Assert.assertEquals(DimensionValueCache.MAX_ENTRIES, cache.values.size());
+
+        // past the limit, new values are decoded every time, the cached ones still hit
+        Assert.assertEquals("v" + DimensionValueCache.MAX_ENTRIES, decode(cache, "v" + DimensionValueCache.MAX_ENTRIES));
+        Assert.assertEquals("v0", decode(cache, "v0"));
+        Assert.assertEquals(1, cache.hits);
+        Assert.assertEquals(DimensionValueCache.MAX_ENTRIES + 11, cache.misses);
+    }
+
+    private String decode(DimensionValueCache cache, String value) {
+        record.setValues(new ImmutableBitSet(0), new ByteArray(info.getMaxRecordLength()), value);
+        return cache.decode(record);
+    }
+}
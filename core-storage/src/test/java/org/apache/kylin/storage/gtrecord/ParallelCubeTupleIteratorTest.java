@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStorage;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.TupleInfo;
+import org.apache.kylin.storage.StorageContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class ParallelCubeTupleIteratorTest extends LocalFileMetadataTestCase {
+
+    private static final int ROWS = 500;
+    private static final int FAIL_ROW = 5;
+
+    // state of the mock storage
+    private static final AtomicInteger created = new AtomicInteger();
+    private static final AtomicInteger closed = new AtomicInteger();
+    private static final AtomicInteger open = new AtomicInteger();
+    private static final AtomicInteger maxOpen = new AtomicInteger();
+    private static final List<String> behaviors = Collections.synchronizedList(Lists.<String> newArrayList());
+    private static final AtomicInteger scannersClosed = new AtomicInteger();
+    private static volatile int failScanner = -1;
+    private static volatile CountDownLatch started;
+    private static volatile CountDownLatch failed;
+
+    private CubeSegment segment;
+    private Cuboid cuboid;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        CubeInstance cube = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube("test_kylin_cube_with_slr_ready");
+        segment = cube.getFirstSegment();
+        cuboid = Cuboid.findById(cube.getDescriptor(), Cuboid.getBaseCuboidId(cube.getDescriptor()));
+
+        created.set(0);
+        closed.set(0);
+        open.set(0);
+        maxOpen.set(0);
+        behaviors.clear();
+        scannersClosed.set(0);
+        failScanner = -1;
+        started = new CountDownLatch(2);
+        failed = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() throws Exception {
+        BackdoorToggles.cleanToggles();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        BackdoorToggles.setToggles(Collections.singletonMap(BackdoorToggles.DEBUG_TOGGLE_COPROCESSOR_BEHAVIOR, "RAW_SCAN"));
+        ParallelCubeTupleIterator iterator = newIterator(5, 2, 10);
+
+        Map<Integer, Integer> lastRows = Maps.newHashMap();
+        int count = 0;
+        GTRecord record;
+        while ((record = iterator.nextRecord()) != null) {
+            ByteArray cell = record.get(0);
+            int scanner = Bytes.toInt(cell.array(), cell.offset(), 4);
+            int row = Bytes.toInt(cell.array(), cell.offset() + 4, 4);
+            // rows of one segment keep their order
+            Integer last = lastRows.get(scanner);
+            Assert.assertEquals(last == null ? 0 : last + 1, row);
+            lastRows.put(scanner, row);
+            count++;
+        }
+        iterator.close();
+
+        Assert.assertEquals(5 * ROWS, count);
+        Assert.assertEquals(5, lastRows.size());
+        Assert.assertEquals(5, created.get());
+        Assert.assertEquals(5, closed.get());
+        // no more RPCs at a time than the parallelism, and they run with the toggles of the query
+        Assert.assertTrue(maxOpen.get() <= 2);
+        Assert.assertEquals(Collections.nCopies(5, "RAW_SCAN"), behaviors);
+    }
+
+    @Test
+    public void testError() throws Exception {
+        // the first scanner fails once both have started and before the buffer is full, the other one waits for the failure
+        failScanner = 0;
+        ParallelCubeTupleIterator iterator = newIterator(5, 2, 10);
+
+        // with nobody consuming, the workers stop by themselves and close the scanners never started
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scannersClosed.get() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(5, scannersClosed.get());
+        waitForAllClosed();
+        Assert.assertEquals(2, created.get());
+
+        try {
+            while (iterator.nextRecord() != null) {
+            }
+            Assert.fail("the error of the scanner should be thrown");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("mock failure", e.getCause().getMessage());
+        } finally {
+            iterator.close();
+        }
+        Assert.assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testEarlyClose() throws Exception {
+        ParallelCubeTupleIterator iterator = newIterator(5, 2, 10);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(iterator.nextRecord());
+        }
+        iterator.close();
+
+        // the workers stop at the full buffer, the other segments never visit the storage
+        waitForAllClosed();
+        Assert.assertTrue(created.get() <= 2);
+    }
+
+    private ParallelCubeTupleIterator newIterator(int segments, int parallelism, int bufferSize) {
+        Set<TblColRef> dimensions = Sets.newHashSet(cuboid.getColumns());
+        List<CubeSegmentScanner> scanners = Lists.newArrayList();
+        for (int i = 0; i < segments; i++) {
+            scanners.add(new CubeSegmentScanner(segment, cuboid, dimensions, dimensions, Collections.<FunctionDesc> emptyList(), null, new StorageContext(), MockGTStorage.class.getName(), true) {
+                @Override
+                public void close() throws IOException {
+                    scannersClosed.incrementAndGet();
+                    super.close();
+                }
+            });
+        }
+        Assert.assertEquals(0, created.get());
+
+        return new ParallelCubeTupleIterator(scanners, cuboid, dimensions, Collections.<FunctionDesc> emptySet(), new TupleInfo(), new StorageContext(), parallelism, bufferSize) {
+            @Override
+            protected CubeTupleConverter newTupleConverter(CubeSegmentScanner scanner) {
+                return null;
+            }
+        };
+    }
+
+    private void waitForAllClosed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (closed.get() < created.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(created.get(), closed.get());
+    }
+
+    public static class MockGTStorage implements IGTStorage {
+        private final GTInfo info;
+
+        public MockGTStorage(CubeSegment cubeSeg, Cuboid cuboid, GTInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public IGTScanner getGTScanner(GTScanRequest scanRequest) throws IOException {
+            behaviors.add(BackdoorToggles.getCoprocessorBehavior());
+            final int id = created.getAndIncrement();
+            started.countDown();
+            int n = open.incrementAndGet();
+            while (true) {
+                int max = maxOpen.get();
+                if (n <= max || maxOpen.compareAndSet(max, n))
+                    break;
+            }
+
+            // like the real scanners, one record is reused for all rows
+            final byte[] cell = new byte[8];
+            final GTRecord record = new GTRecord(info);
+            record.set(0, new ByteArray(cell));
+
+            return new IGTScanner() {
+                @Override
+                public Iterator<GTRecord> iterator() {
+                    return new Iterator<GTRecord>() {
+                        int row = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return row < ROWS;
+                        }
+
+                        @Override
+                        public GTRecord next() {
+                            if (id == failScanner && row == FAIL_ROW) {
+                                await(started);
+                                failed.countDown();
+                                throw new IllegalStateException("mock failure");
+                            }
+                            if (failScanner >= 0 && id != failScanner)
+                                await(failed);
+                            Bytes.putInt(cell, 0, id);
+                            Bytes.putInt(cell, 4, row++);
+                            return record;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public void close() throws IOException {
+                    open.decrementAndGet();
+                    closed.incrementAndGet();
+                }
+
+                @Override
+                public GTInfo getInfo() {
+                    return info;
+                }
+
+                @Override
+                public long getScannedRowCount() {
+                    return 0;
+                }
+            };
+        }
+    }
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("timeout");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -21,7 +21,8 @@ package org.apache.kylin.engine.mr;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -54,9 +55,41 @@ public class DFSFileTable implements ReadableTable {
         return delim;
     }
 
+    /**
+     * A directory is read as the merge of its files, each of which is expected to be sorted, e.g. the parts of a
+     * distinct column split over several reducers.
+     */
     @Override
     public TableReader getReader() throws IOException {
-        return new DFSFileTableReader(path, delim, nColumns);
+        FileSystem fs = HadoopUtil.getFileSystem(path);
+        Path p = new Path(HadoopUtil.fixWindowsPath(path));
+        if (!fs.exists(p) || fs.getFileStatus(p).isFile())
+            return new DFSFileTableReader(path, delim, nColumns);
+
+        List<DFSFileTableReader> readers = new ArrayList<>();
+        try {
+            for (FileStatus file : listDataFiles(fs, p)) {
+                readers.add(new DFSFileTableReader(file.getPath().toString(), delim, nColumns));
+            }
+        } catch (IOException e) {
+            for (DFSFileTableReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        return new SortedMergeTableReader(readers);
+    }
+
+    private static List<FileStatus> listDataFiles(FileSystem fs, Path dir) throws IOException {
+        List<FileStatus> result = new ArrayList<>();
+        for (FileStatus file : fs.listStatus(dir)) {
+            String name = file.getPath().getName();
+            // skip markers like _SUCCESS and hidden files like .crc
+            if (file.isFile() && !name.startsWith("_") && !name.startsWith("."))
+                result.add(file);
+        }
+        Collections.sort(result);
+        return result;
     }
 
     @Override
@@ -83,8 +116,8 @@ public class DFSFileTable implements ReadableTable {
         if (status.isFile()) {
             allFiles.add(status);
         } else {
-            FileStatus[] listStatus = fs.listStatus(new Path(path));
-            allFiles.addAll(Arrays.asList(listStatus));
+            // the same files as read, so that a marker or a temp file does not change the signature
+            allFiles.addAll(listDataFiles(fs, new Path(path)));
         }
 
         long size = 0;
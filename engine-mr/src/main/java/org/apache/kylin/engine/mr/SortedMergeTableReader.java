@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.source.ReadableTable.TableReader;
+
+/**
+ * Reads several files of sorted lines as one sorted table, e.g. the parts of a column's distinct values written
+ * by multiple reducers. Lines are compared as UTF-8 bytes, the order the shuffle sorted them in. Only the head
+ * line of each file is held in memory.
+ */
+public class SortedMergeTableReader implements TableReader {
+
+    private final List<DFSFileTableReader> readers;
+    private final PriorityQueue<Head> heap;
+    private Head current;
+
+    public SortedMergeTableReader(List<DFSFileTableReader> readers) throws IOException {
+        this.readers = readers;
+        this.heap = new PriorityQueue<Head>(Math.max(1, readers.size()), new Comparator<Head>() {
+            @Override
+            public int compare(Head o1, Head o2) {
+                return Bytes.compareTo(o1.bytes, o2.bytes);
+            }
+        });
+        for (DFSFileTableReader reader : readers) {
+            advance(reader);
+        }
+    }
+
+    private void advance(DFSFileTableReader reader) throws IOException {
+        if (reader.next()) {
+            heap.offer(new Head(reader, Bytes.toBytes(reader.getLine())));
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (current != null) {
+            advance(current.reader);
+        }
+        current = heap.poll();
+        return current != null;
+    }
+
+    public String getLine() {
+        return current.reader.getLine();
+    }
+
+    @Override
+    public String[] getRow() {
+        return current.reader.getRow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException ex = null;
+        for (DFSFileTableReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                ex = e;
+            }
+        }
+        if (ex != null)
+            throw ex;
+    }
+
+    private static class Head {
+        final DFSFileTableReader reader;
+        final byte[] bytes;
+
+        Head(DFSFileTableReader reader, byte[] bytes) {
+            this.reader = reader;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -51,6 +51,7 @@ import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.kv.CubeDimEncMap;
 import org.apache.kylin.cube.kv.RowKeyEncoder;
 import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.util.CuboidStatsHasher;
 import org.apache.kylin.engine.mr.HadoopUtil;
 import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
 import org.apache.kylin.metadata.datatype.DataType;
@@ -74,6 +75,7 @@ public class CubeStatsReader {
     final CubeSegment seg;
     final int samplingPercentage;
     final double mapperOverlapRatioOfFirstBuild; // only makes sense for the first build, is meaningless after merge
+    final int hashVersion;
     final Map<Long, HyperLogLogPlusCounter> cuboidRowEstimatesHLL;
 
     public CubeStatsReader(CubeSegment cubeSegment, KylinConfig kylinConfig) throws IOException {
@@ -91,6 +93,7 @@ public class CubeStatsReader {
 
             int percentage = 100;
             double mapperOverlapRatio = 0;
+            int version = CuboidStatsHasher.HASH_VERSION_LEGACY;
             Map<Long, HyperLogLogPlusCounter> counterMap = Maps.newHashMap();
 
             LongWritable key = (LongWritable) ReflectionUtils.newInstance(reader.getKeyClass(), hadoopConf);
@@ -100,6 +103,8 @@ public class CubeStatsReader {
                     percentage = Bytes.toInt(value.getBytes());
                 } else if (key.get() == -1) {
                     mapperOverlapRatio = Bytes.toDouble(value.getBytes());
+                } else if (key.get() == CuboidStatsUtil.HASH_VERSION_KEY) {
+                    version = Bytes.toInt(value.getBytes());
                 } else {
                     HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(kylinConfig.getCubeStatsHLLPrecision());
                     ByteArray byteArray = new ByteArray(value.getBytes());
@@ -111,6 +116,7 @@ public class CubeStatsReader {
             this.seg = cubeSegment;
             this.samplingPercentage = percentage;
             this.mapperOverlapRatioOfFirstBuild = mapperOverlapRatio;
+            this.hashVersion = version;
             this.cuboidRowEstimatesHLL = counterMap;
 
         } finally {
@@ -145,6 +151,10 @@ public class CubeStatsReader {
         return mapperOverlapRatioOfFirstBuild;
     }
 
+    public int getHashVersion() {
+        return hashVersion;
+    }
+
     public static Map<Long, Long> getCuboidRowCountMapFromSampling(Map<Long, HyperLogLogPlusCounter> hllcMap, int samplingPercentage) {
         Map<Long, Long> cuboidRowCountMap = Maps.newHashMap();
         for (Map.Entry<Long, HyperLogLogPlusCounter> entry : hllcMap.entrySet()) {
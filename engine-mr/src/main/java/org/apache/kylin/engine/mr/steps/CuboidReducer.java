@@ -53,7 +53,6 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
     private int counter;
     private int cuboidLevel;
     private boolean[] needAggr;
-    private Object[] input;
     private Object[] result;
 
     private Text outputValue = new Text();
@@ -74,7 +73,6 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
         codec = new BufferedMeasureEncoder(measuresDescs);
         aggs = new MeasureAggregators(measuresDescs);
 
-        input = new Object[measuresDescs.size()];
         result = new Object[measuresDescs.size()];
         needAggr = new boolean[measuresDescs.size()];
 
@@ -90,12 +88,7 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
         aggs.reset();
 
         for (Text value : values) {
-            codec.decode(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), input);
-            if (cuboidLevel > 0) {
-                aggs.aggregate(input, needAggr);
-            } else {
-                aggs.aggregate(input);
-            }
+            aggs.aggregate(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), codec.getDecoder(), cuboidLevel > 0 ? needAggr : null);
         }
         aggs.collectStates(result);
 
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers the values a mapper has emitted for each column, so a value repeating on many rows is shuffled
+ * once per mapper rather than once per row. The memory is bounded: a column that uses up its share of the
+ * budget is cleared and starts over, and one that turns out to have barely any repeats (e.g. an ID) is no
+ * longer remembered at all. Values dropped from memory may be emitted again, which the reducer tolerates.
+ */
+public class DistinctValueFilter {
+
+    // measured on a 64-bit JDK 8 with compressed oops: 40 for the String and its char[] header, 36 to 40 for
+    // the HashMap node and its table slot, the chars themselves come on top
+    static final int ENTRY_OVERHEAD_BYTES = 80;
+
+    // a column is given up if less than this fraction of its rows repeat a remembered value
+    static final double MIN_HIT_RATIO = 0.1;
+
+    private final long bytesPerColumn;
+    private final Set<String>[] values;
+    private final long[] usedBytes;
+    private final long[] rows;
+    private final long[] hits;
+    private final boolean[] bypass;
+    private long totalRows;
+    private long totalHits;
+
+    @SuppressWarnings("unchecked")
+    public DistinctValueFilter(int columnCount, long budgetBytes) {
+        this.bytesPerColumn = columnCount == 0 ? 0 : budgetBytes / columnCount;
+        this.values = new Set[columnCount];
+        this.usedBytes = new long[columnCount];
+        this.rows = new long[columnCount];
+        this.hits = new long[columnCount];
+        this.bypass = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = new HashSet<String>();
+            bypass[i] = bytesPerColumn <= 0;
+        }
+    }
+
+    /** return false if the value of the column was emitted before and needs no output again */
+    public boolean isNew(int col, String value) {
+        totalRows++;
+        if (bypass[col])
+            return true;
+
+        rows[col]++;
+        if (values[col].contains(value)) {
+            hits[col]++;
+            totalHits++;
+            return false;
+        }
+
+        values[col].add(value);
+        usedBytes[col] += ENTRY_OVERHEAD_BYTES + 2L * value.length();
+        if (usedBytes[col] > bytesPerColumn) {
+            // full, giving up if remembering has not paid off
+            bypass[col] = hits[col] < rows[col] * MIN_HIT_RATIO;
+            values[col] = new HashSet<String>();
+            usedBytes[col] = 0;
+            rows[col] = 0;
+            hits[col] = 0;
+        }
+        return true;
+    }
+
+    public boolean isBypassed(int col) {
+        return bypass[col];
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    /** the number of outputs saved */
+    public long getTotalHits() {
+        return totalHits;
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.kylin.engine.mr.steps;
 
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Partitioner;
@@ -25,8 +26,9 @@ import org.apache.kylin.common.util.BytesUtil;
 
 /**
  */
-public class FactDistinctColumnPartitioner extends Partitioner<Text, Text> {
+public class FactDistinctColumnPartitioner extends Partitioner<Text, Text> implements Configurable {
     private Configuration conf;
+    private FactDistinctColumnsReducerMapping reducerMapping;
 
     @Override
     public int getPartition(Text key, Text value, int numReduceTasks) {
@@ -36,9 +38,22 @@ public class FactDistinctColumnPartitioner extends Partitioner<Text, Text> {
             return numReduceTasks - 1;
         } else {
             int colIndex = BytesUtil.readUnsigned(key.getBytes(), 0, 1);
-            return colIndex;
+            if (reducerMapping == null)
+                return colIndex;
+            return reducerMapping.getReducerForValue(colIndex, key.getBytes(), 1, key.getLength() - 1);
         }
 
     }
 
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.reducerMapping = FactDistinctColumnsReducerMapping.fromConf(conf);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
 }
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.List;
 
 import org.apache.commons.cli.Options;
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
@@ -37,6 +38,8 @@ import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
 import org.apache.kylin.engine.mr.MRUtil;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.metadata.MetadataConstants;
+import org.apache.kylin.metadata.MetadataManager;
 import org.apache.kylin.metadata.model.SegmentStatusEnum;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.slf4j.Logger;
@@ -99,7 +102,10 @@ public class FactDistinctColumnsJob extends AbstractHadoopJob {
                 System.out.println("Found segment " + segment);
             }
             setupMapper(segment);
-            setupReducer(output, "true".equalsIgnoreCase(statistics_enabled) ? columnsNeedDict.size() + 1 : columnsNeedDict.size());
+            FactDistinctColumnsReducerMapping reducerMapping = new FactDistinctColumnsReducerMapping(getReducersPerColumn(cube, columnsNeedDict));
+            reducerMapping.setToConf(job.getConfiguration());
+            int columnReducers = reducerMapping.getTotalColumnReducers();
+            setupReducer(output, "true".equalsIgnoreCase(statistics_enabled) ? columnReducers + 1 : columnReducers);
 
             attachKylinPropsAndMetadata(cube, job.getConfiguration());
 
@@ -116,6 +122,44 @@ public class FactDistinctColumnsJob extends AbstractHadoopJob {
 
     }
 
+    /**
+     * A column of known high cardinality is split over several reducers, by the cardinality of the source table
+     * column collected when the table was loaded.
+     */
+    private int[] getReducersPerColumn(CubeInstance cube, List<TblColRef> columns) {
+        KylinConfig config = cube.getConfig();
+        long valuesPerReducer = config.getFactDistinctValuesPerReducer();
+        int maxReducers = config.getFactDistinctMaxReducersPerColumn();
+        MetadataManager metaMgr = MetadataManager.getInstance(config);
+
+        int[] result = new int[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            TblColRef col = columns.get(i);
+            long cardinality = getColumnCardinality(metaMgr, col);
+            result[i] = 1;
+            if (valuesPerReducer > 0 && cardinality > valuesPerReducer) {
+                result[i] = (int) Math.max(1, Math.min(maxReducers, (cardinality + valuesPerReducer - 1) / valuesPerReducer));
+                logger.info("Column " + col + " of cardinality " + cardinality + " is split over " + result[i] + " reducers");
+            }
+        }
+        return result;
+    }
+
+    private long getColumnCardinality(MetadataManager metaMgr, TblColRef col) {
+        String cards = metaMgr.getTableDescExd(col.getTable()).get(MetadataConstants.TABLE_EXD_CARDINALITY);
+        if (StringUtils.isBlank(cards))
+            return -1;
+        String[] split = StringUtils.split(cards, ",");
+        int index = col.getColumnDesc().getZeroBasedIndex();
+        if (index < 0 || index >= split.length)
+            return -1;
+        try {
+            return Long.parseLong(split[index].trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private void setupMapper(CubeSegment cubeSeg) throws IOException {
         IMRTableInputFormat flatTableInputFormat = MRUtil.getBatchCubingInputSide(cubeSeg).getFlatTableInputFormat();
         flatTableInputFormat.configureJob(job);
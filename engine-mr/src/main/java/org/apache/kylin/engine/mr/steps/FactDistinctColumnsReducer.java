@@ -64,6 +64,7 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
     private int samplingPercentage;
     private List<ByteArray> colValues;
     private TblColRef col = null;
+    private int colPart = -1; // the part of the column this reducer writes, -1 if the column is not split
     private boolean isStatistics = false;
     private boolean outputTouched = false;
     private KylinConfig cubeConfig;
@@ -95,7 +96,15 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
         } else {
             // col
             isStatistics = false;
-            col = columnList.get(taskId);
+            FactDistinctColumnsReducerMapping reducerMapping = FactDistinctColumnsReducerMapping.fromConf(conf);
+            if (reducerMapping == null)
+                reducerMapping = FactDistinctColumnsReducerMapping.oneReducerPerColumn(columnList.size());
+            int colIndex = reducerMapping.getColumnOfReducer(taskId);
+            col = columnList.get(colIndex);
+            if (reducerMapping.getReducerNumOfColumn(colIndex) > 1) {
+                colPart = reducerMapping.getPartOfReducer(taskId);
+                logger.info("Reducer " + taskId + " takes part " + colPart + " of column " + col);
+            }
             colValues = Lists.newArrayList();
         }
     }
@@ -138,7 +147,8 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
         final Configuration conf = context.getConfiguration();
         final FileSystem fs = FileSystem.get(conf);
         final String outputPath = conf.get(BatchConstants.CFG_OUTPUT_PATH);
-        final Path outputFile = new Path(outputPath, col.getName());
+        // a split column is a directory of sorted parts, merged when the dictionary is built
+        final Path outputFile = colPart < 0 ? new Path(outputPath, col.getName()) : new Path(new Path(outputPath, col.getName()), String.format("part-%05d", colPart));
 
         FSDataOutputStream out = null;
         try {
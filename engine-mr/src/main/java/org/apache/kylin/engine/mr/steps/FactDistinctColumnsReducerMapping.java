@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+
+/**
+ * Which reducers of the fact distinct columns step take which dictionary column. A high cardinality column is
+ * split over several reducers by the hash of its values, so each of them writes a disjoint and sorted part of the
+ * column. The statistics reducer, if any, comes after all column reducers.
+ */
+public class FactDistinctColumnsReducerMapping {
+
+    private final int[] reducerStarts; // reducers of column i are [reducerStarts[i], reducerStarts[i+1])
+
+    public FactDistinctColumnsReducerMapping(int[] reducersPerColumn) {
+        reducerStarts = new int[reducersPerColumn.length + 1];
+        for (int i = 0; i < reducersPerColumn.length; i++) {
+            if (reducersPerColumn[i] < 1)
+                throw new IllegalArgumentException("Column " + i + " must have at least one reducer");
+            reducerStarts[i + 1] = reducerStarts[i] + reducersPerColumn[i];
+        }
+    }
+
+    /** a job configured before column splitting has one reducer per column */
+    public static FactDistinctColumnsReducerMapping oneReducerPerColumn(int nColumns) {
+        int[] reducersPerColumn = new int[nColumns];
+        Arrays.fill(reducersPerColumn, 1);
+        return new FactDistinctColumnsReducerMapping(reducersPerColumn);
+    }
+
+    /** reads the mapping set by the job, or null if it is not set */
+    public static FactDistinctColumnsReducerMapping fromConf(Configuration conf) {
+        String str = conf.get(BatchConstants.CFG_FACT_DISTINCT_COLUMN_REDUCERS);
+        if (StringUtils.isBlank(str))
+            return null;
+
+        String[] split = StringUtils.split(str, ",");
+        int[] reducersPerColumn = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            reducersPerColumn[i] = Integer.parseInt(split[i]);
+        }
+        return new FactDistinctColumnsReducerMapping(reducersPerColumn);
+    }
+
+    public void setToConf(Configuration conf) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < getColumnCount(); i++) {
+            if (i > 0)
+                buf.append(',');
+            buf.append(getReducerNumOfColumn(i));
+        }
+        conf.set(BatchConstants.CFG_FACT_DISTINCT_COLUMN_REDUCERS, buf.toString());
+    }
+
+    public int getColumnCount() {
+        return reducerStarts.length - 1;
+    }
+
+    public int getTotalColumnReducers() {
+        return reducerStarts[reducerStarts.length - 1];
+    }
+
+    public int getReducerNumOfColumn(int col) {
+        return reducerStarts[col + 1] - reducerStarts[col];
+    }
+
+    public int getReducerForValue(int col, byte[] value, int offset, int length) {
+        int n = getReducerNumOfColumn(col);
+        if (n == 1)
+            return reducerStarts[col];
+        return reducerStarts[col] + (Bytes.hashCode(value, offset, length) & Integer.MAX_VALUE) % n;
+    }
+
+    public int getColumnOfReducer(int reducerId) {
+        if (reducerId < 0 || reducerId >= getTotalColumnReducers())
+            throw new IllegalArgumentException("Reducer " + reducerId + " is not a column reducer");
+        // starts are strictly increasing as every column has a reducer
+        int i = Arrays.binarySearch(reducerStarts, reducerId);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** the index of the reducer among those of its column */
+    public int getPartOfReducer(int reducerId) {
+        return reducerId - reducerStarts[getColumnOfReducer(reducerId)];
+    }
+}
@@ -47,7 +47,6 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
     private MeasureAggregators aggs;
 
     private int counter;
-    private Object[] input;
     private Object[] result;
 
     private Text outputKey;
@@ -65,7 +64,6 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
         List<MeasureDesc> measuresDescs = cubeDesc.getMeasures();
         codec = new BufferedMeasureEncoder(measuresDescs);
         aggs = new MeasureAggregators(measuresDescs);
-        input = new Object[measuresDescs.size()];
         result = new Object[measuresDescs.size()];
 
         outputKey = new Text();
@@ -78,8 +76,7 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
         aggs.reset();
 
         for (ByteArrayWritable value : values) {
-            codec.decode(value.asBuffer(), input);
-            aggs.aggregate(input);
+            aggs.aggregate(value.asBuffer(), codec.getDecoder(), null);
         }
         aggs.collectStates(result);
 
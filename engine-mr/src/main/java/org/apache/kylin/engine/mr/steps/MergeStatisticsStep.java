@@ -40,6 +40,7 @@ import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.util.CuboidStatsHasher;
 import org.apache.kylin.engine.mr.HadoopUtil;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.common.CuboidStatsUtil;
@@ -57,6 +58,7 @@ public class MergeStatisticsStep extends AbstractExecutable {
     private static final Logger logger = LoggerFactory.getLogger(MergeStatisticsStep.class);
 
     protected Map<Long, HyperLogLogPlusCounter> cuboidHLLMap = Maps.newHashMap();
+    protected int hashVersion = -1;
 
     public MergeStatisticsStep() {
         super();
@@ -93,24 +95,7 @@ public class MergeStatisticsStep extends AbstractExecutable {
                 SequenceFile.Reader reader = null;
                 try {
                     reader = new SequenceFile.Reader(fs, new Path(tempFile.getAbsolutePath()), conf);
-                    LongWritable key = (LongWritable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
-                    BytesWritable value = (BytesWritable) ReflectionUtils.newInstance(reader.getValueClass(), conf);
-                    while (reader.next(key, value)) {
-                        if (key.get() == 0L) {
-                            // sampling percentage;
-                            averageSamplingPercentage += Bytes.toInt(value.getBytes());
-                        } else if (key.get() > 0) {
-                            HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(kylinConf.getCubeStatsHLLPrecision());
-                            ByteArray byteArray = new ByteArray(value.getBytes());
-                            hll.readRegisters(byteArray.asBuffer());
-
-                            if (cuboidHLLMap.get(key.get()) != null) {
-                                cuboidHLLMap.get(key.get()).merge(hll);
-                            } else {
-                                cuboidHLLMap.put(key.get(), hll);
-                            }
-                        }
-                    }
+                    averageSamplingPercentage += mergeStatistics(reader, segmentId, kylinConf.getCubeStatsHLLPrecision());
                 } catch (Exception e) {
                     e.printStackTrace();
                     throw e;
@@ -121,7 +106,7 @@ public class MergeStatisticsStep extends AbstractExecutable {
                 }
             }
             averageSamplingPercentage = averageSamplingPercentage / CubingExecutableUtil.getMergingSegmentIds(this.getParams()).size();
-            CuboidStatsUtil.writeCuboidStatistics(conf, new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams())), cuboidHLLMap, averageSamplingPercentage);
+            CuboidStatsUtil.writeCuboidStatistics(conf, new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams())), cuboidHLLMap, averageSamplingPercentage, 0, hashVersion);
             Path statisticsFilePath = new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams()), BatchConstants.CFG_STATISTICS_CUBOID_ESTIMATION_FILENAME);
             FileSystem fs = statisticsFilePath.getFileSystem(conf);
             FSDataInputStream is = fs.open(statisticsFilePath);
@@ -140,4 +125,44 @@ public class MergeStatisticsStep extends AbstractExecutable {
         }
     }
 
+    /**
+     * Merges the counters of one segment's statistics into cuboidHLLMap and returns its sampling percentage.
+     * Counters hashed by different versions of the cuboid hash overcount the rows common to both. The estimates
+     * only size the cuboids and split the regions, so such statistics are still merged, with a warning, and
+     * the result is marked as legacy.
+     */
+    int mergeStatistics(SequenceFile.Reader reader, String segmentId, int precision) throws IOException {
+        int samplingPercentage = 0;
+        int version = CuboidStatsHasher.HASH_VERSION_LEGACY;
+        Configuration conf = HadoopUtil.getCurrentConfiguration();
+        LongWritable key = (LongWritable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+        BytesWritable value = (BytesWritable) ReflectionUtils.newInstance(reader.getValueClass(), conf);
+        while (reader.next(key, value)) {
+            if (key.get() == 0L) {
+                // sampling percentage;
+                samplingPercentage = Bytes.toInt(value.getBytes());
+            } else if (key.get() == CuboidStatsUtil.HASH_VERSION_KEY) {
+                version = Bytes.toInt(value.getBytes());
+            } else if (key.get() > 0) {
+                HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(precision);
+                ByteArray byteArray = new ByteArray(value.getBytes());
+                hll.readRegisters(byteArray.asBuffer());
+
+                if (cuboidHLLMap.get(key.get()) != null) {
+                    cuboidHLLMap.get(key.get()).merge(hll);
+                } else {
+                    cuboidHLLMap.put(key.get(), hll);
+                }
+            }
+        }
+
+        if (hashVersion < 0) {
+            hashVersion = version;
+        } else if (hashVersion != version) {
+            logger.warn("Statistics of segment " + segmentId + " are hashed by version " + version + ", the other segments by version " + hashVersion + ", the merged row estimates may be too high");
+            hashVersion = CuboidStatsHasher.HASH_VERSION_LEGACY;
+        }
+        return samplingPercentage;
+    }
+
 }
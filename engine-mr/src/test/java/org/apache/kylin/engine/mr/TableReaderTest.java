@@ -22,10 +22,17 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.source.ReadableTable.TableReader;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 /**
  * @author yangli9
  * 
@@ -43,4 +50,34 @@ public class TableReaderTest {
         reader.close();
 
     }
+
+    @Test
+    public void testSortedPartsReader() throws IOException {
+        File dir = File.createTempFile("kylin_sorted_parts", "");
+        FileUtils.forceDelete(dir);
+        FileUtils.forceMkdir(dir);
+        try {
+            FileUtils.writeStringToFile(new File(dir, "part-00000"), "a\nd\ne\n", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(dir, "part-00001"), "b\nc\nf\ng\n", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(dir, "part-00002"), "", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(dir, "_SUCCESS"), "", StandardCharsets.UTF_8);
+
+            TableReader reader = new DFSFileTable("file://" + dir.getAbsolutePath(), -1).getReader();
+            List<String> values = Lists.newArrayList();
+            while (reader.next()) {
+                values.add(reader.getRow()[0]);
+            }
+            reader.close();
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), values);
+
+            // markers and hidden files are not part of the signature either
+            Pair<Long, Long> sizeAndLastModified = DFSFileTable.getSizeAndLastModified("file://" + dir.getAbsolutePath());
+            FileUtils.writeStringToFile(new File(dir, "_SUCCESS"), "marker", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(dir, ".part-00000.crc"), "checksum", StandardCharsets.UTF_8);
+            assertEquals(sizeAndLastModified, DFSFileTable.getSizeAndLastModified("file://" + dir.getAbsolutePath()));
+            assertEquals(14, sizeAndLastModified.getFirst().longValue());
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.mr.steps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DistinctValueFilterTest {
+
+    @Test
+    public void testLowCardinality() {
+        DistinctValueFilter filter = new DistinctValueFilter(2, 1024 * 1024);
+        int emitted = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.isNew(0, "v" + (i % 10)))
+                emitted++;
+            filter.isNew(1, "x");
+        }
+        assertEquals(10, emitted);
+        assertEquals(200000, filter.getTotalRows());
+        assertEquals(200000 - 11, filter.getTotalHits());
+        assertFalse(filter.isBypassed(0));
+    }
+
+    @Test
+    public void testFlushWhenFull() {
+        // room for about 100 entries per column
+        DistinctValueFilter filter = new DistinctValueFilter(1, 100 * (DistinctValueFilter.ENTRY_OVERHEAD_BYTES + 8));
+        int emitted = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 150; i++) {
+                // every value repeats within a round, so remembering pays off
+                if (filter.isNew(0, "v" + i % 150 + "x"))
+                    emitted++;
+                if (filter.isNew(0, "v" + i % 150 + "x"))
+                    emitted++;
+            }
+        }
+        assertFalse(filter.isBypassed(0));
+        // values are emitted again after a flush, but far less than once per row
+        assertTrue(emitted > 150 && emitted < 900);
+    }
+
+    @Test
+    public void testBypassUniqueColumn() {
+        DistinctValueFilter filter = new DistinctValueFilter(2, 2 * 100 * DistinctValueFilter.ENTRY_OVERHEAD_BYTES);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.isNew(0, "id" + i));
+            filter.isNew(1, "same");
+        }
+        assertTrue(filter.isBypassed(0));
+        assertFalse(filter.isBypassed(1));
+        assertTrue(filter.isNew(0, "id1"));
+        assertTrue(filter.isNew(0, "id1"));
+    }
+
+    @Test
+    public void testDisabled() {
+        DistinctValueFilter filter = new DistinctValueFilter(1, 0);
+        assertTrue(filter.isNew(0, "a"));
+        assertTrue(filter.isNew(0, "a"));
+        assertEquals(0, filter.getTotalHits());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.mr.steps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Test;
+
+public class FactDistinctColumnsReducerMappingTest {
+
+    @Test
+    public void testMapping() {
+        FactDistinctColumnsReducerMapping mapping = new FactDistinctColumnsReducerMapping(new int[] { 1, 3, 1 });
+        assertEquals(5, mapping.getTotalColumnReducers());
+
+        int[] expectedColumns = { 0, 1, 1, 1, 2 };
+        int[] expectedParts = { 0, 0, 1, 2, 0 };
+        for (int r = 0; r < 5; r++) {
+            assertEquals(expectedColumns[r], mapping.getColumnOfReducer(r));
+            assertEquals(expectedParts[r], mapping.getPartOfReducer(r));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            byte[] value = Bytes.toBytes("v" + i);
+            assertEquals(0, mapping.getReducerForValue(0, value, 0, value.length));
+            int r = mapping.getReducerForValue(1, value, 0, value.length);
+            assertTrue(r >= 1 && r <= 3);
+            assertEquals(r, mapping.getReducerForValue(1, value, 0, value.length));
+            assertEquals(4, mapping.getReducerForValue(2, value, 0, value.length));
+        }
+    }
+
+    @Test
+    public void testConf() {
+        Configuration conf = new Configuration(false);
+        assertNull(FactDistinctColumnsReducerMapping.fromConf(conf));
+
+        new FactDistinctColumnsReducerMapping(new int[] { 2, 1, 4 }).setToConf(conf);
+        FactDistinctColumnsReducerMapping mapping = FactDistinctColumnsReducerMapping.fromConf(conf);
+        assertEquals(3, mapping.getColumnCount());
+        assertEquals(2, mapping.getReducerNumOfColumn(0));
+        assertEquals(1, mapping.getReducerNumOfColumn(1));
+        assertEquals(4, mapping.getReducerNumOfColumn(2));
+        assertEquals(7, mapping.getTotalColumnReducers());
+    }
+}
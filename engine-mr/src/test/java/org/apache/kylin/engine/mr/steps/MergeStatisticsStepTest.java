@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.util.CuboidStatsHasher;
+import org.apache.kylin.engine.mr.HadoopUtil;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.engine.mr.common.CuboidStatsUtil;
+import org.apache.kylin.measure.BufferedMeasureEncoder;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class MergeStatisticsStepTest extends LocalFileMetadataTestCase {
+
+    private static final int PRECISION = 14;
+
+    private final Configuration conf = HadoopUtil.getCurrentConfiguration();
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        dir = File.createTempFile("merge_statistics", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testMergeSameVersion() throws IOException {
+        MergeStatisticsStep step = new MergeStatisticsStep();
+        Assert.assertEquals(100, merge(step, "seg1", write("seg1", 0, 1000, CuboidStatsHasher.HASH_VERSION)));
+        Assert.assertEquals(100, merge(step, "seg2", write("seg2", 500, 1500, CuboidStatsHasher.HASH_VERSION)));
+
+        Assert.assertEquals(CuboidStatsHasher.HASH_VERSION, step.hashVersion);
+        Assert.assertEquals(1, step.cuboidHLLMap.size());
+        long estimate = step.cuboidHLLMap.get(1L).getCountEstimate();
+        Assert.assertTrue(String.valueOf(estimate), Math.abs(estimate - 1500) < 1500 * 0.05);
+    }
+
+    @Test
+    public void testMergeLegacy() throws IOException {
+        MergeStatisticsStep step = new MergeStatisticsStep();
+        merge(step, "seg1", writeLegacy("seg1", 0, 1000));
+        merge(step, "seg2", writeLegacy("seg2", 500, 1500));
+
+        // the merged statistics keep the version of their segments
+        Assert.assertEquals(CuboidStatsHasher.HASH_VERSION_LEGACY, step.hashVersion);
+        Assert.assertEquals(1, step.cuboidHLLMap.size());
+    }
+
+    @Test
+    public void testMergeMixedVersions() throws IOException {
+        MergeStatisticsStep step = new MergeStatisticsStep();
+        merge(step, "seg1", write("seg1", 0, 1000, CuboidStatsHasher.HASH_VERSION));
+        merge(step, "seg2", writeLegacy("seg2", 500, 1500));
+        merge(step, "seg3", write("seg3", 1500, 2000, CuboidStatsHasher.HASH_VERSION));
+
+        // merged anyway, the result may overcount so is marked as legacy
+        Assert.assertEquals(CuboidStatsHasher.HASH_VERSION_LEGACY, step.hashVersion);
+        Assert.assertEquals(1, step.cuboidHLLMap.size());
+        long estimate = step.cuboidHLLMap.get(1L).getCountEstimate();
+        Assert.assertTrue(String.valueOf(estimate), estimate > 2000 * 0.95);
+    }
+
+    private int merge(MergeStatisticsStep step, String segmentId, Path path) throws IOException {
+        SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+        try {
+            return step.mergeStatistics(reader, segmentId, PRECISION);
+        } finally {
+            IOUtils.closeStream(reader);
+        }
+    }
+
+    private Path write(String segmentId, int from, int to, int hashVersion) throws IOException {
+        Path output = new Path(new File(dir, segmentId).getAbsolutePath());
+        CuboidStatsUtil.writeCuboidStatistics(conf, output, counters(from, to), 100, 0, hashVersion);
+        return new Path(output, BatchConstants.CFG_STATISTICS_CUBOID_ESTIMATION_FILENAME);
+    }
+
+    // statistics as written before the hash version was saved
+    private Path writeLegacy(String segmentId, int from, int to) throws IOException {
+        Path path = new Path(new File(dir, segmentId + ".seq").getAbsolutePath());
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(path), SequenceFile.Writer.keyClass(LongWritable.class), SequenceFile.Writer.valueClass(BytesWritable.class));
+        try {
+            writer.append(new LongWritable(-1), new BytesWritable(Bytes.toBytes(0d)));
+            writer.append(new LongWritable(0L), new BytesWritable(Bytes.toBytes(100)));
+            ByteBuffer valueBuf = ByteBuffer.allocate(BufferedMeasureEncoder.DEFAULT_BUFFER_SIZE);
+            for (Map.Entry<Long, HyperLogLogPlusCounter> entry : counters(from, to).entrySet()) {
+                valueBuf.clear();
+                entry.getValue().writeRegisters(valueBuf);
+                valueBuf.flip();
+                writer.append(new LongWritable(entry.getKey()), new BytesWritable(valueBuf.array(), valueBuf.limit()));
+            }
+        } finally {
+            IOUtils.closeStream(writer);
+        }
+        return path;
+    }
+
+    private Map<Long, HyperLogLogPlusCounter> counters(int from, int to) {
+        HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(PRECISION);
+        for (int i = from; i < to; i++) {
+            hll.add(String.valueOf(i));
+        }
+        Map<Long, HyperLogLogPlusCounter> counters = Maps.newHashMap();
+        counters.put(1L, hll);
+        return counters;
+    }
+}
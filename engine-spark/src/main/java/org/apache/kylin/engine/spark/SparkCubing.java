@@ -30,7 +30,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executors;
@@ -55,7 +54,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.AbstractApplication;
-import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.OptionsHelper;
@@ -73,6 +71,7 @@ import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
 import org.apache.kylin.cube.model.DimensionDesc;
 import org.apache.kylin.cube.model.RowKeyDesc;
 import org.apache.kylin.cube.util.CubingUtils;
+import org.apache.kylin.cube.util.CuboidStatsHasher;
 import org.apache.kylin.dict.DictionaryGenerator;
 import org.apache.kylin.dict.IterableDictionaryValueEnumerator;
 import org.apache.kylin.engine.mr.common.BatchConstants;
@@ -115,8 +114,6 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.primitives.UnsignedBytes;
 
@@ -194,29 +191,19 @@ public class SparkCubing extends AbstractApplication {
         for (Map.Entry<Integer, TblColRef> entry : tblColRefMap.entrySet()) {
             final String column = columns[entry.getKey()];
             final TblColRef tblColRef = entry.getValue();
-            final DataFrame frame = intermediateTable.select(column).distinct();
-
-            final Row[] rows = frame.collect();
+            final Iterator<String> values = sortedDistinctValues(intermediateTable, column);
             dictionaryMap.put(tblColRef, DictionaryGenerator.buildDictionary(tblColRef.getType(), new IterableDictionaryValueEnumerator(new Iterable<byte[]>() {
                 @Override
                 public Iterator<byte[]> iterator() {
                     return new Iterator<byte[]>() {
-                        int i = 0;
-
                         @Override
                         public boolean hasNext() {
-                            return i < rows.length;
+                            return values.hasNext();
                         }
 
                         @Override
                         public byte[] next() {
-                            if (hasNext()) {
-                                final Row row = rows[i++];
-                                final Object o = row.get(0);
-                                return o != null ? o.toString().getBytes() : null;
-                            } else {
-                                throw new NoSuchElementException();
-                            }
+                            return values.next().getBytes();
                         }
 
                         @Override
@@ -238,6 +225,28 @@ public class SparkCubing extends AbstractApplication {
         }
     }
 
+    /**
+     * Distinct values of a column are deduplicated and range partitioned by sorting on the executors, then
+     * fetched partition by partition in order. The driver holds at most one partition of the values at a time,
+     * besides the dictionary being built.
+     */
+    private Iterator<String> sortedDistinctValues(DataFrame intermediateTable, String column) {
+        final JavaRDD<String> distinct = intermediateTable.select(column).distinct().javaRDD().flatMap(new FlatMapFunction<Row, String>() {
+            @Override
+            public Iterable<String> call(Row row) throws Exception {
+                // null is not a dictionary value
+                final Object o = row.get(0);
+                return o == null ? Collections.<String> emptyList() : Collections.singletonList(o.toString());
+            }
+        });
+        return distinct.sortBy(new Function<String, String>() {
+            @Override
+            public String call(String value) throws Exception {
+                return value;
+            }
+        }, true, distinct.partitions().size()).toLocalIterator();
+    }
+
     private Map<Long, HyperLogLogPlusCounter> sampling(final JavaRDD<List<String>> rowJavaRDD, final String cubeName) throws Exception {
         CubeInstance cubeInstance = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).reloadCubeLocal(cubeName);
         CubeDesc cubeDesc = cubeInstance.getDescriptor();
@@ -249,55 +258,16 @@ public class SparkCubing extends AbstractApplication {
         }
 
         CubeJoinedFlatTableDesc flatTableDesc = new CubeJoinedFlatTableDesc(cubeDesc, null);
-
-        final int[] rowKeyColumnIndexes = flatTableDesc.getRowKeyColumnIndexes();
-        final int nRowKey = cubeDesc.getRowkey().getRowKeyColumns().length;
-        final long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
-        final Map<Long, Integer[]> allCuboidsBitSet = Maps.newHashMapWithExpectedSize(allCuboidIds.size());
-        final ByteArray[] row_hashcodes = new ByteArray[nRowKey];
-
-        for (Long cuboidId : allCuboidIds) {
-            Integer[] cuboidBitSet = new Integer[Long.bitCount(cuboidId)];
-
-            long mask = Long.highestOneBit(baseCuboidId);
-            int position = 0;
-            for (int i = 0; i < nRowKey; i++) {
-                if ((mask & cuboidId) > 0) {
-                    cuboidBitSet[position] = i;
-                    position++;
-                }
-                mask = mask >> 1;
-            }
-            allCuboidsBitSet.put(cuboidId, cuboidBitSet);
-        }
-        for (int i = 0; i < nRowKey; ++i) {
-            row_hashcodes[i] = new ByteArray();
-        }
+        final CuboidStatsHasher cuboidStatsHasher = new CuboidStatsHasher(cubeDesc, flatTableDesc.getRowKeyColumnIndexes());
 
         final HashMap<Long, HyperLogLogPlusCounter> samplingResult = rowJavaRDD.aggregate(zeroValue, new Function2<HashMap<Long, HyperLogLogPlusCounter>, List<String>, HashMap<Long, HyperLogLogPlusCounter>>() {
 
-            final HashFunction hashFunction = Hashing.murmur3_128();
-
             @Override
             public HashMap<Long, HyperLogLogPlusCounter> call(HashMap<Long, HyperLogLogPlusCounter> v1, List<String> v2) throws Exception {
-                for (int i = 0; i < nRowKey; i++) {
-                    Hasher hc = hashFunction.newHasher();
-                    String colValue = v2.get(rowKeyColumnIndexes[i]);
-                    if (colValue != null) {
-                        row_hashcodes[i].set(hc.putString(colValue).hash().asBytes());
-                    } else {
-                        row_hashcodes[i].set(hc.putInt(0).hash().asBytes());
-                    }
-                }
-
-                for (Map.Entry<Long, Integer[]> entry : allCuboidsBitSet.entrySet()) {
-                    Hasher hc = hashFunction.newHasher();
-                    HyperLogLogPlusCounter counter = v1.get(entry.getKey());
-                    final Integer[] cuboidBitSet = entry.getValue();
-                    for (int position = 0; position < cuboidBitSet.length; position++) {
-                        hc.putBytes(row_hashcodes[cuboidBitSet[position]].array());
-                    }
-                    counter.add(hc.hash().asBytes());
+                long[] cuboidIds = cuboidStatsHasher.getCuboidIds();
+                long[] hashes = cuboidStatsHasher.hashRow(v2);
+                for (int i = 0; i < hashes.length; i++) {
+                    v1.get(cuboidIds[i]).addHash(hashes[i]);
                 }
                 return v1;
             }
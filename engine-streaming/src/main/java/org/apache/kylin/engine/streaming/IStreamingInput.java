@@ -33,7 +33,11 @@
  */
 package org.apache.kylin.engine.streaming;
 
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
 import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.metadata.realization.RealizationType;
 
 /**
@@ -42,4 +46,12 @@ public interface IStreamingInput {
 
     StreamingBatch getBatchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime);
 
+    /**
+     * Same messages as {@link #getBatchWithTimeWindow}, but handed to the queue as soon as they are fetched instead of
+     * being collected into a batch. Blocks until all of them are in the queue; the end marker is up to the caller.
+     *
+     * @return the checkpoint of the fetched messages, see {@link StreamingBatch#getCheckpoint()}
+     */
+    Map<String, String> fetchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime, BlockingQueue<StreamingMessage> queue);
+
 }
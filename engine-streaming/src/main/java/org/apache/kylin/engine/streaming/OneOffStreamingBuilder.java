@@ -34,9 +34,18 @@
 package org.apache.kylin.engine.streaming;
 
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.engine.streaming.util.StreamingUtils;
 import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
 import org.apache.kylin.metadata.model.IBuildable;
@@ -72,6 +81,10 @@ public class OneOffStreamingBuilder {
         return new Runnable() {
             @Override
             public void run() {
+                if (KylinConfig.getInstanceFromEnv().isStreamingPipelineEnabled()) {
+                    runPipelined();
+                    return;
+                }
                 StreamingBatch streamingBatch = streamingInput.getBatchWithTimeWindow(realizationType, realizationName, -1, startTime, endTime);
                 final IBuildable buildable = streamingBatchBuilder.createBuildable(streamingBatch);
                 final Map<Long, HyperLogLogPlusCounter> samplingResult = streamingBatchBuilder.sampling(streamingBatch);
@@ -83,4 +96,27 @@ public class OneOffStreamingBuilder {
         };
     }
 
+    /** fetches on another thread while the messages are sampled and spooled on this one */
+    private void runPipelined() {
+        final BlockingQueue<StreamingMessage> queue = new ArrayBlockingQueue<StreamingMessage>(KylinConfig.getInstanceFromEnv().getStreamingPipelineQueueSize());
+        final ExecutorService fetcher = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Map<String, String>> fetching = fetcher.submit(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws Exception {
+                    try {
+                        return streamingInput.fetchWithTimeWindow(realizationType, realizationName, -1, startTime, endTime, queue);
+                    } finally {
+                        queue.put(StreamingMessage.EOF);
+                    }
+                }
+            });
+            final IBuildable buildable = streamingBatchBuilder.buildPipelined(Pair.newPair(startTime, endTime), queue, fetching, streamingOutput);
+            streamingBatchBuilder.commit(buildable);
+        } finally {
+            // stops the fetching if the build failed half way, the queue would never drain otherwise
+            fetcher.shutdownNow();
+        }
+    }
+
 }
\ No newline at end of file
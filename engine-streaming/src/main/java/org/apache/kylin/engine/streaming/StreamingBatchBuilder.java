@@ -34,9 +34,13 @@
 package org.apache.kylin.engine.streaming;
 
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
 
 import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
 import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
 import org.apache.kylin.metadata.model.IBuildable;
@@ -55,4 +59,11 @@ public interface StreamingBatchBuilder {
     void build(StreamingBatch streamingBatch, Map<TblColRef, Dictionary<String>> dictionaryMap, ICuboidWriter cuboidWriter);
 
     void commit(IBuildable buildable);
+
+    /**
+     * Does createBuildable, sampling, buildDictionary, build and output in one go, consuming the messages from the
+     * queue while they are still being fetched, until {@link StreamingMessage#EOF}. The fetching is waited for
+     * before anything is created, so that a failed fetch leaves no segment behind; its result is the checkpoint.
+     */
+    IBuildable buildPipelined(Pair<Long, Long> timeRange, BlockingQueue<StreamingMessage> queue, Future<Map<String, String>> fetching, IStreamingOutput output);
 }
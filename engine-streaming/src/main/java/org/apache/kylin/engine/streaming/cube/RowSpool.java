@@ -0,0 +1,147 @@
+/*
+ *
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *
+ *  contributor license agreements. See the NOTICE file distributed with
+ *
+ *  this work for additional information regarding copyright ownership.
+ *
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *
+ *  (the "License"); you may not use this file except in compliance with
+ *
+ *  the License. You may obtain a copy of the License at
+ *
+ *
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *  See the License for the specific language governing permissions and
+ *
+ *  limitations under the License.
+ *
+ * /
+ */
+package org.apache.kylin.engine.streaming.cube;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.Bytes;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Rows of a streaming batch kept in a local temp file between the pass that fetches them and the pass that
+ * cubes them, so that a batch does not have to fit in memory.
+ */
+class RowSpool implements Closeable {
+
+    private final File file;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private int rowCount = 0;
+
+    RowSpool() throws IOException {
+        this.file = File.createTempFile("kylin_streaming_", ".spool");
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    void write(List<String> row) throws IOException {
+        out.writeInt(row.size());
+        for (String cell : row) {
+            if (cell == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = Bytes.toBytes(cell);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        rowCount++;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /** finishes writing, then reads the rows back in the written order */
+    Iterator<List<String>> read() throws IOException {
+        out.close();
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        return new Iterator<List<String>>() {
+            int remaining = rowCount;
+
+            @Override
+            public boolean hasNext() {
+                if (remaining == 0)
+                    IOUtils.closeQuietly(in);
+                return remaining > 0;
+            }
+
+            @Override
+            public List<String> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    int size = in.readInt();
+                    List<String> row = Lists.newArrayListWithCapacity(size);
+                    for (int i = 0; i < size; i++) {
+                        int len = in.readInt();
+                        if (len < 0) {
+                            row.add(null);
+                        } else {
+                            byte[] bytes = new byte[len];
+                            in.readFully(bytes);
+                            row.add(Bytes.toString(bytes));
+                        }
+                    }
+                    remaining--;
+                    return row;
+                } catch (EOFException e) {
+                    throw new IllegalStateException("Spool " + file + " is truncated", e);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(out);
+        IOUtils.closeQuietly(in);
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+}
@@ -35,8 +35,10 @@ package org.apache.kylin.engine.streaming.cube;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -46,6 +48,7 @@ import javax.annotation.Nullable;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.StreamingBatch;
 import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.cube.CubeInstance;
@@ -54,7 +57,9 @@ import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.CubeUpdate;
 import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
 import org.apache.kylin.cube.inmemcubing.InMemCubeBuilder;
+import org.apache.kylin.cube.util.CubingRowCollector;
 import org.apache.kylin.cube.util.CubingUtils;
+import org.apache.kylin.engine.streaming.IStreamingOutput;
 import org.apache.kylin.engine.streaming.StreamingBatchBuilder;
 import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
 import org.apache.kylin.metadata.model.IBuildable;
@@ -64,6 +69,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
 /**
@@ -81,15 +87,25 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
 
     @Override
     public void build(StreamingBatch streamingBatch, Map<TblColRef, Dictionary<String>> dictionaryMap, ICuboidWriter cuboidWriter) {
+        processedRowCount = streamingBatch.getMessages().size();
+        cube(Iterators.transform(streamingBatch.getMessages().iterator(), new Function<StreamingMessage, List<String>>() {
+            @Nullable
+            @Override
+            public List<String> apply(@Nullable StreamingMessage input) {
+                return input.getData();
+            }
+        }), dictionaryMap, cuboidWriter);
+    }
+
+    private void cube(Iterator<List<String>> rows, Map<TblColRef, Dictionary<String>> dictionaryMap, ICuboidWriter cuboidWriter) {
         try {
             CubeManager cubeManager = CubeManager.getInstance(KylinConfig.getInstanceFromEnv());
             final CubeInstance cubeInstance = cubeManager.reloadCubeLocal(cubeName);
             LinkedBlockingQueue<List<String>> blockingQueue = new LinkedBlockingQueue<List<String>>();
             InMemCubeBuilder inMemCubeBuilder = new InMemCubeBuilder(cubeInstance.getDescriptor(), dictionaryMap);
             final Future<?> future = Executors.newCachedThreadPool().submit(inMemCubeBuilder.buildAsRunnable(blockingQueue, cuboidWriter));
-            processedRowCount = streamingBatch.getMessages().size();
-            for (StreamingMessage streamingMessage : streamingBatch.getMessages()) {
-                blockingQueue.put(streamingMessage.getData());
+            while (rows.hasNext()) {
+                blockingQueue.put(rows.next());
             }
             blockingQueue.put(Collections.<String> emptyList());
             future.get();
@@ -110,6 +126,47 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
         }
     }
 
+    @Override
+    public IBuildable buildPipelined(Pair<Long, Long> timeRange, BlockingQueue<StreamingMessage> queue, Future<Map<String, String>> fetching, IStreamingOutput output) {
+        final CubeManager cubeManager = CubeManager.getInstance(KylinConfig.getInstanceFromEnv());
+        final CubeInstance cubeInstance = cubeManager.reloadCubeLocal(cubeName);
+        final CubingRowCollector collector = new CubingRowCollector(cubeInstance.getDescriptor());
+        final RowSpool spool;
+        try {
+            spool = new RowSpool();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to create row spool", e);
+        }
+        try {
+            long start = System.currentTimeMillis();
+            while (true) {
+                StreamingMessage message = queue.take();
+                if (message == StreamingMessage.EOF) {
+                    break;
+                }
+                collector.collect(message.getData());
+                spool.write(message.getData());
+            }
+            final Map<String, String> checkpoint = fetching.get();
+            processedRowCount = spool.getRowCount();
+            logger.info(String.format("fetching and sampling of %d messages cost %d ms", processedRowCount, (System.currentTimeMillis() - start)));
+
+            final IBuildable buildable = createBuildable(new StreamingBatch(Collections.<StreamingMessage> emptyList(), timeRange, checkpoint));
+            final Map<TblColRef, Dictionary<String>> dictionaryMap = CubingUtils.writeDictionary((CubeSegment) buildable, collector.buildDictionary(), timeRange.getFirst(), timeRange.getSecond());
+            cube(spool.read(), dictionaryMap, output.getCuboidWriter(buildable));
+            output.output(buildable, collector.getSamplingResult());
+            return buildable;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("error when get StreamingMessages", e.getCause());
+        } catch (IOException e) {
+            throw new RuntimeException("error build cube from streaming messages", e);
+        } finally {
+            spool.close();
+        }
+    }
+
     @Override
     public IBuildable createBuildable(StreamingBatch streamingBatch) {
         CubeManager cubeManager = CubeManager.getInstance(KylinConfig.getInstanceFromEnv());
@@ -119,6 +176,7 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
             segment.setLastBuildJobID(segment.getUuid()); // give a fake job id
             segment.setInputRecords(streamingBatch.getMessages().size());
             segment.setLastBuildTime(System.currentTimeMillis());
+            segment.getAdditionalInfo().putAll(streamingBatch.getCheckpoint());
             return segment;
         } catch (IOException e) {
             throw new RuntimeException("failed to create IBuildable", e);
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.streaming.cube;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class RowSpoolTest {
+
+    @Test
+    public void testWriteRead() throws Exception {
+        List<List<String>> rows = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(Arrays.asList("row-" + i, i % 3 == 0 ? null : String.valueOf(i), "", "中文"));
+        }
+        rows.add(Arrays.<String> asList());
+
+        RowSpool spool = new RowSpool();
+        try {
+            for (List<String> row : rows) {
+                spool.write(row);
+            }
+            assertEquals(rows.size(), spool.getRowCount());
+            assertEquals(rows, Lists.newArrayList(spool.read()));
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        RowSpool spool = new RowSpool();
+        try {
+            assertEquals(0, spool.getRowCount());
+            assertFalse(spool.read().hasNext());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        RowSpool spool = new RowSpool();
+        try {
+            for (int i = 0; i < 100; i++) {
+                spool.write(Arrays.asList("row-" + i, String.valueOf(i)));
+            }
+            Iterator<List<String>> iterator = spool.read();
+            RandomAccessFile file = new RandomAccessFile(spool.getFile(), "rw");
+            try {
+                file.setLength(file.length() / 2);
+            } finally {
+                file.close();
+            }
+
+            int read = 0;
+            try {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    read++;
+                }
+                fail("truncated spool should not read through");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertTrue(read < 100);
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void testCleanup() throws Exception {
+        RowSpool spool = new RowSpool();
+        File file = spool.getFile();
+        spool.write(Arrays.asList("a", "b"));
+        assertTrue(file.exists());
+        spool.close();
+        assertFalse(file.exists());
+
+        // closed half way through reading
+        spool = new RowSpool();
+        file = spool.getFile();
+        spool.write(Arrays.asList("a", "b"));
+        spool.write(Arrays.asList("c", "d"));
+        Iterator<List<String>> iterator = spool.read();
+        iterator.next();
+        spool.close();
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.streaming.cube;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
+import org.apache.kylin.engine.streaming.IStreamingOutput;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.model.IBuildable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingCubeBuilderTest extends LocalFileMetadataTestCase {
+
+    private static final String CUBE_NAME = "test_streaming_table_cube";
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testFailedFetchCreatesNoSegment() throws Exception {
+        CubeManager cubeManager = CubeManager.getInstance(getTestConfig());
+        CubeInstance cube = cubeManager.getCube(CUBE_NAME);
+        int segmentCount = cube.getSegments().size();
+
+        int columnCount = new CubeJoinedFlatTableDesc(cube.getDescriptor(), null).getColumnList().size();
+        List<String> row = Collections.nCopies(columnCount, "1");
+        BlockingQueue<StreamingMessage> queue = new LinkedBlockingQueue<StreamingMessage>();
+        queue.put(new StreamingMessage(row, 0, 0, Collections.<String, Object> emptyMap()));
+        queue.put(StreamingMessage.EOF);
+
+        FutureTask<Map<String, String>> fetching = new FutureTask<Map<String, String>>(new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() throws Exception {
+                throw new IllegalStateException("fetch failed");
+            }
+        });
+        fetching.run();
+
+        try {
+            new StreamingCubeBuilder(CUBE_NAME).buildPipelined(Pair.newPair(0L, 1000L), queue, fetching, new IStreamingOutput() {
+                @Override
+                public ICuboidWriter getCuboidWriter(IBuildable buildable) {
+                    throw new AssertionError("no cuboid should be written");
+                }
+
+                @Override
+                public void output(IBuildable buildable, Map<Long, HyperLogLogPlusCounter> samplingResult) {
+                    throw new AssertionError("nothing should be output");
+                }
+            });
+            fail("the failed fetch should fail the build");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(segmentCount, cubeManager.reloadCubeLocal(CUBE_NAME).getSegments().size());
+    }
+}
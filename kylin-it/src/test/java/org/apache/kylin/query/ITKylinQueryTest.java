@@ -206,6 +206,17 @@ public class ITKylinQueryTest extends KylinTestBase {
         execAndCompQuery(getQueryFolderPrefix() + "src/test/resources/query/sql_subquery", null, true);
     }
 
+    @Test
+    public void testNativeJoinQuery() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.query.join.native.enabled", "true");
+        try {
+            execAndCompQuery(getQueryFolderPrefix() + "src/test/resources/query/sql_subquery", null, true);
+        } finally {
+            config.setProperty("kylin.query.join.native.enabled", "false");
+        }
+    }
+
     @Test
     public void testCaseWhen() throws Exception {
         execAndCompQuery(getQueryFolderPrefix() + "src/test/resources/query/sql_casewhen", null, true);
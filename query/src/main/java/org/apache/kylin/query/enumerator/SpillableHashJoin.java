@@ -0,0 +1,707 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query.enumerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Equi-join of two enumerables that hashes the inner (right) side. Inner rows are kept encoded in byte pages and
+ * indexed by primitive arrays, instead of the per query lists of Object[] a Calcite join builds. When the encoded
+ * inner rows outgrow the memory budget, both sides are partitioned by key hash into temp files and joined one
+ * partition at a time.
+ *
+ * Only inner and left outer joins are supported. A key that is null or has a null part never matches, like in SQL.
+ */
+public class SpillableHashJoin<TSource, TInner, TKey, TResult> implements Enumerator<TResult> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillableHashJoin.class);
+
+    private static final int SPILL_PARTITION_BITS = 5;
+    private static final int SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+
+    public static final Method JOIN_METHOD = Types.lookupMethod(SpillableHashJoin.class, "join", Enumerable.class, Enumerable.class, Function1.class, Function1.class, Function2.class, boolean.class);
+
+    /**
+     * Called by generated code, see SpillableHashJoinRel.
+     */
+    public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(Enumerable<TSource> outer, Enumerable<TInner> inner, //
+            Function1<TSource, TKey> outerKeySelector, Function1<TInner, TKey> innerKeySelector, //
+            Function2<TSource, TInner, TResult> resultSelector, boolean generateNullsOnRight) {
+        return join(outer, inner, outerKeySelector, innerKeySelector, resultSelector, generateNullsOnRight, KylinConfig.getInstanceFromEnv().getQueryJoinMemBudget());
+    }
+
+    public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(final Enumerable<TSource> outer, final Enumerable<TInner> inner, //
+            final Function1<TSource, TKey> outerKeySelector, final Function1<TInner, TKey> innerKeySelector, //
+            final Function2<TSource, TInner, TResult> resultSelector, final boolean generateNullsOnRight, final long memBudget) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                return new SpillableHashJoin<TSource, TInner, TKey, TResult>(outer, inner, outerKeySelector, innerKeySelector, resultSelector, generateNullsOnRight, memBudget);
+            }
+        };
+    }
+
+    private final Enumerable<TSource> outer;
+    private final Enumerable<TInner> inner;
+    private final Function1<TSource, TKey> outerKeySelector;
+    private final Function1<TInner, TKey> innerKeySelector;
+    private final Function2<TSource, TInner, TResult> resultSelector;
+    private final boolean generateNullsOnRight;
+    private final long memBudget;
+
+    private final RowCodec keyCodec = new RowCodec();
+    private final RowCodec rowCodec = new RowCodec();
+    private final EncodedRowIndex index = new EncodedRowIndex();
+
+    private boolean built = false;
+    private boolean spilled = false;
+    private File[] innerFiles;
+    private File[] outerFiles;
+    private DataOutputStream[] writers;
+    private int partition = -1;
+    private Enumerator<TSource> outerEnumerator;
+    private DataInputStream outerReader;
+
+    // probe state of the current outer row
+    private boolean hasOuter = false;
+    private TSource currentOuter;
+    private int outerHash;
+    private byte[] outerKey;
+    private int match = -1;
+    private boolean matched = false;
+    private TResult current;
+
+    private SpillableHashJoin(Enumerable<TSource> outer, Enumerable<TInner> inner, Function1<TSource, TKey> outerKeySelector, Function1<TInner, TKey> innerKeySelector, //
+            Function2<TSource, TInner, TResult> resultSelector, boolean generateNullsOnRight, long memBudget) {
+        this.outer = outer;
+        this.inner = inner;
+        this.outerKeySelector = outerKeySelector;
+        this.innerKeySelector = innerKeySelector;
+        this.resultSelector = resultSelector;
+        this.generateNullsOnRight = generateNullsOnRight;
+        this.memBudget = memBudget;
+    }
+
+    @Override
+    public TResult current() {
+        return current;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean moveNext() {
+        try {
+            if (!built) {
+                build();
+                built = true;
+            }
+
+            while (true) {
+                if (hasOuter) {
+                    if (match >= 0) {
+                        TInner innerRow = (TInner) rowCodec.read(index.rowInput(match));
+                        match = index.nextMatch(match, outerHash, outerKey);
+                        matched = true;
+                        current = resultSelector.apply(currentOuter, innerRow);
+                        return true;
+                    }
+                    hasOuter = false;
+                    if (!matched && generateNullsOnRight) {
+                        current = resultSelector.apply(currentOuter, null);
+                        return true;
+                    }
+                }
+                if (!nextOuter())
+                    return false;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to join", e);
+        }
+    }
+
+    private void build() throws IOException {
+        Enumerator<TInner> innerEnumerator = inner.enumerator();
+        try {
+            while (innerEnumerator.moveNext()) {
+                TInner row = innerEnumerator.current();
+                TKey key = innerKeySelector.apply(row);
+                if (isNullKey(key))
+                    continue;
+
+                keyCodec.encode(key);
+                rowCodec.encode(row);
+                int hash = hash(keyCodec);
+                if (spilled) {
+                    writeEntry(hash, keyCodec, rowCodec);
+                } else {
+                    index.add(hash, keyCodec.buffer(), keyCodec.size(), rowCodec.buffer(), rowCodec.size());
+                    if (index.memoryUsed() > memBudget) {
+                        spill();
+                    }
+                }
+            }
+        } finally {
+            innerEnumerator.close();
+        }
+
+        if (!spilled) {
+            outerEnumerator = outer.enumerator();
+        } else {
+            partitionOuter();
+        }
+    }
+
+    /** moves the in-memory inner rows to partition files, where the rest of inner rows go too */
+    private void spill() throws IOException {
+        logger.info("Inner rows of the join take {} bytes, beyond the budget of {} bytes, spilling to disk", index.memoryUsed(), memBudget);
+        spilled = true;
+        innerFiles = new File[SPILL_PARTITIONS];
+        outerFiles = new File[SPILL_PARTITIONS];
+        writers = new DataOutputStream[SPILL_PARTITIONS];
+        for (int i = 0; i < SPILL_PARTITIONS; i++) {
+            innerFiles[i] = File.createTempFile("KYLIN_JOIN_INNER_", ".tmp");
+        }
+        openWriters(innerFiles);
+        for (int e = 0; e < index.size(); e++) {
+            index.writeEntry(e, writers[partitionOf(index.hashOf(e))]);
+        }
+        index.clear();
+    }
+
+    private void openWriters(File[] files) throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            writers[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[i])));
+        }
+    }
+
+    private void closeWriters() {
+        if (writers != null) {
+            for (int i = 0; i < writers.length; i++) {
+                IOUtils.closeQuietly(writers[i]);
+                writers[i] = null;
+            }
+        }
+    }
+
+    private void writeEntry(int hash, RowCodec key, RowCodec row) throws IOException {
+        DataOutputStream out = writers[partitionOf(hash)];
+        out.writeInt(hash);
+        out.writeInt(key.size());
+        out.write(key.buffer(), 0, key.size());
+        out.writeInt(row.size());
+        out.write(row.buffer(), 0, row.size());
+    }
+
+    private void partitionOuter() throws IOException {
+        closeWriters();
+        for (int i = 0; i < SPILL_PARTITIONS; i++) {
+            outerFiles[i] = File.createTempFile("KYLIN_JOIN_OUTER_", ".tmp");
+        }
+        openWriters(outerFiles);
+
+        Enumerator<TSource> enumerator = outer.enumerator();
+        try {
+            while (enumerator.moveNext()) {
+                TSource row = enumerator.current();
+                TKey key = outerKeySelector.apply(row);
+                if (isNullKey(key)) {
+                    if (!generateNullsOnRight)
+                        continue;
+                    // a negative key length marks a row that matches nothing
+                    rowCodec.encode(row);
+                    DataOutputStream out = writers[0];
+                    out.writeInt(0);
+                    out.writeInt(-1);
+                    out.writeInt(rowCodec.size());
+                    out.write(rowCodec.buffer(), 0, rowCodec.size());
+                    continue;
+                }
+                keyCodec.encode(key);
+                rowCodec.encode(row);
+                writeEntry(hash(keyCodec), keyCodec, rowCodec);
+            }
+        } finally {
+            enumerator.close();
+            closeWriters();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean nextOuter() throws IOException {
+        if (!spilled) {
+            if (!outerEnumerator.moveNext())
+                return false;
+            currentOuter = outerEnumerator.current();
+            TKey key = outerKeySelector.apply(currentOuter);
+            if (isNullKey(key)) {
+                match = -1;
+            } else {
+                keyCodec.encode(key);
+                outerKey = Arrays.copyOf(keyCodec.buffer(), keyCodec.size());
+                outerHash = hash(keyCodec);
+                match = index.firstMatch(outerHash, outerKey);
+            }
+        } else {
+            while (true) {
+                if (outerReader == null && !nextPartition())
+                    return false;
+                try {
+                    outerHash = outerReader.readInt();
+                } catch (EOFException e) {
+                    IOUtils.closeQuietly(outerReader);
+                    outerReader = null;
+                    continue;
+                }
+                int keyLen = outerReader.readInt();
+                outerKey = keyLen < 0 ? null : new byte[keyLen];
+                if (outerKey != null)
+                    outerReader.readFully(outerKey);
+                byte[] row = new byte[outerReader.readInt()];
+                outerReader.readFully(row);
+                currentOuter = (TSource) rowCodec.read(new DataInputStream(new ByteArrayInputStream(row)));
+                match = outerKey == null ? -1 : index.firstMatch(outerHash, outerKey);
+                break;
+            }
+        }
+        hasOuter = true;
+        matched = false;
+        return true;
+    }
+
+    // partition files are kept till close(), as reset() joins them again
+    private boolean nextPartition() throws IOException {
+        partition++;
+        if (partition >= SPILL_PARTITIONS)
+            return false;
+
+        index.clear();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(innerFiles[partition])));
+        try {
+            while (true) {
+                int hash;
+                try {
+                    hash = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                byte[] row = new byte[in.readInt()];
+                in.readFully(row);
+                index.add(hash, key, key.length, row, row.length);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        if (index.memoryUsed() > memBudget) {
+            logger.warn("Join partition {} takes {} bytes, beyond the budget of {} bytes, joining it in memory anyway", partition, index.memoryUsed(), memBudget);
+        }
+
+        outerReader = new DataInputStream(new BufferedInputStream(new FileInputStream(outerFiles[partition])));
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        hasOuter = false;
+        match = -1;
+        matched = false;
+        current = null;
+        if (!built)
+            return;
+
+        if (!spilled) {
+            // the in-memory index is the build side, only the probe side restarts
+            outerEnumerator.close();
+            outerEnumerator = outer.enumerator();
+        } else {
+            // start over from the first partition, nextPartition() reloads its inner rows
+            IOUtils.closeQuietly(outerReader);
+            outerReader = null;
+            partition = -1;
+            index.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (outerEnumerator != null) {
+            outerEnumerator.close();
+        }
+        IOUtils.closeQuietly(outerReader);
+        closeWriters();
+        deleteAll(innerFiles);
+        deleteAll(outerFiles);
+        index.clear();
+    }
+
+    private static void deleteAll(File[] files) {
+        if (files != null) {
+            for (File f : files) {
+                if (f != null && f.exists())
+                    f.delete();
+            }
+        }
+    }
+
+    private static boolean isNullKey(Object key) {
+        if (key == null)
+            return true;
+        if (key instanceof List) {
+            for (Object part : (List<?>) key) {
+                if (part == null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(RowCodec key) {
+        // mix the bits as the partition takes the high bits and the index the low bits
+        int h = Bytes.hashCode(key.buffer(), 0, key.size()) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int partitionOf(int hash) {
+        return hash >>> (32 - SPILL_PARTITION_BITS);
+    }
+
+    /**
+     * Encoded rows in pages of bytes, chained in hash buckets by primitive arrays.
+     * An entry is [key length][key][row length][row], addressed by page number and offset.
+     */
+    static class EncodedRowIndex {
+        private static final int PAGE_SIZE = 1 << 20;
+
+        private final List<byte[]> pages = new ArrayList<byte[]>();
+        private int pageUsed = PAGE_SIZE;
+        private long pageBytes = 0;
+
+        private int size = 0;
+        private int[] hashes = new int[0];
+        private long[] addresses = new long[0];
+        private int[] next = new int[0];
+        private int[] buckets = new int[0];
+
+        void add(int hash, byte[] key, int keyLen, byte[] row, int rowLen) {
+            int entryLen = 8 + keyLen + rowLen;
+            if (pageUsed + entryLen > PAGE_SIZE || pages.isEmpty()) {
+                byte[] page = new byte[Math.max(PAGE_SIZE, entryLen)];
+                pages.add(page);
+                pageBytes += page.length;
+                pageUsed = 0;
+            }
+            int pageNo = pages.size() - 1;
+            byte[] page = pages.get(pageNo);
+            long address = ((long) pageNo << 32) | pageUsed;
+            pageUsed = Bytes.putInt(page, pageUsed, keyLen);
+            System.arraycopy(key, 0, page, pageUsed, keyLen);
+            pageUsed += keyLen;
+            pageUsed = Bytes.putInt(page, pageUsed, rowLen);
+            System.arraycopy(row, 0, page, pageUsed, rowLen);
+            pageUsed += rowLen;
+
+            if (size == hashes.length) {
+                int capacity = Math.max(1024, size * 2);
+                hashes = Arrays.copyOf(hashes, capacity);
+                addresses = Arrays.copyOf(addresses, capacity);
+                next = Arrays.copyOf(next, capacity);
+                buckets = new int[capacity];
+                Arrays.fill(buckets, -1);
+                for (int e = 0; e < size; e++) {
+                    link(e);
+                }
+            }
+            hashes[size] = hash;
+            addresses[size] = address;
+            link(size);
+            size++;
+        }
+
+        private void link(int entry) {
+            int b = hashes[entry] & (buckets.length - 1);
+            next[entry] = buckets[b];
+            buckets[b] = entry;
+        }
+
+        int firstMatch(int hash, byte[] key) {
+            if (size == 0)
+                return -1;
+            return findFrom(buckets[hash & (buckets.length - 1)], hash, key);
+        }
+
+        int nextMatch(int entry, int hash, byte[] key) {
+            return findFrom(next[entry], hash, key);
+        }
+
+        private int findFrom(int entry, int hash, byte[] key) {
+            for (int e = entry; e >= 0; e = next[e]) {
+                if (hashes[e] != hash)
+                    continue;
+                byte[] page = pages.get((int) (addresses[e] >>> 32));
+                int offset = (int) addresses[e];
+                int keyLen = Bytes.toInt(page, offset);
+                if (Bytes.equals(page, offset + 4, keyLen, key, 0, key.length))
+                    return e;
+            }
+            return -1;
+        }
+
+        DataInput rowInput(int entry) {
+            byte[] page = pages.get((int) (addresses[entry] >>> 32));
+            int offset = (int) addresses[entry];
+            offset += 4 + Bytes.toInt(page, offset);
+            int rowLen = Bytes.toInt(page, offset);
+            return new DataInputStream(new ByteArrayInputStream(page, offset + 4, rowLen));
+        }
+
+        void writeEntry(int entry, DataOutputStream out) throws IOException {
+            byte[] page = pages.get((int) (addresses[entry] >>> 32));
+            int offset = (int) addresses[entry];
+            int keyLen = Bytes.toInt(page, offset);
+            int rowLen = Bytes.toInt(page, offset + 4 + keyLen);
+            out.writeInt(hashes[entry]);
+            out.writeInt(keyLen);
+            out.write(page, offset + 4, keyLen);
+            out.writeInt(rowLen);
+            out.write(page, offset + 8 + keyLen, rowLen);
+        }
+
+        int hashOf(int entry) {
+            return hashes[entry];
+        }
+
+        int size() {
+            return size;
+        }
+
+        long memoryUsed() {
+            return pageBytes + (long) hashes.length * (4 + 8 + 4 + 4);
+        }
+
+        void clear() {
+            pages.clear();
+            pageUsed = PAGE_SIZE;
+            pageBytes = 0;
+            size = 0;
+            hashes = new int[0];
+            addresses = new long[0];
+            next = new int[0];
+            buckets = new int[0];
+        }
+    }
+
+    /**
+     * Encodes the values Calcite passes around, i.e. boxed primitives, strings, decimals and arrays or lists of them.
+     * Equal values of the same type encode to equal bytes, so keys are compared encoded.
+     */
+    static class RowCodec {
+        private static final byte NULL = 0, STRING = 1, INT = 2, LONG = 3, DOUBLE = 4, FLOAT = 5, SHORT = 6, BYTE = 7, BOOLEAN = 8, //
+                CHAR = 9, DECIMAL = 10, ARRAY = 11, LIST = 12, SERIALIZED = 13;
+
+        private final ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        void encode(Object value) throws IOException {
+            bytes.reset();
+            write(value);
+            out.flush();
+        }
+
+        byte[] buffer() {
+            return bytes.buffer();
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        private void write(Object v) throws IOException {
+            if (v == null) {
+                out.writeByte(NULL);
+            } else if (v instanceof String) {
+                out.writeByte(STRING);
+                byte[] b = Bytes.toBytes((String) v);
+                out.writeInt(b.length);
+                out.write(b);
+            } else if (v instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) v);
+            } else if (v instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) v);
+            } else if (v instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) v);
+            } else if (v instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) v);
+            } else if (v instanceof Short) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) v);
+            } else if (v instanceof Byte) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) v);
+            } else if (v instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) v);
+            } else if (v instanceof Character) {
+                out.writeByte(CHAR);
+                out.writeChar((Character) v);
+            } else if (v instanceof BigDecimal) {
+                out.writeByte(DECIMAL);
+                BigDecimal d = (BigDecimal) v;
+                byte[] unscaled = d.unscaledValue().toByteArray();
+                out.writeInt(d.scale());
+                out.writeInt(unscaled.length);
+                out.write(unscaled);
+            } else if (v instanceof Object[]) {
+                Object[] array = (Object[]) v;
+                out.writeByte(ARRAY);
+                out.writeInt(array.length);
+                for (Object o : array) {
+                    write(o);
+                }
+            } else if (v instanceof List) {
+                List<?> list = (List<?>) v;
+                out.writeByte(LIST);
+                out.writeInt(list.size());
+                for (Object o : list) {
+                    write(o);
+                }
+            } else if (v instanceof Serializable) {
+                out.writeByte(SERIALIZED);
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(buf);
+                oos.writeObject(v);
+                oos.close();
+                out.writeInt(buf.size());
+                buf.writeTo(out);
+            } else {
+                throw new IllegalStateException("Cannot encode " + v.getClass() + " for join");
+            }
+        }
+
+        Object read(DataInput in) throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+            case NULL:
+                return null;
+            case STRING: {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                return Bytes.toString(b);
+            }
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case BOOLEAN:
+                return in.readBoolean();
+            case CHAR:
+                return in.readChar();
+            case DECIMAL: {
+                int scale = in.readInt();
+                byte[] unscaled = new byte[in.readInt()];
+                in.readFully(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            }
+            case ARRAY: {
+                Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = read(in);
+                }
+                return array;
+            }
+            case LIST: {
+                int n = in.readInt();
+                List<Object> list = new ArrayList<Object>(n);
+                for (int i = 0; i < n; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case SERIALIZED: {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b));
+                try {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                } finally {
+                    ois.close();
+                }
+            }
+            default:
+                throw new IllegalStateException("Unknown type " + type);
+            }
+        }
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(256);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -28,6 +28,8 @@ import java.util.Map;
 
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.JoinDesc;
@@ -161,6 +163,74 @@ public class OLAPContext {
         this.returnTupleInfo = info;
     }
 
+    /**
+     * A copy of a planned context to execute the compiled plan once more. The plan time decisions are shared,
+     * while the state an execution changes, i.e. the storage context, the digest collections and the filter
+     * variables, is copied. Request parameters are taken from the current thread like a newly planned context.
+     *
+     * @throws UnsupportedOperationException if the filter cannot be copied
+     */
+    public OLAPContext copyForExecution() {
+        OLAPContext copy = new OLAPContext(id);
+        copy.olapSchema = olapSchema;
+        copy.firstTableScan = firstTableScan;
+        copy.returnTupleInfo = returnTupleInfo;
+        copy.afterAggregate = afterAggregate;
+        copy.afterSkippedFilter = afterSkippedFilter;
+        copy.afterJoin = afterJoin;
+        copy.hasJoin = hasJoin;
+        copy.realization = realization;
+        copy.allColumns = new HashSet<TblColRef>(allColumns);
+        copy.groupByColumns = new ArrayList<TblColRef>(groupByColumns);
+        copy.metricsColumns = new HashSet<TblColRef>(metricsColumns);
+        copy.aggregations = new ArrayList<FunctionDesc>(aggregations);
+        copy.filterColumns = new HashSet<TblColRef>(filterColumns);
+        copy.filter = copyFilter(filter);
+        copy.joins = new LinkedList<JoinDesc>(joins);
+        copy.sortMeasures.addAll(sortMeasures);
+        copy.sortOrders.addAll(sortOrders);
+        copy.rewriteFields = new HashMap<String, RelDataType>(rewriteFields);
+        copy.limit = limit;
+        copy.sql = sql;
+
+        // what the planning set on storage context, see OLAPTableScan, OLAPLimitRel and OLAPSortRel
+        copy.storageContext.setConnUrl(storageContext.getConnUrl());
+        if (storageContext.hasLimit())
+            copy.storageContext.setLimit(storageContext.getLimit());
+        copy.storageContext.setOffset(storageContext.getOffset());
+        for (int i = 0; i < storageContext.getSortColumnCount(); i++) {
+            copy.storageContext.markSort();
+        }
+        return copy;
+    }
+
+    // filters are immutable once planned, except compare filters that get dynamic variables bound
+    private static TupleFilter copyFilter(TupleFilter filter) {
+        if (filter == null || !hasVariables(filter))
+            return filter;
+
+        if (filter instanceof CompareTupleFilter)
+            return filter.copy();
+        if (filter instanceof LogicalTupleFilter) {
+            LogicalTupleFilter copy = new LogicalTupleFilter(filter.getOperator());
+            for (TupleFilter child : filter.getChildren()) {
+                copy.addChild(copyFilter(child));
+            }
+            return copy;
+        }
+        throw new UnsupportedOperationException("Cannot copy filter with variables " + filter);
+    }
+
+    private static boolean hasVariables(TupleFilter filter) {
+        if (filter instanceof CompareTupleFilter && !((CompareTupleFilter) filter).getVariables().isEmpty())
+            return true;
+        for (TupleFilter child : filter.getChildren()) {
+            if (hasVariables(child))
+                return true;
+        }
+        return false;
+    }
+
     public void addSort(MeasureDesc measure, SQLDigest.OrderEnum order) {
         if (measure != null) {
             sortMeasures.add(measure);
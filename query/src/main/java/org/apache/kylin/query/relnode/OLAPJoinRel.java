@@ -18,7 +18,6 @@
 
 package org.apache.kylin.query.relnode;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -238,32 +237,13 @@ public class OLAPJoinRel extends EnumerableJoin implements OLAPRel {
         }
     }
 
-    // workaround that EnumerableJoin constructor is protected
-    private static Constructor<EnumerableJoin> constr;
-    static {
-        try {
-            constr = EnumerableJoin.class.getDeclaredConstructor(RelOptCluster.class, //
-                    RelTraitSet.class, //
-                    RelNode.class, //
-                    RelNode.class, //
-                    RexNode.class, //
-                    ImmutableIntList.class, //
-                    ImmutableIntList.class, //
-                    Set.class, //
-                    JoinRelType.class);
-            constr.setAccessible(true);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     @Override
     public EnumerableRel implementEnumerable(List<EnumerableRel> inputs) {
         if (this.hasSubQuery) {
             try {
-                return constr.newInstance(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE), //
+                return new SpillableHashJoinRel(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE), //
                         inputs.get(0), inputs.get(1), condition, leftKeys, rightKeys, variablesSet, joinType);
-            } catch (Exception e) {
+            } catch (InvalidRelException e) {
                 throw new IllegalStateException("Can't create EnumerableJoin!", e);
             }
         } else {
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query.relnode;
+
+import java.util.Set;
+
+import org.apache.calcite.adapter.enumerable.EnumerableJoin;
+import org.apache.calcite.adapter.enumerable.EnumerableJoinBridge;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.CorrelationId;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Util;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.query.enumerator.SpillableHashJoin;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The enumerable join of an OLAPJoinRel that is not answered by the cube, e.g. one joining a sub-query.
+ * Inner and left joins are executed by {@link SpillableHashJoin} under a memory budget, other joins and inputs
+ * of custom row classes go to the Calcite join as before.
+ */
+public class SpillableHashJoinRel extends EnumerableJoin {
+
+    public SpillableHashJoinRel(RelOptCluster cluster, RelTraitSet traits, RelNode left, RelNode right, //
+            RexNode condition, ImmutableIntList leftKeys, ImmutableIntList rightKeys, //
+            Set<CorrelationId> variablesSet, JoinRelType joinType) throws InvalidRelException {
+        super(cluster, traits, left, right, condition, leftKeys, rightKeys, variablesSet, joinType);
+    }
+
+    @Override
+    public EnumerableJoin copy(RelTraitSet traitSet, RexNode condition, RelNode left, RelNode right, JoinRelType joinType, boolean semiJoinDone) {
+        final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
+        assert joinInfo.isEqui();
+        try {
+            return new SpillableHashJoinRel(getCluster(), traitSet, left, right, condition, joinInfo.leftKeys, joinInfo.rightKeys, variablesSet, joinType);
+        } catch (InvalidRelException e) {
+            // Semantic error not possible. Must be a bug. Convert to internal error.
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        BlockBuilder builder = new BlockBuilder();
+        final Result leftResult = implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+        Expression leftExpression = builder.append("left", leftResult.block);
+        final Result rightResult = implementor.visitChild(this, 1, (EnumerableRel) right, pref);
+        Expression rightExpression = builder.append("right", rightResult.block);
+        final PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), pref.preferArray());
+        final Expression resultSelector = EnumerableJoinBridge.joinSelector(joinType, physType, ImmutableList.of(leftResult.physType, rightResult.physType));
+
+        if (useSpillableHashJoin(leftResult, rightResult)) {
+            return implementor.result(physType, builder.append(//
+                    Expressions.call(SpillableHashJoin.JOIN_METHOD, leftExpression, rightExpression, //
+                            leftResult.physType.generateAccessor(leftKeys), //
+                            rightResult.physType.generateAccessor(rightKeys), //
+                            resultSelector, //
+                            Expressions.constant(joinType.generatesNullsOnRight())))
+                    .toBlock());
+        }
+
+        // same as EnumerableJoin
+        final PhysType keyPhysType = leftResult.physType.project(leftKeys, JavaRowFormat.LIST);
+        return implementor.result(physType, builder.append(//
+                Expressions.call(leftExpression, BuiltInMethod.JOIN.method, Expressions.list(rightExpression, //
+                        leftResult.physType.generateAccessor(leftKeys), //
+                        rightResult.physType.generateAccessor(rightKeys), //
+                        resultSelector) //
+                        .append(Util.first(keyPhysType.comparer(), Expressions.constant(null))) //
+                        .append(Expressions.constant(joinType.generatesNullsOnLeft())) //
+                        .append(Expressions.constant(joinType.generatesNullsOnRight()))))
+                .toBlock());
+    }
+
+    private boolean useSpillableHashJoin(Result leftResult, Result rightResult) {
+        if (!KylinConfig.getInstanceFromEnv().isQueryNativeJoinEnabled())
+            return false;
+        if (joinType != JoinRelType.INNER && joinType != JoinRelType.LEFT)
+            return false;
+        // rows of generated classes cannot be encoded
+        return leftResult.physType.getFormat() != JavaRowFormat.CUSTOM && rightResult.physType.getFormat() != JavaRowFormat.CUSTOM;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query.enumerator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SpillableHashJoinTest {
+
+    // fact rows: [id, customer id, amount]
+    private static List<Object[]> facts() {
+        List<Object[]> rows = Lists.newArrayList();
+        for (int i = 0; i < 5000; i++) {
+            Integer customer = i % 50 == 0 ? null : i % 1200;
+            rows.add(new Object[] { (long) i, customer, new BigDecimal(i).movePointLeft(2) });
+        }
+        return rows;
+    }
+
+    // customer rows: [id, name], ids 0 ~ 999, two rows for each even id
+    private static List<Object[]> customers() {
+        List<Object[]> rows = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new Object[] { i, "customer-" + i });
+            if (i % 2 == 0)
+                rows.add(new Object[] { i, "alias-" + i });
+        }
+        rows.add(new Object[] { null, "nobody" });
+        return rows;
+    }
+
+    @Test
+    public void testInnerJoinInMemory() {
+        verify(false, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testLeftJoinInMemory() {
+        verify(true, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testInnerJoinSpilled() {
+        verify(false, 1);
+    }
+
+    @Test
+    public void testLeftJoinSpilled() {
+        verify(true, 1);
+    }
+
+    @Test
+    public void testCompositeKey() {
+        Enumerable<Object[]> outer = Linq4j.asEnumerable(Arrays.asList(new Object[] { "a", 1 }, new Object[] { "a", 2 }, new Object[] { null, 1 }));
+        Enumerable<Object[]> inner = Linq4j.asEnumerable(Arrays.asList(new Object[] { "a", 1, "x" }, new Object[] { "a", 3, "y" }, new Object[] { null, 1, "z" }));
+        Function1<Object[], List<Object>> key = new Function1<Object[], List<Object>>() {
+            @Override
+            public List<Object> apply(Object[] row) {
+                return Arrays.asList(row[0], row[1]);
+            }
+        };
+        for (long budget : new long[] { Long.MAX_VALUE, 1 }) {
+            List<String> result = Lists.newArrayList();
+            for (Object[] row : SpillableHashJoin.join(outer, inner, key, key, concat(), false, budget)) {
+                result.add(Arrays.toString(row));
+            }
+            assertEquals(Arrays.asList("[a, 1, a, 1, x]"), result);
+        }
+    }
+
+    @Test
+    public void testReset() {
+        for (long budget : new long[] { Long.MAX_VALUE, 1 }) {
+            Enumerator<Object[]> enumerator = SpillableHashJoin.join(Linq4j.asEnumerable(facts()), Linq4j.asEnumerable(customers()), column(1), column(0), concat(), true, budget).enumerator();
+            try {
+                List<String> first = drain(enumerator);
+                enumerator.reset();
+                assertEquals(first, drain(enumerator));
+
+                // reset half way through
+                for (int i = 0; i < 100; i++) {
+                    enumerator.moveNext();
+                }
+                enumerator.reset();
+                assertEquals(first, drain(enumerator));
+            } finally {
+                enumerator.close();
+            }
+        }
+    }
+
+    private static List<String> drain(Enumerator<Object[]> enumerator) {
+        List<String> rows = Lists.newArrayList();
+        while (enumerator.moveNext()) {
+            rows.add(Arrays.toString(enumerator.current()));
+        }
+        return rows;
+    }
+
+    private void verify(boolean leftJoin, long budget) {
+        List<Object[]> facts = facts();
+        List<Object[]> customers = customers();
+
+        List<String> expected = Lists.newArrayList();
+        for (Object[] f : facts) {
+            boolean matched = false;
+            for (Object[] c : customers) {
+                if (f[1] != null && f[1].equals(c[0])) {
+                    expected.add(Arrays.toString(concat(f, c)));
+                    matched = true;
+                }
+            }
+            if (!matched && leftJoin)
+                expected.add(Arrays.toString(concat(f, null)));
+        }
+
+        List<String> actual = Lists.newArrayList();
+        Enumerable<Object[]> joined = SpillableHashJoin.join(Linq4j.asEnumerable(facts), Linq4j.asEnumerable(customers), column(1), column(0), concat(), leftJoin, budget);
+        for (Object[] row : joined) {
+            actual.add(Arrays.toString(row));
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private static Function1<Object[], Object> column(final int i) {
+        return new Function1<Object[], Object>() {
+            @Override
+            public Object apply(Object[] row) {
+                return row[i];
+            }
+        };
+    }
+
+    private static Function2<Object[], Object[], Object[]> concat() {
+        return new Function2<Object[], Object[], Object[]>() {
+            @Override
+            public Object[] apply(Object[] left, Object[] right) {
+                return concat(left, right);
+            }
+        };
+    }
+
+    private static Object[] concat(Object[] left, Object[] right) {
+        Object[] result = Arrays.copyOf(left, left.length + (right == null ? 2 : right.length));
+        if (right != null)
+            System.arraycopy(right, 0, result, left.length, right.length);
+        return result;
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.kylin.rest.controller;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.kylin.common.restclient.Broadcaster;
 import org.apache.kylin.common.restclient.Broadcaster.EVENT;
@@ -28,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -76,6 +78,19 @@ public class CacheController extends BasicController {
         }
     }
 
+    /**
+     * Wipe system cache of a batch of events, coalesced by the sender
+     *
+     * @param events {@link Broadcaster.BroadcastEvent}s in the order they happened
+     * @throws IOException
+     */
+    @RequestMapping(value = "/batch", method = { RequestMethod.PUT })
+    @ResponseBody
+    public void wipeCaches(@RequestBody Broadcaster.BroadcastEvent[] events) throws IOException {
+        logger.info("wipe cache of " + events.length + " events: " + Arrays.toString(events));
+        cacheService.applyBatch(Arrays.asList(events));
+    }
+
     public void setCacheService(CacheService cacheService) {
         this.cacheService = cacheService;
     }
@@ -19,19 +19,29 @@
 package org.apache.kylin.rest.controller;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.rest.constant.Constant;
+import org.apache.kylin.rest.exception.BadRequestException;
+import org.apache.kylin.rest.exception.ForbiddenException;
 import org.apache.kylin.rest.exception.InternalErrorException;
+import org.apache.kylin.rest.exception.NotFoundException;
 import org.apache.kylin.rest.model.Query;
 import org.apache.kylin.rest.model.SelectedColumnMeta;
 import org.apache.kylin.rest.model.TableMeta;
@@ -47,6 +57,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -58,6 +70,9 @@ import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.ICsvListWriter;
 import org.supercsv.prefs.CsvPreference;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 
 import net.sf.ehcache.Cache;
@@ -77,6 +92,13 @@ public class QueryController extends BasicController {
     public static final String SUCCESS_QUERY_CACHE = "StorageCache";
     public static final String EXCEPTION_QUERY_CACHE = "ExceptionQueryCache";
 
+    public static final String STREAM_QUERY_ID_HEADER = "X-Kylin-Query-Id";
+
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    // query id -> the streaming queries in progress
+    private static final ConcurrentMap<String, StreamQuery> runningStreamQueries = new ConcurrentHashMap<String, StreamQuery>();
+
     @Autowired
     private QueryService queryService;
 
@@ -127,31 +149,45 @@ public class QueryController extends BasicController {
     @RequestMapping(value = "/query/format/{format}", method = RequestMethod.GET)
     @ResponseBody
     public void downloadQueryResult(@PathVariable String format, SQLRequest sqlRequest, HttpServletResponse response) {
-        SQLResponse result = doQueryWithCache(sqlRequest);
-        response.setContentType("text/" + format + ";charset=utf-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"result." + format + "\"");
-        ICsvListWriter csvWriter = null;
-
-        try {
-            csvWriter = new CsvListWriter(response.getWriter(), CsvPreference.STANDARD_PREFERENCE);
-
-            List<String> headerList = new ArrayList<String>();
+        doStreamQuery(format, sqlRequest, response);
+    }
 
-            for (SelectedColumnMeta column : result.getColumnMetas()) {
-                headerList.add(column.getName());
-            }
+    /**
+     * Writes rows to the response as they are fetched, in csv or json. The json has the same layout as the
+     * response of /query. The id for cancellation is returned as the {@value #STREAM_QUERY_ID_HEADER} header.
+     */
+    @RequestMapping(value = "/query/stream/{format}", method = RequestMethod.POST)
+    @ResponseBody
+    public void streamQuery(@PathVariable String format, @RequestBody SQLRequest sqlRequest, HttpServletResponse response) {
+        doStreamQuery(format, sqlRequest, response);
+    }
 
-            String[] headers = new String[headerList.size()];
-            csvWriter.writeHeader(headerList.toArray(headers));
+    @RequestMapping(value = "/query/stream/{queryId}", method = RequestMethod.DELETE)
+    @ResponseBody
+    public void cancelStreamQuery(@PathVariable String queryId) {
+        StreamQuery streamQuery = runningStreamQueries.get(queryId);
+        if (streamQuery == null)
+            throw new NotFoundException("Streaming query " + queryId + " is not running");
+
+        // only the user who started the query or an admin may cancel it
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String user = authentication == null ? null : authentication.getName();
+        if (streamQuery.owner != null && !streamQuery.owner.equals(user) && !isAdmin(authentication))
+            throw new ForbiddenException("Streaming query " + queryId + " was not started by " + user);
+
+        logger.info("Cancelling streaming query " + queryId + " by " + user);
+        streamQuery.cancelled.set(true);
+    }
 
-            for (List<String> row : result.getResults()) {
-                csvWriter.write(row);
-            }
-        } catch (IOException e) {
-            logger.error("", e);
-        } finally {
-            IOUtils.closeQuietly(csvWriter);
+    private static boolean isAdmin(Authentication authentication) {
+        if (authentication == null)
+            return false;
+        for (GrantedAuthority auth : authentication.getAuthorities()) {
+            if (Constant.ROLE_ADMIN.equals(auth.getAuthority()))
+                return true;
         }
+        return false;
     }
 
     @RequestMapping(value = "/tables_and_columns", method = RequestMethod.GET)
@@ -165,24 +201,28 @@ public class QueryController extends BasicController {
         }
     }
 
+    private void checkQueryAllowed(SQLRequest sqlRequest) {
+        String sql = sqlRequest.getSql();
+        String project = sqlRequest.getProject();
+        logger.info("Using project: " + project);
+        logger.info("The original query:  " + sql);
+
+        String serverMode = KylinConfig.getInstanceFromEnv().getServerMode();
+        if (!(Constant.SERVER_MODE_QUERY.equals(serverMode.toLowerCase()) || Constant.SERVER_MODE_ALL.equals(serverMode.toLowerCase()))) {
+            throw new InternalErrorException("Query is not allowed in " + serverMode + " mode.");
+        }
+
+        if (!sql.toLowerCase().contains("select")) {
+            logger.debug("Directly return exception as not supported");
+            throw new InternalErrorException("Not Supported SQL.");
+        }
+    }
+
     private SQLResponse doQueryWithCache(SQLRequest sqlRequest) {
         try {
             BackdoorToggles.setToggles(sqlRequest.getBackdoorToggles());
 
-            String sql = sqlRequest.getSql();
-            String project = sqlRequest.getProject();
-            logger.info("Using project: " + project);
-            logger.info("The original query:  " + sql);
-
-            String serverMode = KylinConfig.getInstanceFromEnv().getServerMode();
-            if (!(Constant.SERVER_MODE_QUERY.equals(serverMode.toLowerCase()) || Constant.SERVER_MODE_ALL.equals(serverMode.toLowerCase()))) {
-                throw new InternalErrorException("Query is not allowed in " + serverMode + " mode.");
-            }
-
-            if (!sql.toLowerCase().contains("select")) {
-                logger.debug("Directly return exception as not supported");
-                throw new InternalErrorException("Not Supported SQL.");
-            }
+            checkQueryAllowed(sqlRequest);
 
             long startTime = System.currentTimeMillis();
 
@@ -227,6 +267,239 @@ public class QueryController extends BasicController {
 
         } finally {
             BackdoorToggles.cleanToggles();
+            QueryContext.reset();
+        }
+    }
+
+    private void doStreamQuery(String format, SQLRequest sqlRequest, HttpServletResponse response) {
+        String queryId = UUID.randomUUID().toString();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        StreamQuery streamQuery = new StreamQuery(authentication == null ? null : authentication.getName());
+        AtomicBoolean cancelled = streamQuery.cancelled;
+        runningStreamQueries.put(queryId, streamQuery);
+        response.setHeader(STREAM_QUERY_ID_HEADER, queryId);
+
+        StreamingResultWriter writer = null;
+        try {
+            BackdoorToggles.setToggles(sqlRequest.getBackdoorToggles());
+            // exports yield to interactive queries when scanning the storage
+            QueryContext.current().setBulk(true);
+
+            checkQueryAllowed(sqlRequest);
+
+            if ("csv".equalsIgnoreCase(format)) {
+                response.setContentType("text/csv;charset=utf-8");
+                writer = new CsvResultWriter(response, cancelled);
+            } else if ("json".equalsIgnoreCase(format)) {
+                response.setContentType("application/json;charset=utf-8");
+                writer = new JsonResultWriter(response, cancelled);
+            } else {
+                throw new BadRequestException("Unsupported format " + format + ", valid values are csv and json");
+            }
+
+            long startTime = System.currentTimeMillis();
+            SQLResponse sqlResponse;
+            try {
+                SQLResponse cached = searchQueryInCache(sqlRequest);
+                if (cached != null && !cached.getIsException()) {
+                    writer.onStart(cached.getCube(), cached.getColumnMetas());
+                    for (List<String> row : cached.getResults()) {
+                        if (!writer.onRow(row))
+                            break;
+                    }
+                    sqlResponse = cached;
+                } else {
+                    sqlResponse = queryService.query(sqlRequest, writer);
+                }
+            } catch (Throwable e) { // calcite may throw AssertError
+                logger.error("Exception when execute sql", e);
+                sqlResponse = new SQLResponse(null, null, 0, true, QueryUtil.makeErrorMsgUserFriendly(e));
+            }
+            sqlResponse.setDuration(System.currentTimeMillis() - startTime);
+            logger.info("Streamed {} rows of query {}, cancelled: {}", writer.getRowCount(), queryId, cancelled.get());
+
+            queryService.logQuery(sqlRequest, sqlResponse);
+
+            if (sqlResponse.getIsException() && !response.isCommitted() && !writer.isStarted()) {
+                // nothing sent yet, the error goes out as a normal error response
+                response.resetBuffer();
+                throw new InternalErrorException(sqlResponse.getExceptionMessage());
+            }
+            if (writer.isDisconnected()) {
+                // the client went away, nothing more can be written
+                logger.info("Client of streaming query " + queryId + " disconnected");
+            } else {
+                writer.finish(sqlResponse);
+            }
+
+        } catch (IOException e) {
+            // mostly the client went away, the result set is already closed by now
+            logger.warn("Failed to write streaming query " + queryId, e);
+        } finally {
+            runningStreamQueries.remove(queryId);
+            BackdoorToggles.cleanToggles();
+            QueryContext.reset();
+        }
+    }
+
+    private static class StreamQuery {
+        // the user who started the query, null when not authenticated
+        final String owner;
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        StreamQuery(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Writes rows to the http response as they come, checks the cancel flag between rows. A failed write means
+     * the client went away; it cancels the query and nothing more is written.
+     */
+    private abstract class StreamingResultWriter implements QueryService.ResultRowHandler {
+        final HttpServletResponse response;
+        final AtomicBoolean cancelled;
+        long rowCount = 0;
+        boolean started = false;
+        boolean disconnected = false;
+
+        StreamingResultWriter(HttpServletResponse response, AtomicBoolean cancelled) {
+            this.response = response;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void onStart(String realization, List<SelectedColumnMeta> columnMetas) throws Exception {
+            // authorization must pass before any row goes out
+            checkQueryAuth(realization);
+            started = true;
+            try {
+                writeStart(columnMetas);
+            } catch (IOException e) {
+                onDisconnect(e);
+            }
+        }
+
+        @Override
+        public boolean onRow(List<String> row) throws Exception {
+            if (cancelled.get())
+                return false;
+            try {
+                writeRow(row);
+            } catch (IOException e) {
+                onDisconnect(e);
+                return false;
+            }
+            rowCount++;
+            return true;
+        }
+
+        private void onDisconnect(IOException e) {
+            logger.warn("Failed to write streaming query result, cancelling it", e);
+            disconnected = true;
+            cancelled.set(true);
+        }
+
+        // the servlet writer would swallow the error of a disconnected client; the header is flushed right
+        // away, so the client sees the columns and a gone client is noticed early
+        Writer openWriter() throws IOException {
+            return new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+        }
+
+        long getRowCount() {
+            return rowCount;
+        }
+
+        boolean isStarted() {
+            return started;
+        }
+
+        boolean isDisconnected() {
+            return disconnected;
+        }
+
+        abstract void writeStart(List<SelectedColumnMeta> columnMetas) throws IOException;
+
+        abstract void writeRow(List<String> row) throws IOException;
+
+        abstract void finish(SQLResponse sqlResponse) throws IOException;
+    }
+
+    private class CsvResultWriter extends StreamingResultWriter {
+        private ICsvListWriter csvWriter;
+
+        CsvResultWriter(HttpServletResponse response, AtomicBoolean cancelled) {
+            super(response, cancelled);
+        }
+
+        @Override
+        void writeStart(List<SelectedColumnMeta> columnMetas) throws IOException {
+            csvWriter = new CsvListWriter(openWriter(), CsvPreference.STANDARD_PREFERENCE);
+
+            List<String> headerList = new ArrayList<String>();
+            for (SelectedColumnMeta column : columnMetas) {
+                headerList.add(column.getName());
+            }
+            csvWriter.writeHeader(headerList.toArray(new String[headerList.size()]));
+            csvWriter.flush();
+        }
+
+        @Override
+        void writeRow(List<String> row) throws IOException {
+            csvWriter.write(row);
+        }
+
+        @Override
+        void finish(SQLResponse sqlResponse) throws IOException {
+            // csv has no way to tell a failure after the rows have started, the result is cut short
+            if (sqlResponse.getIsException()) {
+                logger.warn("Streaming csv result is incomplete: " + sqlResponse.getExceptionMessage());
+            }
+            IOUtils.closeQuietly(csvWriter);
+        }
+    }
+
+    private class JsonResultWriter extends StreamingResultWriter {
+        private JsonGenerator generator;
+
+        JsonResultWriter(HttpServletResponse response, AtomicBoolean cancelled) {
+            super(response, cancelled);
+        }
+
+        @Override
+        void writeStart(List<SelectedColumnMeta> columnMetas) throws IOException {
+            generator = JSON_FACTORY.createGenerator(openWriter());
+            generator.writeStartObject();
+            generator.writeFieldName("columnMetas");
+            generator.writeObject(columnMetas);
+            generator.writeArrayFieldStart("results");
+            generator.flush();
+        }
+
+        @Override
+        void writeRow(List<String> row) throws IOException {
+            generator.writeStartArray();
+            for (String value : row) {
+                generator.writeString(value);
+            }
+            generator.writeEndArray();
+        }
+
+        @Override
+        void finish(SQLResponse sqlResponse) throws IOException {
+            if (generator == null) {
+                writeStart(sqlResponse.getColumnMetas() == null ? new ArrayList<SelectedColumnMeta>() : sqlResponse.getColumnMetas());
+            }
+            generator.writeEndArray();
+            generator.writeStringField("cube", sqlResponse.getCube());
+            generator.writeBooleanField("isException", sqlResponse.getIsException());
+            generator.writeStringField("exceptionMessage", sqlResponse.getExceptionMessage());
+            generator.writeNumberField("duration", sqlResponse.getDuration());
+            generator.writeNumberField("totalScanCount", sqlResponse.getTotalScanCount());
+            generator.writeBooleanField("partial", sqlResponse.isPartial());
+            generator.writeBooleanField("cancelled", cancelled.get());
+            generator.writeEndObject();
+            generator.close();
         }
     }
 
@@ -253,8 +526,17 @@ public class QueryController extends BasicController {
     }
 
     private void checkQueryAuth(SQLResponse sqlResponse) throws AccessDeniedException {
-        if (!sqlResponse.getIsException() && KylinConfig.getInstanceFromEnv().isQuerySecureEnabled()) {
-            CubeInstance cubeInstance = this.queryService.getCubeManager().getCube(sqlResponse.getCube());
+        if (!sqlResponse.getIsException()) {
+            checkQueryAuth(sqlResponse.getCube());
+        }
+    }
+
+    private void checkQueryAuth(String realization) throws AccessDeniedException {
+        // e.g. the intercepted tableau queries, no cube data is returned
+        if (realization == null)
+            return;
+        if (KylinConfig.getInstanceFromEnv().isQuerySecureEnabled()) {
+            CubeInstance cubeInstance = this.queryService.getCubeManager().getCube(realization);
             queryService.checkAuthorization(cubeInstance);
         }
     }
@@ -23,6 +23,8 @@ import java.util.List;
 
 import org.apache.kylin.rest.model.SelectedColumnMeta;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class SQLResponse implements Serializable {
     protected static final long serialVersionUID = 1L;
 
@@ -59,6 +61,9 @@ public class SQLResponse implements Serializable {
 
     protected boolean storageCacheUsed = false;
 
+    // cubes and segments the result is computed from, for cache eviction only; null means unknown
+    protected List<StorageDependency> storageDependencies;
+
     public SQLResponse() {
     }
 
@@ -165,4 +170,14 @@ public class SQLResponse implements Serializable {
     public void setStorageCacheUsed(boolean storageCacheUsed) {
         this.storageCacheUsed = storageCacheUsed;
     }
+
+    @JsonIgnore
+    public List<StorageDependency> getStorageDependencies() {
+        return storageDependencies;
+    }
+
+    @JsonIgnore
+    public void setStorageDependencies(List<StorageDependency> storageDependencies) {
+        this.storageDependencies = storageDependencies;
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.response;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A cube a cached query result was computed from: the ready segments seen by the query, and the range of
+ * the partition column the query was restricted to. The result is stale only if a segment overlapping that
+ * range was added, refreshed or removed since.
+ */
+public class StorageDependency implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String cubeName;
+    private final String storageUUID;
+
+    // segment uuid -> [start, end), null means unknown, i.e. any segment change makes the result stale
+    private final Map<String, long[]> segments;
+
+    // the partition column range the query filtered on, both ends inclusive
+    private final long rangeStart;
+    private final long rangeEnd;
+
+    public StorageDependency(CubeInstance cube, Collection<CubeSegment> queriedSegments, long rangeStart, long rangeEnd) {
+        this.cubeName = cube.getName();
+        this.storageUUID = cube.getUuid();
+        if (queriedSegments == null) {
+            this.segments = null;
+        } else {
+            this.segments = Maps.newHashMap();
+            for (CubeSegment seg : queriedSegments) {
+                segments.put(seg.getUuid(), new long[] { seg.getDateRangeStart(), seg.getDateRangeEnd() });
+            }
+        }
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+    }
+
+    public String getCubeName() {
+        return cubeName;
+    }
+
+    public String getStorageUUID() {
+        return storageUUID;
+    }
+
+    public long getRangeStart() {
+        return rangeStart;
+    }
+
+    public long getRangeEnd() {
+        return rangeEnd;
+    }
+
+    /**
+     * Whether the ready segments of the given cube differ from those seen by the query, within the queried range.
+     * A cube of another uuid never affects this dependency.
+     */
+    public boolean isAffectedBy(CubeInstance cube) {
+        if (!storageUUID.equals(cube.getUuid()))
+            return false;
+        // e.g. a disabled cube no longer serves queries
+        if (segments == null || !cube.isReady())
+            return true;
+
+        Set<String> current = Sets.newHashSet();
+        for (CubeSegment seg : cube.getSegments(SegmentStatusEnum.READY)) {
+            current.add(seg.getUuid());
+            if (!segments.containsKey(seg.getUuid()) && overlaps(seg.getDateRangeStart(), seg.getDateRangeEnd())) {
+                return true;
+            }
+        }
+        for (Map.Entry<String, long[]> entry : segments.entrySet()) {
+            if (!current.contains(entry.getKey()) && overlaps(entry.getValue()[0], entry.getValue()[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean overlaps(long segStart, long segEnd) {
+        if (rangeStart == Long.MIN_VALUE && rangeEnd == Long.MAX_VALUE)
+            return true;
+        return segStart <= rangeEnd && segEnd > rangeStart;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageDependency [cube=" + cubeName + ", segments=" + (segments == null ? "unknown" : segments.keySet()) + ", range=[" + rangeStart + ", " + rangeEnd + "]]";
+    }
+}
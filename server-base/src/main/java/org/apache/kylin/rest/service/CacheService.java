@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -47,6 +48,8 @@ import org.apache.kylin.metadata.realization.RealizationType;
 import org.apache.kylin.query.enumerator.OLAPQuery;
 import org.apache.kylin.query.schema.OLAPSchemaFactory;
 import org.apache.kylin.rest.controller.QueryController;
+import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.response.StorageDependency;
 import org.apache.kylin.source.kafka.KafkaConfigManager;
 import org.apache.kylin.storage.hbase.HBaseConnection;
 import org.apache.kylin.storage.hybrid.HybridManager;
@@ -56,7 +59,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.stereotype.Component;
 
+import com.google.common.collect.Sets;
+
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 
 /**
  */
@@ -67,6 +74,8 @@ public class CacheService extends BasicService {
 
     private static ConcurrentMap<String, DataSource> olapDataSources = new ConcurrentHashMap<String, DataSource>();
 
+    private static ConcurrentMap<String, QueryConnectionPool> olapConnectionPools = new ConcurrentHashMap<String, QueryConnectionPool>();
+
     @Autowired
     private CubeService cubeService;
 
@@ -85,12 +94,12 @@ public class CacheService extends BasicService {
 
             @Override
             public void afterCubeUpdate(CubeInstance cube) {
-                rebuildCubeCache(cube.getName());
+                rebuildCubeCache(cube.getName(), null);
             }
 
             @Override
             public void afterCubeDelete(CubeInstance cube) {
-                removeCubeCache(cube.getName(), cube);
+                removeCubeCache(cube.getName(), cube, null);
             }
         });
     }
@@ -100,16 +109,60 @@ public class CacheService extends BasicService {
         this.cubeService = cubeService;
     }
 
+    /**
+     * Evicts cached query results that read the given storage, regardless of segments, e.g. when the cube is dropped.
+     */
     protected void cleanDataCache(String storageUUID) {
+        cleanDataCache(storageUUID, null);
+    }
+
+    /**
+     * Evicts cached query results whose segments of the given cube have changed within their queried range.
+     */
+    protected void cleanDataCache(CubeInstance cube) {
+        cleanDataCache(cube.getUuid(), cube);
+    }
+
+    private void cleanDataCache(String storageUUID, CubeInstance cube) {
         if (cacheManager != null) {
-            logger.info("cleaning cache for " + storageUUID + " (currently remove all entries)");
-            cacheManager.getCache(QueryController.SUCCESS_QUERY_CACHE).removeAll();
-            cacheManager.getCache(QueryController.EXCEPTION_QUERY_CACHE).removeAll();
+            int success = cleanDataCache(cacheManager.getCache(QueryController.SUCCESS_QUERY_CACHE), storageUUID, cube);
+            int exception = cleanDataCache(cacheManager.getCache(QueryController.EXCEPTION_QUERY_CACHE), storageUUID, cube);
+            logger.info("cleaning cache for " + storageUUID + ", removed " + success + " success entries and " + exception + " exception entries");
         } else {
             logger.warn("skip cleaning cache for " + storageUUID);
         }
     }
 
+    private int cleanDataCache(Cache cache, String storageUUID, CubeInstance cube) {
+        int removed = 0;
+        for (Object key : cache.getKeys()) {
+            Element element = cache.getQuiet(key);
+            if (element == null)
+                continue;
+
+            SQLResponse response = (SQLResponse) element.getObjectValue();
+            if (isAffected(response.getStorageDependencies(), storageUUID, cube)) {
+                cache.remove(key);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    static boolean isAffected(List<StorageDependency> dependencies, String storageUUID, CubeInstance cube) {
+        // unknown dependencies, e.g. exception results, are always evicted
+        if (dependencies == null)
+            return true;
+
+        for (StorageDependency dependency : dependencies) {
+            if (!dependency.getStorageUUID().equals(storageUUID))
+                continue;
+            if (cube == null || dependency.isAffectedBy(cube))
+                return true;
+        }
+        return false;
+    }
+
     protected void cleanAllDataCache() {
         if (cacheManager != null) {
             logger.warn("cleaning all storage cache");
@@ -126,12 +179,43 @@ public class CacheService extends BasicService {
 
         project = ProjectInstance.getNormalizedProjectName(project);
         olapDataSources.remove(project);
+        QueryConnectionPool pool = olapConnectionPools.remove(project);
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     public static void removeAllOLAPDataSources() {
         // brutal, yet simplest way
         logger.info("removeAllOLAPDataSources is called.");
         olapDataSources.clear();
+        for (String project : olapConnectionPools.keySet()) {
+            QueryConnectionPool pool = olapConnectionPools.remove(project);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * The pool of reusable connections to the OLAP data source of a project. Plans are cached by the pooled
+     * connections unless disabled or an access controller is set.
+     */
+    public QueryConnectionPool getOLAPConnectionPool(String project) {
+        project = ProjectInstance.getNormalizedProjectName(project);
+
+        QueryConnectionPool ret = olapConnectionPools.get(project);
+        if (ret == null) {
+            KylinConfig config = getConfig();
+            boolean cachePlans = config.isQueryPlanCacheEnabled() && StringUtils.isEmpty(config.getQueryAccessController());
+            QueryConnectionPool pool = new QueryConnectionPool(getOLAPDataSource(project), config.getQueryConnectionPoolMaxIdle(), cachePlans ? config.getQueryPlanCacheMaxEntry() : 0);
+
+            ret = olapConnectionPools.putIfAbsent(project, pool);
+            if (ret == null) {
+                ret = pool;
+            }
+        }
+        return ret;
     }
 
     public DataSource getOLAPDataSource(String project) {
@@ -165,13 +249,57 @@ public class CacheService extends BasicService {
         return ret;
     }
 
+    /**
+     * Applies a batch of cache events broadcast together. Projects and cube descs touched by several events are
+     * reloaded once, after all events of the batch. An event that fails does not stop the rest.
+     */
+    public void applyBatch(List<Broadcaster.BroadcastEvent> events) {
+        for (Broadcaster.BroadcastEvent event : events) {
+            if (Broadcaster.TYPE.getType(event.getType()) == Broadcaster.TYPE.ALL) {
+                rebuildCache(Broadcaster.TYPE.ALL, event.getName());
+                return;
+            }
+        }
+
+        DeferredReloads deferred = new DeferredReloads();
+        for (Broadcaster.BroadcastEvent event : events) {
+            Broadcaster.TYPE type = Broadcaster.TYPE.getType(event.getType());
+            Broadcaster.EVENT action = Broadcaster.EVENT.getEvent(event.getAction());
+            if (type == null || action == null) {
+                logger.warn("skip invalid cache event " + event);
+                continue;
+            }
+
+            try {
+                if (action == Broadcaster.EVENT.DROP) {
+                    removeCache(type, event.getName(), deferred);
+                } else {
+                    rebuildCache(type, event.getName(), deferred);
+                }
+            } catch (RuntimeException e) {
+                logger.error("failed to apply cache event " + event, e);
+            }
+        }
+
+        for (String project : deferred.projects) {
+            reloadProjectCache(project);
+        }
+        if (deferred.cubeDescs) {
+            CubeDescManager.clearCache();
+        }
+    }
+
     public void rebuildCache(Broadcaster.TYPE cacheType, String cacheKey) {
+        rebuildCache(cacheType, cacheKey, null);
+    }
+
+    private void rebuildCache(Broadcaster.TYPE cacheType, String cacheKey, DeferredReloads deferred) {
         final String log = "rebuild cache type: " + cacheType + " name:" + cacheKey;
         logger.info(log);
         try {
             switch (cacheType) {
             case CUBE:
-                rebuildCubeCache(cacheKey);
+                rebuildCubeCache(cacheKey, deferred);
                 break;
             case STREAMING:
                 getStreamingManager().reloadStreamingConfigLocal(cacheKey);
@@ -183,19 +311,22 @@ public class CacheService extends BasicService {
                 getCubeDescManager().reloadCubeDescLocal(cacheKey);
                 break;
             case PROJECT:
-                reloadProjectCache(cacheKey);
+                reloadProjectCache(cacheKey, deferred);
                 break;
             case TABLE:
                 getMetadataManager().reloadTableCache(cacheKey);
-                CubeDescManager.clearCache();
+                clearCubeDescCache(deferred);
                 break;
             case EXTERNAL_FILTER:
                 getMetadataManager().reloadExtFilter(cacheKey);
-                CubeDescManager.clearCache();
+                clearCubeDescCache(deferred);
                 break;
             case DATA_MODEL:
                 getMetadataManager().reloadDataModelDesc(cacheKey);
-                CubeDescManager.clearCache();
+                clearCubeDescCache(deferred);
+                break;
+            case JOB:
+                getExecutableManager().reloadJobState(cacheKey);
                 break;
             case ALL:
                 DictionaryManager.clearCache();
@@ -220,23 +351,27 @@ public class CacheService extends BasicService {
         }
     }
 
-    private void rebuildCubeCache(String cubeName) {
+    private void rebuildCubeCache(String cubeName, DeferredReloads deferred) {
         CubeInstance cube = getCubeManager().reloadCubeLocal(cubeName);
         getHybridManager().reloadHybridInstanceByChild(RealizationType.CUBE, cubeName);
-        reloadProjectCache(getProjectManager().findProjects(RealizationType.CUBE, cubeName));
+        reloadProjectCache(getProjectManager().findProjects(RealizationType.CUBE, cubeName), deferred);
         //clean query related cache first
         if (cube != null) {
-            cleanDataCache(cube.getUuid());
+            cleanDataCache(cube);
         }
         cubeService.updateOnNewSegmentReady(cubeName);
     }
 
     public void removeCache(Broadcaster.TYPE cacheType, String cacheKey) {
+        removeCache(cacheType, cacheKey, null);
+    }
+
+    private void removeCache(Broadcaster.TYPE cacheType, String cacheKey, DeferredReloads deferred) {
         final String log = "remove cache type: " + cacheType + " name:" + cacheKey;
         try {
             switch (cacheType) {
             case CUBE:
-                removeCubeCache(cacheKey, null);
+                removeCubeCache(cacheKey, null, deferred);
                 break;
             case CUBE_DESC:
                 getCubeDescManager().removeLocalCubeDesc(cacheKey);
@@ -251,6 +386,9 @@ public class CacheService extends BasicService {
             case DATA_MODEL:
                 getMetadataManager().removeModelCache(cacheKey);
                 break;
+            case JOB:
+                getExecutableManager().reloadJobState(cacheKey);
+                break;
             default:
                 throw new RuntimeException("invalid cacheType:" + cacheType);
             }
@@ -259,7 +397,7 @@ public class CacheService extends BasicService {
         }
     }
 
-    private void removeCubeCache(String cubeName, CubeInstance cube) {
+    private void removeCubeCache(String cubeName, CubeInstance cube, DeferredReloads deferred) {
         // you may not get the cube instance if it's already removed from metadata
         if (cube == null) {
             cube = getCubeManager().getCube(cubeName);
@@ -267,19 +405,33 @@ public class CacheService extends BasicService {
 
         getCubeManager().removeCubeLocal(cubeName);
         getHybridManager().reloadHybridInstanceByChild(RealizationType.CUBE, cubeName);
-        reloadProjectCache(getProjectManager().findProjects(RealizationType.CUBE, cubeName));
+        reloadProjectCache(getProjectManager().findProjects(RealizationType.CUBE, cubeName), deferred);
 
         if (cube != null) {
             cleanDataCache(cube.getUuid());
         }
     }
 
-    private void reloadProjectCache(List<ProjectInstance> projects) {
+    private void reloadProjectCache(List<ProjectInstance> projects, DeferredReloads deferred) {
         for (ProjectInstance prj : projects) {
-            reloadProjectCache(prj.getName());
+            reloadProjectCache(prj.getName(), deferred);
         }
     }
 
+    private void reloadProjectCache(String projectName, DeferredReloads deferred) {
+        if (deferred != null)
+            deferred.projects.add(projectName);
+        else
+            reloadProjectCache(projectName);
+    }
+
+    private void clearCubeDescCache(DeferredReloads deferred) {
+        if (deferred != null)
+            deferred.cubeDescs = true;
+        else
+            CubeDescManager.clearCache();
+    }
+
     private void reloadProjectCache(String projectName) {
         try {
             getProjectManager().reloadProjectLocal(projectName);
@@ -289,4 +441,9 @@ public class CacheService extends BasicService {
         removeOLAPDataSource(projectName);
     }
 
+    /** reloads of a batch of cache events that are done once at the end of the batch */
+    private static class DeferredReloads {
+        final Set<String> projects = Sets.newLinkedHashSet();
+        boolean cubeDescs = false;
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.rest.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.query.relnode.OLAPContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Calcite connections of a project, each used by one query at a time and kept open for later queries, so that
+ * the model and schema are not built again per query.
+ * <p>
+ * A pooled connection also keeps the prepared statements of recent SQLs. A prepared statement holds the compiled
+ * plan, thus executing it again skips parsing, validation and optimization. As the plan finds its OLAP contexts
+ * from the thread local, the contexts created by the planning are kept too and a copy of them is registered
+ * before each later execution. The pool is closed whenever the project or its cubes change.
+ */
+public class QueryConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final int maxIdle;
+    private final int maxPlans;
+
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+    private boolean closed = false;
+
+    /**
+     * @param maxPlans plans cached per connection, 0 to not cache plans
+     */
+    public QueryConnectionPool(DataSource dataSource, int maxIdle, int maxPlans) {
+        this.dataSource = dataSource;
+        this.maxIdle = maxIdle;
+        this.maxPlans = maxPlans;
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        synchronized (this) {
+            if (!idle.isEmpty())
+                return idle.pollLast();
+        }
+        return new PooledConnection(dataSource.getConnection());
+    }
+
+    /**
+     * @param failure the error of the last query on the connection if it failed, the connection is not reused if
+     *                the error is about the connection itself, e.g. it is closed
+     */
+    public void release(PooledConnection conn, Throwable failure) {
+        boolean broken = failure != null && conn.isBroken(failure);
+        boolean keep;
+        synchronized (this) {
+            keep = !broken && !closed && idle.size() < maxIdle;
+            if (keep)
+                idle.addLast(conn);
+        }
+        if (!keep)
+            conn.close();
+    }
+
+    /** closes idle connections now and the borrowed ones once released */
+    public void close() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = Lists.newArrayList(idle);
+            idle.clear();
+        }
+        for (PooledConnection conn : toClose) {
+            conn.close();
+        }
+    }
+
+    /** collapses whitespaces out of quotes, so that SQLs differ only in formatting share a plan */
+    static String normalize(String sql) {
+        StringBuilder buf = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && buf.length() > 0)
+                buf.append(' ');
+            space = false;
+            buf.append(c);
+
+            if (quote == 0 && (c == '\'' || c == '"'))
+                quote = c;
+            else if (c == quote)
+                quote = 0; // an escaped quote closes and reopens, which is the same
+        }
+        return buf.toString();
+    }
+
+    public class PooledConnection {
+        private final Connection conn;
+        private final LinkedHashMap<String, CachedPlan> plans;
+
+        PooledConnection(Connection conn) {
+            this.conn = conn;
+            this.plans = new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+                    if (size() <= maxPlans)
+                        return false;
+                    closeQuietly(eldest.getValue().statement);
+                    return true;
+                }
+            };
+        }
+
+        public Connection getConnection() {
+            return conn;
+        }
+
+        /**
+         * Prepares the SQL, or returns the statement cached for it with copies of its OLAP contexts registered.
+         * Call {@link #closeStatement(Statement)} instead of closing the returned statement.
+         */
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            // backdoor toggles change how the plan is built and run, thus such queries are not cached
+            String key = maxPlans > 0 && !BackdoorToggles.hasToggles() ? normalize(sql) : null;
+            CachedPlan plan = key == null ? null : plans.get(key);
+            if (plan != null) {
+                List<OLAPContext> contexts = Lists.newArrayListWithCapacity(plan.contexts.size());
+                for (OLAPContext template : plan.contexts) {
+                    contexts.add(template.copyForExecution());
+                }
+                OLAPContext.clearThreadLocalContexts();
+                for (OLAPContext ctx : contexts) {
+                    OLAPContext.registerContext(ctx);
+                }
+                plan.statement.clearParameters();
+                logger.debug("Reuse the cached plan");
+                return plan.statement;
+            }
+
+            OLAPContext.clearThreadLocalContexts();
+            PreparedStatement statement = conn.prepareStatement(sql);
+            if (key != null) {
+                try {
+                    // copies before the execution changes the contexts
+                    List<OLAPContext> templates = Lists.newArrayList();
+                    Collection<OLAPContext> planned = OLAPContext.getThreadLocalContexts();
+                    if (planned != null) {
+                        for (OLAPContext ctx : planned) {
+                            templates.add(ctx.copyForExecution());
+                        }
+                    }
+                    plans.put(key, new CachedPlan(statement, templates));
+                } catch (UnsupportedOperationException e) {
+                    logger.debug("The plan is not cached, " + e.getMessage());
+                }
+            }
+            return statement;
+        }
+
+        public void closeStatement(Statement statement) {
+            for (CachedPlan plan : plans.values()) {
+                if (plan.statement == statement)
+                    return;
+            }
+            closeQuietly(statement);
+        }
+
+        boolean isBroken(Throwable failure) {
+            try {
+                if (conn.isClosed())
+                    return true;
+            } catch (SQLException e) {
+                return true;
+            }
+            // SQL state class 08 is connection exception
+            for (Throwable t = failure; t != null; t = t.getCause()) {
+                if (t instanceof SQLNonTransientConnectionException || t instanceof SQLTransientConnectionException)
+                    return true;
+                if (t instanceof SQLException && ((SQLException) t).getSQLState() != null && ((SQLException) t).getSQLState().startsWith("08"))
+                    return true;
+            }
+            return false;
+        }
+
+        void close() {
+            for (CachedPlan plan : plans.values()) {
+                closeQuietly(plan.statement);
+            }
+            plans.clear();
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("failed to close", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.error("failed to close", e);
+        }
+    }
+
+    private static class CachedPlan {
+        final PreparedStatement statement;
+        final List<OLAPContext> contexts;
+
+        CachedPlan(PreparedStatement statement, List<OLAPContext> contexts) {
+            this.statement = statement;
+            this.contexts = contexts;
+        }
+    }
+}
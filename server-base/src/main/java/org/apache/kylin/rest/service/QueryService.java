@@ -52,9 +52,16 @@ import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.DateFormat;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.model.PartitionDesc;
+import org.apache.kylin.metadata.realization.IRealization;
 import org.apache.kylin.query.relnode.OLAPContext;
 import org.apache.kylin.rest.constant.Constant;
 import org.apache.kylin.rest.model.ColumnMeta;
@@ -64,9 +71,11 @@ import org.apache.kylin.rest.model.TableMeta;
 import org.apache.kylin.rest.request.PrepareSqlRequest;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.response.StorageDependency;
 import org.apache.kylin.rest.util.QueryUtil;
 import org.apache.kylin.rest.util.Serializer;
 import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hybrid.HybridInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -117,16 +126,39 @@ public class QueryService extends BasicService {
     }
 
     public SQLResponse query(SQLRequest sqlRequest) throws Exception {
+        return query(sqlRequest, null);
+    }
+
+    /**
+     * Runs the query and hands over rows one by one to the given handler, instead of holding them in the
+     * returned response. The returned response has no results. With a null handler the rows are collected as usual.
+     */
+    public SQLResponse query(SQLRequest sqlRequest, ResultRowHandler handler) throws Exception {
         try {
             badQueryDetector.queryStart(Thread.currentThread(), sqlRequest);
 
-            return queryWithSqlMassage(sqlRequest);
+            return queryWithSqlMassage(sqlRequest, handler);
 
         } finally {
             badQueryDetector.queryEnd(Thread.currentThread());
         }
     }
 
+    /**
+     * Receives query results as they are fetched from the result set.
+     */
+    public interface ResultRowHandler {
+        /**
+         * Called once the query is planned and before any row is fetched.
+         */
+        void onStart(String realization, List<SelectedColumnMeta> columnMetas) throws Exception;
+
+        /**
+         * Returns false to stop fetching, the rest of the result is discarded.
+         */
+        boolean onRow(List<String> row) throws Exception;
+    }
+
     public void saveQuery(final String creator, final Query query) throws IOException {
         List<Query> queries = getQueries(creator);
         queries.add(query);
@@ -210,6 +242,7 @@ public class QueryService extends BasicService {
         final String user = SecurityContextHolder.getContext().getAuthentication().getName();
         final Set<String> realizationNames = new HashSet<String>();
         final Set<Long> cuboidIds = new HashSet<Long>();
+        final List<String> segmentCuboids = new ArrayList<String>();
         float duration = response.getDuration() / (float) 1000;
         boolean storageCacheUsed = response.isStorageCacheUsed();
 
@@ -220,6 +253,12 @@ public class QueryService extends BasicService {
                     //Some queries do not involve cuboid, e.g. lookup table query
                     cuboidIds.add(cuboid.getId());
                 }
+                for (Map.Entry<String, long[]> entry : ctx.storageContext.getSegmentCuboids().entrySet()) {
+                    // the cuboid scanned may differ by segment when chosen by statistics
+                    long[] selection = entry.getValue();
+                    cuboidIds.add(selection[0]);
+                    segmentCuboids.add(entry.getKey() + ":" + selection[0] + (selection[1] < 0 ? "" : "(est. " + selection[1] + " rows)"));
+                }
 
                 if (ctx.realization != null) {
                     String realizationName = ctx.realization.getName();
@@ -245,6 +284,7 @@ public class QueryService extends BasicService {
         stringBuilder.append("Project: ").append(request.getProject()).append(newLine);
         stringBuilder.append("Realization Names: ").append(realizationNames).append(newLine);
         stringBuilder.append("Cuboid Ids: ").append(cuboidIds).append(newLine);
+        stringBuilder.append("Segment Cuboids: ").append(segmentCuboids).append(newLine);
         stringBuilder.append("Total scan count: ").append(response.getTotalScanCount()).append(newLine);
         stringBuilder.append("Result row count: ").append(resultRowCount).append(newLine);
         stringBuilder.append("Accept Partial: ").append(request.isAcceptPartial()).append(newLine);
@@ -261,7 +301,7 @@ public class QueryService extends BasicService {
     public void checkAuthorization(CubeInstance cube) throws AccessDeniedException {
     }
 
-    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest) throws Exception {
+    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest, ResultRowHandler handler) throws Exception {
         String userInfo = SecurityContextHolder.getContext().getAuthentication().getName();
         final Collection<? extends GrantedAuthority> grantedAuthorities = SecurityContextHolder.getContext().getAuthentication().getAuthorities();
         for (GrantedAuthority grantedAuthority : grantedAuthorities) {
@@ -272,6 +312,15 @@ public class QueryService extends BasicService {
         SQLResponse fakeResponse = QueryUtil.tableauIntercept(sqlRequest.getSql());
         if (null != fakeResponse) {
             logger.debug("Return fake response, is exception? " + fakeResponse.getIsException());
+            if (handler != null && !fakeResponse.getIsException()) {
+                List<SelectedColumnMeta> columnMetas = fakeResponse.getColumnMetas();
+                List<List<String>> results = fakeResponse.getResults();
+                handler.onStart(fakeResponse.getCube(), columnMetas == null ? Collections.<SelectedColumnMeta> emptyList() : columnMetas);
+                for (List<String> row : results == null ? Collections.<List<String>> emptyList() : results) {
+                    if (!handler.onRow(row))
+                        break;
+                }
+            }
             return fakeResponse;
         }
 
@@ -287,7 +336,7 @@ public class QueryService extends BasicService {
         parameters.put(OLAPContext.PRM_ACCEPT_PARTIAL_RESULT, String.valueOf(sqlRequest.isAcceptPartial()));
         OLAPContext.setParameters(parameters);
 
-        return execute(correctedSql, sqlRequest);
+        return execute(correctedSql, sqlRequest, handler);
 
     }
 
@@ -354,29 +403,27 @@ public class QueryService extends BasicService {
      * @return
      * @throws Exception
      */
-    private SQLResponse execute(String sql, SQLRequest sqlRequest) throws Exception {
-        Connection conn = null;
-        Statement stat = null;
+    private SQLResponse execute(String sql, SQLRequest sqlRequest, ResultRowHandler handler) throws Exception {
+        QueryConnectionPool pool = cacheService.getOLAPConnectionPool(sqlRequest.getProject());
+        QueryConnectionPool.PooledConnection conn = null;
+        Throwable failure = null;
+        PreparedStatement stat = null;
         ResultSet resultSet = null;
 
-        List<List<String>> results = Lists.newArrayList();
+        List<List<String>> results = handler == null ? Lists.<List<String>> newArrayList() : null;
         List<SelectedColumnMeta> columnMetas = Lists.newArrayList();
 
         try {
-            conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
+            conn = pool.borrow();
 
+            // plain SQLs are prepared too, so that their plans can be cached
+            stat = conn.prepareStatement(sql);
             if (sqlRequest instanceof PrepareSqlRequest) {
-                PreparedStatement preparedState = conn.prepareStatement(sql);
-
                 for (int i = 0; i < ((PrepareSqlRequest) sqlRequest).getParams().length; i++) {
-                    setParam(preparedState, i + 1, ((PrepareSqlRequest) sqlRequest).getParams()[i]);
+                    setParam(stat, i + 1, ((PrepareSqlRequest) sqlRequest).getParams()[i]);
                 }
-
-                resultSet = preparedState.executeQuery();
-            } else {
-                stat = conn.createStatement();
-                resultSet = stat.executeQuery(sql);
             }
+            resultSet = stat.executeQuery();
 
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columnCount = metaData.getColumnCount();
@@ -386,6 +433,10 @@ public class QueryService extends BasicService {
                 columnMetas.add(new SelectedColumnMeta(metaData.isAutoIncrement(i), metaData.isCaseSensitive(i), metaData.isSearchable(i), metaData.isCurrency(i), metaData.isNullable(i), metaData.isSigned(i), metaData.getColumnDisplaySize(i), metaData.getColumnLabel(i), metaData.getColumnName(i), metaData.getSchemaName(i), metaData.getCatalogName(i), metaData.getTableName(i), metaData.getPrecision(i), metaData.getScale(i), metaData.getColumnType(i), metaData.getColumnTypeName(i), metaData.isReadOnly(i), metaData.isWritable(i), metaData.isDefinitelyWritable(i)));
             }
 
+            if (handler != null) {
+                handler.onStart(getRealizationName(), columnMetas);
+            }
+
             // fill in results
             while (resultSet.next()) {
                 List<String> oneRow = Lists.newArrayListWithCapacity(columnCount);
@@ -393,21 +444,33 @@ public class QueryService extends BasicService {
                     oneRow.add((resultSet.getString(i + 1)));
                 }
 
-                results.add(oneRow);
+                if (handler == null) {
+                    results.add(oneRow);
+                } else if (!handler.onRow(oneRow)) {
+                    logger.info("Stop fetching results as requested by the result handler");
+                    break;
+                }
             }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
         } finally {
-            close(resultSet, stat, conn);
+            close(resultSet, null, null);
+            if (conn != null) {
+                if (stat != null)
+                    conn.closeStatement(stat);
+                pool.release(conn, failure);
+            }
         }
 
         boolean isPartialResult = false;
-        String cube = "";
+        String cube = getRealizationName();
         StringBuilder sb = new StringBuilder("Scan count for each storageContext: ");
         long totalScanCount = 0;
         if (OLAPContext.getThreadLocalContexts() != null) { // contexts can be null in case of 'explain plan for'
             for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
                 if (ctx.realization != null) {
                     isPartialResult |= ctx.storageContext.isPartialResultReturned();
-                    cube = ctx.realization.getName();
                     totalScanCount += ctx.storageContext.getTotalScanCount();
                     sb.append(ctx.storageContext.getTotalScanCount() + ",");
                 }
@@ -417,10 +480,119 @@ public class QueryService extends BasicService {
 
         SQLResponse response = new SQLResponse(columnMetas, results, cube, 0, false, null, isPartialResult);
         response.setTotalScanCount(totalScanCount);
+        response.setStorageDependencies(collectStorageDependencies());
 
         return response;
     }
 
+    private String getRealizationName() {
+        String realization = "";
+        if (OLAPContext.getThreadLocalContexts() != null) {
+            for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
+                if (ctx.realization != null) {
+                    realization = ctx.realization.getName();
+                }
+            }
+        }
+        return realization;
+    }
+
+    /**
+     * The cubes, segments and partition ranges the current query read, so that a cube update evicts only
+     * the cached results it may change. Returns null if unknown.
+     */
+    private List<StorageDependency> collectStorageDependencies() {
+        if (OLAPContext.getThreadLocalContexts() == null)
+            return null;
+
+        List<StorageDependency> dependencies = Lists.newArrayList();
+        for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
+            if (ctx.realization == null)
+                continue;
+
+            List<IRealization> realizations = Lists.newArrayList();
+            if (ctx.realization instanceof HybridInstance) {
+                realizations.addAll(Arrays.asList(((HybridInstance) ctx.realization).getRealizations()));
+            } else {
+                realizations.add(ctx.realization);
+            }
+
+            for (IRealization realization : realizations) {
+                if (!(realization instanceof CubeInstance))
+                    return null;
+
+                CubeInstance cubeInstance = (CubeInstance) realization;
+                List<CubeSegment> segments = Lists.newArrayList();
+                for (CubeSegment seg : ctx.storageContext.getQueriedSegments()) {
+                    if (seg.getCubeInstance().getUuid().equals(cubeInstance.getUuid()))
+                        segments.add(seg);
+                }
+                long[] range = getPartitionRange(cubeInstance, ctx.filter);
+                // a cube not visited by the storage query, e.g. a hybrid child not capable, depends on any change
+                dependencies.add(new StorageDependency(cubeInstance, segments.isEmpty() ? null : segments, range[0], range[1]));
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * The inclusive range of the partition column implied by the query filter, only simple AND-ed comparisons
+     * are recognized. Unbounded in any other case.
+     */
+    private long[] getPartitionRange(CubeInstance cubeInstance, TupleFilter filter) {
+        long[] range = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+
+        PartitionDesc partDesc = cubeInstance.getDescriptor().getModel().getPartitionDesc();
+        if (filter == null || partDesc == null || !partDesc.isPartitioned() || partDesc.getPartitionTimeColumn() != null)
+            return range;
+
+        List<TupleFilter> toCheck = Lists.newArrayList();
+        if (filter instanceof CompareTupleFilter) {
+            toCheck.add(filter);
+        } else if (filter.getOperator() == FilterOperatorEnum.AND) {
+            toCheck.addAll(filter.getChildren());
+        } else {
+            return range;
+        }
+
+        try {
+            for (TupleFilter f : toCheck) {
+                if (!(f instanceof CompareTupleFilter))
+                    continue;
+                CompareTupleFilter compf = (CompareTupleFilter) f;
+                if (!partDesc.getPartitionDateColumnRef().equals(compf.getColumn()) || compf.getValues().size() != 1)
+                    continue;
+
+                long v = DateFormat.stringToMillis(String.valueOf(compf.getFirstValue()), partDesc.getPartitionDateFormat());
+                switch (compf.getOperator()) {
+                case EQ:
+                    range[0] = Math.max(range[0], v);
+                    range[1] = Math.min(range[1], v);
+                    break;
+                case GT:
+                    range[0] = Math.max(range[0], v + 1);
+                    break;
+                case GTE:
+                    range[0] = Math.max(range[0], v);
+                    break;
+                case LT:
+                    range[1] = Math.min(range[1], v - 1);
+                    break;
+                case LTE:
+                    range[1] = Math.min(range[1], v);
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Cannot derive partition range from filter " + filter, e);
+            range[0] = Long.MIN_VALUE;
+            range[1] = Long.MAX_VALUE;
+        }
+        return range;
+    }
+
     /**
      * @param preparedState
      * @param param
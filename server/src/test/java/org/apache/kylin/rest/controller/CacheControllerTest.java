@@ -20,6 +20,7 @@ package org.apache.kylin.rest.controller;
 
 import java.io.IOException;
 
+import org.apache.kylin.common.restclient.Broadcaster.BroadcastEvent;
 import org.apache.kylin.rest.service.CacheService;
 import org.apache.kylin.rest.service.ServiceTestBase;
 import org.junit.Before;
@@ -49,4 +50,12 @@ public class CacheControllerTest extends ServiceTestBase {
 
         cacheController.wipeCache("cube_desc", "drop", "test_kylin_cube_with_slr_desc");
     }
+
+    @Test
+    public void testBatch() throws IOException {
+        cacheController.wipeCaches(new BroadcastEvent[] { //
+                new BroadcastEvent("cube", "update", "test_kylin_cube_with_slr_empty"), //
+                new BroadcastEvent("project", "update", "default"), //
+                new BroadcastEvent("cube_desc", "drop", "test_kylin_cube_with_slr_desc") });
+    }
 }
@@ -18,7 +18,15 @@
 
 package org.apache.kylin.rest.controller;
 
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletOutputStream;
+
 import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.rest.exception.ForbiddenException;
+import org.apache.kylin.rest.exception.NotFoundException;
 import org.apache.kylin.rest.request.MetaRequest;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.response.SQLResponse;
@@ -29,6 +37,13 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.sf.ehcache.CacheManager;
 
@@ -70,6 +85,112 @@ public class QueryControllerTest extends ServiceTestBase {
         assert QueryUtil.makeErrorMsgUserFriendly(errorMsg).equals("From line 14, column 14 to line 14, column 29: Column 'CLSFD_GA_PRFL_ID' not found in table 'LKP'\n" + "while executing SQL: \"select lkp.clsfd_ga_prfl_id, ga.sum_dt, sum(ga.bounces) as bounces, sum(ga.exits) as exits, sum(ga.entrances) as entrances, sum(ga.pageviews) as pageviews, count(distinct ga.GA_VSTR_ID, ga.GA_VST_ID) as visits, count(distinct ga.GA_VSTR_ID) as uniqVistors from CLSFD_GA_PGTYPE_CATEG_LOC ga left join clsfd_ga_prfl_lkp lkp on ga.SRC_GA_PRFL_ID = lkp.SRC_GA_PRFL_ID group by lkp.clsfd_ga_prfl_id,ga.sum_dt order by lkp.clsfd_ga_prfl_id,ga.sum_dt LIMIT 50000\"");
     }
 
+    @Test
+    public void testStreamQuery() throws Exception {
+        SQLRequest sqlRequest = new SQLRequest();
+        sqlRequest.setSql("SELECT 1");
+        sqlRequest.setProject("default");
+
+        MockHttpServletResponse csv = new MockHttpServletResponse();
+        queryController.streamQuery("csv", sqlRequest, csv);
+        Assert.assertNotNull(csv.getHeader(QueryController.STREAM_QUERY_ID_HEADER));
+        Assert.assertEquals("COL\r\n1\r\n", csv.getContentAsString());
+
+        MockHttpServletResponse json = new MockHttpServletResponse();
+        queryController.streamQuery("json", sqlRequest, json);
+        JsonNode node = new ObjectMapper().readTree(json.getContentAsString());
+        Assert.assertEquals("COL", node.get("columnMetas").get(0).get("name").asText());
+        Assert.assertEquals("1", node.get("results").get(0).get(0).asText());
+        Assert.assertFalse(node.get("isException").asBoolean());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testCancelStreamQueryNotRunning() {
+        queryController.cancelStreamQuery("not-running");
+    }
+
+    @Test
+    public void testCancelStreamQueryOwner() throws Exception {
+        final SQLRequest sqlRequest = new SQLRequest();
+        sqlRequest.setSql("SELECT 1");
+        sqlRequest.setProject("default");
+
+        // holds the query before its first write
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return super.getOutputStream();
+            }
+        };
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("MODELER", "MODELER", "ROLE_MODELER"));
+                queryController.streamQuery("json", sqlRequest, response);
+            }
+        };
+        thread.start();
+        Authentication admin = SecurityContextHolder.getContext().getAuthentication();
+        try {
+            started.await();
+            String queryId = response.getHeader(QueryController.STREAM_QUERY_ID_HEADER);
+
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("ANALYST", "ANALYST", "ROLE_ANALYST"));
+            try {
+                queryController.cancelStreamQuery(queryId);
+                Assert.fail("only the owner or an admin may cancel a query");
+            } catch (ForbiddenException e) {
+                // expected
+            }
+
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("MODELER", "MODELER", "ROLE_MODELER"));
+            queryController.cancelStreamQuery(queryId);
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(admin);
+            proceed.countDown();
+            thread.join();
+        }
+
+        JsonNode node = new ObjectMapper().readTree(response.getContentAsString());
+        Assert.assertTrue(node.get("cancelled").asBoolean());
+        Assert.assertEquals(0, node.get("results").size());
+    }
+
+    @Test
+    public void testStreamQueryClientDisconnect() throws Exception {
+        SQLRequest sqlRequest = new SQLRequest();
+        sqlRequest.setSql("SELECT 1");
+        sqlRequest.setProject("default");
+
+        final AtomicInteger writes = new AtomicInteger();
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        writes.incrementAndGet();
+                        throw new IOException("Broken pipe");
+                    }
+                };
+            }
+        };
+        for (String format : new String[] { "csv", "json" }) {
+            // the disconnect is not an error of the query, and nothing is written after it
+            writes.set(0);
+            queryController.streamQuery(format, sqlRequest, response);
+            Assert.assertEquals(1, writes.get());
+        }
+    }
+
     @Test
     public void testGetMetadata() {
         queryController.getMetadata(new MetaRequest(ProjectInstance.DEFAULT_PROJECT_NAME));
@@ -19,10 +19,13 @@
 package org.apache.kylin.rest.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
@@ -44,6 +47,7 @@ import org.apache.kylin.metadata.project.ProjectManager;
 import org.apache.kylin.metadata.realization.IRealization;
 import org.apache.kylin.metadata.realization.RealizationType;
 import org.apache.kylin.rest.broadcaster.BroadcasterReceiveServlet;
+import org.apache.kylin.rest.response.StorageDependency;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -55,6 +59,8 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 /**
  */
 public class CacheServiceTest extends LocalFileMetadataTestCase {
@@ -345,6 +351,32 @@ public class CacheServiceTest extends LocalFileMetadataTestCase {
 
     }
 
+    @Test
+    public void testSegmentAwareEviction() throws Exception {
+        CubeInstance cube = getCubeManager(configA).getCube("test_kylin_cube_with_slr_ready");
+        CubeSegment segment = cube.getSegments().get(0);
+        List<CubeSegment> noSegment = Collections.emptyList();
+
+        // the query saw the current segments
+        StorageDependency same = new StorageDependency(cube, cube.getSegments(), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertFalse(CacheService.isAffected(Lists.newArrayList(same), cube.getUuid(), cube));
+
+        // the query saw no segment, the current one is new to it
+        StorageDependency unbounded = new StorageDependency(cube, noSegment, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(CacheService.isAffected(Lists.newArrayList(unbounded), cube.getUuid(), cube));
+
+        // ... but the query range does not overlap the new segment
+        StorageDependency before = new StorageDependency(cube, noSegment, 0, segment.getDateRangeStart() - 1);
+        assertFalse(CacheService.isAffected(Lists.newArrayList(before), cube.getUuid(), cube));
+        StorageDependency inside = new StorageDependency(cube, noSegment, segment.getDateRangeStart(), segment.getDateRangeStart());
+        assertTrue(CacheService.isAffected(Lists.newArrayList(inside), cube.getUuid(), cube));
+
+        // other cubes and unknown dependencies
+        assertFalse(CacheService.isAffected(Lists.newArrayList(unbounded), "another-uuid", cube));
+        assertTrue(CacheService.isAffected(Lists.newArrayList(same), cube.getUuid(), null));
+        assertTrue(CacheService.isAffected(null, cube.getUuid(), cube));
+    }
+
     private boolean containsRealization(Set<IRealization> realizations, RealizationType type, String name) {
         for (IRealization realization : realizations) {
             if (realization.getType() == type && realization.getName().equals(name)) {
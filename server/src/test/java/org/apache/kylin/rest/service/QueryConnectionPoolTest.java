@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package org.apache.kylin.rest.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class QueryConnectionPoolTest {
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("select a, b from t where c = 1", QueryConnectionPool.normalize("  select a,\n\tb\nfrom  t\r\nwhere c = 1 \n"));
+        // whitespaces in quotes are kept
+        Assert.assertEquals("select 'a  b' from \"T  1\"", QueryConnectionPool.normalize("select   'a  b'\nfrom \"T  1\""));
+        Assert.assertEquals("select 'it''s  x' from t", QueryConnectionPool.normalize("select  'it''s  x'  from t"));
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("getConnection"))
+                    throw new UnsupportedOperationException(method.getName());
+                opened.incrementAndGet();
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("isClosed"))
+                            return false;
+                        if (!method.getName().equals("close"))
+                            throw new UnsupportedOperationException(method.getName());
+                        closed.incrementAndGet();
+                        return null;
+                    }
+                });
+            }
+        });
+
+        QueryConnectionPool pool = new QueryConnectionPool(dataSource, 1, 10);
+        QueryConnectionPool.PooledConnection c1 = pool.borrow();
+        QueryConnectionPool.PooledConnection c2 = pool.borrow();
+        Assert.assertEquals(2, opened.get());
+
+        pool.release(c1, null);
+        pool.release(c2, null); // beyond max idle
+        Assert.assertEquals(1, closed.get());
+        Assert.assertSame(c1, pool.borrow());
+
+        pool.release(c1, new SQLNonTransientConnectionException("lost")); // broken
+        Assert.assertEquals(2, closed.get());
+
+        QueryConnectionPool.PooledConnection c3 = pool.borrow();
+        Assert.assertEquals(3, opened.get());
+        pool.close();
+        pool.release(c3, null);
+        Assert.assertEquals(3, closed.get());
+    }
+
+    @Test
+    public void testSameSqlTwice() throws Exception {
+        QueryConnectionPool pool = new QueryConnectionPool(h2DataSource("testSameSqlTwice"), 1, 10);
+        String sql = "select id, name from t where id > 1 order by id";
+
+        QueryConnectionPool.PooledConnection conn = pool.borrow();
+        Statement ddl = conn.getConnection().createStatement();
+        ddl.execute("create table t (id int, name varchar(10))");
+        ddl.execute("insert into t values (1, 'a'), (2, 'b'), (3, 'c')");
+        ddl.close();
+        PreparedStatement first = conn.prepareStatement(sql);
+        List<String> firstResult = query(first);
+        conn.closeStatement(first);
+        pool.release(conn, null);
+
+        conn = pool.borrow();
+        PreparedStatement second = conn.prepareStatement("select id, name\nfrom t  where id > 1 order by id");
+        Assert.assertSame(first, second);
+        Assert.assertEquals(Arrays.asList("2,b", "3,c"), firstResult);
+        Assert.assertEquals(firstResult, query(second));
+        conn.closeStatement(second);
+
+        // queries with backdoor toggles are not cached
+        BackdoorToggles.setToggles(Collections.singletonMap(BackdoorToggles.DEBUG_TOGGLE_DISABLE_FUZZY_KEY, "true"));
+        try {
+            PreparedStatement toggled = conn.prepareStatement(sql);
+            Assert.assertNotSame(first, toggled);
+            Assert.assertEquals(firstResult, query(toggled));
+            conn.closeStatement(toggled);
+            Assert.assertTrue(toggled.isClosed());
+        } finally {
+            BackdoorToggles.cleanToggles();
+        }
+        pool.release(conn, null);
+        pool.close();
+    }
+
+    @Test
+    public void testFailedQueryKeepsConnection() throws Exception {
+        QueryConnectionPool pool = new QueryConnectionPool(h2DataSource("testFailedQueryKeepsConnection"), 1, 10);
+
+        QueryConnectionPool.PooledConnection conn = pool.borrow();
+        SQLException failure = null;
+        try {
+            conn.prepareStatement("select from where");
+        } catch (SQLException e) {
+            failure = e;
+        }
+        Assert.assertNotNull(failure);
+        pool.release(conn, failure);
+        Assert.assertSame(conn, pool.borrow());
+
+        // a closed connection is dropped whatever the error is
+        conn.getConnection().close();
+        pool.release(conn, new SQLException("any"));
+        Assert.assertNotSame(conn, pool.borrow());
+        pool.close();
+    }
+
+    private static DataSource h2DataSource(String db) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+
+    private static List<String> query(PreparedStatement statement) throws SQLException {
+        List<String> rows = Lists.newArrayList();
+        ResultSet rs = statement.executeQuery();
+        while (rs.next()) {
+            rows.add(rs.getString(1) + "," + rs.getString(2));
+        }
+        rs.close();
+        return rows;
+    }
+}
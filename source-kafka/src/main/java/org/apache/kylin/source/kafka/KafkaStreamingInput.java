@@ -33,7 +33,10 @@
  */
 package org.apache.kylin.source.kafka;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -48,11 +51,13 @@ import org.apache.kylin.common.util.StreamingBatch;
 import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
 import org.apache.kylin.engine.streaming.IStreamingInput;
 import org.apache.kylin.engine.streaming.StreamingConfig;
 import org.apache.kylin.engine.streaming.StreamingManager;
 import org.apache.kylin.metadata.model.IntermediateColumnDesc;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.realization.RealizationType;
 import org.apache.kylin.source.kafka.config.KafkaClusterConfig;
@@ -64,8 +69,10 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import kafka.cluster.Broker;
+import kafka.common.ErrorMapping;
 import kafka.javaapi.FetchResponse;
 import kafka.javaapi.PartitionMetadata;
 import kafka.message.MessageAndOffset;
@@ -77,6 +84,56 @@ public class KafkaStreamingInput implements IStreamingInput {
 
     @Override
     public StreamingBatch getBatchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime) {
+        final List<StreamingMessageProducer> producers = createProducers(realizationType, realizationName, id, startTime, endTime, null);
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        final List<Future<List<StreamingMessage>>> futures = Lists.newArrayList();
+        for (StreamingMessageProducer producer : producers) {
+            futures.add(executorService.submit(producer));
+        }
+        List<StreamingMessage> messages = Lists.newLinkedList();
+        for (Future<List<StreamingMessage>> future : futures) {
+            try {
+                messages.addAll(future.get());
+            } catch (InterruptedException e) {
+                logger.warn("this thread should not be interrupted, just ignore", e);
+                continue;
+            } catch (ExecutionException e) {
+                throw new RuntimeException("error when get StreamingMessages", e.getCause());
+            }
+        }
+        final Pair<Long, Long> timeRange = Pair.newPair(startTime, endTime);
+        logger.info("finish to get streaming batch, total message count:" + messages.size());
+        return new StreamingBatch(messages, timeRange, checkpoint(producers));
+    }
+
+    @Override
+    public Map<String, String> fetchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime, BlockingQueue<StreamingMessage> queue) {
+        final List<StreamingMessageProducer> producers = createProducers(realizationType, realizationName, id, startTime, endTime, queue);
+        final ExecutorService executorService = Executors.newFixedThreadPool(producers.size());
+        try {
+            final List<Future<List<StreamingMessage>>> futures = Lists.newArrayList();
+            for (StreamingMessageProducer producer : producers) {
+                futures.add(executorService.submit(producer));
+            }
+            for (Future<List<StreamingMessage>> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    // the consumer gave up, the producers are stopped below
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("fetching of StreamingMessages is interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("error when get StreamingMessages", e.getCause());
+                }
+            }
+            logger.info("finish to fetch streaming messages of " + realizationName);
+            return checkpoint(producers);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private List<StreamingMessageProducer> createProducers(RealizationType realizationType, String realizationName, int id, long startTime, long endTime, BlockingQueue<StreamingMessage> sink) {
         if (realizationType != RealizationType.CUBE) {
             throw new IllegalArgumentException("Unsupported realization in KafkaStreamingInput: " + realizationType);
         }
@@ -88,70 +145,92 @@ public class KafkaStreamingInput implements IStreamingInput {
         if (streamingConfig == null) {
             throw new IllegalArgumentException("Table " + streaming + " is not a streaming table.");
         }
-        if (StreamingConfig.STREAMING_TYPE_KAFKA.equals(streamingConfig.getType())) {
-            logger.info(String.format("prepare to get streaming batch, name:%s, id:%d, startTime:%d, endTime:%d", streaming, id, startTime, endTime));
+        if (!StreamingConfig.STREAMING_TYPE_KAFKA.equals(streamingConfig.getType())) {
+            throw new IllegalArgumentException("kafka is the only supported streaming type.");
+        }
+        logger.info(String.format("prepare to get streaming batch, name:%s, id:%d, startTime:%d, endTime:%d", streaming, id, startTime, endTime));
 
-            try {
-                final KafkaConfigManager kafkaConfigManager = KafkaConfigManager.getInstance(kylinConfig);
-                final KafkaConfig kafkaConfig = kafkaConfigManager.getKafkaConfig(streaming);
-                List<TblColRef> columns = Lists.transform(new CubeJoinedFlatTableDesc(cube.getDescriptor(), null).getColumnList(), new Function<IntermediateColumnDesc, TblColRef>() {
-                    @Nullable
-                    @Override
-                    public TblColRef apply(IntermediateColumnDesc input) {
-                        return input.getColRef();
-                    }
-                });
-
-                final StreamingParser streamingParser = StreamingParser.getStreamingParser(kafkaConfig.getParserName(), kafkaConfig.getParserProperties(), columns);
-                final ExecutorService executorService = Executors.newCachedThreadPool();
-                final List<Future<List<StreamingMessage>>> futures = Lists.newArrayList();
-                for (final KafkaClusterConfig kafkaClusterConfig : kafkaConfig.getKafkaClusterConfigs()) {
-
-                    final int partitionCount = KafkaRequester.getKafkaTopicMeta(kafkaClusterConfig).getPartitionIds().size();
-                    for (int i = 0; i < partitionCount; ++i) {
-                        final StreamingMessageProducer producer = new StreamingMessageProducer(kafkaClusterConfig, i, Pair.newPair(startTime, endTime), kafkaConfig.getMargin(), streamingParser);
-                        final Future<List<StreamingMessage>> future = executorService.submit(producer);
-                        futures.add(future);
-                    }
+        try {
+            final KafkaConfigManager kafkaConfigManager = KafkaConfigManager.getInstance(kylinConfig);
+            final KafkaConfig kafkaConfig = kafkaConfigManager.getKafkaConfig(streaming);
+            List<TblColRef> columns = Lists.transform(new CubeJoinedFlatTableDesc(cube.getDescriptor(), null).getColumnList(), new Function<IntermediateColumnDesc, TblColRef>() {
+                @Nullable
+                @Override
+                public TblColRef apply(IntermediateColumnDesc input) {
+                    return input.getColRef();
                 }
-                List<StreamingMessage> messages = Lists.newLinkedList();
-                for (Future<List<StreamingMessage>> future : futures) {
-                    try {
-                        messages.addAll(future.get());
-                    } catch (InterruptedException e) {
-                        logger.warn("this thread should not be interrupted, just ignore", e);
-                        continue;
-                    } catch (ExecutionException e) {
-                        throw new RuntimeException("error when get StreamingMessages", e.getCause());
-                    }
+            });
+
+            final StreamingParser streamingParser = StreamingParser.getStreamingParser(kafkaConfig.getParserName(), kafkaConfig.getParserProperties(), columns);
+            final Map<String, String> previousCheckpoint = kylinConfig.isStreamingOffsetCheckpointEnabled() ? findPreviousCheckpoint(cube, startTime) : Collections.<String, String> emptyMap();
+            final List<StreamingMessageProducer> producers = Lists.newArrayList();
+            final List<KafkaClusterConfig> kafkaClusterConfigs = kafkaConfig.getKafkaClusterConfigs();
+            for (int c = 0; c < kafkaClusterConfigs.size(); ++c) {
+                final KafkaClusterConfig kafkaClusterConfig = kafkaClusterConfigs.get(c);
+                final int partitionCount = KafkaRequester.getKafkaTopicMeta(kafkaClusterConfig).getPartitionIds().size();
+                for (int i = 0; i < partitionCount; ++i) {
+                    final String resumeOffset = previousCheckpoint.get(checkpointKey(c, kafkaClusterConfig.getTopic(), i));
+                    producers.add(new StreamingMessageProducer(kafkaClusterConfig, c, i, Pair.newPair(startTime, endTime), kafkaConfig.getMargin(), streamingParser, sink, resumeOffset == null ? null : Long.valueOf(resumeOffset)));
                 }
-                final Pair<Long, Long> timeRange = Pair.newPair(startTime, endTime);
-                logger.info("finish to get streaming batch, total message count:" + messages.size());
-                return new StreamingBatch(messages, timeRange);
-            } catch (ReflectiveOperationException e) {
-                throw new RuntimeException("failed to create instance of StreamingParser", e);
             }
-        } else {
-            throw new IllegalArgumentException("kafka is the only supported streaming type.");
+            return producers;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("failed to create instance of StreamingParser", e);
+        }
+    }
+
+    /** the checkpoint of the segment that ends where this batch starts; an empty one on gaps */
+    static Map<String, String> findPreviousCheckpoint(CubeInstance cube, long startTime) {
+        for (CubeSegment segment : cube.getSegments(SegmentStatusEnum.READY)) {
+            if (segment.getDateRangeEnd() == startTime) {
+                return segment.getAdditionalInfo();
+            }
+        }
+        logger.info("no segment of " + cube.getName() + " ends at " + startTime + ", offsets will be searched by timestamp");
+        return Collections.emptyMap();
+    }
+
+    private static Map<String, String> checkpoint(List<StreamingMessageProducer> producers) {
+        Map<String, String> checkpoint = Maps.newHashMap();
+        for (StreamingMessageProducer producer : producers) {
+            if (producer.getEndOffset() >= 0) {
+                checkpoint.put(checkpointKey(producer.clusterIndex, producer.kafkaClusterConfig.getTopic(), producer.partitionId), String.valueOf(producer.getEndOffset()));
+            }
         }
+        return checkpoint;
+    }
+
+    /** clusters share the topic name, so the index of the cluster in the kafka config is part of the key */
+    static String checkpointKey(int clusterIndex, String topic, int partitionId) {
+        return "kafka_offset:" + clusterIndex + ":" + topic + ":" + partitionId;
     }
 
     private static class StreamingMessageProducer implements Callable<List<StreamingMessage>> {
 
         private final KafkaClusterConfig kafkaClusterConfig;
+        private final int clusterIndex;
         private final int partitionId;
         private final StreamingParser streamingParser;
         private final Pair<Long, Long> timeRange;
         private final long margin;
+        // when set, messages go to it instead of the returned list
+        private final BlockingQueue<StreamingMessage> sink;
+        // the offset the previous batch ended at, null if unknown
+        private final Long resumeOffset;
+        // the first offset holding a message at or after the end of the time range
+        private volatile long endOffset = -1;
 
         private List<Broker> replicaBrokers;
 
-        StreamingMessageProducer(KafkaClusterConfig kafkaClusterConfig, int partitionId, Pair<Long, Long> timeRange, long margin, StreamingParser streamingParser) {
+        StreamingMessageProducer(KafkaClusterConfig kafkaClusterConfig, int clusterIndex, int partitionId, Pair<Long, Long> timeRange, long margin, StreamingParser streamingParser, BlockingQueue<StreamingMessage> sink, Long resumeOffset) {
             this.kafkaClusterConfig = kafkaClusterConfig;
+            this.clusterIndex = clusterIndex;
             this.partitionId = partitionId;
             this.streamingParser = streamingParser;
             this.margin = margin;
             this.timeRange = timeRange;
+            this.sink = sink;
+            this.resumeOffset = resumeOffset;
             this.replicaBrokers = kafkaClusterConfig.getBrokers();
         }
 
@@ -168,12 +247,27 @@ public class KafkaStreamingInput implements IStreamingInput {
             }
         }
 
+        long getEndOffset() {
+            return endOffset;
+        }
+
+        private long findStartOffset() {
+            long startTimestamp = timeRange.getFirst() - margin;
+            return KafkaUtils.findClosestOffsetWithDataTimestamp(kafkaClusterConfig, partitionId, startTimestamp, streamingParser);
+        }
+
         @Override
         public List<StreamingMessage> call() throws Exception {
             List<StreamingMessage> result = Lists.newLinkedList();
             try {
-                long startTimestamp = timeRange.getFirst() - margin;
-                long offset = KafkaUtils.findClosestOffsetWithDataTimestamp(kafkaClusterConfig, partitionId, startTimestamp, streamingParser);
+                boolean resumed = resumeOffset != null;
+                long offset;
+                if (resumed) {
+                    offset = resumeOffset;
+                    logger.info("topic {} partition id {} resumes from checkpoint offset {}", kafkaClusterConfig.getTopic(), String.valueOf(partitionId), String.valueOf(offset));
+                } else {
+                    offset = findStartOffset();
+                }
                 int fetchRound = 0;
                 int consumeMsgCount = 0;
                 Broker leadBroker = null;
@@ -196,11 +290,19 @@ public class KafkaStreamingInput implements IStreamingInput {
                     logger.info("fetching topic {} partition id {} offset {} leader {}", topic, String.valueOf(partitionId), String.valueOf(offset), leadBroker.toString());
 
                     final FetchResponse fetchResponse = KafkaRequester.fetchResponse(topic, partitionId, offset, leadBroker, kafkaClusterConfig);
+                    if (resumed && fetchResponse.errorCode(topic, partitionId) == ErrorMapping.OffsetOutOfRangeCode()) {
+                        // the checkpoint is out of retention
+                        logger.warn("checkpoint offset:" + offset + " is out of range, fall back to search by timestamp");
+                        resumed = false;
+                        offset = findStartOffset();
+                        continue;
+                    }
                     if (fetchResponse.errorCode(topic, partitionId) != 0) {
                         logger.warn("fetch response offset:" + offset + " errorCode:" + fetchResponse.errorCode(topic, partitionId));
                         Thread.sleep(30000);
                         continue;
                     }
+                    resumed = false;
 
                     for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(topic, partitionId)) {
                         offset++;
@@ -208,8 +310,16 @@ public class KafkaStreamingInput implements IStreamingInput {
                         final StreamingMessage streamingMessage = streamingParser.parse(messageAndOffset);
                         if (streamingParser.filter(streamingMessage)) {
                             final long timestamp = streamingMessage.getTimestamp();
+                            if (timestamp >= timeRange.getSecond() && endOffset < 0) {
+                                // messages before it are all decided for the next batch, those after it are filtered by time again
+                                endOffset = messageAndOffset.offset();
+                            }
                             if (timestamp >= timeRange.getFirst() && timestamp < timeRange.getSecond()) {
-                                result.add(streamingMessage);
+                                if (sink != null) {
+                                    sink.put(streamingMessage);
+                                } else {
+                                    result.add(streamingMessage);
+                                }
                             } else if (timestamp < timeRange.getSecond() + margin) {
                                 //do nothing
                             } else {
@@ -0,0 +1,211 @@
+/*
+ *
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *
+ *  contributor license agreements. See the NOTICE file distributed with
+ *
+ *  this work for additional information regarding copyright ownership.
+ *
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *
+ *  (the "License"); you may not use this file except in compliance with
+ *
+ *  the License. You may obtain a copy of the License at
+ *
+ *
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *  See the License for the specific language governing permissions and
+ *
+ *  limitations under the License.
+ *
+ * /
+ */
+package org.apache.kylin.source.kafka;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Maps;
+
+import kafka.message.MessageAndOffset;
+
+/**
+ * Reads the same messages as {@link TimedJsonStreamParser}, but token by token and only the fields the columns
+ * need: field names are resolved to row slots once per schema, the other fields are skipped without being
+ * materialized, and no intermediate map is built per message. Like {@link TimedJsonStreamParser}, a message
+ * with a nested object or array in any field fails.
+ */
+public final class ProjectedJsonStreamParser extends StreamingParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectedJsonStreamParser.class);
+
+    private static final int SKIP = -1;
+    // bounds the resolved field names, in case the messages carry arbitrary keys
+    private static final int MAX_RESOLVED_NAMES = 4096;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private String tsColName = "timestamp";
+
+    // per column, the slot its value is read into, or the derived time column name if it is one
+    private final int[] columnSlots;
+    private final String[] derivedColumns;
+    private final int tsSlot;
+    private final int slotCount;
+
+    // lower case field name -> slot, fixed by the schema
+    private final Map<String, Integer> schemaSlots = Maps.newHashMap();
+    // field name as it appears in the messages -> slot, filled on first sight of a name
+    private final ConcurrentHashMap<String, Integer> resolvedSlots = new ConcurrentHashMap<String, Integer>();
+
+    // the parser is shared by the fetcher threads of all partitions
+    private final ThreadLocal<String[]> slotBuffer = new ThreadLocal<String[]>() {
+        @Override
+        protected String[] initialValue() {
+            return new String[slotCount];
+        }
+    };
+
+    public ProjectedJsonStreamParser(List<TblColRef> allColumns, String propertiesStr) {
+        if (!StringUtils.isEmpty(propertiesStr)) {
+            for (String prop : propertiesStr.split(";")) {
+                String[] parts = prop.split("=");
+                if (parts.length == 2 && "tsColName".equals(parts[0])) {
+                    this.tsColName = parts[1];
+                }
+            }
+        }
+
+        this.columnSlots = new int[allColumns.size()];
+        this.derivedColumns = new String[allColumns.size()];
+        for (int i = 0; i < allColumns.size(); i++) {
+            String columnName = allColumns.get(i).getName().toLowerCase();
+            if (derivedTimeColumns.contains(columnName)) {
+                derivedColumns[i] = columnName;
+                columnSlots[i] = SKIP;
+            } else {
+                columnSlots[i] = slotOf(columnName);
+            }
+        }
+        this.tsSlot = slotOf(tsColName.toLowerCase());
+        this.slotCount = schemaSlots.size();
+
+        logger.info("ProjectedJsonStreamParser with tsColName {}, {} fields projected", tsColName, slotCount);
+    }
+
+    private int slotOf(String lowerCaseName) {
+        Integer slot = schemaSlots.get(lowerCaseName);
+        if (slot == null) {
+            slot = schemaSlots.size();
+            schemaSlots.put(lowerCaseName, slot);
+        }
+        return slot;
+    }
+
+    private int resolve(String fieldName) {
+        Integer slot = resolvedSlots.get(fieldName);
+        if (slot == null) {
+            slot = schemaSlots.get(fieldName.toLowerCase());
+            if (slot == null) {
+                slot = SKIP;
+            }
+            if (resolvedSlots.size() < MAX_RESOLVED_NAMES) {
+                resolvedSlots.put(fieldName, slot);
+            }
+        }
+        return slot;
+    }
+
+    @Override
+    public StreamingMessage parse(Object msg) {
+        MessageAndOffset messageAndOffset = (MessageAndOffset) msg;
+        String[] slots = slotBuffer.get();
+        Arrays.fill(slots, null);
+
+        ByteBuffer payload = messageAndOffset.message().payload();
+        try {
+            JsonParser parser;
+            if (payload.hasArray()) {
+                parser = jsonFactory.createParser(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } else {
+                parser = jsonFactory.createParser(new ByteBufferBackedInputStream(payload));
+            }
+            try {
+                readFields(parser, slots);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            logger.error("error", e);
+            throw new RuntimeException(e);
+        }
+
+        String tsStr = slots[tsSlot];
+        long t;
+        if (StringUtils.isEmpty(tsStr)) {
+            t = 0;
+        } else {
+            t = Long.valueOf(tsStr);
+        }
+
+        ArrayList<String> result = new ArrayList<String>(columnSlots.length);
+        for (int i = 0; i < columnSlots.length; i++) {
+            if (derivedColumns[i] != null) {
+                populateDerivedTimeColumns(derivedColumns[i], result, t);
+            } else {
+                result.add(slots[columnSlots[i]]);
+            }
+        }
+        return new StreamingMessage(result, messageAndOffset.offset(), t, Collections.<String, Object> emptyMap());
+    }
+
+    private void readFields(JsonParser parser, String[] slots) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expect a json object, but found " + parser.getCurrentToken());
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            int slot = resolve(parser.getCurrentName());
+            token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                throw new IOException("Expect a scalar value of field " + parser.getCurrentName() + ", but found " + token);
+            } else if (slot != SKIP) {
+                slots[slot] = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token " + token);
+        }
+    }
+
+    @Override
+    public boolean filter(StreamingMessage streamingMessage) {
+        return true;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.CubeUpdate;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class KafkaStreamingInputTest extends LocalFileMetadataTestCase {
+
+    private static final String TOPIC = "test_streaming_table_topic_xyz";
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testCheckpointKey() {
+        assertEquals(KafkaStreamingInput.checkpointKey(0, TOPIC, 1), KafkaStreamingInput.checkpointKey(0, TOPIC, 1));
+        assertNotEquals(KafkaStreamingInput.checkpointKey(0, TOPIC, 1), KafkaStreamingInput.checkpointKey(0, TOPIC, 2));
+        // the clusters of one kafka config share the topic
+        assertNotEquals(KafkaStreamingInput.checkpointKey(0, TOPIC, 1), KafkaStreamingInput.checkpointKey(1, TOPIC, 1));
+    }
+
+    @Test
+    public void testCheckpointRoundTrip() throws Exception {
+        HashMap<String, String> checkpoint = Maps.newLinkedHashMap();
+        checkpoint.put(KafkaStreamingInput.checkpointKey(0, TOPIC, 0), "100");
+        checkpoint.put(KafkaStreamingInput.checkpointKey(0, TOPIC, 1), "200");
+        checkpoint.put(KafkaStreamingInput.checkpointKey(1, TOPIC, 0), "300");
+        CubeInstance cube = appendReadySegment(0, 1000, checkpoint);
+
+        Map<String, String> previous = KafkaStreamingInput.findPreviousCheckpoint(cube, 1000);
+        assertEquals(checkpoint, previous);
+        assertEquals("100", previous.get(KafkaStreamingInput.checkpointKey(0, TOPIC, 0)));
+        assertEquals("300", previous.get(KafkaStreamingInput.checkpointKey(1, TOPIC, 0)));
+    }
+
+    @Test
+    public void testNoCheckpointOnGap() throws Exception {
+        HashMap<String, String> checkpoint = Maps.newLinkedHashMap();
+        checkpoint.put(KafkaStreamingInput.checkpointKey(0, TOPIC, 0), "100");
+        CubeInstance cube = appendReadySegment(0, 1000, checkpoint);
+
+        assertTrue(KafkaStreamingInput.findPreviousCheckpoint(cube, 2000).isEmpty());
+        assertTrue(KafkaStreamingInput.findPreviousCheckpoint(cube, 500).isEmpty());
+    }
+
+    @Test
+    public void testNoCheckpointFromNewSegment() throws Exception {
+        CubeManager mgr = CubeManager.getInstance(getTestConfig());
+        CubeInstance cube = mgr.getCube("test_streaming_table_cube");
+        CubeSegment segment = mgr.appendSegment(cube, 0, 1000, 0, 0);
+        segment.getAdditionalInfo().put(KafkaStreamingInput.checkpointKey(0, TOPIC, 0), "100");
+        mgr.updateCube(new CubeUpdate(cube));
+
+        assertTrue(KafkaStreamingInput.findPreviousCheckpoint(mgr.reloadCubeLocal(cube.getName()), 1000).isEmpty());
+    }
+
+    // saves a ready segment with the checkpoint and reads the cube back from the store
+    private CubeInstance appendReadySegment(long start, long end, HashMap<String, String> checkpoint) throws Exception {
+        CubeManager mgr = CubeManager.getInstance(getTestConfig());
+        CubeInstance cube = mgr.getCube("test_streaming_table_cube");
+        CubeSegment segment = mgr.appendSegment(cube, start, end, 0, 0);
+        segment.setStatus(SegmentStatusEnum.READY);
+        segment.setAdditionalInfo(checkpoint);
+        mgr.updateCube(new CubeUpdate(cube));
+        return mgr.reloadCubeLocal(cube.getName());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
+
+public class ProjectedJsonStreamParserTest {
+
+    private static final String[] MESSAGES = new String[] { //
+            "{\"timestamp\": 1450000000000, \"site\": \"US\", \"itm\": 12, \"gmv\": 3.50, \"extra\": \"x\"}", //
+            "{\"TimeStamp\": \"1450000123456\", \"SITE\": \"CN\", \"Itm\": \"7\", \"Minute_Start\": \"ignored\"}", //
+            "{\"site\": \"DE\"}", //
+            "{\"timestamp\": null, \"site\": null, \"gmv\": true}", //
+            "{}", //
+            "{\"event_time\": 1460000000000, \"timestamp\": 1, \"itm\": -3, \"gmv\": 1e3}" //
+    };
+
+    private static final String[] NESTED_MESSAGES = new String[] { //
+            "{\"timestamp\": 1450000000000, \"site\": {\"name\": \"US\"}}", //
+            "{\"timestamp\": 1450000000000, \"site\": \"US\", \"tags\": [1, 2]}", //
+            "{\"timestamp\": 1450000000000, \"extra\": {}}" //
+    };
+
+    private static List<TblColRef> columns() {
+        TableDesc table = TableDesc.mockup("DEFAULT.STREAMING_TABLE");
+        List<TblColRef> columns = Lists.newArrayList();
+        String[] names = new String[] { "SITE", "ITM", "GMV", "MINUTE_START", "HOUR_START", "DAY_START", "WEEK_START", "MONTH_START", "QUARTER_START", "YEAR_START" };
+        for (int i = 0; i < names.length; i++) {
+            columns.add(ColumnDesc.mockup(table, i + 1, names[i], "varchar(256)").getRef());
+        }
+        return columns;
+    }
+
+    private static MessageAndOffset message(String json, long offset) {
+        return new MessageAndOffset(new Message(json.getBytes()), offset);
+    }
+
+    @Test
+    public void testParity() {
+        verifyParity(null);
+    }
+
+    @Test
+    public void testParityWithTsColName() {
+        verifyParity("tsColName=event_time");
+    }
+
+    @Test
+    public void testNestedValueFails() {
+        List<TblColRef> columns = columns();
+        TimedJsonStreamParser timed = new TimedJsonStreamParser(columns, null);
+        ProjectedJsonStreamParser projected = new ProjectedJsonStreamParser(columns, null);
+        for (String json : NESTED_MESSAGES) {
+            assertFails(timed, json);
+            assertFails(projected, json);
+        }
+    }
+
+    private void verifyParity(String properties) {
+        List<TblColRef> columns = columns();
+        TimedJsonStreamParser timed = new TimedJsonStreamParser(columns, properties);
+        ProjectedJsonStreamParser projected = new ProjectedJsonStreamParser(columns, properties);
+        for (int i = 0; i < MESSAGES.length; i++) {
+            StreamingMessage expected = timed.parse(message(MESSAGES[i], i));
+            StreamingMessage actual = projected.parse(message(MESSAGES[i], i));
+            assertEquals(MESSAGES[i], expected.getData(), actual.getData());
+            assertEquals(MESSAGES[i], expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(MESSAGES[i], expected.getOffset(), actual.getOffset());
+        }
+    }
+
+    private void assertFails(StreamingParser parser, String json) {
+        try {
+            parser.parse(message(json, 0));
+            fail(parser.getClass().getSimpleName() + " should fail on " + json);
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+}
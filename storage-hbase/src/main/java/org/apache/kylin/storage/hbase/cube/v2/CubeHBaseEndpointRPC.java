@@ -21,11 +21,12 @@ package org.apache.kylin.storage.hbase.cube.v2;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DataFormatException;
@@ -47,8 +48,8 @@ import org.apache.kylin.common.util.BytesSerializer;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
 import org.apache.kylin.common.util.ImmutableBitSet;
-import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.SerializeToByteBuffer;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.gridtable.GTInfo;
@@ -58,6 +59,7 @@ import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.storage.hbase.HBaseConnection;
 import org.apache.kylin.storage.hbase.common.coprocessor.CoprocessorBehavior;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.CubeVisitRequestCache;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
@@ -68,6 +70,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
@@ -77,11 +81,20 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
     public static final Logger logger = LoggerFactory.getLogger(CubeHBaseEndpointRPC.class);
 
-    private static ExecutorService executorService = new LoggableCachedThreadPool();
+    // "htable/config digest/GTInfo digest" whose config and GTInfo the endpoints of the htable have said they cache
+    private static final Cache<String, Boolean> cachedDigests = CacheBuilder.newBuilder().maximumSize(10000).build();
 
-    static class ExpectedSizeIterator implements Iterator<byte[]> {
+    /**
+     * Iterates the results of each region, a result being a list of row blocks that are still compressed if the
+     * endpoint compressed them. Blocks are decompressed lazily as they are consumed, see {@link #decompressBlocks}.
+     * <p>
+     * The bytes of the results received but not yet taken by the scanner are bounded: a region callback waits in
+     * {@link #append} while the bound is exceeded. This holds the RPC thread, so a slow consumer keeps further
+     * regions from being visited rather than having their results pile up in memory.
+     */
+    static class ExpectedSizeIterator implements Iterator<List<byte[]>> {
 
-        BlockingQueue<byte[]> queue;
+        BlockingQueue<List<byte[]>> queue;
 
         int expectedSize;
         int current = 0;
@@ -89,24 +102,37 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         long timeoutTS;
         volatile Throwable coprocException;
 
+        private final long maxBufferedBytes;
+        private long bufferedBytes = 0;
+        private boolean closed = false;
+
         public ExpectedSizeIterator(int expectedSize) {
+            this(expectedSize, defaultTimeout(), KylinConfig.getInstanceFromEnv().getQueryCoprocessorResultBufferBytes());
+        }
+
+        ExpectedSizeIterator(int expectedSize, long timeout, long maxBufferedBytes) {
             this.expectedSize = expectedSize;
-            this.queue = new ArrayBlockingQueue<byte[]>(expectedSize);
+            this.queue = new ArrayBlockingQueue<List<byte[]>>(expectedSize);
+            this.timeout = timeout;
+            this.maxBufferedBytes = maxBufferedBytes;
 
+            logger.info("Timeout for ExpectedSizeIterator is: " + this.timeout);
+
+            this.timeoutTS = System.currentTimeMillis() + this.timeout;
+        }
+
+        private static long defaultTimeout() {
             Configuration hconf = HBaseConnection.getCurrentHBaseConfiguration();
-            this.timeout = hconf.getInt(HConstants.HBASE_CLIENT_RETRIES_NUMBER, 5) * hconf.getInt(HConstants.HBASE_CLIENT_OPERATION_TIMEOUT, 60000);
-            this.timeout = Math.max(this.timeout, 5 * 60000);
-            this.timeout *= KylinConfig.getInstanceFromEnv().getCubeVisitTimeoutTimes();
+            long timeout = hconf.getInt(HConstants.HBASE_CLIENT_RETRIES_NUMBER, 5) * hconf.getInt(HConstants.HBASE_CLIENT_OPERATION_TIMEOUT, 60000);
+            timeout = Math.max(timeout, 5 * 60000);
+            timeout *= KylinConfig.getInstanceFromEnv().getCubeVisitTimeoutTimes();
 
             if (BackdoorToggles.getQueryTimeout() != -1) {
-                this.timeout = BackdoorToggles.getQueryTimeout();
+                timeout = BackdoorToggles.getQueryTimeout();
             }
 
-            this.timeout *= 1.1; // allow for some delay
-
-            logger.info("Timeout for ExpectedSizeIterator is: " + this.timeout);
-
-            this.timeoutTS = System.currentTimeMillis() + this.timeout;
+            timeout *= 1.1; // allow for some delay
+            return timeout;
         }
 
         @Override
@@ -115,13 +141,13 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         }
 
         @Override
-        public byte[] next() {
+        public List<byte[]> next() {
             if (current >= expectedSize) {
                 throw new IllegalStateException("Won't have more data");
             }
             try {
                 current++;
-                byte[] ret = null;
+                List<byte[]> ret = null;
 
                 while (ret == null && coprocException == null && timeoutTS - System.currentTimeMillis() > 0) {
                     ret = queue.poll(5000, TimeUnit.MILLISECONDS);
@@ -132,6 +158,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
                 } else if (ret == null) {
                     throw new RuntimeException("Timeout visiting cube!");
                 } else {
+                    release(sizeOf(ret));
                     return ret;
                 }
             } catch (InterruptedException e) {
@@ -144,31 +171,73 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
             throw new NotImplementedException();
         }
 
-        public void append(byte[] data) {
+        public void append(List<byte[]> data) {
+            long size = sizeOf(data);
             try {
+                synchronized (this) {
+                    // a single result larger than the bound still gets in when nothing else is buffered
+                    while (maxBufferedBytes > 0 && bufferedBytes > 0 && bufferedBytes + size > maxBufferedBytes && !closed && coprocException == null) {
+                        long wait = timeoutTS - System.currentTimeMillis();
+                        if (wait <= 0)
+                            break;
+                        wait(wait);
+                    }
+                    if (closed)
+                        return; // nobody will read it
+                    bufferedBytes += size;
+                }
                 queue.put(data);
             } catch (InterruptedException e) {
                 throw new RuntimeException("error when waiting queue", e);
             }
         }
 
+        private synchronized void release(long size) {
+            bufferedBytes -= size;
+            notifyAll();
+        }
+
+        synchronized long getBufferedBytes() {
+            return bufferedBytes;
+        }
+
+        private static long sizeOf(List<byte[]> data) {
+            long size = 0;
+            for (byte[] block : data) {
+                size += block.length;
+            }
+            return size;
+        }
+
         public long getTimeout() {
             return timeout;
         }
 
         public void notifyCoprocException(Throwable ex) {
             coprocException = ex;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        /** the scanner is done, results still to come are dropped and waiting callbacks return */
+        public synchronized void close() {
+            closed = true;
+            queue.clear();
+            notifyAll();
         }
     }
 
     static class EndpointResultsAsGTScanner implements IGTScanner {
         private GTInfo info;
+        private ExpectedSizeIterator regionResults;
         private Iterator<byte[]> blocks;
         private ImmutableBitSet columns;
         private long totalScannedCount;
 
-        public EndpointResultsAsGTScanner(GTInfo info, Iterator<byte[]> blocks, ImmutableBitSet columns, long totalScannedCount) {
+        public EndpointResultsAsGTScanner(GTInfo info, ExpectedSizeIterator regionResults, Iterator<byte[]> blocks, ImmutableBitSet columns, long totalScannedCount) {
             this.info = info;
+            this.regionResults = regionResults;
             this.blocks = blocks;
             this.columns = columns;
             this.totalScannedCount = totalScannedCount;
@@ -186,7 +255,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
         @Override
         public void close() throws IOException {
-            //do nothing
+            regionResults.close();
         }
 
         @Override
@@ -321,6 +390,20 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
             }
         }
 
+        // once the endpoints have cached the config and GTInfo, their digests are sent instead
+        final byte[] gtInfoBytes = serialize(new SerializeToByteBuffer.IWriter() {
+            @Override
+            public void write(ByteBuffer buffer) throws BufferOverflowException {
+                GTInfo.serializer.serialize(scanRequest.getInfo(), buffer);
+            }
+        });
+        final ByteString scanRequestWithoutInfo = HBaseZeroCopyByteString.wrap(serialize(new SerializeToByteBuffer.IWriter() {
+            @Override
+            public void write(ByteBuffer buffer) throws BufferOverflowException {
+                GTScanRequest.serializeWithoutInfo(scanRequest, buffer);
+            }
+        }));
+
         logger.debug("Serialized scanRequestBytes {} bytes, rawScanBytesString {} bytes", scanRequestByteString.size(), rawScanByteString.size());
 
         logger.info("The scan {} for segment {} is as below with {} separate raw scans, shard part of start/end key is set to 0", Integer.toHexString(System.identityHashCode(scanRequest)), cubeSeg, rawScans.size());
@@ -346,59 +429,76 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         builder.setBehavior(toggle);
         builder.setStartTime(System.currentTimeMillis());
         builder.setTimeout(epResultItr.getTimeout());
-        builder.setKylinProperties(kylinConfig.getConfigAsString());
+        String kylinProperties = kylinConfig.getConfigAsString();
+        builder.setKylinProperties(kylinProperties);
+        builder.setRowBlockSize(kylinConfig.getQueryCoprocessorRowBlockSize());
+        builder.setKylinPropertiesDigest(CubeVisitRequestCache.digest(kylinProperties));
+        builder.setGtInfoDigest(CubeVisitRequestCache.digest(gtInfoBytes));
+
+        final CubeVisitRequest fullRequest = builder.build();
+        final String digestKey = cubeSeg.getStorageLocationIdentifier() + "/" + fullRequest.getKylinPropertiesDigest() + "/" + fullRequest.getGtInfoDigest();
+        final CubeVisitRequest request = chooseRequest(digestKey, fullRequest, scanRequestWithoutInfo);
 
         for (final Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
-            executorService.submit(new Runnable() {
+            final long submitTime = System.currentTimeMillis();
+            EndpointRPCScheduler.getInstance().submit(new Runnable() {
                 @Override
                 public void run() {
 
                     final String logHeader = "<sub-thread for GTScanRequest " + Integer.toHexString(System.identityHashCode(scanRequest)) + "> ";
+                    final long queueWait = System.currentTimeMillis() - submitTime;
                     final boolean[] abnormalFinish = new boolean[1];
 
                     try {
                         HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
 
-                        final CubeVisitRequest request = builder.build();
                         final byte[] startKey = epRange.getFirst();
                         final byte[] endKey = epRange.getSecond();
-
-                        table.coprocessorService(CubeVisitService.class, startKey, endKey, //
-                                new Batch.Call<CubeVisitService, CubeVisitResponse>() {
-                                    public CubeVisitResponse call(CubeVisitService rowsService) throws IOException {
-                                        ServerRpcController controller = new ServerRpcController();
-                                        BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
-                                        rowsService.visitCube(controller, request, rpcCallback);
-                                        CubeVisitResponse response = rpcCallback.get();
-                                        if (controller.failedOnException()) {
-                                            throw controller.getFailedOn();
-                                        }
-                                        return response;
-                                    }
-                                }, new Batch.Callback<CubeVisitResponse>() {
-                                    @Override
-                                    public void update(byte[] region, byte[] row, CubeVisitResponse result) {
-                                        if (region == null)
-                                            return;
-
-                                        totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
-                                        logger.info(logHeader + getStatsString(region, result));
-
-                                        if (result.getStats().getNormalComplete() != 1) {
-                                            abnormalFinish[0] = true;
-                                            return;
-                                        }
-                                        try {
-                                            if (compressionResult) {
-                                                epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
-                                            } else {
-                                                epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
-                                            }
-                                        } catch (IOException | DataFormatException e) {
-                                            throw new RuntimeException(logHeader + "Error when decompressing", e);
-                                        }
+                        final List<byte[]> missedRegions = Collections.synchronizedList(Lists.<byte[]> newArrayList());
+
+                        Batch.Callback<CubeVisitResponse> callback = new Batch.Callback<CubeVisitResponse>() {
+                            @Override
+                            public void update(byte[] region, byte[] row, CubeVisitResponse result) {
+                                if (region == null)
+                                    return;
+
+                                if (result.getDigestMissed()) {
+                                    // a key within both the region and the range, the first region may start before the range
+                                    missedRegions.add(Bytes.compareTo(row, startKey) < 0 ? startKey : row);
+                                    return;
+                                }
+                                if (result.getDigestCached()) {
+                                    markDigestCached(digestKey);
+                                }
+
+                                totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
+                                logger.info(logHeader + getStatsString(region, result, queueWait));
+
+                                if (result.getStats().getNormalComplete() != 1) {
+                                    abnormalFinish[0] = true;
+                                    return;
+                                }
+
+                                // an endpoint that does not know about row blocks returns everything in compressedRows
+                                List<byte[]> blocks = Lists.newArrayListWithCapacity(Math.max(1, result.getCompressedRowBlocksCount()));
+                                if (result.getCompressedRowBlocksCount() > 0) {
+                                    for (ByteString block : result.getCompressedRowBlocksList()) {
+                                        blocks.add(HBaseZeroCopyByteString.zeroCopyGetBytes(block));
                                     }
-                                });
+                                } else if (!result.getCompressedRows().isEmpty()) {
+                                    blocks.add(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
+                                }
+                                epResultItr.append(blocks);
+                            }
+                        };
+
+                        table.coprocessorService(CubeVisitService.class, startKey, endKey, newVisitCall(request), callback);
+
+                        // e.g. region servers restarted or never visited, each region missed is asked again with the full request
+                        for (byte[] key : Lists.newArrayList(missedRegions)) {
+                            logger.info(logHeader + "Endpoint has no cached config or GTInfo, resending the full request");
+                            table.coprocessorService(CubeVisitService.class, key, key, newVisitCall(fullRequest), callback);
+                        }
 
                     } catch (Throwable ex) {
                         logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
@@ -416,15 +516,80 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
             });
         }
 
-        return new EndpointResultsAsGTScanner(fullGTInfo, epResultItr, scanRequest.getColumns(), totalScannedCount.get());
+        return new EndpointResultsAsGTScanner(fullGTInfo, epResultItr, decompressBlocks(epResultItr, compressionResult), scanRequest.getColumns(), totalScannedCount.get());
+    }
+
+    private static Batch.Call<CubeVisitService, CubeVisitResponse> newVisitCall(final CubeVisitRequest request) {
+        return new Batch.Call<CubeVisitService, CubeVisitResponse>() {
+            public CubeVisitResponse call(CubeVisitService rowsService) throws IOException {
+                ServerRpcController controller = new ServerRpcController();
+                BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
+                rowsService.visitCube(controller, request, rpcCallback);
+                CubeVisitResponse response = rpcCallback.get();
+                if (controller.failedOnException()) {
+                    throw controller.getFailedOn();
+                }
+                return response;
+            }
+        };
+    }
+
+    /**
+     * The request to send first, carrying digests instead of the config and GTInfo once the endpoints of the htable
+     * have said they cache them. An endpoint that misses the digests answers with digestMissed and gets the full
+     * request again.
+     */
+    static CubeVisitRequest chooseRequest(String digestKey, CubeVisitRequest fullRequest, ByteString scanRequestWithoutInfo) {
+        if (cachedDigests.getIfPresent(digestKey) == null)
+            return fullRequest;
+
+        CubeVisitRequest request = CubeVisitRequest.newBuilder(fullRequest).setKylinProperties("").setGtScanRequest(scanRequestWithoutInfo).build();
+        logger.debug("Sending digests instead of config and GTInfo, request shrinks from {} to {} bytes", fullRequest.getSerializedSize(), request.getSerializedSize());
+        return request;
+    }
+
+    static void markDigestCached(String digestKey) {
+        cachedDigests.put(digestKey, true);
+    }
+
+    private static byte[] serialize(SerializeToByteBuffer.IWriter writer) {
+        ByteBuffer buffer = SerializeToByteBuffer.retrySerialize(writer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Flattens the row blocks of all regions, decompressing each block only when the scanner reaches it,
+     * so that at most one decompressed block is held at a time.
+     */
+    static Iterator<byte[]> decompressBlocks(Iterator<List<byte[]>> regionResults, final boolean compressed) {
+        return Iterators.concat(Iterators.transform(regionResults, new Function<List<byte[]>, Iterator<byte[]>>() {
+            @Nullable
+            @Override
+            public Iterator<byte[]> apply(@Nullable List<byte[]> blocks) {
+                return Iterators.transform(blocks.iterator(), new Function<byte[], byte[]>() {
+                    @Nullable
+                    @Override
+                    public byte[] apply(@Nullable byte[] block) {
+                        if (!compressed)
+                            return block;
+                        try {
+                            return CompressionUtils.decompress(block);
+                        } catch (IOException | DataFormatException e) {
+                            throw new RuntimeException("Error when decompressing", e);
+                        }
+                    }
+                });
+            }
+        }));
     }
 
-    private String getStatsString(byte[] region, CubeVisitResponse result) {
+    private String getStatsString(byte[] region, CubeVisitResponse result, long queueWait) {
         StringBuilder sb = new StringBuilder();
         Stats stats = result.getStats();
         sb.append("Endpoint RPC returned from HTable ").append(cubeSeg.getStorageLocationIdentifier()).append(" Shard ").append(BytesUtil.toHex(region)).append(" on host: ").append(stats.getHostname()).append(".");
         sb.append("Total scanned row: ").append(stats.getScannedRowCount()).append(". ");
         sb.append("Total filtered/aggred row: ").append(stats.getAggregatedRowCount()).append(". ");
+        sb.append("Time waited for RPC thread: ").append(queueWait).append("(ms). ");
         sb.append("Time elapsed in EP: ").append(stats.getServiceEndTime() - stats.getServiceStartTime()).append("(ms). ");
         sb.append("Server CPU usage: ").append(stats.getSystemCpuLoad()).append(", server physical mem left: ").append(stats.getFreePhysicalMemorySize()).append(", server swap mem left:").append(stats.getFreeSwapSpaceSize()).append(".");
         sb.append("Etc message: ").append(stats.getEtcMsg()).append(".");
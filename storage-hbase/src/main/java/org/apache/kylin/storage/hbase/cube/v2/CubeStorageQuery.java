@@ -18,21 +18,57 @@
 
 package org.apache.kylin.storage.hbase.cube.v2;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.engine.mr.common.CubeStatsReader;
 import org.apache.kylin.storage.gtrecord.GTCubeStorageQueryBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 public class CubeStorageQuery extends GTCubeStorageQueryBase {
 
     private static final Logger logger = LoggerFactory.getLogger(CubeStorageQuery.class);
 
+    // statistics path -> cuboid row estimates; the statistics of a ready segment never change, a refresh creates a new segment
+    private static final Cache<String, Map<Long, Long>> cuboidRowEstimatesCache = CacheBuilder.newBuilder().maximumSize(10000).expireAfterAccess(1, TimeUnit.HOURS).build();
+
     public CubeStorageQuery(CubeInstance cube) {
         super(cube);
     }
 
+    @Override
+    protected Map<Long, Long> getCuboidRowEstimates(final CubeSegment cubeSegment) {
+        try {
+            Map<Long, Long> result = cuboidRowEstimatesCache.get(cubeSegment.getStatisticsResourcePath(), new Callable<Map<Long, Long>>() {
+                @Override
+                public Map<Long, Long> call() {
+                    try {
+                        return new CubeStatsReader(cubeSegment, cubeSegment.getConfig()).getCuboidRowEstimatesHLL();
+                    } catch (Exception e) {
+                        // e.g. segments built before statistics were kept, remembered as empty to not retry every query
+                        logger.warn("Failed to read statistics of segment " + cubeSegment + ", cuboid selection falls back to default", e);
+                        return Collections.emptyMap();
+                    }
+                }
+            });
+            return result.isEmpty() ? null : result;
+        } catch (ExecutionException e) {
+            logger.warn("Failed to read statistics of segment " + cubeSegment, e);
+            return null;
+        }
+    }
+
     @Override
     protected String getGTStorage() {
         if ("scan".equalsIgnoreCase(BackdoorToggles.getHbaseCubeQueryProtocol())) {
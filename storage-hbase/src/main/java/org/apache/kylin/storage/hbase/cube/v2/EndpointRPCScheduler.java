@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the endpoint RPCs of all queries on a bounded pool of threads.
+ *
+ * Each query queues its RPCs separately, and queries take turns in round robin order, each having no more than
+ * a configured number of RPCs in flight, so a query of many shards cannot hold all threads. Interactive queries
+ * go before bulk ones (exports), while bulk queries still get one in every few turns. When too many RPCs are
+ * waiting, submitting blocks the query thread instead of growing the backlog.
+ */
+public class EndpointRPCScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndpointRPCScheduler.class);
+
+    private static EndpointRPCScheduler instance = null;
+
+    public static synchronized EndpointRPCScheduler getInstance() {
+        if (instance == null) {
+            KylinConfig config = KylinConfig.getInstanceFromEnv();
+            instance = new EndpointRPCScheduler(config.getQueryEndpointRPCMaxThreads(), config.getQueryEndpointRPCMaxThreadsPerQuery(), config.getQueryEndpointRPCMaxPending(), config.getQueryEndpointRPCBulkTurn());
+            logger.info("Endpoint RPC scheduler created with {} threads, {} threads per query", config.getQueryEndpointRPCMaxThreads(), config.getQueryEndpointRPCMaxThreadsPerQuery());
+        }
+        return instance;
+    }
+
+    private final int maxThreads;
+    private final int maxPerQuery;
+    private final int maxPending;
+    private final int bulkTurn;
+
+    // never has more tasks than threads, the waiting ones are kept in the query queues
+    private final ThreadPoolExecutor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingDrained = lock.newCondition();
+    private final Map<Object, QueryQueue> queues = Maps.newHashMap();
+    private final ArrayDeque<QueryQueue> interactiveRing = new ArrayDeque<QueryQueue>();
+    private final ArrayDeque<QueryQueue> bulkRing = new ArrayDeque<QueryQueue>();
+    private int running = 0;
+    private int pending = 0;
+    private long dispatched = 0;
+
+    // queue wait metrics
+    private long waitCount = 0;
+    private long waitTotalMillis = 0;
+    private long waitMaxMillis = 0;
+
+    EndpointRPCScheduler(int maxThreads, int maxPerQuery, int maxPending, int bulkTurn) {
+        if (maxThreads <= 0 || maxPerQuery <= 0 || maxPending <= 0 || bulkTurn <= 0)
+            throw new IllegalArgumentException();
+
+        this.maxThreads = maxThreads;
+        this.maxPerQuery = maxPerQuery;
+        this.maxPending = maxPending;
+        this.bulkTurn = bulkTurn;
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits an RPC of the query running in the current thread.
+     */
+    public void submit(Runnable task) {
+        QueryContext context = QueryContext.current();
+        submit(context, context.isBulk(), task);
+    }
+
+    /**
+     * Submits an RPC of the given query, tasks of the same query are identified by the same key.
+     */
+    public void submit(Object query, boolean bulk, Runnable task) {
+        lock.lock();
+        try {
+            while (pending >= maxPending) {
+                pendingDrained.await();
+            }
+
+            QueryQueue q = queues.get(query);
+            if (q == null) {
+                q = new QueryQueue(query, bulk);
+                queues.put(query, q);
+                (bulk ? bulkRing : interactiveRing).addLast(q);
+            }
+            q.tasks.addLast(new QueuedTask(q, task));
+            pending++;
+
+            dispatch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted when waiting to submit endpoint RPC", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must hold the lock
+    private void dispatch() {
+        while (running < maxThreads) {
+            QueryQueue q = null;
+            if (dispatched % bulkTurn == bulkTurn - 1) {
+                q = takeTurn(bulkRing);
+            }
+            if (q == null) {
+                q = takeTurn(interactiveRing);
+            }
+            if (q == null) {
+                q = takeTurn(bulkRing);
+            }
+            if (q == null)
+                return;
+
+            QueuedTask t = q.tasks.pollFirst();
+            q.running++;
+            running++;
+            pending--;
+            dispatched++;
+            pendingDrained.signal();
+            executor.execute(t);
+        }
+    }
+
+    /** the first query in the ring that can run one more task, which then goes to the end of the ring */
+    private QueryQueue takeTurn(ArrayDeque<QueryQueue> ring) {
+        for (Iterator<QueryQueue> it = ring.iterator(); it.hasNext();) {
+            QueryQueue q = it.next();
+            if (!q.tasks.isEmpty() && q.running < maxPerQuery) {
+                it.remove();
+                ring.addLast(q);
+                return q;
+            }
+        }
+        return null;
+    }
+
+    private void onStart(long waitMillis) {
+        lock.lock();
+        try {
+            waitCount++;
+            waitTotalMillis += waitMillis;
+            waitMaxMillis = Math.max(waitMaxMillis, waitMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onFinish(QueryQueue q) {
+        lock.lock();
+        try {
+            q.running--;
+            running--;
+            if (q.running == 0 && q.tasks.isEmpty()) {
+                queues.remove(q.query);
+                (q.bulk ? bulkRing : interactiveRing).remove(q);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getQueueWaitCount() {
+        lock.lock();
+        try {
+            return waitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getQueueWaitAvgMillis() {
+        lock.lock();
+        try {
+            return waitCount == 0 ? 0 : waitTotalMillis / waitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getQueueWaitMaxMillis() {
+        lock.lock();
+        try {
+            return waitMaxMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class QueryQueue {
+        final Object query;
+        final boolean bulk;
+        final ArrayDeque<QueuedTask> tasks = new ArrayDeque<QueuedTask>();
+        int running = 0;
+
+        QueryQueue(Object query, boolean bulk) {
+            this.query = query;
+            this.bulk = bulk;
+        }
+    }
+
+    private class QueuedTask implements Runnable {
+        final QueryQueue queue;
+        final Runnable task;
+        final long submitTime = System.currentTimeMillis();
+
+        QueuedTask(QueryQueue queue, Runnable task) {
+            this.queue = queue;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            onStart(System.currentTimeMillis() - submitTime);
+            try {
+                task.run();
+            } catch (Throwable ex) {
+                logger.error("Caught exception in endpoint RPC", ex);
+            } finally {
+                onFinish(queue);
+            }
+        }
+    }
+}
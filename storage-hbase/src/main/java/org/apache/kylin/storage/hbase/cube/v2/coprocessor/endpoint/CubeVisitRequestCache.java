@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.HBaseZeroCopyByteString;
+
+/**
+ * Keeps the config and GTInfo of cube visit requests on the region server, keyed by the digests the client sends
+ * along, so that later requests of the same cuboid may leave them out instead of being parsed again for every region.
+ */
+public class CubeVisitRequestCache {
+
+    private static final Cache<String, KylinConfig> configs = CacheBuilder.newBuilder().maximumSize(16).build();
+    private static final Cache<String, GTInfo> gtInfos = CacheBuilder.newBuilder().maximumSize(2000).softValues().build();
+
+    public static String digest(String kylinProperties) {
+        return Hashing.md5().hashString(kylinProperties, Charset.forName("UTF-8")).toString();
+    }
+
+    public static String digest(byte[] gtInfoBytes) {
+        return Hashing.md5().hashBytes(gtInfoBytes).toString();
+    }
+
+    /**
+     * Returns the config and scan request of a cube visit request, or null if the request carries only digests and
+     * the config or GTInfo behind them is not cached (any more), then the client must send the full request.
+     */
+    public static Pair<KylinConfig, GTScanRequest> resolve(CubeVisitRequest request) {
+        final boolean cacheable = request.hasKylinPropertiesDigest() && request.hasGtInfoDigest();
+        final ByteBuffer scanReqBuffer = ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getGtScanRequest()));
+        if (!request.getKylinProperties().isEmpty()) {
+            // if user change kylin.properties on kylin server, need to manually redeploy coprocessor jar to update KylinConfig of Env.
+            KylinConfig.setKylinConfigFromInputStream(IOUtils.toInputStream(request.getKylinProperties(), Charset.defaultCharset()));
+            KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+            GTScanRequest scanReq = GTScanRequest.serializer.deserialize(scanReqBuffer);
+            if (cacheable) {
+                put(request.getKylinPropertiesDigest(), kylinConfig, request.getGtInfoDigest(), scanReq.getInfo());
+            }
+            return Pair.newPair(kylinConfig, scanReq);
+        }
+
+        // the client believes we have both cached
+        KylinConfig kylinConfig = getConfig(request.getKylinPropertiesDigest());
+        GTInfo info = getGTInfo(request.getGtInfoDigest());
+        if (kylinConfig == null || info == null)
+            return null;
+        return Pair.newPair(kylinConfig, GTScanRequest.deserializeWithoutInfo(scanReqBuffer, info));
+    }
+
+    public static void put(String configDigest, KylinConfig config, String gtInfoDigest, GTInfo info) {
+        configs.put(configDigest, config);
+        gtInfos.put(gtInfoDigest, info);
+    }
+
+    public static KylinConfig getConfig(String configDigest) {
+        return configs.getIfPresent(configDigest);
+    }
+
+    public static GTInfo getGTInfo(String gtInfoDigest) {
+        return gtInfos.getIfPresent(gtInfoDigest);
+    }
+
+    public static void clear() {
+        configs.invalidateAll();
+        gtInfos.invalidateAll();
+    }
+}
@@ -24,7 +24,6 @@ import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.Iterator;
 import java.util.List;
 
@@ -45,6 +44,7 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.kv.RowConstants;
 import org.apache.kylin.dimension.DimensionEncoding;
 import org.apache.kylin.gridtable.GTRecord;
@@ -68,6 +68,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
 import com.google.protobuf.RpcCallback;
 import com.google.protobuf.RpcController;
@@ -181,13 +182,26 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             region = env.getRegion();
             region.startRegionOperation();
 
-            // if user change kylin.properties on kylin server, need to manually redeploy coprocessor jar to update KylinConfig of Env.
-            KylinConfig.setKylinConfigFromInputStream(IOUtils.toInputStream(request.getKylinProperties(), Charset.defaultCharset()));
-            KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
-
             debugGitTag = region.getTableDesc().getValue(IRealizationConstants.HTableGitTag);
 
-            final GTScanRequest scanReq = GTScanRequest.serializer.deserialize(ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getGtScanRequest())));
+            final boolean cacheable = request.hasKylinPropertiesDigest() && request.hasGtInfoDigest();
+            final Pair<KylinConfig, GTScanRequest> resolved = CubeVisitRequestCache.resolve(request);
+            if (resolved == null) {
+                logger.info("No cached config or GTInfo for digests {} and {}, asking for the full request", request.getKylinPropertiesDigest(), request.getGtInfoDigest());
+                done.run(CubeVisitProtos.CubeVisitResponse.newBuilder().//
+                        setCompressedRows(ByteString.EMPTY).//
+                        setDigestMissed(true).//
+                        setStats(CubeVisitProtos.CubeVisitResponse.Stats.newBuilder().//
+                                setServiceStartTime(serviceStartTime).//
+                                setServiceEndTime(System.currentTimeMillis()).//
+                                setHostname(InetAddress.getLocalHost().getHostName()).//
+                                setNormalComplete(1).build())
+                        .//
+                        build());
+                return;
+            }
+            final KylinConfig kylinConfig = resolved.getFirst();
+            final GTScanRequest scanReq = resolved.getSecond();
             List<List<Integer>> hbaseColumnsToGT = Lists.newArrayList();
             for (IntList intList : request.getHbaseColumnsToGTList()) {
                 hbaseColumnsToGT.add(intList.getIntsList());
@@ -295,6 +309,10 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             ByteBuffer buffer = ByteBuffer.allocate(BufferedMeasureEncoder.DEFAULT_BUFFER_SIZE);
 
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BufferedMeasureEncoder.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
+            // when the client asks for row blocks, rows are cut into separately compressed blocks as they come,
+            // so the full uncompressed result of the region is never held in memory at once
+            final int rowBlockSize = request.hasRowBlockSize() ? request.getRowBlockSize() : 0;
+            List<ByteString> compressedRowBlocks = Lists.newArrayList();
             int finalRowCount = 0;
             for (GTRecord oneRecord : finalScanner) {
 
@@ -320,6 +338,10 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
 
                 outputStream.write(buffer.array(), 0, buffer.position());
                 finalRowCount++;
+
+                if (rowBlockSize > 0 && outputStream.size() >= rowBlockSize) {
+                    compressedRowBlocks.add(toRowBlock(outputStream, kylinConfig.getCompressionResult()));
+                }
             }
             finalScanner.close();
 
@@ -327,15 +349,21 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
 
             //outputStream.close() is not necessary
             byte[] compressedAllRows;
-            if (scanNormalComplete.booleanValue()) {
-                allRows = outputStream.toByteArray();
-            } else {
-                allRows = new byte[0];
-            }
-            if (!kylinConfig.getCompressionResult()) {
-                compressedAllRows = allRows;
+            if (!scanNormalComplete.booleanValue()) {
+                compressedRowBlocks.clear();
+                compressedAllRows = new byte[0];
+            } else if (rowBlockSize > 0) {
+                if (outputStream.size() > 0) {
+                    compressedRowBlocks.add(toRowBlock(outputStream, kylinConfig.getCompressionResult()));
+                }
+                compressedAllRows = new byte[0];
             } else {
-                compressedAllRows = CompressionUtils.compress(allRows);
+                allRows = outputStream.toByteArray();
+                if (!kylinConfig.getCompressionResult()) {
+                    compressedAllRows = allRows;
+                } else {
+                    compressedAllRows = CompressionUtils.compress(allRows);
+                }
             }
 
             appendProfileInfo(sb, "compress done");
@@ -351,6 +379,8 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             CubeVisitProtos.CubeVisitResponse.Builder responseBuilder = CubeVisitProtos.CubeVisitResponse.newBuilder();
             done.run(responseBuilder.//
                     setCompressedRows(HBaseZeroCopyByteString.wrap(compressedAllRows)).//too many array copies 
+                    addAllCompressedRowBlocks(compressedRowBlocks).//
+                    setDigestCached(cacheable).//
                     setStats(CubeVisitProtos.CubeVisitResponse.Stats.newBuilder().//
                             setAggregatedRowCount(finalScanner.getScannedRowCount() - finalRowCount).//
                             setScannedRowCount(finalScanner.getScannedRowCount()).//
@@ -388,6 +418,12 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         }
     }
 
+    private ByteString toRowBlock(ByteArrayOutputStream outputStream, boolean compress) throws IOException {
+        byte[] rows = outputStream.toByteArray();
+        outputStream.reset();
+        return HBaseZeroCopyByteString.wrap(compress ? CompressionUtils.compress(rows) : rows);
+    }
+
     @Override
     public void start(CoprocessorEnvironment env) throws IOException {
         if (env instanceof RegionCoprocessorEnvironment) {
@@ -401,6 +437,7 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
     public void stop(CoprocessorEnvironment env) throws IOException {
         // destroy KylinConfig when coprocessor stop
         KylinConfig.destroyInstance();
+        CubeVisitRequestCache.clear();
     }
 
     @Override
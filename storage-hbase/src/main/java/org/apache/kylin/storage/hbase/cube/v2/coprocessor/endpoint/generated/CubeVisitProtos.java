@@ -143,6 +143,78 @@ public final class CubeVisitProtos {
      */
     com.google.protobuf.ByteString
         getKylinPropertiesBytes();
+
+    // optional int32 rowBlockSize = 9;
+    /**
+     * <code>optional int32 rowBlockSize = 9;</code>
+     *
+     * <pre>
+     * when positive, result rows are returned as separately compressed blocks of about this many bytes
+     * </pre>
+     */
+    boolean hasRowBlockSize();
+    /**
+     * <code>optional int32 rowBlockSize = 9;</code>
+     *
+     * <pre>
+     * when positive, result rows are returned as separately compressed blocks of about this many bytes
+     * </pre>
+     */
+    int getRowBlockSize();
+
+    // optional string kylinPropertiesDigest = 10;
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    boolean hasKylinPropertiesDigest();
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    java.lang.String getKylinPropertiesDigest();
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getKylinPropertiesDigestBytes();
+
+    // optional string gtInfoDigest = 11;
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    boolean hasGtInfoDigest();
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    java.lang.String getGtInfoDigest();
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getGtInfoDigestBytes();
   }
   /**
    * Protobuf type {@code CubeVisitRequest}
@@ -238,6 +310,21 @@ public final class CubeVisitProtos {
               kylinProperties_ = input.readBytes();
               break;
             }
+            case 72: {
+              bitField0_ |= 0x00000080;
+              rowBlockSize_ = input.readInt32();
+              break;
+            }
+            case 82: {
+              bitField0_ |= 0x00000100;
+              kylinPropertiesDigest_ = input.readBytes();
+              break;
+            }
+            case 90: {
+              bitField0_ |= 0x00000200;
+              gtInfoDigest_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -1015,6 +1102,140 @@ public final class CubeVisitProtos {
       }
     }
 
+    // optional int32 rowBlockSize = 9;
+    public static final int ROWBLOCKSIZE_FIELD_NUMBER = 9;
+    private int rowBlockSize_;
+    /**
+     * <code>optional int32 rowBlockSize = 9;</code>
+     *
+     * <pre>
+     * when positive, result rows are returned as separately compressed blocks of about this many bytes
+     * </pre>
+     */
+    public boolean hasRowBlockSize() {
+      return ((bitField0_ & 0x00000080) == 0x00000080);
+    }
+    /**
+     * <code>optional int32 rowBlockSize = 9;</code>
+     *
+     * <pre>
+     * when positive, result rows are returned as separately compressed blocks of about this many bytes
+     * </pre>
+     */
+    public int getRowBlockSize() {
+      return rowBlockSize_;
+    }
+
+    // optional string kylinPropertiesDigest = 10;
+    public static final int KYLINPROPERTIESDIGEST_FIELD_NUMBER = 10;
+    private java.lang.Object kylinPropertiesDigest_;
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    public boolean hasKylinPropertiesDigest() {
+      return ((bitField0_ & 0x00000100) == 0x00000100);
+    }
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    public java.lang.String getKylinPropertiesDigest() {
+      java.lang.Object ref = kylinPropertiesDigest_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          kylinPropertiesDigest_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string kylinPropertiesDigest = 10;</code>
+     *
+     * <pre>
+     * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getKylinPropertiesDigestBytes() {
+      java.lang.Object ref = kylinPropertiesDigest_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        kylinPropertiesDigest_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
+    // optional string gtInfoDigest = 11;
+    public static final int GTINFODIGEST_FIELD_NUMBER = 11;
+    private java.lang.Object gtInfoDigest_;
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    public boolean hasGtInfoDigest() {
+      return ((bitField0_ & 0x00000200) == 0x00000200);
+    }
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    public java.lang.String getGtInfoDigest() {
+      java.lang.Object ref = gtInfoDigest_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          gtInfoDigest_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string gtInfoDigest = 11;</code>
+     *
+     * <pre>
+     * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getGtInfoDigestBytes() {
+      java.lang.Object ref = gtInfoDigest_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        gtInfoDigest_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
     private void initFields() {
       behavior_ = "";
       gtScanRequest_ = com.google.protobuf.ByteString.EMPTY;
@@ -1024,6 +1245,9 @@ public final class CubeVisitProtos {
       startTime_ = 0L;
       timeout_ = 0L;
       kylinProperties_ = "";
+      rowBlockSize_ = 0;
+      kylinPropertiesDigest_ = "";
+      gtInfoDigest_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -1089,6 +1313,15 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000040) == 0x00000040)) {
         output.writeBytes(8, getKylinPropertiesBytes());
       }
+      if (((bitField0_ & 0x00000080) == 0x00000080)) {
+        output.writeInt32(9, rowBlockSize_);
+      }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        output.writeBytes(10, getKylinPropertiesDigestBytes());
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        output.writeBytes(11, getGtInfoDigestBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -1130,6 +1363,18 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(8, getKylinPropertiesBytes());
       }
+      if (((bitField0_ & 0x00000080) == 0x00000080)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(9, rowBlockSize_);
+      }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(10, getKylinPropertiesDigestBytes());
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(11, getGtInfoDigestBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -1190,6 +1435,21 @@ public final class CubeVisitProtos {
         result = result && getKylinProperties()
             .equals(other.getKylinProperties());
       }
+      result = result && (hasRowBlockSize() == other.hasRowBlockSize());
+      if (hasRowBlockSize()) {
+        result = result && (getRowBlockSize()
+            == other.getRowBlockSize());
+      }
+      result = result && (hasKylinPropertiesDigest() == other.hasKylinPropertiesDigest());
+      if (hasKylinPropertiesDigest()) {
+        result = result && getKylinPropertiesDigest()
+            .equals(other.getKylinPropertiesDigest());
+      }
+      result = result && (hasGtInfoDigest() == other.hasGtInfoDigest());
+      if (hasGtInfoDigest()) {
+        result = result && getGtInfoDigest()
+            .equals(other.getGtInfoDigest());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -1235,6 +1495,18 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + KYLINPROPERTIES_FIELD_NUMBER;
         hash = (53 * hash) + getKylinProperties().hashCode();
       }
+      if (hasRowBlockSize()) {
+        hash = (37 * hash) + ROWBLOCKSIZE_FIELD_NUMBER;
+        hash = (53 * hash) + getRowBlockSize();
+      }
+      if (hasKylinPropertiesDigest()) {
+        hash = (37 * hash) + KYLINPROPERTIESDIGEST_FIELD_NUMBER;
+        hash = (53 * hash) + getKylinPropertiesDigest().hashCode();
+      }
+      if (hasGtInfoDigest()) {
+        hash = (37 * hash) + GTINFODIGEST_FIELD_NUMBER;
+        hash = (53 * hash) + getGtInfoDigest().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -1365,6 +1637,12 @@ public final class CubeVisitProtos {
         bitField0_ = (bitField0_ & ~0x00000040);
         kylinProperties_ = "";
         bitField0_ = (bitField0_ & ~0x00000080);
+        rowBlockSize_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000100);
+        kylinPropertiesDigest_ = "";
+        bitField0_ = (bitField0_ & ~0x00000200);
+        gtInfoDigest_ = "";
+        bitField0_ = (bitField0_ & ~0x00000400);
         return this;
       }
 
@@ -1430,6 +1708,18 @@ public final class CubeVisitProtos {
           to_bitField0_ |= 0x00000040;
         }
         result.kylinProperties_ = kylinProperties_;
+        if (((from_bitField0_ & 0x00000100) == 0x00000100)) {
+          to_bitField0_ |= 0x00000080;
+        }
+        result.rowBlockSize_ = rowBlockSize_;
+        if (((from_bitField0_ & 0x00000200) == 0x00000200)) {
+          to_bitField0_ |= 0x00000100;
+        }
+        result.kylinPropertiesDigest_ = kylinPropertiesDigest_;
+        if (((from_bitField0_ & 0x00000400) == 0x00000400)) {
+          to_bitField0_ |= 0x00000200;
+        }
+        result.gtInfoDigest_ = gtInfoDigest_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1497,6 +1787,19 @@ public final class CubeVisitProtos {
           kylinProperties_ = other.kylinProperties_;
           onChanged();
         }
+        if (other.hasRowBlockSize()) {
+          setRowBlockSize(other.getRowBlockSize());
+        }
+        if (other.hasKylinPropertiesDigest()) {
+          bitField0_ |= 0x00000200;
+          kylinPropertiesDigest_ = other.kylinPropertiesDigest_;
+          onChanged();
+        }
+        if (other.hasGtInfoDigest()) {
+          bitField0_ |= 0x00000400;
+          gtInfoDigest_ = other.gtInfoDigest_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -2161,8 +2464,253 @@ public final class CubeVisitProtos {
         if (value == null) {
     throw new NullPointerException();
   }
-  bitField0_ |= 0x00000080;
-        kylinProperties_ = value;
+  bitField0_ |= 0x00000080;
+        kylinProperties_ = value;
+        onChanged();
+        return this;
+      }
+
+      // optional int32 rowBlockSize = 9;
+      private int rowBlockSize_ ;
+      /**
+       * <code>optional int32 rowBlockSize = 9;</code>
+       *
+       * <pre>
+       * when positive, result rows are returned as separately compressed blocks of about this many bytes
+       * </pre>
+       */
+      public boolean hasRowBlockSize() {
+        return ((bitField0_ & 0x00000100) == 0x00000100);
+      }
+      /**
+       * <code>optional int32 rowBlockSize = 9;</code>
+       *
+       * <pre>
+       * when positive, result rows are returned as separately compressed blocks of about this many bytes
+       * </pre>
+       */
+      public int getRowBlockSize() {
+        return rowBlockSize_;
+      }
+      /**
+       * <code>optional int32 rowBlockSize = 9;</code>
+       *
+       * <pre>
+       * when positive, result rows are returned as separately compressed blocks of about this many bytes
+       * </pre>
+       */
+      public Builder setRowBlockSize(int value) {
+        bitField0_ |= 0x00000100;
+        rowBlockSize_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 rowBlockSize = 9;</code>
+       *
+       * <pre>
+       * when positive, result rows are returned as separately compressed blocks of about this many bytes
+       * </pre>
+       */
+      public Builder clearRowBlockSize() {
+        bitField0_ = (bitField0_ & ~0x00000100);
+        rowBlockSize_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // optional string kylinPropertiesDigest = 10;
+      private java.lang.Object kylinPropertiesDigest_ = "";
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public boolean hasKylinPropertiesDigest() {
+        return ((bitField0_ & 0x00000200) == 0x00000200);
+      }
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public java.lang.String getKylinPropertiesDigest() {
+        java.lang.Object ref = kylinPropertiesDigest_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          kylinPropertiesDigest_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getKylinPropertiesDigestBytes() {
+        java.lang.Object ref = kylinPropertiesDigest_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          kylinPropertiesDigest_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public Builder setKylinPropertiesDigest(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000200;
+        kylinPropertiesDigest_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public Builder clearKylinPropertiesDigest() {
+        bitField0_ = (bitField0_ & ~0x00000200);
+        kylinPropertiesDigest_ = getDefaultInstance().getKylinPropertiesDigest();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string kylinPropertiesDigest = 10;</code>
+       *
+       * <pre>
+       * with gtInfoDigest, lets the endpoint cache the parsed config and GTInfo
+       * </pre>
+       */
+      public Builder setKylinPropertiesDigestBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000200;
+        kylinPropertiesDigest_ = value;
+        onChanged();
+        return this;
+      }
+
+      // optional string gtInfoDigest = 11;
+      private java.lang.Object gtInfoDigest_ = "";
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public boolean hasGtInfoDigest() {
+        return ((bitField0_ & 0x00000400) == 0x00000400);
+      }
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public java.lang.String getGtInfoDigest() {
+        java.lang.Object ref = gtInfoDigest_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          gtInfoDigest_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getGtInfoDigestBytes() {
+        java.lang.Object ref = gtInfoDigest_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          gtInfoDigest_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public Builder setGtInfoDigest(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000400;
+        gtInfoDigest_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public Builder clearGtInfoDigest() {
+        bitField0_ = (bitField0_ & ~0x00000400);
+        gtInfoDigest_ = getDefaultInstance().getGtInfoDigest();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string gtInfoDigest = 11;</code>
+       *
+       * <pre>
+       * when kylinProperties is empty, gtScanRequest comes without GTInfo and both are taken from the endpoint's cache
+       * </pre>
+       */
+      public Builder setGtInfoDigestBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000400;
+        gtInfoDigest_ = value;
         onChanged();
         return this;
       }
@@ -2204,6 +2752,68 @@ public final class CubeVisitProtos {
      * <code>required .CubeVisitResponse.Stats stats = 2;</code>
      */
     org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
+
+    // repeated bytes compressedRowBlocks = 3;
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    java.util.List<com.google.protobuf.ByteString> getCompressedRowBlocksList();
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    int getCompressedRowBlocksCount();
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    com.google.protobuf.ByteString getCompressedRowBlocks(int index);
+
+    // optional bool digestCached = 4;
+    /**
+     * <code>optional bool digestCached = 4;</code>
+     *
+     * <pre>
+     * the endpoint has cached the config and GTInfo of the request under their digests
+     * </pre>
+     */
+    boolean hasDigestCached();
+    /**
+     * <code>optional bool digestCached = 4;</code>
+     *
+     * <pre>
+     * the endpoint has cached the config and GTInfo of the request under their digests
+     * </pre>
+     */
+    boolean getDigestCached();
+
+    // optional bool digestMissed = 5;
+    /**
+     * <code>optional bool digestMissed = 5;</code>
+     *
+     * <pre>
+     * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+     * </pre>
+     */
+    boolean hasDigestMissed();
+    /**
+     * <code>optional bool digestMissed = 5;</code>
+     *
+     * <pre>
+     * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+     * </pre>
+     */
+    boolean getDigestMissed();
   }
   /**
    * Protobuf type {@code CubeVisitResponse}
@@ -2274,6 +2884,24 @@ public final class CubeVisitProtos {
               bitField0_ |= 0x00000002;
               break;
             }
+            case 26: {
+              if (!((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+                compressedRowBlocks_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
+                mutable_bitField0_ |= 0x00000004;
+              }
+              compressedRowBlocks_.add(input.readBytes());
+              break;
+            }
+            case 32: {
+              bitField0_ |= 0x00000004;
+              digestCached_ = input.readBool();
+              break;
+            }
+            case 40: {
+              bitField0_ |= 0x00000008;
+              digestMissed_ = input.readBool();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2282,6 +2910,9 @@ public final class CubeVisitProtos {
         throw new com.google.protobuf.InvalidProtocolBufferException(
             e.getMessage()).setUnfinishedMessage(this);
       } finally {
+        if (((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowBlocks_ = java.util.Collections.unmodifiableList(compressedRowBlocks_);
+        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
@@ -3778,9 +4409,95 @@ public final class CubeVisitProtos {
       return stats_;
     }
 
+    // repeated bytes compressedRowBlocks = 3;
+    public static final int COMPRESSEDROWBLOCKS_FIELD_NUMBER = 3;
+    private java.util.List<com.google.protobuf.ByteString> compressedRowBlocks_;
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    public java.util.List<com.google.protobuf.ByteString>
+        getCompressedRowBlocksList() {
+      return compressedRowBlocks_;
+    }
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    public int getCompressedRowBlocksCount() {
+      return compressedRowBlocks_.size();
+    }
+    /**
+     * <code>repeated bytes compressedRowBlocks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when request asks for rowBlockSize
+     * </pre>
+     */
+    public com.google.protobuf.ByteString getCompressedRowBlocks(int index) {
+      return compressedRowBlocks_.get(index);
+    }
+
+    // optional bool digestCached = 4;
+    public static final int DIGESTCACHED_FIELD_NUMBER = 4;
+    private boolean digestCached_;
+    /**
+     * <code>optional bool digestCached = 4;</code>
+     *
+     * <pre>
+     * the endpoint has cached the config and GTInfo of the request under their digests
+     * </pre>
+     */
+    public boolean hasDigestCached() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional bool digestCached = 4;</code>
+     *
+     * <pre>
+     * the endpoint has cached the config and GTInfo of the request under their digests
+     * </pre>
+     */
+    public boolean getDigestCached() {
+      return digestCached_;
+    }
+
+    // optional bool digestMissed = 5;
+    public static final int DIGESTMISSED_FIELD_NUMBER = 5;
+    private boolean digestMissed_;
+    /**
+     * <code>optional bool digestMissed = 5;</code>
+     *
+     * <pre>
+     * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+     * </pre>
+     */
+    public boolean hasDigestMissed() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    /**
+     * <code>optional bool digestMissed = 5;</code>
+     *
+     * <pre>
+     * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+     * </pre>
+     */
+    public boolean getDigestMissed() {
+      return digestMissed_;
+    }
+
     private void initFields() {
       compressedRows_ = com.google.protobuf.ByteString.EMPTY;
       stats_ = org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.getDefaultInstance();
+      compressedRowBlocks_ = java.util.Collections.emptyList();
+      digestCached_ = false;
+      digestMissed_ = false;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3808,6 +4525,15 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeMessage(2, stats_);
       }
+      for (int i = 0; i < compressedRowBlocks_.size(); i++) {
+        output.writeBytes(3, compressedRowBlocks_.get(i));
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeBool(4, digestCached_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBool(5, digestMissed_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -3825,6 +4551,23 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(2, stats_);
       }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < compressedRowBlocks_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeBytesSizeNoTag(compressedRowBlocks_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getCompressedRowBlocksList().size();
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBoolSize(4, digestCached_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBoolSize(5, digestMissed_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -3858,6 +4601,18 @@ public final class CubeVisitProtos {
         result = result && getStats()
             .equals(other.getStats());
       }
+      result = result && getCompressedRowBlocksList()
+          .equals(other.getCompressedRowBlocksList());
+      result = result && (hasDigestCached() == other.hasDigestCached());
+      if (hasDigestCached()) {
+        result = result && (getDigestCached()
+            == other.getDigestCached());
+      }
+      result = result && (hasDigestMissed() == other.hasDigestMissed());
+      if (hasDigestMissed()) {
+        result = result && (getDigestMissed()
+            == other.getDigestMissed());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -3879,6 +4634,18 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + STATS_FIELD_NUMBER;
         hash = (53 * hash) + getStats().hashCode();
       }
+      if (getCompressedRowBlocksCount() > 0) {
+        hash = (37 * hash) + COMPRESSEDROWBLOCKS_FIELD_NUMBER;
+        hash = (53 * hash) + getCompressedRowBlocksList().hashCode();
+      }
+      if (hasDigestCached()) {
+        hash = (37 * hash) + DIGESTCACHED_FIELD_NUMBER;
+        hash = (53 * hash) + hashBoolean(getDigestCached());
+      }
+      if (hasDigestMissed()) {
+        hash = (37 * hash) + DIGESTMISSED_FIELD_NUMBER;
+        hash = (53 * hash) + hashBoolean(getDigestMissed());
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -3997,6 +4764,12 @@ public final class CubeVisitProtos {
           statsBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000002);
+        compressedRowBlocks_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000004);
+        digestCached_ = false;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        digestMissed_ = false;
+        bitField0_ = (bitField0_ & ~0x00000010);
         return this;
       }
 
@@ -4037,6 +4810,19 @@ public final class CubeVisitProtos {
         } else {
           result.stats_ = statsBuilder_.build();
         }
+        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowBlocks_ = java.util.Collections.unmodifiableList(compressedRowBlocks_);
+          bitField0_ = (bitField0_ & ~0x00000004);
+        }
+        result.compressedRowBlocks_ = compressedRowBlocks_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.digestCached_ = digestCached_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.digestMissed_ = digestMissed_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -4059,6 +4845,22 @@ public final class CubeVisitProtos {
         if (other.hasStats()) {
           mergeStats(other.getStats());
         }
+        if (!other.compressedRowBlocks_.isEmpty()) {
+          if (compressedRowBlocks_.isEmpty()) {
+            compressedRowBlocks_ = other.compressedRowBlocks_;
+            bitField0_ = (bitField0_ & ~0x00000004);
+          } else {
+            ensureCompressedRowBlocksIsMutable();
+            compressedRowBlocks_.addAll(other.compressedRowBlocks_);
+          }
+          onChanged();
+        }
+        if (other.hasDigestCached()) {
+          setDigestCached(other.getDigestCached());
+        }
+        if (other.hasDigestMissed()) {
+          setDigestMissed(other.getDigestMissed());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -4247,6 +5049,204 @@ public final class CubeVisitProtos {
         return statsBuilder_;
       }
 
+      // repeated bytes compressedRowBlocks = 3;
+      private java.util.List<com.google.protobuf.ByteString> compressedRowBlocks_ = java.util.Collections.emptyList();
+      private void ensureCompressedRowBlocksIsMutable() {
+        if (!((bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowBlocks_ = new java.util.ArrayList<com.google.protobuf.ByteString>(compressedRowBlocks_);
+          bitField0_ |= 0x00000004;
+         }
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public java.util.List<com.google.protobuf.ByteString>
+          getCompressedRowBlocksList() {
+        return java.util.Collections.unmodifiableList(compressedRowBlocks_);
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public int getCompressedRowBlocksCount() {
+        return compressedRowBlocks_.size();
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public com.google.protobuf.ByteString getCompressedRowBlocks(int index) {
+        return compressedRowBlocks_.get(index);
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public Builder setCompressedRowBlocks(
+          int index, com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureCompressedRowBlocksIsMutable();
+        compressedRowBlocks_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public Builder addCompressedRowBlocks(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureCompressedRowBlocksIsMutable();
+        compressedRowBlocks_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public Builder addAllCompressedRowBlocks(
+          java.lang.Iterable<? extends com.google.protobuf.ByteString> values) {
+        ensureCompressedRowBlocksIsMutable();
+        super.addAll(values, compressedRowBlocks_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowBlocks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when request asks for rowBlockSize
+       * </pre>
+       */
+      public Builder clearCompressedRowBlocks() {
+        compressedRowBlocks_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000004);
+        onChanged();
+        return this;
+      }
+
+      // optional bool digestCached = 4;
+      private boolean digestCached_ ;
+      /**
+       * <code>optional bool digestCached = 4;</code>
+       *
+       * <pre>
+       * the endpoint has cached the config and GTInfo of the request under their digests
+       * </pre>
+       */
+      public boolean hasDigestCached() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      /**
+       * <code>optional bool digestCached = 4;</code>
+       *
+       * <pre>
+       * the endpoint has cached the config and GTInfo of the request under their digests
+       * </pre>
+       */
+      public boolean getDigestCached() {
+        return digestCached_;
+      }
+      /**
+       * <code>optional bool digestCached = 4;</code>
+       *
+       * <pre>
+       * the endpoint has cached the config and GTInfo of the request under their digests
+       * </pre>
+       */
+      public Builder setDigestCached(boolean value) {
+        bitField0_ |= 0x00000008;
+        digestCached_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bool digestCached = 4;</code>
+       *
+       * <pre>
+       * the endpoint has cached the config and GTInfo of the request under their digests
+       * </pre>
+       */
+      public Builder clearDigestCached() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        digestCached_ = false;
+        onChanged();
+        return this;
+      }
+
+      // optional bool digestMissed = 5;
+      private boolean digestMissed_ ;
+      /**
+       * <code>optional bool digestMissed = 5;</code>
+       *
+       * <pre>
+       * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+       * </pre>
+       */
+      public boolean hasDigestMissed() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+      /**
+       * <code>optional bool digestMissed = 5;</code>
+       *
+       * <pre>
+       * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+       * </pre>
+       */
+      public boolean getDigestMissed() {
+        return digestMissed_;
+      }
+      /**
+       * <code>optional bool digestMissed = 5;</code>
+       *
+       * <pre>
+       * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+       * </pre>
+       */
+      public Builder setDigestMissed(boolean value) {
+        bitField0_ |= 0x00000010;
+        digestMissed_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bool digestMissed = 5;</code>
+       *
+       * <pre>
+       * the endpoint has no cached config or GTInfo for the digests, the request must be sent again in full
+       * </pre>
+       */
+      public Builder clearDigestMissed() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        digestMissed_ = false;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:CubeVisitResponse)
     }
 
@@ -4521,26 +5521,30 @@ public final class CubeVisitProtos {
     java.lang.String[] descriptorData = {
       "\npstorage-hbase/src/main/java/org/apache" +
       "/kylin/storage/hbase/cube/v2/coprocessor" +
-      "/endpoint/protobuf/CubeVisit.proto\"\370\001\n\020C" +
+      "/endpoint/protobuf/CubeVisit.proto\"\303\002\n\020C" +
       "ubeVisitRequest\022\020\n\010behavior\030\001 \002(\t\022\025\n\rgtS" +
       "canRequest\030\002 \002(\014\022\024\n\014hbaseRawScan\030\003 \002(\014\022\032" +
       "\n\022rowkeyPreambleSize\030\004 \002(\005\0223\n\020hbaseColum" +
       "nsToGT\030\005 \003(\0132\031.CubeVisitRequest.IntList\022" +
       "\021\n\tstartTime\030\006 \002(\003\022\017\n\007timeout\030\007 \002(\003\022\027\n\017k" +
-      "ylinProperties\030\010 \002(\t\032\027\n\007IntList\022\014\n\004ints\030" +
-      "\001 \003(\005\"\321\002\n\021CubeVisitResponse\022\026\n\016compresse",
-      "dRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeVisitRe" +
-      "sponse.Stats\032\372\001\n\005Stats\022\030\n\020serviceStartTi" +
-      "me\030\001 \001(\003\022\026\n\016serviceEndTime\030\002 \001(\003\022\027\n\017scan" +
-      "nedRowCount\030\003 \001(\003\022\032\n\022aggregatedRowCount\030" +
-      "\004 \001(\003\022\025\n\rsystemCpuLoad\030\005 \001(\001\022\036\n\026freePhys" +
-      "icalMemorySize\030\006 \001(\001\022\031\n\021freeSwapSpaceSiz" +
-      "e\030\007 \001(\001\022\020\n\010hostname\030\010 \001(\t\022\016\n\006etcMsg\030\t \001(" +
-      "\t\022\026\n\016normalComplete\030\n \001(\0052F\n\020CubeVisitSe" +
-      "rvice\0222\n\tvisitCube\022\021.CubeVisitRequest\032\022." +
-      "CubeVisitResponseB`\nEorg.apache.kylin.st",
-      "orage.hbase.cube.v2.coprocessor.endpoint" +
-      ".generatedB\017CubeVisitProtosH\001\210\001\001\240\001\001"
+      "ylinProperties\030\010 \002(\t\022\024\n\014rowBlockSize\030\t \001" +
+      "(\005\022\035\n\025kylinPropertiesDigest\030\n \001(\t\022\024\n\014gtI",
+      "nfoDigest\030\013 \001(\t\032\027\n\007IntList\022\014\n\004ints\030\001 \003(\005" +
+      "\"\232\003\n\021CubeVisitResponse\022\026\n\016compressedRows" +
+      "\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeVisitRespons" +
+      "e.Stats\022\033\n\023compressedRowBlocks\030\003 \003(\014\022\024\n\014" +
+      "digestCached\030\004 \001(\010\022\024\n\014digestMissed\030\005 \001(\010" +
+      "\032\372\001\n\005Stats\022\030\n\020serviceStartTime\030\001 \001(\003\022\026\n\016" +
+      "serviceEndTime\030\002 \001(\003\022\027\n\017scannedRowCount\030" +
+      "\003 \001(\003\022\032\n\022aggregatedRowCount\030\004 \001(\003\022\025\n\rsys" +
+      "temCpuLoad\030\005 \001(\001\022\036\n\026freePhysicalMemorySi" +
+      "ze\030\006 \001(\001\022\031\n\021freeSwapSpaceSize\030\007 \001(\001\022\020\n\010h",
+      "ostname\030\010 \001(\t\022\016\n\006etcMsg\030\t \001(\t\022\026\n\016normalC" +
+      "omplete\030\n \001(\0052F\n\020CubeVisitService\0222\n\tvis" +
+      "itCube\022\021.CubeVisitRequest\032\022.CubeVisitRes" +
+      "ponseB`\nEorg.apache.kylin.storage.hbase." +
+      "cube.v2.coprocessor.endpoint.generatedB\017" +
+      "CubeVisitProtosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -4552,7 +5556,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitRequest_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitRequest_descriptor,
-              new java.lang.String[] { "Behavior", "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "StartTime", "Timeout", "KylinProperties", });
+              new java.lang.String[] { "Behavior", "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "StartTime", "Timeout", "KylinProperties", "RowBlockSize", "KylinPropertiesDigest", "GtInfoDigest", });
           internal_static_CubeVisitRequest_IntList_descriptor =
             internal_static_CubeVisitRequest_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitRequest_IntList_fieldAccessorTable = new
@@ -4564,7 +5568,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitResponse_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_descriptor,
-              new java.lang.String[] { "CompressedRows", "Stats", });
+              new java.lang.String[] { "CompressedRows", "Stats", "CompressedRowBlocks", "DigestCached", "DigestMissed", });
           internal_static_CubeVisitResponse_Stats_descriptor =
             internal_static_CubeVisitResponse_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitResponse_Stats_fieldAccessorTable = new
@@ -55,29 +55,36 @@ public class BulkLoadJob extends AbstractHadoopJob {
             // end with "/"
             String input = getOptionValue(OPTION_INPUT_PATH);
 
-            Configuration conf = HBaseConnection.getCurrentHBaseConfiguration();
-            FsShell shell = new FsShell(conf);
-            try {
-                shell.run(new String[] { "-chmod", "-R", "777", input });
-            } catch (Exception e) {
-                logger.error("Couldn't change the file permissions ", e);
-                throw new IOException(e);
-            }
-
-            String[] newArgs = new String[2];
-            newArgs[0] = input;
-            newArgs[1] = tableName;
-
-            logger.debug("Start to run LoadIncrementalHFiles");
-            int ret = ToolRunner.run(new LoadIncrementalHFiles(conf), newArgs);
-            logger.debug("End to run LoadIncrementalHFiles");
-            return ret;
+            return bulkLoad(HBaseConnection.getCurrentHBaseConfiguration(), input, tableName);
         } catch (Exception e) {
             printUsage(options);
             throw e;
         }
     }
 
+    /**
+     * Loads the HFiles under input, one sub directory per column family, into the table.
+     * Also used by the streaming cubing, which writes HFiles without a MR job.
+     */
+    public static int bulkLoad(Configuration conf, String input, String tableName) throws Exception {
+        FsShell shell = new FsShell(conf);
+        try {
+            shell.run(new String[] { "-chmod", "-R", "777", input });
+        } catch (Exception e) {
+            logger.error("Couldn't change the file permissions ", e);
+            throw new IOException(e);
+        }
+
+        String[] newArgs = new String[2];
+        newArgs[0] = input;
+        newArgs[1] = tableName;
+
+        logger.debug("Start to run LoadIncrementalHFiles");
+        int ret = ToolRunner.run(new LoadIncrementalHFiles(conf), newArgs);
+        logger.debug("End to run LoadIncrementalHFiles");
+        return ret;
+    }
+
     public static void main(String[] args) throws Exception {
         int exitCode = ToolRunner.run(new BulkLoadJob(), args);
         System.exit(exitCode);
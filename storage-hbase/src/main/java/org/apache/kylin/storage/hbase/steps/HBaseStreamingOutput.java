@@ -59,7 +59,11 @@ public class HBaseStreamingOutput implements IStreamingOutput {
             final HTableInterface hTable;
             hTable = createHTable(cubeSegment);
             List<ICuboidWriter> cuboidWriters = Lists.newArrayList();
-            cuboidWriters.add(new HBaseCuboidWriter(cubeSegment, hTable));
+            if (KylinConfig.getInstanceFromEnv().isStreamingBulkLoadEnabled()) {
+                cuboidWriters.add(new HFileCuboidWriter(cubeSegment, hTable));
+            } else {
+                cuboidWriters.add(new HBaseCuboidWriter(cubeSegment, hTable));
+            }
             cuboidWriters.add(new SequenceFileCuboidWriter(cubeSegment.getCubeDesc(), cubeSegment));
             return new CompoundCuboidWriter(cuboidWriters);
         } catch (IOException e) {
@@ -0,0 +1,230 @@
+/*
+ *
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *
+ *  contributor license agreements. See the NOTICE file distributed with
+ *
+ *  this work for additional information regarding copyright ownership.
+ *
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *
+ *  (the "License"); you may not use this file except in compliance with
+ *
+ *  the License. You may obtain a copy of the License at
+ *
+ *
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *  See the License for the specific language governing permissions and
+ *
+ *  limitations under the License.
+ *
+ * /
+ */
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.model.HBaseColumnDesc;
+import org.apache.kylin.cube.model.HBaseColumnFamilyDesc;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.engine.mr.steps.KVGTRecordWriter;
+import org.apache.kylin.measure.MeasureDecoder;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes the cuboids of a streaming segment as HFiles and bulk loads them on flush, bypassing the WAL and
+ * memstore of the region servers. Key values are made the same way as in {@link CubeHFileMapper}; they are
+ * sorted in a bounded memory buffer, each full buffer becoming one more HFile per column family.
+ */
+public class HFileCuboidWriter extends KVGTRecordWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HFileCuboidWriter.class);
+
+    private final HTableInterface hTable;
+    private final Configuration conf;
+    private final Path outputPath;
+    private final long bufferBytes;
+
+    private final MeasureDecoder inputCodec;
+    private final Object[] inputMeasures;
+    private final List<KeyValueCreator> keyValueCreators;
+
+    // column family -> buffered key values
+    private final Map<String, List<KeyValue>> buffers = Maps.newHashMap();
+    private long bufferedBytes = 0;
+    private int hfileCount = 0;
+
+    public HFileCuboidWriter(CubeSegment segment, HTableInterface hTable) {
+        // the HFiles go to the file system of the HBase cluster, like those of the batch build
+        this(segment, hTable, HBaseConnection.getCurrentHBaseConfiguration(), //
+                new Path(HBaseConnection.makeQualifiedPathInHBaseCluster(segment.getConfig().getHdfsWorkingDirectory() + "streaming_hfile/" + segment.getUuid())), //
+                (long) segment.getConfig().getStreamingBulkLoadBufferMB() * 1024 * 1024);
+    }
+
+    HFileCuboidWriter(CubeSegment segment, HTableInterface hTable, Configuration conf, Path outputPath, long bufferBytes) {
+        super(segment.getCubeDesc(), segment);
+        this.hTable = hTable;
+        this.conf = conf;
+        this.outputPath = outputPath;
+        this.bufferBytes = bufferBytes;
+
+        this.inputCodec = new MeasureDecoder(cubeDesc.getMeasures());
+        this.inputMeasures = new Object[cubeDesc.getMeasures().size()];
+        this.keyValueCreators = Lists.newArrayList();
+        for (HBaseColumnFamilyDesc cfDesc : cubeDesc.getHbaseMapping().getColumnFamily()) {
+            for (HBaseColumnDesc colDesc : cfDesc.getColumns()) {
+                keyValueCreators.add(new KeyValueCreator(cubeDesc, colDesc));
+            }
+        }
+    }
+
+    @Override
+    protected void writeAsKeyValue(ByteArrayWritable key, ByteArrayWritable value) throws IOException {
+        int n = keyValueCreators.size();
+        if (n == 1 && keyValueCreators.get(0).isFullCopy) { // shortcut for simple full copy
+            buffer(keyValueCreators.get(0).create(key.array(), key.offset(), key.length(), value.array(), value.offset(), value.length()));
+        } else {
+            inputCodec.decode(ByteBuffer.wrap(value.array(), value.offset(), value.length()), inputMeasures);
+            for (int i = 0; i < n; i++) {
+                buffer(keyValueCreators.get(i).create(key.array(), key.offset(), key.length(), inputMeasures));
+            }
+        }
+        if (bufferedBytes >= bufferBytes) {
+            writeHFiles();
+        }
+    }
+
+    private void buffer(KeyValue keyValue) {
+        String family = Bytes.toString(keyValue.getFamilyArray(), keyValue.getFamilyOffset(), keyValue.getFamilyLength());
+        List<KeyValue> buffer = buffers.get(family);
+        if (buffer == null) {
+            buffer = Lists.newArrayList();
+            buffers.put(family, buffer);
+        }
+        buffer.add(keyValue);
+        bufferedBytes += keyValue.heapSize();
+    }
+
+    void writeHFiles() throws IOException {
+        if (bufferedBytes == 0) {
+            return;
+        }
+        long t = System.currentTimeMillis();
+        FileSystem fs = outputPath.getFileSystem(conf);
+        HTableDescriptor tableDesc = hTable.getTableDescriptor();
+        // no block cache for a writer that is never read from
+        Configuration writerConf = new Configuration(conf);
+        writerConf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+
+        int count = 0;
+        for (Map.Entry<String, List<KeyValue>> entry : buffers.entrySet()) {
+            List<KeyValue> keyValues = entry.getValue();
+            if (keyValues.isEmpty()) {
+                continue;
+            }
+            Collections.sort(keyValues, KeyValue.COMPARATOR);
+
+            // follows the writer settings of HFileOutputFormat2
+            HColumnDescriptor family = tableDesc.getFamily(Bytes.toBytes(entry.getKey()));
+            HFileContextBuilder contextBuilder = new HFileContextBuilder().withCompression(family.getCompression()) //
+                    .withChecksumType(HStore.getChecksumType(conf)).withBytesPerCheckSum(HStore.getBytesPerChecksum(conf)) //
+                    .withBlockSize(family.getBlocksize()).withDataBlockEncoding(family.getDataBlockEncoding());
+            StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, new CacheConfig(writerConf), fs) //
+                    .withOutputDir(new Path(outputPath, entry.getKey())).withBloomType(family.getBloomFilterType()) //
+                    .withComparator(KeyValue.COMPARATOR).withFileContext(contextBuilder.build()).build();
+            try {
+                for (KeyValue keyValue : keyValues) {
+                    writer.append(keyValue);
+                }
+                writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+                writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes(cubeSegment.getUuid()));
+                writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+                writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY, Bytes.toBytes(false));
+                writer.appendTrackedTimestampsToMetadata();
+            } finally {
+                writer.close();
+            }
+            count += keyValues.size();
+            keyValues.clear();
+            hfileCount++;
+        }
+        logger.info("write " + count + " key values to HFiles, totally cost:" + (System.currentTimeMillis() - t) + "ms");
+        bufferedBytes = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeHFiles();
+        if (hfileCount == 0) {
+            return;
+        }
+        long t = System.currentTimeMillis();
+        try {
+            int ret = BulkLoadJob.bulkLoad(conf, outputPath.toString(), cubeSegment.getStorageLocationIdentifier());
+            if (ret != 0) {
+                throw new IOException("LoadIncrementalHFiles of " + outputPath + " returns " + ret);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("failed to bulk load " + outputPath, e);
+        }
+        logger.info("bulk load " + hfileCount + " HFiles, totally cost:" + (System.currentTimeMillis() - t) + "ms");
+        hfileCount = 0;
+        deleteOutput();
+    }
+
+    private void deleteOutput() throws IOException {
+        FileSystem fs = outputPath.getFileSystem(conf);
+        if (fs.exists(outputPath)) {
+            fs.delete(outputPath, true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // anything not flushed yet is from a failed build
+            deleteOutput();
+        } finally {
+            buffers.clear();
+            IOUtils.closeQuietly(hTable);
+        }
+    }
+
+}
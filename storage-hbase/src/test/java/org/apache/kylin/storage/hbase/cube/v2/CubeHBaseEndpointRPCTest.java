@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+
+public class CubeHBaseEndpointRPCTest {
+
+    @Test
+    public void testDecompressBlocks() throws Exception {
+        byte[] b1 = Bytes.toBytes("block-1");
+        byte[] b2 = Bytes.toBytes("block-2");
+        byte[] b3 = Bytes.toBytes("block-3");
+
+        List<List<byte[]>> regions = Lists.newArrayList();
+        regions.add(Lists.newArrayList(CompressionUtils.compress(b1), CompressionUtils.compress(b2)));
+        regions.add(Lists.<byte[]> newArrayList());
+        regions.add(Lists.newArrayList(CompressionUtils.compress(b3)));
+
+        Iterator<byte[]> blocks = CubeHBaseEndpointRPC.decompressBlocks(regions.iterator(), true);
+        assertArrayEquals(b1, blocks.next());
+        assertArrayEquals(b2, blocks.next());
+        assertArrayEquals(b3, blocks.next());
+        assertFalse(blocks.hasNext());
+    }
+
+    @Test
+    public void testUncompressedBlocks() throws Exception {
+        byte[] b1 = Bytes.toBytes("block-1");
+
+        List<List<byte[]>> regions = Lists.newArrayList();
+        regions.add(Lists.newArrayList(b1));
+
+        Iterator<byte[]> blocks = CubeHBaseEndpointRPC.decompressBlocks(regions.iterator(), false);
+        assertArrayEquals(b1, blocks.next());
+        assertFalse(blocks.hasNext());
+    }
+
+    @Test
+    public void testBoundedRegionResults() throws Exception {
+        final CubeHBaseEndpointRPC.ExpectedSizeIterator results = new CubeHBaseEndpointRPC.ExpectedSizeIterator(3, 60000, 100);
+
+        // the first result gets in even if it is over the bound
+        results.append(Lists.newArrayList(new byte[150]));
+        assertEquals(150, results.getBufferedBytes());
+
+        Thread second = appendInThread(results, new byte[60]);
+        second.join(500);
+        assertTrue(second.isAlive());
+
+        // taking the first result lets the second in
+        assertEquals(150, results.next().get(0).length);
+        second.join(10000);
+        assertFalse(second.isAlive());
+        assertEquals(60, results.getBufferedBytes());
+
+        // under the bound, no wait
+        results.append(Lists.newArrayList(new byte[30], new byte[10]));
+        assertEquals(100, results.getBufferedBytes());
+        assertEquals(60, results.next().get(0).length);
+        assertEquals(2, results.next().size());
+        assertEquals(0, results.getBufferedBytes());
+        assertFalse(results.hasNext());
+    }
+
+    @Test
+    public void testCloseReleasesWaitingRegions() throws Exception {
+        CubeHBaseEndpointRPC.ExpectedSizeIterator results = new CubeHBaseEndpointRPC.ExpectedSizeIterator(2, 60000, 100);
+        results.append(Lists.newArrayList(new byte[100]));
+
+        Thread second = appendInThread(results, new byte[100]);
+        second.join(500);
+        assertTrue(second.isAlive());
+
+        results.close();
+        second.join(10000);
+        assertFalse(second.isAlive());
+        assertEquals(100, results.getBufferedBytes());
+    }
+
+    private static Thread appendInThread(final CubeHBaseEndpointRPC.ExpectedSizeIterator results, final byte[] block) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                results.append(Lists.newArrayList(block));
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testChooseRequest() {
+        CubeVisitRequest full = CubeVisitRequest.newBuilder().setBehavior("SCAN_FILTER_AGGR_CHECKMEM").setGtScanRequest(ByteString.copyFromUtf8("scan with info")) //
+                .setHbaseRawScan(ByteString.EMPTY).setRowkeyPreambleSize(0).setStartTime(0).setTimeout(0).setKylinProperties("kylin.x=1") //
+                .setKylinPropertiesDigest("config-digest").setGtInfoDigest("info-digest").build();
+        ByteString withoutInfo = ByteString.copyFromUtf8("scan");
+
+        // the full request until an endpoint of the htable says it caches the digests
+        assertSame(full, CubeHBaseEndpointRPC.chooseRequest("TABLE_A/config-digest/info-digest", full, withoutInfo));
+        CubeHBaseEndpointRPC.markDigestCached("TABLE_A/config-digest/info-digest");
+
+        CubeVisitRequest digest = CubeHBaseEndpointRPC.chooseRequest("TABLE_A/config-digest/info-digest", full, withoutInfo);
+        assertEquals("", digest.getKylinProperties());
+        assertEquals(withoutInfo, digest.getGtScanRequest());
+        assertEquals("config-digest", digest.getKylinPropertiesDigest());
+        assertEquals("info-digest", digest.getGtInfoDigest());
+
+        assertSame(full, CubeHBaseEndpointRPC.chooseRequest("TABLE_B/config-digest/info-digest", full, withoutInfo));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class EndpointRPCSchedulerTest {
+
+    @Test
+    public void testLimits() throws Exception {
+        final EndpointRPCScheduler scheduler = new EndpointRPCScheduler(4, 2, 1000, 4);
+        final AtomicInteger globalRunning = new AtomicInteger();
+        final AtomicInteger globalPeak = new AtomicInteger();
+        final AtomicInteger[] queryRunning = new AtomicInteger[3];
+        final AtomicInteger[] queryPeak = new AtomicInteger[3];
+        final CountDownLatch done = new CountDownLatch(3 * 20);
+
+        for (int i = 0; i < 20; i++) {
+            for (int q = 0; q < 3; q++) {
+                if (queryRunning[q] == null) {
+                    queryRunning[q] = new AtomicInteger();
+                    queryPeak[q] = new AtomicInteger();
+                }
+                final int query = q;
+                scheduler.submit("query-" + q, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        peak(globalPeak, globalRunning.incrementAndGet());
+                        peak(queryPeak[query], queryRunning[query].incrementAndGet());
+                        sleep(2);
+                        queryRunning[query].decrementAndGet();
+                        globalRunning.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(globalPeak.get() <= 4);
+        for (int q = 0; q < 3; q++) {
+            assertTrue(queryPeak[q].get() <= 2);
+        }
+        assertEquals(60, scheduler.getQueueWaitCount());
+        assertTrue(scheduler.getQueueWaitMaxMillis() >= scheduler.getQueueWaitAvgMillis());
+    }
+
+    @Test
+    public void testInteractiveFirst() throws Exception {
+        final EndpointRPCScheduler scheduler = new EndpointRPCScheduler(1, 1, 1000, 4);
+        final List<String> order = Collections.synchronizedList(Lists.<String> newArrayList());
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(17);
+
+        // holds the only thread until everything is queued
+        scheduler.submit("blocker", false, new Runnable() {
+            @Override
+            public void run() {
+                await(blocker);
+                done.countDown();
+            }
+        });
+        for (int i = 0; i < 8; i++) {
+            scheduler.submit("export", true, record(order, "bulk", done));
+        }
+        for (int i = 0; i < 8; i++) {
+            scheduler.submit("dashboard", false, record(order, "interactive", done));
+        }
+        assertEquals(16, scheduler.getPendingCount());
+        blocker.countDown();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        // bulk takes every 4th turn only, so interactive tasks are done well before the bulk ones
+        assertEquals(16, order.size());
+        assertEquals(Lists.newArrayList("interactive", "interactive", "bulk", "interactive"), order.subList(0, 4));
+        assertEquals(9, order.lastIndexOf("interactive"));
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        final EndpointRPCScheduler scheduler = new EndpointRPCScheduler(1, 1, 1000, 4);
+        final List<String> order = Collections.synchronizedList(Lists.<String> newArrayList());
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(7);
+
+        scheduler.submit("blocker", false, new Runnable() {
+            @Override
+            public void run() {
+                await(blocker);
+                done.countDown();
+            }
+        });
+        // a heavy query submitted first does not hold back a light one
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("heavy", false, record(order, "heavy", done));
+        }
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit("light", false, record(order, "light", done));
+        }
+        blocker.countDown();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(Lists.newArrayList("heavy", "light", "heavy", "light", "heavy", "heavy"), order);
+    }
+
+    private static Runnable record(final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private static void peak(AtomicInteger peak, int value) {
+        int p;
+        while ((p = peak.get()) < value && !peak.compareAndSet(p, value)) {
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTScanRange;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+
+public class CubeVisitRequestCacheTest extends LocalFileMetadataTestCase {
+
+    private String properties;
+    private GTInfo info;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        CubeVisitRequestCache.clear();
+        properties = KylinConfig.getInstanceFromEnv().getConfigAsString();
+        info = UnitTestSupport.basicInfo();
+    }
+
+    @After
+    public void after() throws Exception {
+        CubeVisitRequestCache.clear();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testMissThenResend() {
+        GTScanRequest scan = newScanRequest(new ImmutableBitSet(0, 3));
+
+        // a region server that never saw the full request asks for it
+        Assert.assertNull(CubeVisitRequestCache.resolve(digestRequest(scan)));
+
+        Pair<KylinConfig, GTScanRequest> full = CubeVisitRequestCache.resolve(fullRequest(scan));
+        Assert.assertNotNull(full);
+        Assert.assertEquals(scan.getColumns(), full.getSecond().getColumns());
+
+        Pair<KylinConfig, GTScanRequest> cached = CubeVisitRequestCache.resolve(digestRequest(scan));
+        Assert.assertNotNull(cached);
+        Assert.assertSame(full.getFirst(), cached.getFirst());
+        Assert.assertSame(full.getSecond().getInfo(), cached.getSecond().getInfo());
+        Assert.assertEquals(scan.getColumns(), cached.getSecond().getColumns());
+    }
+
+    @Test
+    public void testHit() {
+        Pair<KylinConfig, GTScanRequest> full = CubeVisitRequestCache.resolve(fullRequest(newScanRequest(new ImmutableBitSet(0, 3))));
+
+        // another scan of the same cuboid reuses the cached config and GTInfo
+        GTScanRequest other = newScanRequest(new ImmutableBitSet(1, 2));
+        Pair<KylinConfig, GTScanRequest> cached = CubeVisitRequestCache.resolve(digestRequest(other));
+        Assert.assertNotNull(cached);
+        Assert.assertSame(full.getFirst(), cached.getFirst());
+        Assert.assertSame(full.getSecond().getInfo(), cached.getSecond().getInfo());
+        Assert.assertEquals(other.getColumns(), cached.getSecond().getColumns());
+    }
+
+    @Test
+    public void testEviction() {
+        GTScanRequest scan = newScanRequest(new ImmutableBitSet(0, 3));
+        Pair<KylinConfig, GTScanRequest> full = CubeVisitRequestCache.resolve(fullRequest(scan));
+
+        // configs of other servers push the config out
+        for (int i = 0; i < 200; i++) {
+            CubeVisitRequestCache.put(CubeVisitRequestCache.digest(properties + "\nkylin.test." + i + "=" + i), full.getFirst(), CubeVisitRequestCache.digest(new byte[] { (byte) i }), info);
+        }
+        Assert.assertNull(CubeVisitRequestCache.resolve(digestRequest(scan)));
+
+        Assert.assertNotNull(CubeVisitRequestCache.resolve(fullRequest(scan)));
+        Assert.assertNotNull(CubeVisitRequestCache.resolve(digestRequest(scan)));
+
+        // e.g. the coprocessor is reloaded
+        CubeVisitRequestCache.clear();
+        Assert.assertNull(CubeVisitRequestCache.resolve(digestRequest(scan)));
+    }
+
+    @Test
+    public void testWithoutDigests() {
+        // requests of older clients carry no digests and are not cached
+        GTScanRequest scan = newScanRequest(new ImmutableBitSet(0, 3));
+        CubeVisitRequest request = CubeVisitRequest.newBuilder(fullRequest(scan)).clearKylinPropertiesDigest().clearGtInfoDigest().build();
+        Assert.assertNotNull(CubeVisitRequestCache.resolve(request));
+        Assert.assertNull(CubeVisitRequestCache.resolve(digestRequest(scan)));
+    }
+
+    private GTScanRequest newScanRequest(ImmutableBitSet columns) {
+        return new GTScanRequest(info, Lists.<GTScanRange> newArrayList(), columns, ImmutableBitSet.EMPTY, ImmutableBitSet.EMPTY, new String[0], null);
+    }
+
+    private CubeVisitRequest fullRequest(GTScanRequest scan) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        GTScanRequest.serializer.serialize(scan, buffer);
+        buffer.flip();
+        return newRequest(properties, ByteString.copyFrom(buffer));
+    }
+
+    private CubeVisitRequest digestRequest(GTScanRequest scan) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        GTScanRequest.serializeWithoutInfo(scan, buffer);
+        buffer.flip();
+        return newRequest("", ByteString.copyFrom(buffer));
+    }
+
+    private CubeVisitRequest newRequest(String kylinProperties, ByteString scanRequest) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        GTInfo.serializer.serialize(info, buffer);
+        buffer.flip();
+        byte[] infoBytes = new byte[buffer.remaining()];
+        buffer.get(infoBytes);
+
+        return CubeVisitRequest.newBuilder().setBehavior("SCAN_FILTER_AGGR_CHECKMEM").setGtScanRequest(scanRequest).setHbaseRawScan(ByteString.EMPTY) //
+                .setRowkeyPreambleSize(0).setStartTime(0).setTimeout(0).setKylinProperties(kylinProperties) //
+                .setKylinPropertiesDigest(CubeVisitRequestCache.digest(properties)).setGtInfoDigest(CubeVisitRequestCache.digest(infoBytes)).build();
+    }
+}
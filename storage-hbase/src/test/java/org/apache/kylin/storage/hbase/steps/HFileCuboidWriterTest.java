@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.steps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.HBaseColumnFamilyDesc;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.measure.BufferedMeasureEncoder;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class HFileCuboidWriterTest extends LocalFileMetadataTestCase {
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        tempDir = Files.createTempDir();
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteQuietly(tempDir);
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testWriteSeveralBuffers() throws Exception {
+        CubeSegment segment = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_left_join_ready").getSegments().get(0);
+        CubeDesc cubeDesc = segment.getCubeDesc();
+        List<String> families = Lists.newArrayList();
+        final HTableDescriptor tableDesc = new HTableDescriptor(TableName.valueOf("HFILE_CUBOID_WRITER_TEST"));
+        for (HBaseColumnFamilyDesc cfDesc : cubeDesc.getHbaseMapping().getColumnFamily()) {
+            families.add(cfDesc.getName());
+            tableDesc.addFamily(new HColumnDescriptor(cfDesc.getName()));
+        }
+        assertEquals(2, families.size());
+
+        Configuration conf = HBaseConfiguration.create();
+        conf.set(FileSystem.FS_DEFAULT_NAME_KEY, "file:///");
+        Path outputPath = new Path(tempDir.toURI().toString(), "hfile");
+        HFileCuboidWriter writer = new HFileCuboidWriter(segment, mockTable(tableDesc), conf, outputPath, 64 * 1024);
+
+        // rows in random order, several buffers of them
+        int rowCount = 2000;
+        List<Integer> rows = Lists.newArrayList();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(i);
+        }
+        Collections.shuffle(rows);
+        BufferedMeasureEncoder encoder = new BufferedMeasureEncoder(cubeDesc.getMeasures());
+        for (int row : rows) {
+            HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(12);
+            hll.add(row);
+            ByteBuffer value = encoder.encode(new Object[] { new BigDecimal(row), new BigDecimal(row), new BigDecimal(row), new LongMutable(1), new LongMutable(row), hll });
+            writer.writeAsKeyValue(new ByteArrayWritable(Bytes.toBytes("row-" + row)), new ByteArrayWritable(value.array(), 0, value.position()));
+        }
+        // the last, partial buffer
+        writer.writeHFiles();
+
+        FileSystem fs = outputPath.getFileSystem(conf);
+        int fileCount = -1;
+        for (String family : families) {
+            FileStatus[] files = fs.listStatus(new Path(outputPath, family));
+            assertTrue(files.length > 1);
+            if (fileCount >= 0) {
+                assertEquals(fileCount, files.length);
+            }
+            fileCount = files.length;
+
+            int keyValueCount = 0;
+            for (FileStatus file : files) {
+                keyValueCount += verifyHFile(fs, file.getPath(), family, conf);
+            }
+            assertEquals(rowCount, keyValueCount);
+        }
+
+        writer.close();
+        assertFalse(fs.exists(outputPath));
+    }
+
+    // checks the key values are sorted and in the family, returns their count
+    private int verifyHFile(FileSystem fs, Path path, String family, Configuration conf) throws Exception {
+        HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(conf), conf);
+        try {
+            reader.loadFileInfo();
+            HFileScanner scanner = reader.getScanner(false, false);
+            int count = 0;
+            if (scanner.seekTo()) {
+                KeyValue previous = null;
+                do {
+                    KeyValue keyValue = scanner.getKeyValue();
+                    assertEquals(family, Bytes.toString(keyValue.getFamily()));
+                    if (previous != null) {
+                        assertTrue(KeyValue.COMPARATOR.compare(previous, keyValue) < 0);
+                    }
+                    previous = keyValue;
+                    count++;
+                } while (scanner.next());
+            }
+            assertEquals(reader.getEntries(), count);
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private HTableInterface mockTable(final HTableDescriptor tableDesc) {
+        return (HTableInterface) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HTableInterface.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getTableDescriptor".equals(method.getName())) {
+                    return tableDesc;
+                }
+                return null;
+            }
+        });
+    }
+}